@@ -188,6 +188,63 @@ public class Downloader
 		return cachedResult;
 	}
 
+	/**
+	 * Performs a download synchronously, returning the result immediately. If
+	 * the URL is cached, and the cached version is younger than the provided
+	 * maximum age, no download is performed. If the cached version has
+	 * expired, the URL is downloaded and cached again; if this download fails,
+	 * the expired cached version is returned instead (if it exists).
+	 *
+	 * @param url
+	 *            URL to download
+	 * @param maxAge
+	 *            Maximum age (in milliseconds) of the cached version before it
+	 *            is considered expired
+	 * @param unzip
+	 *            Should the result be pre-unzipped?
+	 * @return Download result
+	 * @throws Exception
+	 *             If the download fails and there is no cached version
+	 */
+	public static RetrievalResult downloadImmediatelyIfExpired(final URL url, final long maxAge, final boolean unzip)
+			throws Exception
+	{
+		if (isJarProtocol(url))
+		{
+			return downloadImmediately(url, false, unzip);
+		}
+
+		FileRetrievalResult cachedResult = getFromCache(url);
+		if (cachedResult != null && cachedResult.hasData()
+				&& System.currentTimeMillis() - cachedResult.lastModified() < maxAge)
+		{
+			return cachedResult;
+		}
+
+		RetrievalResult result;
+		try
+		{
+			result = downloadImmediately(url, false, unzip);
+		}
+		catch (Exception e)
+		{
+			if (cachedResult != null && cachedResult.hasData())
+				return cachedResult;
+			throw e;
+		}
+
+		if (result.hasData())
+		{
+			saveToCache(url, result);
+			return result;
+		}
+
+		if (cachedResult != null && cachedResult.hasData())
+			return cachedResult;
+
+		return result;
+	}
+
 	/**
 	 * Performs a download asynchronously, calling the handler when download is
 	 * complete. If the URL is cached, no download is performed, and the handler
@@ -46,6 +46,8 @@ import java.util.Map;
 
 import javax.media.opengl.GL;
 
+import au.gov.ga.worldwind.common.layers.data.PositionQuadTree;
+import au.gov.ga.worldwind.common.layers.data.ViewDependentSelector;
 import au.gov.ga.worldwind.common.layers.point.types.MarkerPointLayer;
 import au.gov.ga.worldwind.common.layers.styled.Attribute;
 import au.gov.ga.worldwind.common.layers.styled.BasicStyleProvider;
@@ -61,6 +63,9 @@ import au.gov.ga.worldwind.common.util.Validate;
 /**
  * Basic implementation of the {@link BoreholeLayer}. Draws markers for each
  * borehole location, and coloured lines for borehole samples.
+ * <p/>
+ * Once loaded, the boreholes are indexed in a {@link PositionQuadTree}, and
+ * only the boreholes within the visible sector are rendered.
  * 
  * @author Michael de Hoog (michael.dehoog@ga.gov.au)
  */
@@ -76,6 +81,9 @@ public class BasicBoreholeLayer extends AbstractLayer implements BoreholeLayer,
 	protected final Map<Object, BoreholeImpl> idToBorehole = new HashMap<Object, BoreholeImpl>();
 	protected final MarkerRenderer markerRenderer = new MarkerRenderer();
 	protected final AnnotationRenderer annotationRenderer = new BasicAnnotationRenderer();
+	protected ViewDependentSelector<BoreholeImpl> selector;
+	protected List<BoreholeImpl> lastVisibleBoreholes;
+	protected final List<Marker> visibleMarkers = new ArrayList<Marker>();
 
 	protected URL context;
 	protected String url;
@@ -86,6 +94,7 @@ public class BasicBoreholeLayer extends AbstractLayer implements BoreholeLayer,
 	protected boolean attributesRepresentPositiveDepth = true;
 	protected double lineWidth = 10;
 	protected Double minimumDistance;
+	protected Double clusterResolution;
 
 	protected GlobeAnnotation tooltipAnnotation;
 
@@ -119,6 +128,7 @@ public class BasicBoreholeLayer extends AbstractLayer implements BoreholeLayer,
 		}
 		
 		minimumDistance = (Double) params.getValue(AVKeyMore.MINIMUM_DISTANCE);
+		clusterResolution = (Double) params.getValue(AVKeyMore.CLUSTER_RESOLUTION);
 
 		Validate.notBlank(url, "Borehole data url not set");
 		Validate.notBlank(dataCacheName, "Borehole data cache name not set");
@@ -210,9 +220,16 @@ public class BasicBoreholeLayer extends AbstractLayer implements BoreholeLayer,
 	@Override
 	public void loadComplete()
 	{
-		for (BoreholeImpl borehole : boreholes)
+		PositionQuadTree<BoreholeImpl> tree = new PositionQuadTree<BoreholeImpl>();
+		synchronized (boreholes)
 		{
-			borehole.loadComplete();
+			for (BoreholeImpl borehole : boreholes)
+			{
+				borehole.loadComplete();
+				Position position = borehole.getPosition();
+				tree.add(position.getLatitude().degrees, position.getLongitude().degrees, borehole);
+			}
+			selector = new ViewDependentSelector<BoreholeImpl>(tree, clusterResolution);
 		}
 	}
 
@@ -239,7 +256,21 @@ public class BasicBoreholeLayer extends AbstractLayer implements BoreholeLayer,
 		boreholeProvider.requestData(this);
 		synchronized (boreholes)
 		{
-			markerRenderer.render(dc, markers);
+			List<BoreholeImpl> visibleBoreholes = boreholes;
+			List<Marker> visibleMarkers = markers;
+			if (selector != null)
+			{
+				visibleBoreholes = selector.select(dc);
+				if (visibleBoreholes != lastVisibleBoreholes)
+				{
+					this.visibleMarkers.clear();
+					this.visibleMarkers.addAll(visibleBoreholes);
+					lastVisibleBoreholes = visibleBoreholes;
+				}
+				visibleMarkers = this.visibleMarkers;
+			}
+
+			markerRenderer.render(dc, visibleMarkers);
 			annotationRenderer.render(dc, tooltipAnnotation, tooltipAnnotation.getAnnotationDrawPoint(dc), this);
 
 			GL gl = dc.getGL();
@@ -248,7 +279,7 @@ public class BasicBoreholeLayer extends AbstractLayer implements BoreholeLayer,
 				gl.glPushAttrib(GL.GL_LINE_BIT);
 				gl.glLineWidth((float) lineWidth);
 
-				for (BoreholeImpl borehole : boreholes)
+				for (BoreholeImpl borehole : visibleBoreholes)
 				{
 					borehole.render(dc);
 				}
@@ -0,0 +1,368 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.common.layers.crust;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads and writes the elevation grids displayed by the {@link CrustLayer}.
+ * <p/>
+ * Two formats are supported. The text format is a list of comma- or
+ * whitespace-separated doubles, which is parsed directly from the byte stream
+ * into a direct buffer (without creating a String per value). The binary
+ * format can be memory-mapped (or read into a single buffer) and used
+ * directly. The binary format (all values big-endian) is:
+ *
+ * <pre>
+ * int magic ('CRST')
+ * int version (1)
+ * int width
+ * int height
+ * double[width * height] elevations (in metres, row-major)
+ * </pre>
+ *
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class CrustData
+{
+	public final static int MAGIC = 0x43525354; //'CRST'
+	public final static int VERSION = 1;
+
+	private final static int HEADER_SIZE = 16;
+	private final static int MAX_TOKEN_LENGTH = 64;
+	private final static int MAX_MANTISSA_DIGITS = 18;
+	private final static double[] POWERS_OF_TEN = new double[23];
+
+	static
+	{
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++)
+		{
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private CrustData()
+	{
+	}
+
+	/**
+	 * @return True if the given buffer (from its current position) starts with
+	 *         the binary format's magic number
+	 */
+	public static boolean isBinary(ByteBuffer buffer)
+	{
+		return buffer.remaining() >= 4
+				&& buffer.duplicate().order(ByteOrder.BIG_ENDIAN).getInt(buffer.position()) == MAGIC;
+	}
+
+	/**
+	 * Read a grid in the binary format from the given buffer. The returned
+	 * elevations are a view on the buffer; no data is copied.
+	 * 
+	 * @throws IOException
+	 *             If the buffer doesn't contain a grid of the given size in a
+	 *             supported version of the binary format
+	 */
+	public static DoubleBuffer read(ByteBuffer buffer, int width, int height) throws IOException
+	{
+		buffer = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+		if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+		{
+			throw new IOException("Not a binary crust file");
+		}
+		int version = buffer.getInt(4);
+		if (version != VERSION)
+		{
+			throw new IOException("Unsupported crust file version: " + version);
+		}
+		if (buffer.getInt(8) != width || buffer.getInt(12) != height)
+		{
+			throw new IOException("File contains a " + buffer.getInt(8) + "x" + buffer.getInt(12)
+					+ " grid, expected " + width + "x" + height);
+		}
+		long size = (long) width * height * 8;
+		if (HEADER_SIZE + size > buffer.remaining())
+		{
+			throw new IOException("Truncated crust file (" + buffer.remaining() + " bytes)");
+		}
+
+		buffer.position(HEADER_SIZE);
+		buffer.limit((int) (HEADER_SIZE + size));
+		return buffer.slice().order(ByteOrder.BIG_ENDIAN).asDoubleBuffer();
+	}
+
+	/**
+	 * Read a grid in the binary format from the given stream, directly into a
+	 * new direct buffer of the grid's size. The stream is not closed.
+	 * 
+	 * @see #read(ByteBuffer, int, int)
+	 */
+	public static DoubleBuffer read(InputStream is, int width, int height) throws IOException
+	{
+		long size = HEADER_SIZE + (long) width * height * 8;
+		if (size > Integer.MAX_VALUE)
+		{
+			throw new IOException("Grid too large: " + width + "x" + height);
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+		ReadableByteChannel channel = Channels.newChannel(is);
+		while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+		{
+		}
+		buffer.flip();
+		return read(buffer, width, height);
+	}
+
+	/**
+	 * Memory-map the given file and read the binary grid from it.
+	 * 
+	 * @see #read(ByteBuffer, int, int)
+	 */
+	public static DoubleBuffer map(File file, int width, int height) throws IOException
+	{
+		FileInputStream fis = new FileInputStream(file);
+		try
+		{
+			FileChannel channel = fis.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return read(buffer, width, height);
+		}
+		finally
+		{
+			//the mapping remains valid after the channel is closed
+			fis.close();
+		}
+	}
+
+	/**
+	 * Parse a grid in the text format from the given stream, into a new direct
+	 * buffer. The stream is not closed.
+	 * 
+	 * @param count
+	 *            Number of values (width x height) the stream should contain
+	 * @throws IOException
+	 *             If the stream doesn't contain exactly count numbers
+	 */
+	public static DoubleBuffer readText(InputStream is, int count) throws IOException
+	{
+		DoubleBuffer elevations =
+				ByteBuffer.allocateDirect(count * 8).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+
+		byte[] buffer = new byte[65536];
+		byte[] token = new byte[MAX_TOKEN_LENGTH];
+		int tokenLength = 0;
+		int values = 0;
+		int length;
+		while ((length = is.read(buffer)) >= 0)
+		{
+			for (int i = 0; i < length; i++)
+			{
+				byte b = buffer[i];
+				if (b == ',' || b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f')
+				{
+					if (tokenLength > 0)
+					{
+						values = putValue(elevations, values, count, token, tokenLength);
+						tokenLength = 0;
+					}
+				}
+				else
+				{
+					if (tokenLength == MAX_TOKEN_LENGTH)
+					{
+						throw new IOException("Invalid number at value " + values);
+					}
+					token[tokenLength++] = b;
+				}
+			}
+		}
+		if (tokenLength > 0)
+		{
+			values = putValue(elevations, values, count, token, tokenLength);
+		}
+
+		if (values != count)
+		{
+			throw new IOException("File doesn't contain " + count + " values (found " + values + ")");
+		}
+		elevations.rewind();
+		return elevations;
+	}
+
+	private static int putValue(DoubleBuffer elevations, int values, int count, byte[] token, int tokenLength)
+			throws IOException
+	{
+		if (values >= count)
+		{
+			throw new IOException("File contains more than " + count + " values");
+		}
+		elevations.put(values, parseDouble(token, tokenLength));
+		return values + 1;
+	}
+
+	/**
+	 * Parse a decimal number from the given ASCII bytes. Numbers with up to 18
+	 * significant digits and a decimal exponent of up to 22 are parsed
+	 * directly (and are correctly rounded, as both the mantissa and power of
+	 * ten are exactly representable); anything else is passed to
+	 * {@link Double#parseDouble(String)}.
+	 */
+	protected static double parseDouble(byte[] bytes, int length) throws IOException
+	{
+		int i = 0;
+		boolean negative = false;
+		if (bytes[0] == '-' || bytes[0] == '+')
+		{
+			negative = bytes[0] == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean anyDigits = false;
+		boolean truncated = false;
+		for (; i < length && bytes[i] >= '0' && bytes[i] <= '9'; i++)
+		{
+			anyDigits = true;
+			if (digits < MAX_MANTISSA_DIGITS)
+			{
+				mantissa = mantissa * 10 + (bytes[i] - '0');
+				if (mantissa != 0)
+					digits++;
+			}
+			else
+			{
+				truncated = true;
+			}
+		}
+		if (i < length && bytes[i] == '.')
+		{
+			for (i++; i < length && bytes[i] >= '0' && bytes[i] <= '9'; i++)
+			{
+				anyDigits = true;
+				if (digits < MAX_MANTISSA_DIGITS)
+				{
+					mantissa = mantissa * 10 + (bytes[i] - '0');
+					if (mantissa != 0)
+						digits++;
+					exponent--;
+				}
+				else
+				{
+					truncated = true;
+				}
+			}
+		}
+		if (anyDigits && i < length && (bytes[i] == 'e' || bytes[i] == 'E'))
+		{
+			i++;
+			boolean negativeExponent = false;
+			if (i < length && (bytes[i] == '-' || bytes[i] == '+'))
+			{
+				negativeExponent = bytes[i] == '-';
+				i++;
+			}
+			int e = 0;
+			boolean anyExponentDigits = false;
+			for (; i < length && bytes[i] >= '0' && bytes[i] <= '9'; i++)
+			{
+				anyExponentDigits = true;
+				e = Math.min(e * 10 + (bytes[i] - '0'), 10000);
+			}
+			if (!anyExponentDigits)
+			{
+				anyDigits = false;
+			}
+			exponent += negativeExponent ? -e : e;
+		}
+
+		if (anyDigits && !truncated && i == length)
+		{
+			if (mantissa == 0)
+			{
+				return negative ? -0d : 0d;
+			}
+			if (mantissa < (1L << 53) && exponent >= -22 && exponent <= 22)
+			{
+				double value =
+						exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+				return negative ? -value : value;
+			}
+		}
+
+		//not a plain decimal, or can't be parsed exactly using doubles
+		String string = new String(bytes, 0, length, "US-ASCII");
+		try
+		{
+			return Double.parseDouble(string);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IOException("Invalid number: " + string);
+		}
+	}
+
+	/**
+	 * Write the given elevations to a file in the binary format.
+	 */
+	public static void write(DoubleBuffer elevations, int width, int height, File file) throws IOException
+	{
+		OutputStream os = new FileOutputStream(file);
+		try
+		{
+			write(elevations, width, height, os);
+		}
+		finally
+		{
+			os.close();
+		}
+	}
+
+	/**
+	 * Write the given elevations to a stream in the binary format. The stream
+	 * is flushed but not closed.
+	 */
+	public static void write(DoubleBuffer elevations, int width, int height, OutputStream os) throws IOException
+	{
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os));
+		dos.writeInt(MAGIC);
+		dos.writeInt(VERSION);
+		dos.writeInt(width);
+		dos.writeInt(height);
+		for (int i = 0; i < width * height; i++)
+		{
+			dos.writeDouble(elevations.get(i));
+		}
+		dos.flush();
+	}
+}
@@ -27,13 +27,22 @@ import gov.nasa.worldwind.render.DrawContext;
 import gov.nasa.worldwind.util.Logging;
 import gov.nasa.worldwind.util.WWXML;
 
+import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.DoubleBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.media.opengl.GL;
 import javax.xml.xpath.XPath;
@@ -45,7 +54,9 @@ import au.gov.ga.worldwind.common.downloader.Downloader;
 import au.gov.ga.worldwind.common.downloader.RetrievalHandler;
 import au.gov.ga.worldwind.common.downloader.RetrievalResult;
 import au.gov.ga.worldwind.common.util.AVKeyMore;
+import au.gov.ga.worldwind.common.util.DaemonThreadFactory;
 import au.gov.ga.worldwind.common.util.Loader;
+import au.gov.ga.worldwind.common.util.URLUtil;
 
 import com.sun.opengl.util.BufferUtil;
 
@@ -56,6 +67,8 @@ import com.sun.opengl.util.BufferUtil;
  * The data file (referenced via the {@link #url} field) should contain elevations
  * expressed as doubles (in metres) in a row-major ordering of dimensions {@link #width} x {@link #height}.
  * The datafile can be contaied within a zip file to minimise bandwidth requirements.
+ * The datafile can also be in the binary format described in {@link CrustData},
+ * in which case local uncompressed files are memory-mapped.
  * <p/>
  * The crust layer will be rendered as a surface deformed by the elevation data and
  * coloured using a colour map based on min and max elevation values.
@@ -64,8 +77,10 @@ import com.sun.opengl.util.BufferUtil;
  */
 public class CrustLayer extends AbstractLayer implements Loader
 {
-	private static final String WHITESPACE_COMMA_REGEX = "(\\s*,\\s*)|\\s+";
 	private final static int MAX_DOWNLOAD_ATTEMPTS = 3;
+	private final static int ROWS_PER_BLOCK = 64;
+	private final static ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime()
+			.availableProcessors(), new DaemonThreadFactory("Crust layer vertex builder"));
 
 	private final URL url;
 
@@ -164,29 +179,38 @@ public class CrustLayer extends AbstractLayer implements Loader
 		return params;
 	}
 
-	private void recalculateVertices(Globe globe, double verticalExaggeration)
+	private void recalculateVertices(final Globe globe, final double verticalExaggeration)
 	{
 		synchronized (elevationLock)
 		{
 			if (elevations != null)
 			{
-				elevations.rewind();
-				vertices.rewind();
-				Angle minlon = sector.getMinLongitude();
-				Angle minlat = sector.getMaxLatitude();
-				double lonstep = sector.getDeltaLonDegrees() / (width - 1);
-				double latstep = sector.getDeltaLatDegrees() / (height - 1);
-				for (int y = 0; y < height; y++)
+				final Angle minlon = sector.getMinLongitude();
+				final Angle minlat = sector.getMaxLatitude();
+				final double lonstep = sector.getDeltaLonDegrees() / (width - 1);
+				final double latstep = sector.getDeltaLatDegrees() / (height - 1);
+				forEachRowBlock(new RowBlockTask()
 				{
-					Angle lat = minlat.subtractDegrees(latstep * y);
-					for (int x = 0; x < width; x++)
+					@Override
+					public void run(int startRow, int endRow)
 					{
-						Angle lon = minlon.addDegrees(lonstep * x);
-						double elev = elevations.get() * scale * verticalExaggeration;
-						Vec4 point = globe.computePointFromPosition(lat, lon, elev);
-						vertices.put(point.x).put(point.y).put(point.z);
+						//absolute gets/puts, so that row blocks can be filled concurrently
+						int i = startRow * width;
+						for (int y = startRow; y < endRow; y++)
+						{
+							Angle lat = minlat.subtractDegrees(latstep * y);
+							for (int x = 0; x < width; x++, i++)
+							{
+								Angle lon = minlon.addDegrees(lonstep * x);
+								double elev = elevations.get(i) * scale * verticalExaggeration;
+								Vec4 point = globe.computePointFromPosition(lat, lon, elev);
+								vertices.put(i * 3, point.x);
+								vertices.put(i * 3 + 1, point.y);
+								vertices.put(i * 3 + 2, point.z);
+							}
+						}
 					}
-				}
+				});
 			}
 		}
 	}
@@ -197,17 +221,73 @@ public class CrustLayer extends AbstractLayer implements Loader
 		{
 			if (elevations != null)
 			{
-				elevations.rewind();
-				colors.rewind();
-				for (int i = 0; i < width * height; i++)
+				final double opacity = getOpacity();
+				forEachRowBlock(new RowBlockTask()
+				{
+					@Override
+					public void run(int startRow, int endRow)
+					{
+						for (int i = startRow * width; i < endRow * width; i++)
+						{
+							putChroma(colors, i * 4, (elevations.get(i) - minElevation) / (maxElevation - minElevation),
+									opacity);
+						}
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Run the given task for blocks of rows of the grid, in parallel.
+	 */
+	private void forEachRowBlock(final RowBlockTask task)
+	{
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int row = 0; row < height; row += ROWS_PER_BLOCK)
+		{
+			final int startRow = row;
+			final int endRow = Math.min(height, row + ROWS_PER_BLOCK);
+			futures.add(executor.submit(new Callable<Object>()
+			{
+				@Override
+				public Object call() throws Exception
 				{
-					double[] color = chroma((elevations.get() - minElevation) / (maxElevation - minElevation), getOpacity());
-					colors.put(color);
+					task.run(startRow, endRow);
+					return null;
 				}
+			}));
+		}
+		try
+		{
+			for (Future<?> future : futures)
+			{
+				future.get();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while building crust geometry", e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException("Error building crust geometry", e.getCause());
+		}
+		finally
+		{
+			for (Future<?> future : futures)
+			{
+				future.cancel(true);
 			}
 		}
 	}
 
+	private interface RowBlockTask
+	{
+		void run(int startRow, int endRow);
+	}
+
 	@Override
 	public void setOpacity(double opacity)
 	{
@@ -336,6 +416,21 @@ public class CrustLayer extends AbstractLayer implements Loader
 			@Override
 			public void run()
 			{
+				//local uncompressed files in the binary format can be mapped directly
+				File file = URLUtil.urlToFile(url);
+				if (file != null && file.isFile() && !url.toExternalForm().toLowerCase().endsWith(".zip"))
+				{
+					try
+					{
+						loadElevations(CrustData.map(file, width, height));
+						return;
+					}
+					catch (IOException e)
+					{
+						//not binary; fall through and read it with the downloader
+					}
+				}
+
 				RetrievalHandler handler = new RetrievalHandler()
 				{
 					@Override
@@ -343,7 +438,7 @@ public class CrustLayer extends AbstractLayer implements Loader
 					{
 						if (result.hasData())
 						{
-							loadData(result.getAsString());
+							loadData(result.getAsInputStream());
 						}
 						else if (result.getError() != null)
 						{
@@ -359,33 +454,39 @@ public class CrustLayer extends AbstractLayer implements Loader
 		thread.start();
 	}
 
-	protected void loadData(String s)
+	protected void loadData(InputStream is)
 	{
 		try
 		{
-			double[] doubles = parseDoubles(s);
-
-			if (doubles.length != width * height)
-				throw new IOException("File doesn't contain width x height (" + (width * height) + ") values");
-
-			DoubleBuffer buffer = BufferUtil.newDoubleBuffer(width * height);
-			buffer.put(doubles);
-			buffer.rewind();
-			
-			for (int i = 0; i < width * height; i++)
+			long startTime = System.currentTimeMillis();
+
+			//peek at the start of the stream to determine the format
+			is = new BufferedInputStream(is, 65536);
+			is.mark(4);
+			byte[] magic = new byte[4];
+			int read = 0, length;
+			while (read < magic.length && (length = is.read(magic, read, magic.length - read)) >= 0)
 			{
-				double elev = buffer.get();
-				minElevation = Math.min(minElevation, elev);
-				maxElevation = Math.max(maxElevation, elev);
+				read += length;
 			}
+			is.reset();
 
-			synchronized (elevationLock)
+			DoubleBuffer buffer;
+			if (CrustData.isBinary(ByteBuffer.wrap(magic, 0, read)))
 			{
-				this.elevations = buffer;
+				buffer = CrustData.read(is, width, height);
 			}
-			//force a recalculate
-			lastGlobe = null;
-			firePropertyChange(AVKey.LAYER, null, this);
+			else
+			{
+				buffer = CrustData.readText(is, width * height);
+			}
+			is.close();
+
+			loadElevations(buffer);
+
+			Logging.logger().fine(
+					"Loaded " + width + "x" + height + " crust grid from " + url + " in "
+							+ (System.currentTimeMillis() - startTime) + "ms");
 		}
 		catch (IOException e)
 		{
@@ -402,6 +503,28 @@ public class CrustLayer extends AbstractLayer implements Loader
 		}
 	}
 
+	protected void loadElevations(DoubleBuffer buffer)
+	{
+		double min = Double.MAX_VALUE;
+		double max = -Double.MAX_VALUE;
+		for (int i = 0; i < width * height; i++)
+		{
+			double elev = buffer.get(i);
+			min = Math.min(min, elev);
+			max = Math.max(max, elev);
+		}
+
+		synchronized (elevationLock)
+		{
+			this.minElevation = min;
+			this.maxElevation = max;
+			this.elevations = buffer;
+		}
+		//force a recalculate
+		lastGlobe = null;
+		firePropertyChange(AVKey.LAYER, null, this);
+	}
+
 	protected void setBlendingFunction(DrawContext dc)
 	{
 		GL gl = dc.getGL();
@@ -411,7 +534,7 @@ public class CrustLayer extends AbstractLayer implements Loader
 		gl.glBlendFunc(GL.GL_SRC_ALPHA, GL.GL_ONE_MINUS_SRC_ALPHA);
 	}
 
-	private static double[] chroma(double depth, double opacity)
+	private static void putChroma(DoubleBuffer buffer, int index, double depth, double opacity)
 	{
 		double r = 2.0 - depth * 4.0;
 		double b = depth * 4.0 - 2.0;
@@ -420,7 +543,10 @@ public class CrustLayer extends AbstractLayer implements Loader
 		{
 			g = 4.0 - g;
 		}
-		return new double[] { clamp(r, 0, 1), clamp(g, 0, 1), clamp(b, 0, 1), opacity };
+		buffer.put(index, clamp(r, 0, 1));
+		buffer.put(index + 1, clamp(g, 0, 1));
+		buffer.put(index + 2, clamp(b, 0, 1));
+		buffer.put(index + 3, opacity);
 	}
 
 	private static double clamp(double value, double min, double max)
@@ -428,24 +554,6 @@ public class CrustLayer extends AbstractLayer implements Loader
 		return value > max ? max : value < min ? min : value;
 	}
 
-	private static double[] parseDoubles(String string)
-	{
-		String[] split = string.trim().split(WHITESPACE_COMMA_REGEX);
-		double[] array = new double[split.length];
-		try
-		{
-			for (int i = 0; i < array.length; i++)
-			{
-				array[i] = Double.parseDouble(split[i]);
-			}
-		}
-		catch (NumberFormatException e)
-		{
-			e.printStackTrace();
-		}
-		return array;
-	}
-
 	protected void fireLoadingStateChanged()
 	{
 		for (int i = loadingListeners.size() - 1; i >= 0; i--)
@@ -158,6 +158,14 @@ public class BasicTiledCurtainLayer extends TiledCurtainLayer
 		if (path != null)
 			this.setPath(path);
 
+		b = (Boolean) params.getValue(AVKeyMore.PREFETCH);
+		if (b != null)
+			this.setPrefetch(b);
+
+		i = (Integer) params.getValue(AVKeyMore.MAX_REQUESTS_IN_FLIGHT);
+		if (i != null)
+			this.getRequestScheduler().setMaxRequestsInFlight(i);
+
 
 		this.setValue(AVKey.CONSTRUCTION_PARAMETERS, params.copy());
 
@@ -262,7 +270,8 @@ public class BasicTiledCurtainLayer extends TiledCurtainLayer
 	{
 		TextureData textureData;
 
-		synchronized (this.fileLock)
+		//only synchronize with writes of this tile's file, so different tiles can be read concurrently
+		synchronized (FileLockSharer.getFileLock(textureURL))
 		{
 			textureData = readTexture(textureURL, this.getTextureFormat(), this.isUseMipMaps());
 		}
@@ -467,7 +476,9 @@ public class BasicTiledCurtainLayer extends TiledCurtainLayer
 
 		if (postProcessor == null)
 			postProcessor = new DownloadPostProcessor(tile, this);
-		retriever = URLRetriever.createRetriever(url, postProcessor);
+		RequestReleasingPostProcessor releasingPostProcessor =
+				new RequestReleasingPostProcessor(postProcessor, this.requestScheduler);
+		retriever = URLRetriever.createRetriever(url, releasingPostProcessor);
 
 		if (retriever == null)
 		{
@@ -486,7 +497,7 @@ public class BasicTiledCurtainLayer extends TiledCurtainLayer
 		if (srl != null && srl > 0)
 			retriever.setStaleRequestLimit(srl);
 
-		WorldWind.getRetrievalService().runRetriever(retriever, tile.getPriority());
+		this.runRetriever(retriever, releasingPostProcessor, tile.getPriority());
 	}
 
 	protected static class DownloadPostProcessor extends AbstractRetrievalPostProcessor
@@ -524,7 +535,8 @@ public class BasicTiledCurtainLayer extends TiledCurtainLayer
 		@Override
 		protected Object getFileLock()
 		{
-			return this.layer.fileLock;
+			File outputFile = getOutputFile();
+			return outputFile != null ? FileLockSharer.getFileLock(outputFile) : this.layer.fileLock;
 		}
 
 		@Override
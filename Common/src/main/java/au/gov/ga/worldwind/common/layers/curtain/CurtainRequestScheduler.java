@@ -0,0 +1,408 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.common.layers.curtain;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Schedules texture requests for a {@link TiledCurtainLayer}.
+ * <p/>
+ * The scheduler performs three functions:
+ * <ul>
+ * <li>Limits the number of requests each layer has in flight (submitted to
+ * the task service but not yet completed), so that a single curtain can't
+ * fill the task service. A request that starts an asynchronous download can
+ * hold its slot until the download completes (see
+ * {@link #deferRelease()}).</li>
+ * <li>Cancels stale requests: requests are re-issued by the layer every frame
+ * while a tile is still required, so a request that hasn't been issued in the
+ * current or previous frame by the time it is run is skipped.</li>
+ * <li>Tracks the movement of the view along the curtain's {@link Path}, so
+ * that the layer can prefetch the segments the view is moving towards.</li>
+ * </ul>
+ * Requests are identified by the equality of the request tasks, which the
+ * request tasks in this library base on their tile.
+ *
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class CurtainRequestScheduler
+{
+	public final static int DEFAULT_MAX_REQUESTS_IN_FLIGHT = 16;
+	public final static long DEFAULT_LOOKAHEAD_TIME = 2000; // milliseconds
+	public final static long DEFAULT_IN_FLIGHT_TIMEOUT = 60000; // milliseconds
+
+	/**
+	 * Weight of the latest velocity measurement in the smoothed velocity.
+	 */
+	protected final static double VELOCITY_SMOOTHING = 0.3;
+	/**
+	 * Movements slower than this (in percent of the path per millisecond, ie
+	 * the whole path in 100 seconds) are not considered as moving.
+	 */
+	protected final static double MIN_VELOCITY = 1e-5;
+
+	private int maxRequestsInFlight = DEFAULT_MAX_REQUESTS_IN_FLIGHT;
+	private long lookaheadTime = DEFAULT_LOOKAHEAD_TIME;
+	private long inFlightTimeout = DEFAULT_IN_FLIGHT_TIMEOUT;
+
+	private final Map<Runnable, Long> inFlight = new ConcurrentHashMap<Runnable, Long>();
+	private final Set<Runnable> deferred = newSet();
+	private final ThreadLocal<Runnable> running = new ThreadLocal<Runnable>();
+	private volatile Set<Runnable> currentFrame = newSet();
+	private volatile Set<Runnable> previousFrame = newSet();
+
+	private double viewPercent = Double.NaN;
+	private long viewTime;
+	private double velocity = 0;
+
+	private final AtomicInteger scheduledCount = new AtomicInteger();
+	private final AtomicInteger completedCount = new AtomicInteger();
+	private final AtomicInteger cancelledCount = new AtomicInteger();
+
+	/**
+	 * @return Maximum number of requests submitted by this scheduler that can
+	 *         be in flight at once
+	 */
+	public int getMaxRequestsInFlight()
+	{
+		return maxRequestsInFlight;
+	}
+
+	public void setMaxRequestsInFlight(int maxRequestsInFlight)
+	{
+		this.maxRequestsInFlight = Math.max(1, maxRequestsInFlight);
+	}
+
+	/**
+	 * @return How far ahead (in milliseconds) the view's movement along the
+	 *         path is predicted for prefetching
+	 */
+	public long getLookaheadTime()
+	{
+		return lookaheadTime;
+	}
+
+	public void setLookaheadTime(long lookaheadTime)
+	{
+		this.lookaheadTime = Math.max(0, lookaheadTime);
+	}
+
+	/**
+	 * @return Time after which an in-flight request that hasn't completed is
+	 *         forgotten (for example, if the task service discarded it)
+	 */
+	public long getInFlightTimeout()
+	{
+		return inFlightTimeout;
+	}
+
+	public void setInFlightTimeout(long inFlightTimeout)
+	{
+		this.inFlightTimeout = inFlightTimeout;
+	}
+
+	/**
+	 * Mark the start of a new frame. Requests that aren't issued in this frame
+	 * or the previous frame are cancelled.
+	 */
+	public void beginFrame()
+	{
+		previousFrame = currentFrame;
+		currentFrame = newSet();
+	}
+
+	/**
+	 * Record that the given request is still required in this frame, and
+	 * prepare it for submission to the task service.
+	 *
+	 * @param task
+	 *            Request task
+	 * @return A task to submit to the task service, or null if the request
+	 *         is already in flight, or if the in-flight limit has been reached
+	 */
+	public Runnable schedule(Runnable task)
+	{
+		return schedule(task, System.currentTimeMillis());
+	}
+
+	protected Runnable schedule(Runnable task, long time)
+	{
+		markRequired(task);
+
+		if (inFlight.containsKey(task))
+		{
+			return null;
+		}
+		if (inFlight.size() >= maxRequestsInFlight)
+		{
+			removeTimedOut(time);
+			if (inFlight.size() >= maxRequestsInFlight)
+			{
+				return null;
+			}
+		}
+
+		inFlight.put(task, time);
+		scheduledCount.incrementAndGet();
+		return new ScheduledTask(task);
+	}
+
+	/**
+	 * Record that the given request is still required in this frame, without
+	 * submitting it. Used for requests that can't be submitted this frame
+	 * (for example because the task service is full), so that they aren't
+	 * cancelled as stale if they are already queued.
+	 *
+	 * @param task
+	 *            Request task
+	 */
+	public void markRequired(Runnable task)
+	{
+		currentFrame.add(task);
+	}
+
+	/**
+	 * Keep the in-flight slot of the request being run on the current thread
+	 * after its task returns, because the task has started an asynchronous
+	 * download. The slot is freed by {@link #release(Runnable)} when the
+	 * download completes, or after the in-flight timeout.
+	 *
+	 * @return The request task to pass to {@link #release(Runnable)}, or null
+	 *         if the current thread isn't running a request submitted by this
+	 *         scheduler
+	 */
+	public Runnable deferRelease()
+	{
+		Runnable task = running.get();
+		if (task != null)
+		{
+			deferred.add(task);
+		}
+		return task;
+	}
+
+	/**
+	 * Free the in-flight slot of the given request.
+	 *
+	 * @param task
+	 *            Request task returned by {@link #deferRelease()} (ignored if
+	 *            null)
+	 */
+	public void release(Runnable task)
+	{
+		if (task != null)
+		{
+			deferred.remove(task);
+			inFlight.remove(task);
+		}
+	}
+
+	private void removeTimedOut(long time)
+	{
+		for (Map.Entry<Runnable, Long> entry : inFlight.entrySet())
+		{
+			if (entry.getValue() < time - inFlightTimeout)
+			{
+				inFlight.remove(entry.getKey());
+			}
+		}
+	}
+
+	/**
+	 * @return Number of requests currently in flight
+	 */
+	public int getRequestsInFlight()
+	{
+		return inFlight.size();
+	}
+
+	/**
+	 * @return Total number of requests submitted by this scheduler
+	 */
+	public int getScheduledCount()
+	{
+		return scheduledCount.get();
+	}
+
+	/**
+	 * @return Total number of submitted requests that have been run
+	 */
+	public int getCompletedCount()
+	{
+		return completedCount.get();
+	}
+
+	/**
+	 * @return Total number of submitted requests that were skipped because
+	 *         they were stale when run
+	 */
+	public int getCancelledCount()
+	{
+		return cancelledCount.get();
+	}
+
+	/**
+	 * Update the position of the view along the path, used to predict the
+	 * view's movement.
+	 *
+	 * @param percent
+	 *            Percentage along the path closest to the view (e.g. 50% ==
+	 *            0.5)
+	 * @param time
+	 *            Current time in milliseconds
+	 */
+	public void updateViewPercent(double percent, long time)
+	{
+		if (Double.isNaN(viewPercent))
+		{
+			velocity = 0;
+		}
+		else if (time > viewTime)
+		{
+			double measured = (percent - viewPercent) / (time - viewTime);
+			velocity = velocity + VELOCITY_SMOOTHING * (measured - velocity);
+		}
+		viewPercent = percent;
+		viewTime = time;
+	}
+
+	/**
+	 * @return Estimated velocity of the view along the path, in percent per
+	 *         millisecond
+	 */
+	public double getVelocity()
+	{
+		return velocity;
+	}
+
+	/**
+	 * @return The range of the path (as a {from, to} percentage pair) that the
+	 *         view is predicted to move over in the lookahead time, or null if
+	 *         the view isn't moving along the path
+	 */
+	public double[] getPrefetchRange()
+	{
+		if (Double.isNaN(viewPercent) || Math.abs(velocity) < MIN_VELOCITY)
+		{
+			return null;
+		}
+
+		double predicted = Math.max(0, Math.min(1, viewPercent + velocity * lookaheadTime));
+		double from = Math.min(viewPercent, predicted);
+		double to = Math.max(viewPercent, predicted);
+		return from < to ? new double[] { from, to } : null;
+	}
+
+	/**
+	 * Forget all view movement and in-flight requests.
+	 */
+	public void reset()
+	{
+		inFlight.clear();
+		deferred.clear();
+		currentFrame = newSet();
+		previousFrame = newSet();
+		viewPercent = Double.NaN;
+		velocity = 0;
+	}
+
+	protected boolean isStale(Runnable task)
+	{
+		return !currentFrame.contains(task) && !previousFrame.contains(task);
+	}
+
+	private static Set<Runnable> newSet()
+	{
+		return Collections.newSetFromMap(new ConcurrentHashMap<Runnable, Boolean>());
+	}
+
+	/**
+	 * Wraps a request task, skipping it if stale and releasing its in-flight
+	 * slot when complete (unless the task deferred the release). Equality
+	 * and ordering are those of the wrapped task, so the task service still
+	 * recognises duplicate requests.
+	 */
+	protected class ScheduledTask implements Runnable, Comparable<ScheduledTask>
+	{
+		private final Runnable task;
+
+		public ScheduledTask(Runnable task)
+		{
+			this.task = task;
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				if (isStale(task))
+				{
+					cancelledCount.incrementAndGet();
+					return;
+				}
+				running.set(task);
+				task.run();
+				completedCount.incrementAndGet();
+			}
+			finally
+			{
+				running.remove();
+				if (!deferred.remove(task))
+				{
+					inFlight.remove(task);
+				}
+			}
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		@Override
+		public int compareTo(ScheduledTask that)
+		{
+			if (task instanceof Comparable && that.task.getClass() == task.getClass())
+			{
+				return ((Comparable) task).compareTo(that.task);
+			}
+			return 0;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (this == o)
+				return true;
+			if (o == null || getClass() != o.getClass())
+				return false;
+			return task.equals(((ScheduledTask) o).task);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return task.hashCode();
+		}
+
+		@Override
+		public String toString()
+		{
+			return task.toString();
+		}
+	}
+}
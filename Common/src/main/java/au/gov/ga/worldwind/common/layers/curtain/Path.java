@@ -15,7 +15,6 @@
  ******************************************************************************/
 package au.gov.ga.worldwind.common.layers.curtain;
 
-import static au.gov.ga.worldwind.common.util.Util.isEmpty;
 import gov.nasa.worldwind.Configuration;
 import gov.nasa.worldwind.WorldWind;
 import gov.nasa.worldwind.avlist.AVKey;
@@ -34,9 +33,6 @@ import gov.nasa.worldwind.util.TileKey;
 import java.nio.FloatBuffer;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.NavigableMap;
-import java.util.TreeMap;
 
 import au.gov.ga.worldwind.common.util.exaggeration.VerticalExaggerationAccessor;
 
@@ -45,19 +41,35 @@ import com.sun.opengl.util.BufferUtil;
 /**
  * Defines a path consisting of lat/lon coordinates. Contains functionality for
  * generating vertex geometry for segments within the path.
+ * <p/>
+ * Paths are immutable: the locations are stored in an array, along with an
+ * array of each location's percentage distance along the path, which is
+ * binary searched when locating a position on the path. Geometry for
+ * different segments can therefore be generated concurrently.
  * 
  * @author Michael de Hoog (michael.dehoog@ga.gov.au)
  */
 public class Path
 {
-	protected final NavigableMap<Double, LatLon> positions = new TreeMap<Double, LatLon>();
-	protected Angle length;
+	/**
+	 * Percentage distance along the path of each location, in ascending order
+	 * (no duplicates).
+	 */
+	protected final double[] percents;
+	/**
+	 * Locations of the path vertices; the location at index i is
+	 * percents[i]% of the way along the path.
+	 */
+	protected final LatLon[] locations;
+	protected final Angle length;
+	protected final Sector boundingSector;
 
 	protected static final String CACHE_NAME = "CurtainPath";
 	protected static final String CACHE_ID = Path.class.getName();
 
-	protected long updateFrequency = 2000; // milliseconds
-	protected long exaggerationChangeTime = -1;
+	protected volatile long updateFrequency = 2000; // milliseconds
+	protected volatile long exaggerationChangeTime = -1;
+	private final Object exaggerationLock = new Object();
 
 	public Path(List<LatLon> positions)
 	{
@@ -69,15 +81,6 @@ public class Path
 			WorldWind.getMemoryCacheSet().addCache(CACHE_ID, cache);
 		}
 
-		setPositions(positions);
-	}
-
-	/*
-	 * Private; should only be called by constructor, as vertices are cached.
-	 */
-	private synchronized void setPositions(List<LatLon> positions)
-	{
-		this.positions.clear();
 		double[] distances = new double[positions.size()]; //last array value is unused, but required for simple second loop
 
 		//calculate total distance
@@ -90,19 +93,31 @@ public class Path
 		}
 		this.length = Angle.fromRadians(total);
 
-		//calculate percent positions
+		//calculate percent positions; consecutive positions at the same percentage are replaced by the later one
+		double[] percents = new double[positions.size()];
+		LatLon[] locations = new LatLon[positions.size()];
+		int count = 0;
 		double sum = 0d;
 		for (int i = 0; i < positions.size(); i++)
 		{
-			this.positions.put(sum / total, positions.get(i));
+			double percent = sum / total;
+			if (count == 0 || percent != percents[count - 1])
+			{
+				count++;
+			}
+			percents[count - 1] = percent;
+			locations[count - 1] = positions.get(i);
 			sum += distances[i];
 		}
+		this.percents = Arrays.copyOf(percents, count);
+		this.locations = Arrays.copyOf(locations, count);
+		this.boundingSector = computeBoundingSector(this.locations);
 	}
 
 	/**
 	 * @return The length of the path, expressed as an angle.
 	 */
-	public synchronized Angle getLength()
+	public Angle getLength()
 	{
 		return length;
 	}
@@ -132,29 +147,72 @@ public class Path
 	 * @return The {@link LatLon} location that lies <code>percent</code>% of
 	 *         the way along the path
 	 */
-	public synchronized LatLon getPercentLatLon(double percent)
+	public LatLon getPercentLatLon(double percent)
 	{
 		if (percent <= 0)
 		{
-			return positions.firstEntry().getValue();
+			return locations[0];
 		}
 		if (percent >= 1)
 		{
-			return positions.lastEntry().getValue();
+			return locations[locations.length - 1];
 		}
-		if (positions.containsKey(percent))
+
+		int index = Arrays.binarySearch(percents, percent);
+		if (index >= 0)
 		{
-			return positions.get(percent);
+			return locations[index];
 		}
 
-		Entry<Double, LatLon> lower = positions.lowerEntry(percent);
-		Entry<Double, LatLon> higher = positions.higherEntry(percent);
-		double p = (percent - lower.getKey()) / (higher.getKey() - lower.getKey());
+		int higher = -index - 1;
+		int lower = higher - 1;
+		double p = (percent - percents[lower]) / (percents[higher] - percents[lower]);
 		//TODO add different interpolation methods
-		return LatLon.interpolateGreatCircle(p, lower.getValue(), higher.getValue());
+		return LatLon.interpolateGreatCircle(p, locations[lower], locations[higher]);
+	}
+
+	/**
+	 * Find the percentage along the path of the point on the path closest to
+	 * the given location. Distances are approximated in an equirectangular
+	 * projection, so this is only accurate for nearby locations.
+	 * 
+	 * @param location
+	 *            Location to find the closest point to
+	 * @return Percentage along the path (e.g. 50% == 0.5)
+	 */
+	public double getClosestPercent(LatLon location)
+	{
+		double lat = location.getLatitude().degrees;
+		double lon = location.getLongitude().degrees;
+		double scale = Math.cos(location.getLatitude().radians);
+
+		double closestPercent = percents[0];
+		double closestDistance = Double.MAX_VALUE;
+		for (int i = 0; i < locations.length - 1; i++)
+		{
+			double y0 = locations[i].getLatitude().degrees - lat;
+			double x0 = (locations[i].getLongitude().degrees - lon) * scale;
+			double dy = locations[i + 1].getLatitude().degrees - lat - y0;
+			double dx = (locations[i + 1].getLongitude().degrees - lon) * scale - x0;
+
+			//parameter of the projection of the location onto the segment, clamped to the segment
+			double lengthSquared = dx * dx + dy * dy;
+			double t = lengthSquared > 0 ? -(x0 * dx + y0 * dy) / lengthSquared : 0;
+			t = Math.max(0, Math.min(1, t));
+
+			double x = x0 + t * dx;
+			double y = y0 + t * dy;
+			double distance = x * x + y * y;
+			if (distance < closestDistance)
+			{
+				closestDistance = distance;
+				closestPercent = percents[i] + t * (percents[i + 1] - percents[i]);
+			}
+		}
+		return closestPercent;
 	}
 
-	public synchronized Vec4 getSegmentCenterPoint(DrawContext dc, Segment segment, double top, double bottom,
+	public Vec4 getSegmentCenterPoint(DrawContext dc, Segment segment, double top, double bottom,
 			boolean followTerrain)
 	{
 		top = VerticalExaggerationAccessor.applyVerticalExaggeration(dc, top);
@@ -173,37 +231,52 @@ public class Path
 		return dc.getGlobe().computePointFromPosition(ll, e);
 	}
 
-	public synchronized SegmentGeometry getGeometry(DrawContext dc, CurtainTile tile, double top, double bottom,
+	public SegmentGeometry getGeometry(DrawContext dc, CurtainTile tile, double top, double bottom,
 			int subsegments, boolean followTerrain)
 	{
-		boolean exaggerationChanged = VerticalExaggerationAccessor.checkAndMarkVerticalExaggeration(this, dc);
-		if (exaggerationChanged)
+		synchronized (exaggerationLock)
 		{
-			exaggerationChangeTime = System.currentTimeMillis();
+			boolean exaggerationChanged = VerticalExaggerationAccessor.checkAndMarkVerticalExaggeration(this, dc);
+			if (exaggerationChanged)
+			{
+				exaggerationChangeTime = System.currentTimeMillis();
+			}
 		}
 
 		MemoryCache cache = WorldWind.getMemoryCache(CACHE_ID);
 		TileKey tileKey = tile.getTileKey();
 		SegmentGeometry geometry = (SegmentGeometry) cache.getObject(tileKey);
-		if (geometry != null && geometry.getTime() >= System.currentTimeMillis() - this.getUpdateFrequency()
-				&& geometry.getTime() >= exaggerationChangeTime)
+		if (geometry != null && isCurrent(geometry))
 		{
 			return geometry;
 		}
 
 		Segment segment = tile.getSegment();
-		NavigableMap<Double, LatLon> betweenMap = segmentMap(segment, subsegments);
-		int numVertices = betweenMap.size() * 2;
-
-		Globe globe = dc.getGlobe();
+		double[] segmentPercents = getSegmentPercents(segment, subsegments);
+		int numVertices = segmentPercents.length * 2;
 
-		FloatBuffer verts, texCoords;
-		if (geometry != null)
+		if (geometry != null && geometry.getVertices().capacity() == numVertices * 3)
 		{
-			verts = geometry.getVertices();
-			texCoords = geometry.getTexCoords();
+			//refill the existing geometry's buffers; lock on the geometry so only one thread updates it at a time
+			synchronized (geometry)
+			{
+				if (!isCurrent(geometry))
+				{
+					FloatBuffer verts = geometry.getVertices();
+					FloatBuffer texCoords = geometry.getTexCoords();
+					verts.clear();
+					texCoords.clear();
+					Vec4 refCenter =
+							fillSegmentBuffers(dc, segment, segmentPercents, top, bottom, followTerrain, verts,
+									texCoords);
+					geometry.update(dc, refCenter);
+				}
+			}
+			return geometry;
 		}
-		else if (dc.getGLRuntimeCapabilities().isUseVertexBufferObject())
+
+		FloatBuffer verts, texCoords;
+		if (dc.getGLRuntimeCapabilities().isUseVertexBufferObject())
 		{
 			verts = FloatBuffer.allocate(numVertices * 3);
 			texCoords = FloatBuffer.allocate(numVertices * 2);
@@ -213,6 +286,30 @@ public class Path
 			verts = BufferUtil.newFloatBuffer(numVertices * 3);
 			texCoords = BufferUtil.newFloatBuffer(numVertices * 2);
 		}
+		Vec4 refCenter = fillSegmentBuffers(dc, segment, segmentPercents, top, bottom, followTerrain, verts, texCoords);
+
+		geometry = new SegmentGeometry(dc, verts, texCoords, refCenter);
+		cache.add(tileKey, geometry, geometry.getSizeInBytes());
+		return geometry;
+	}
+
+	protected boolean isCurrent(SegmentGeometry geometry)
+	{
+		return geometry.getTime() >= System.currentTimeMillis() - this.getUpdateFrequency()
+				&& geometry.getTime() >= exaggerationChangeTime;
+	}
+
+	/**
+	 * Fill the given vertex and texture coordinate buffers with a triangle
+	 * strip for the segment, relative to the segment's center point.
+	 * 
+	 * @return The segment's center point (the reference center of the
+	 *         vertices)
+	 */
+	protected Vec4 fillSegmentBuffers(DrawContext dc, Segment segment, double[] segmentPercents, double top,
+			double bottom, boolean followTerrain, FloatBuffer verts, FloatBuffer texCoords)
+	{
+		Globe globe = dc.getGlobe();
 		Vec4 refCenter = getSegmentCenterPoint(dc, segment, top, bottom, followTerrain);
 
 		//calculate exaggerated segment top/bottom elevations
@@ -229,9 +326,9 @@ public class Path
 		}
 
 		double percentDistance = segment.getHorizontalDelta();
-		for (Entry<Double, LatLon> entry : betweenMap.entrySet())
+		for (double segmentPercent : segmentPercents)
 		{
-			LatLon ll = entry.getValue();
+			LatLon ll = getPercentLatLon(segmentPercent);
 
 			double e = 0;
 			if (followTerrain)
@@ -243,7 +340,7 @@ public class Path
 
 			Vec4 point1 = globe.computePointFromPosition(ll, t + e);
 			Vec4 point2 = globe.computePointFromPosition(ll, b + e);
-			double percent = (entry.getKey() - segment.getStart()) / percentDistance;
+			double percent = (segmentPercent - segment.getStart()) / percentDistance;
 
 			verts.put((float) (point1.x - refCenter.x)).put((float) (point1.y - refCenter.y))
 					.put((float) (point1.z - refCenter.z));
@@ -253,28 +350,18 @@ public class Path
 			texCoords.put((float) percent).put(0f);
 		}
 
-		if (geometry == null)
-		{
-			geometry = new SegmentGeometry(dc, verts, texCoords, refCenter);
-			cache.add(tileKey, geometry, geometry.getSizeInBytes());
-		}
-		else
-		{
-			geometry.update(dc, refCenter);
-		}
-		return geometry;
+		return refCenter;
 	}
 
-	public synchronized Vec4[] getPointsInSegment(DrawContext dc, Segment segment, double top, double bottom,
+	public Vec4[] getPointsInSegment(DrawContext dc, Segment segment, double top, double bottom,
 			int subsegments, boolean followTerrain)
 	{
 		//TODO ?? cache value returned from this method, and if called twice with same input parameters, return cached value ??
-		//TODO create a new function to return some object with a vertex buffer and texture buffer instead of just a Vec4[] array
 
-		NavigableMap<Double, LatLon> betweenMap = segmentMap(segment, subsegments);
+		double[] segmentPercents = getSegmentPercents(segment, subsegments);
 
 		Globe globe = dc.getGlobe();
-		Vec4[] points = new Vec4[betweenMap.size() * 2];
+		Vec4[] points = new Vec4[segmentPercents.length * 2];
 
 		//calculate exaggerated segment top/bottom elevations
 		top = VerticalExaggerationAccessor.applyVerticalExaggeration(dc, top);
@@ -284,9 +371,11 @@ public class Path
 		double b = top - segment.getBottom() * height;
 
 		//add top points, and add bottom points (add them backwards, so it's a loop)
-		int j = 0, k = betweenMap.size() * 2;
-		for (LatLon ll : betweenMap.values())
+		int j = 0, k = segmentPercents.length * 2;
+		for (double segmentPercent : segmentPercents)
 		{
+			LatLon ll = getPercentLatLon(segmentPercent);
+
 			double e = 0;
 			if (followTerrain)
 			{
@@ -303,53 +392,84 @@ public class Path
 		return points;
 	}
 
-	protected NavigableMap<Double, LatLon> segmentMap(Segment segment, int subsegments)
+	/**
+	 * Calculate the percentages along the path of the points in a segment:
+	 * the segment's start and end, all path vertices between them, and the
+	 * points that split the segment into the given number of subsegments.
+	 * 
+	 * @return Sorted percentages, without duplicates
+	 */
+	protected double[] getSegmentPercents(Segment segment, int subsegments)
 	{
-		LatLon start = getPercentLatLon(segment.getStart());
-		LatLon end = getPercentLatLon(segment.getEnd());
-
-		NavigableMap<Double, LatLon> betweenMap = new TreeMap<Double, LatLon>();
-		//get a sublist of all the points between start and end (non-inclusive)
-		betweenMap.putAll(positions.subMap(segment.getStart(), false, segment.getEnd(), false));
-		//add the start and end points
-		betweenMap.put(segment.getStart(), start);
-		betweenMap.put(segment.getEnd(), end);
-
-		//insert any subsegment points
-		for (int i = 0; i < subsegments - 1; i++)
+		double start = segment.getStart();
+		double end = segment.getEnd();
+
+		//find the path vertices between start and end (non-inclusive)
+		int from = Arrays.binarySearch(percents, start);
+		from = from >= 0 ? from + 1 : -from - 1;
+		int to = Arrays.binarySearch(percents, end);
+		to = to >= 0 ? to : -to - 1;
+		int vertices = Math.max(0, to - from);
+		int extra = Math.max(0, subsegments - 1);
+
+		//the vertices and subsegment points are both sorted, so merge them
+		double[] result = new double[vertices + extra + 2];
+		int count = 0;
+		result[count++] = start;
+		int v = from, s = 0;
+		while (v < from + vertices || s < extra)
 		{
-			double subsegment = (i + 1) / (double) subsegments;
-			double percent = segment.getStart() + subsegment * segment.getHorizontalDelta();
-			LatLon pos = getPercentLatLon(percent);
-			betweenMap.put(percent, pos);
+			double next;
+			if (s >= extra || (v < from + vertices && percents[v] <= subsegmentPercent(segment, s, subsegments)))
+			{
+				next = percents[v++];
+			}
+			else
+			{
+				next = subsegmentPercent(segment, s++, subsegments);
+			}
+			if (next > result[count - 1] && next < end)
+			{
+				result[count++] = next;
+			}
 		}
+		if (end > result[count - 1])
+		{
+			result[count++] = end;
+		}
+
+		return count == result.length ? result : Arrays.copyOf(result, count);
+	}
 
-		return betweenMap;
+	private static double subsegmentPercent(Segment segment, int index, int subsegments)
+	{
+		double subsegment = (index + 1) / (double) subsegments;
+		return segment.getStart() + subsegment * segment.getHorizontalDelta();
 	}
 
-	public synchronized Extent getSegmentExtent(DrawContext dc, Segment segment, double top, double bottom,
+	public Extent getSegmentExtent(DrawContext dc, Segment segment, double top, double bottom,
 			int subsegments, boolean followTerrain)
 	{
 		Vec4[] points = getPointsInSegment(dc, segment, top, bottom, subsegments, followTerrain);
 		return Box.computeBoundingBox(Arrays.asList(points));
 	}
 
-	public synchronized Angle getSegmentLength(Segment segment)
+	public Angle getSegmentLength(Segment segment)
 	{
 		return Angle.fromRadians(getSegmentLengthInRadians(segment));
 	}
 
-	public synchronized double getSegmentLengthInRadians(Segment segment)
+	public double getSegmentLengthInRadians(Segment segment)
 	{
 		return segment.getHorizontalDelta() * length.radians;
 	}
 
-	public synchronized Angle getPercentLength(double percent)
+	public Angle getPercentLength(double percent)
 	{
 		return Angle.fromRadians(getPercentLengthInRadians(percent));
 	}
 
-	public synchronized double getPercentLengthInRadians(double percent)
+	public double getPercentLengthInRadians(double percent)
 	{
 		return length.radians * percent;
 	}
@@ -357,9 +477,14 @@ public class Path
 	/**
 	 * @return The sector that bounds the path
 	 */
-	public synchronized Sector getBoundingSector()
+	public Sector getBoundingSector()
+	{
+		return boundingSector;
+	}
+
+	protected static Sector computeBoundingSector(LatLon[] locations)
 	{
-		if (isEmpty(positions))
+		if (locations.length == 0)
 		{
 			return null;
 		}
@@ -369,7 +494,7 @@ public class Path
 		Angle maxLat = Angle.fromDegrees(-360);
 		Angle maxLon = Angle.fromDegrees(-360);
 
-		for (LatLon pathPosition : positions.values())
+		for (LatLon pathPosition : locations)
 		{
 			if (pathPosition.getLatitude().compareTo(minLat) < 0)
 			{
@@ -29,15 +29,21 @@ import gov.nasa.worldwind.layers.AbstractLayer;
 import gov.nasa.worldwind.layers.Layer;
 import gov.nasa.worldwind.render.DrawContext;
 import gov.nasa.worldwind.render.Renderable;
+import gov.nasa.worldwind.retrieve.RetrievalPostProcessor;
+import gov.nasa.worldwind.retrieve.Retriever;
 import gov.nasa.worldwind.util.Logging;
 import gov.nasa.worldwind.util.OGLTextRenderer;
 import gov.nasa.worldwind.util.PerformanceStatistic;
+import gov.nasa.worldwind.util.TileKey;
 import gov.nasa.worldwind.util.WWXML;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.PriorityBlockingQueue;
 
 import javax.media.opengl.GL;
@@ -95,6 +101,14 @@ public abstract class TiledCurtainLayer extends AbstractLayer implements Bounded
 	protected boolean atMaxResolution = false;
 	protected PriorityBlockingQueue<Runnable> requestQ = new PriorityBlockingQueue<Runnable>(200);
 
+	// Request scheduling and prefetching
+	protected final CurtainRequestScheduler requestScheduler = new CurtainRequestScheduler();
+	protected boolean prefetch = true;
+	protected int maxPrefetchTiles = 8;
+	protected final Set<TileKey> prefetchedTiles = new HashSet<TileKey>();
+	protected int prefetchRequestCount = 0;
+	protected int prefetchHitCount = 0;
+
 	abstract protected void requestTexture(DrawContext dc, CurtainTextureTile tile);
 
 	abstract protected void forceTextureLoad(CurtainTextureTile tile);
@@ -293,6 +307,58 @@ public abstract class TiledCurtainLayer extends AbstractLayer implements Bounded
 		return requestQ;
 	}
 
+	/**
+	 * @return The scheduler that limits, cancels and predicts this layer's
+	 *         texture requests
+	 */
+	public CurtainRequestScheduler getRequestScheduler()
+	{
+		return requestScheduler;
+	}
+
+	/**
+	 * @return Are the tiles ahead of the view prefetched, when the view is
+	 *         moving along the curtain's path?
+	 */
+	public boolean isPrefetch()
+	{
+		return prefetch;
+	}
+
+	public void setPrefetch(boolean prefetch)
+	{
+		this.prefetch = prefetch;
+	}
+
+	/**
+	 * @return Maximum number of tiles prefetched per frame
+	 */
+	public int getMaxPrefetchTiles()
+	{
+		return maxPrefetchTiles;
+	}
+
+	public void setMaxPrefetchTiles(int maxPrefetchTiles)
+	{
+		this.maxPrefetchTiles = maxPrefetchTiles;
+	}
+
+	/**
+	 * @return Number of tiles requested by prefetching
+	 */
+	public int getPrefetchRequestCount()
+	{
+		return prefetchRequestCount;
+	}
+
+	/**
+	 * @return Number of prefetched tiles that were later drawn from memory
+	 */
+	public int getPrefetchHitCount()
+	{
+		return prefetchHitCount;
+	}
+
 	@Override
 	public boolean isMultiResolution()
 	{
@@ -537,6 +603,10 @@ public abstract class TiledCurtainLayer extends AbstractLayer implements Bounded
 
 		if (tile.isTextureInMemory(dc.getTextureCache()))
 		{
+			if (!this.prefetchedTiles.isEmpty() && this.prefetchedTiles.remove(tile.getTileKey()))
+			{
+				this.prefetchHitCount++;
+			}
 			this.addTileToCurrent(tile);
 			return;
 		}
@@ -665,7 +735,9 @@ public abstract class TiledCurtainLayer extends AbstractLayer implements Bounded
 
 	protected void draw(DrawContext dc)
 	{
+		this.requestScheduler.beginFrame();
 		this.assembleTiles(dc); // Determine the tiles to draw.
+		this.prefetchTiles(dc);
 
 		if (this.currentTiles.size() >= 1)
 		{
@@ -749,14 +821,113 @@ public abstract class TiledCurtainLayer extends AbstractLayer implements Bounded
 		Runnable task = this.requestQ.poll();
 		while (task != null)
 		{
+			//record the request as required even if it can't be submitted, so that it isn't cancelled if already queued
+			this.requestScheduler.markRequired(task);
 			if (!WorldWind.getTaskService().isFull())
 			{
-				WorldWind.getTaskService().addTask(task);
+				//the scheduler returns null if the request is already in flight, or the in-flight limit is reached
+				Runnable scheduled = this.requestScheduler.schedule(task);
+				if (scheduled != null)
+				{
+					WorldWind.getTaskService().addTask(scheduled);
+				}
 			}
 			task = this.requestQ.poll();
 		}
 	}
 
+	/**
+	 * Queue a texture retriever with the retrieval service. If called from a
+	 * request task submitted by this layer's {@link CurtainRequestScheduler},
+	 * the request keeps its in-flight slot until the retriever's post processor
+	 * has run.
+	 * 
+	 * @param retriever
+	 *            Retriever to run, created with the given post processor
+	 * @param postProcessor
+	 *            Post processor that releases the request's in-flight slot
+	 * @param priority
+	 *            Retrieval priority
+	 */
+	protected void runRetriever(Retriever retriever, RequestReleasingPostProcessor postProcessor, double priority)
+	{
+		postProcessor.hold();
+		if (WorldWind.getRetrievalService().runRetriever(retriever, priority) == null)
+		{
+			//the retriever wasn't queued (eg a duplicate), so its post processor will never run
+			postProcessor.release();
+		}
+	}
+
+	/**
+	 * Request the tiles in the part of the path that the view is predicted to
+	 * move over, at the highest level currently being drawn. The tiles are
+	 * further from the view than the visible tiles, so they have a lower
+	 * request priority.
+	 */
+	protected void prefetchTiles(DrawContext dc)
+	{
+		if (!this.prefetch || this.path == null || this.currentTiles.isEmpty())
+			return;
+
+		Vec4 referencePoint = this.getReferencePoint(dc);
+		if (referencePoint == null)
+			return;
+
+		Position position = dc.getGlobe().computePositionFromPoint(referencePoint);
+		this.requestScheduler.updateViewPercent(this.path.getClosestPercent(position), System.currentTimeMillis());
+		double[] range = this.requestScheduler.getPrefetchRange();
+		if (range == null)
+			return;
+
+		//prefetch at the highest level being drawn, in the rows being drawn at that level
+		CurtainLevel level = null;
+		int minRow = Integer.MAX_VALUE, maxRow = Integer.MIN_VALUE;
+		for (CurtainTextureTile tile : this.currentTiles)
+		{
+			if (level == null || tile.getLevelNumber() > level.getLevelNumber())
+			{
+				level = tile.getLevel();
+				minRow = maxRow = tile.getRow();
+			}
+			else if (tile.getLevelNumber() == level.getLevelNumber())
+			{
+				minRow = Math.min(minRow, tile.getRow());
+				maxRow = Math.max(maxRow, tile.getRow());
+			}
+		}
+
+		double tilesPerPercent = level.getLevelWidth() / (double) level.getTileWidth();
+		int minColumn = Math.max(0, (int) (range[0] * tilesPerPercent));
+		int maxColumn = Math.min(level.getColumnCount() - 1, (int) (range[1] * tilesPerPercent));
+
+		//forget prefetched tiles that were never drawn
+		if (this.prefetchedTiles.size() > 1000)
+			this.prefetchedTiles.clear();
+
+		//start with the columns closest to the view
+		boolean forward = this.requestScheduler.getVelocity() > 0;
+		int count = 0;
+		for (int i = 0; i <= maxColumn - minColumn && count < this.maxPrefetchTiles; i++)
+		{
+			int column = forward ? minColumn + i : maxColumn - i;
+			for (int row = minRow; row <= maxRow && count < this.maxPrefetchTiles; row++)
+			{
+				Segment segment = level.computeSegmentForRowColumn(row, column);
+				CurtainTextureTile tile = this.createCurtainTextureTile(segment, level, row, column);
+				if (tile.isTextureInMemory(dc.getTextureCache()) || this.levels.isResourceAbsent(tile))
+					continue;
+
+				this.requestTexture(dc, tile);
+				if (this.prefetchedTiles.add(tile.getTileKey()))
+				{
+					this.prefetchRequestCount++;
+				}
+				count++;
+			}
+		}
+	}
+
 	@Override
 	public boolean isLayerInView(DrawContext dc)
 	{
@@ -806,6 +977,57 @@ public abstract class TiledCurtainLayer extends AbstractLayer implements Bounded
 		return this.computeReferencePoint(dc);
 	}
 
+	/**
+	 * {@link RetrievalPostProcessor} wrapper that frees the in-flight slot of
+	 * the request that started the retrieval once the wrapped post processor
+	 * has run, whether the retrieval succeeded, failed, or found the resource
+	 * absent.
+	 */
+	protected static class RequestReleasingPostProcessor implements RetrievalPostProcessor
+	{
+		private final RetrievalPostProcessor postProcessor;
+		private final CurtainRequestScheduler scheduler;
+		private volatile Runnable request;
+
+		public RequestReleasingPostProcessor(RetrievalPostProcessor postProcessor, CurtainRequestScheduler scheduler)
+		{
+			this.postProcessor = postProcessor;
+			this.scheduler = scheduler;
+		}
+
+		/**
+		 * Hold the in-flight slot of the request being run on the current
+		 * thread until this post processor has run.
+		 */
+		public void hold()
+		{
+			this.request = this.scheduler.deferRelease();
+		}
+
+		/**
+		 * Free the held in-flight slot, if any.
+		 */
+		public void release()
+		{
+			Runnable request = this.request;
+			this.request = null;
+			this.scheduler.release(request);
+		}
+
+		@Override
+		public ByteBuffer run(Retriever retriever)
+		{
+			try
+			{
+				return this.postProcessor.run(retriever);
+			}
+			finally
+			{
+				release();
+			}
+		}
+	}
+
 	protected static class LevelComparer implements Comparator<CurtainTextureTile>
 	{
 		@Override
@@ -930,6 +1152,9 @@ public abstract class TiledCurtainLayer extends AbstractLayer implements Bounded
 		WWXML.checkAndSetDoubleParam(domElement, params, AVKeyMore.CURTAIN_BOTTOM, "CurtainBottom", xpath);
 		WWXML.checkAndSetBooleanParam(domElement, params, AVKeyMore.FOLLOW_TERRAIN, "FollowTerrain", xpath);
 		WWXML.checkAndSetIntegerParam(domElement, params, AVKeyMore.SUBSEGMENTS, "Subsegments", xpath);
+		WWXML.checkAndSetBooleanParam(domElement, params, AVKeyMore.PREFETCH, "Prefetch", xpath);
+		WWXML.checkAndSetIntegerParam(domElement, params, AVKeyMore.MAX_REQUESTS_IN_FLIGHT, "MaxRequestsInFlight",
+				xpath);
 
 		// Curtain path
 		List<LatLon> positions = new ArrayList<LatLon>();
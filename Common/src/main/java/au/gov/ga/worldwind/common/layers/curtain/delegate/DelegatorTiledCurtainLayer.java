@@ -33,6 +33,7 @@ import gov.nasa.worldwind.util.Logging;
 import gov.nasa.worldwind.util.WWIO;
 
 import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.ByteBuffer;
@@ -198,7 +199,8 @@ public class DelegatorTiledCurtainLayer extends BasicTiledCurtainLayer implement
 
 		TextureData textureData;
 
-		synchronized (fileLock)
+		//only synchronize with writes of this tile's file, so different tiles can be read concurrently
+		synchronized (FileLockSharer.getFileLock(textureURL))
 		{
 			textureData = readTexture(tile, textureURL);
 		}
@@ -307,8 +309,9 @@ public class DelegatorTiledCurtainLayer extends BasicTiledCurtainLayer implement
 	}
 
 	/**
-	 * Extension to superclass' DownloadPostProcessor which returns this class'
-	 * fileLock instead of the superclass'.
+	 * Extension to superclass' DownloadPostProcessor which returns the
+	 * {@link FileLockSharer} lock for the tile's file instead of the
+	 * superclass' fileLock.
 	 * 
 	 * @author Michael de Hoog
 	 */
@@ -325,7 +328,8 @@ public class DelegatorTiledCurtainLayer extends BasicTiledCurtainLayer implement
 		@Override
 		protected Object getFileLock()
 		{
-			return layer.fileLock;
+			File outputFile = getOutputFile();
+			return outputFile != null ? FileLockSharer.getFileLock(outputFile) : layer.fileLock;
 		}
 	}
 
@@ -372,9 +376,13 @@ public class DelegatorTiledCurtainLayer extends BasicTiledCurtainLayer implement
 
 	protected void createAndRunRetriever(CurtainTextureTile tile, RetrievalPostProcessor postProcessor)
 	{
-		Retriever retriever = createRetriever(tile, postProcessor);
+		if (postProcessor == null)
+			postProcessor = new DownloadPostProcessor(tile, this);
+		RequestReleasingPostProcessor releasingPostProcessor =
+				new RequestReleasingPostProcessor(postProcessor, requestScheduler);
+		Retriever retriever = createRetriever(tile, releasingPostProcessor);
 		if (retriever != null)
-			WorldWind.getRetrievalService().runRetriever(retriever, tile.getPriority());
+			runRetriever(retriever, releasingPostProcessor, tile.getPriority());
 	}
 
 	protected Retriever createRetriever(final CurtainTextureTile tile, RetrievalPostProcessor postProcessor)
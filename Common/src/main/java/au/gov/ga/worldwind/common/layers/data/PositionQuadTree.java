@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.common.layers.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import au.gov.ga.worldwind.common.util.Validate;
+
+/**
+ * Simple quadtree of items indexed by latitude/longitude (in degrees). Used by
+ * the data layers to only select the features within the visible region,
+ * instead of rendering every feature every frame.
+ * <p/>
+ * Items are appended to flat arrays as they are added, and the tree is built
+ * in one pass (by partitioning the arrays in place) when it is first queried,
+ * or when {@link #build()} is called. This is much cheaper than inserting
+ * items one at a time, which repeatedly redistributes the items of nodes as
+ * they split. Each node refers to a range of the arrays, and keeps a
+ * representative item (the first item in its range), which is used to cluster
+ * the items in nodes that are smaller than a given size when querying.
+ * <p/>
+ * This class is not threadsafe; it should be completely built (see
+ * {@link #build()}) before being shared between threads.
+ * 
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class PositionQuadTree<T>
+{
+	public final static int DEFAULT_NODE_CAPACITY = 64;
+	public final static int DEFAULT_MAX_DEPTH = 16;
+
+	private final int nodeCapacity;
+	private final int maxDepth;
+
+	private double[] latitudes = new double[16];
+	private double[] longitudes = new double[16];
+	private Object[] items = new Object[16];
+	private int size = 0;
+	private Node root;
+
+	public PositionQuadTree()
+	{
+		this(DEFAULT_NODE_CAPACITY, DEFAULT_MAX_DEPTH);
+	}
+
+	/**
+	 * @param nodeCapacity
+	 *            Number of items a node can contain before it is split
+	 * @param maxDepth
+	 *            Maximum depth of the tree; nodes at this depth are never
+	 *            split
+	 */
+	public PositionQuadTree(int nodeCapacity, int maxDepth)
+	{
+		Validate.isTrue(nodeCapacity > 0, "Node capacity must be greater than 0");
+		Validate.isTrue(maxDepth >= 0, "Max depth cannot be negative");
+		this.nodeCapacity = nodeCapacity;
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * Add an item at the given location. Locations outside the valid
+	 * latitude/longitude range are clamped.
+	 */
+	public void add(double latitude, double longitude, T item)
+	{
+		if (size == items.length)
+		{
+			int capacity = size * 2;
+			latitudes = Arrays.copyOf(latitudes, capacity);
+			longitudes = Arrays.copyOf(longitudes, capacity);
+			items = Arrays.copyOf(items, capacity);
+		}
+		latitudes[size] = Math.max(-90, Math.min(90, latitude));
+		longitudes[size] = Math.max(-180, Math.min(180, longitude));
+		items[size] = item;
+		size++;
+
+		//rebuilt on the next query
+		root = null;
+	}
+
+	/**
+	 * Build the tree from the items added so far. Called automatically by
+	 * {@link #query(double, double, double, double, double, List)} if items
+	 * have been added since the tree was last built; call it explicitly to
+	 * build the tree on the current thread.
+	 */
+	public void build()
+	{
+		if (root == null)
+		{
+			Node node = new Node(-90, -180, 90, 180, 0);
+			node.build(0, size);
+			root = node;
+		}
+	}
+
+	/**
+	 * @return Number of items in this tree
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return All the items in this tree
+	 */
+	public List<T> getAll()
+	{
+		List<T> results = new ArrayList<T>(size);
+		for (int i = 0; i < size; i++)
+		{
+			results.add(item(i));
+		}
+		return results;
+	}
+
+	/**
+	 * Find the items within the given bounds (inclusive).
+	 * 
+	 * @param minLatitude
+	 * @param minLongitude
+	 * @param maxLatitude
+	 * @param maxLongitude
+	 * @param clusterSize
+	 *            If greater than 0, nodes whose latitude and longitude extents
+	 *            are both smaller than this size (in degrees) only contribute
+	 *            their representative item to the results
+	 * @param results
+	 *            List to add the found items to
+	 */
+	public void query(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude,
+			double clusterSize, List<T> results)
+	{
+		build();
+		root.query(minLatitude, minLongitude, maxLatitude, maxLongitude, clusterSize, results);
+	}
+
+	@SuppressWarnings("unchecked")
+	private T item(int index)
+	{
+		return (T) items[index];
+	}
+
+	/**
+	 * Reorder the items in the range [start, end) so that those with a key
+	 * less than the pivot come first.
+	 * 
+	 * @return Index of the first item with a key greater than or equal to the
+	 *         pivot
+	 */
+	private int partition(int start, int end, double[] keys, double pivot)
+	{
+		int i = start, j = end - 1;
+		while (i <= j)
+		{
+			if (keys[i] < pivot)
+			{
+				i++;
+			}
+			else
+			{
+				swap(i, j--);
+			}
+		}
+		return i;
+	}
+
+	private void swap(int i, int j)
+	{
+		double latitude = latitudes[i];
+		latitudes[i] = latitudes[j];
+		latitudes[j] = latitude;
+		double longitude = longitudes[i];
+		longitudes[i] = longitudes[j];
+		longitudes[j] = longitude;
+		Object item = items[i];
+		items[i] = items[j];
+		items[j] = item;
+	}
+
+	private class Node
+	{
+		final double minLatitude;
+		final double minLongitude;
+		final double maxLatitude;
+		final double maxLongitude;
+		final int depth;
+
+		//range of the arrays containing this node's items
+		int start;
+		int end;
+		Node[] children;
+
+		Node(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude, int depth)
+		{
+			this.minLatitude = minLatitude;
+			this.minLongitude = minLongitude;
+			this.maxLatitude = maxLatitude;
+			this.maxLongitude = maxLongitude;
+			this.depth = depth;
+		}
+
+		@SuppressWarnings("unchecked")
+		void build(int start, int end)
+		{
+			this.start = start;
+			this.end = end;
+			if (end - start <= nodeCapacity || depth >= maxDepth)
+			{
+				return;
+			}
+
+			double midLatitude = (minLatitude + maxLatitude) / 2;
+			double midLongitude = (minLongitude + maxLongitude) / 2;
+			int north = partition(start, end, latitudes, midLatitude);
+			int southEast = partition(start, north, longitudes, midLongitude);
+			int northEast = partition(north, end, longitudes, midLongitude);
+
+			children = new PositionQuadTree.Node[4];
+			children[0] = new Node(minLatitude, minLongitude, midLatitude, midLongitude, depth + 1);
+			children[1] = new Node(minLatitude, midLongitude, midLatitude, maxLongitude, depth + 1);
+			children[2] = new Node(midLatitude, minLongitude, maxLatitude, midLongitude, depth + 1);
+			children[3] = new Node(midLatitude, midLongitude, maxLatitude, maxLongitude, depth + 1);
+			children[0].build(start, southEast);
+			children[1].build(southEast, north);
+			children[2].build(north, northEast);
+			children[3].build(northEast, end);
+		}
+
+		void query(double minLat, double minLon, double maxLat, double maxLon, double clusterSize, List<T> results)
+		{
+			if (start == end || minLat > maxLatitude || maxLat < minLatitude || minLon > maxLongitude
+					|| maxLon < minLongitude)
+			{
+				return;
+			}
+
+			if (clusterSize > 0 && maxLatitude - minLatitude <= clusterSize
+					&& maxLongitude - minLongitude <= clusterSize)
+			{
+				results.add(item(start));
+				return;
+			}
+
+			if (children != null)
+			{
+				for (Node child : children)
+				{
+					child.query(minLat, minLon, maxLat, maxLon, clusterSize, results);
+				}
+				return;
+			}
+
+			boolean contained =
+					minLat <= minLatitude && maxLat >= maxLatitude && minLon <= minLongitude
+							&& maxLon >= maxLongitude;
+			for (int i = start; i < end; i++)
+			{
+				if (contained
+						|| (latitudes[i] >= minLat && latitudes[i] <= maxLat && longitudes[i] >= minLon && longitudes[i] <= maxLon))
+				{
+					results.add(item(i));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.common.layers.data;
+
+import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.render.DrawContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selects the items in a {@link PositionQuadTree} that are within the visible
+ * sector of the current frame. The items are clustered (unless disabled), so
+ * that approximately a fixed number of items is selected across the visible
+ * sector, no matter how far the view is zoomed out.
+ * <p/>
+ * The selection is cached, and only recalculated when the visible sector
+ * changes. The same list instance is returned until then, so callers can
+ * cheaply check if the selection has changed.
+ * 
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class ViewDependentSelector<T>
+{
+	/**
+	 * Fraction of the visible sector to add to each side when selecting, so
+	 * that features with a size (such as markers) aren't culled as they enter
+	 * the view
+	 */
+	private final static double SECTOR_PADDING = 0.1;
+
+	/**
+	 * Approximate number of clusters across the visible sector if no cluster
+	 * resolution is provided
+	 */
+	public final static double DEFAULT_CLUSTER_RESOLUTION = 64;
+
+	private final PositionQuadTree<T> tree;
+	private final Double clusterResolution;
+
+	private List<T> all;
+	private Sector lastSector;
+	private List<T> selection;
+
+	/**
+	 * @param tree
+	 *            Tree to select from; should not be modified after creating
+	 *            this selector (it is built by this constructor)
+	 * @param clusterResolution
+	 *            Approximate number of clusters across the visible sector; if
+	 *            null, {@link #DEFAULT_CLUSTER_RESOLUTION} is used, and if 0 or
+	 *            less, items are not clustered
+	 */
+	public ViewDependentSelector(PositionQuadTree<T> tree, Double clusterResolution)
+	{
+		this.tree = tree;
+		if (clusterResolution == null)
+		{
+			clusterResolution = DEFAULT_CLUSTER_RESOLUTION;
+		}
+		this.clusterResolution = clusterResolution > 0 ? clusterResolution : null;
+
+		//build the tree on the calling (loading) thread, rather than in the first select
+		tree.build();
+	}
+
+	/**
+	 * @return The items of the tree that should be rendered in the current
+	 *         frame
+	 */
+	public synchronized List<T> select(DrawContext dc)
+	{
+		Sector visible = dc.getVisibleSector();
+		if (visible == null)
+		{
+			//visible sector is unknown, so select everything
+			if (all == null)
+			{
+				all = tree.getAll();
+			}
+			lastSector = null;
+			selection = all;
+			return selection;
+		}
+
+		if (selection != null && visible.equals(lastSector))
+		{
+			return selection;
+		}
+
+		double deltaLat = visible.getDeltaLatDegrees();
+		double deltaLon = visible.getDeltaLonDegrees();
+		double padLat = deltaLat * SECTOR_PADDING;
+		double padLon = deltaLon * SECTOR_PADDING;
+		double clusterSize = clusterResolution == null ? 0 : Math.max(deltaLat, deltaLon) / clusterResolution;
+
+		List<T> results = new ArrayList<T>();
+		tree.query(visible.getMinLatitude().degrees - padLat, visible.getMinLongitude().degrees - padLon, visible
+				.getMaxLatitude().degrees + padLat, visible.getMaxLongitude().degrees + padLon, clusterSize, results);
+
+		lastSector = visible;
+		selection = results;
+		return selection;
+	}
+}
@@ -143,6 +143,45 @@ public abstract class AbstractDelegateKit<TILE extends IDelegatorTile, BOUNDS, L
 	}
 
 
+	/**
+	 * @return A string describing the delegates that affect the image read for
+	 *         a tile (the reader and transformer delegates, in order), or null
+	 *         if any of the delegates' output can't be cached. Two kits with
+	 *         the same image definition produce the same images.
+	 */
+	public String getImageDefinition()
+	{
+		List<IDelegate> delegates = new ArrayList<IDelegate>();
+		delegates.addAll(readerDelegates);
+		delegates.addAll(transformerDelegates);
+
+		StringBuilder sb = new StringBuilder();
+		for (IDelegate delegate : delegates)
+		{
+			String key = getCacheKey(delegate);
+			if (key == null)
+			{
+				return null;
+			}
+			sb.append(key).append(';');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return The cache key of the given delegate if it implements
+	 *         {@link ICacheKeyDelegate} (which may be null), otherwise its
+	 *         definition string
+	 */
+	protected static String getCacheKey(IDelegate delegate)
+	{
+		if (delegate instanceof ICacheKeyDelegate)
+		{
+			return ((ICacheKeyDelegate) delegate).getCacheKey();
+		}
+		return delegate.toDefinition(null);
+	}
+
 	@Override
 	public Element saveToXML(Element context)
 	{
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.common.layers.delegate;
+
+import org.w3c.dom.Element;
+
+/**
+ * Interface for delegates whose output depends on state that isn't included
+ * in their definition string (see {@link IDelegate#toDefinition(Element)}),
+ * such as parameters stored as separate elements in the layer definition.
+ * Caches of a delegate's output (such as the compressed texture cache) use
+ * the cache key to identify the output instead of the definition string.
+ * 
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public interface ICacheKeyDelegate extends IDelegate
+{
+	/**
+	 * @return A string describing every input that affects this delegate's
+	 *         output, or null if the output can't be cached because it
+	 *         depends on more than the source data (such as neighbouring
+	 *         tiles). Two delegates with equal cache keys must produce the
+	 *         same output from the same source data.
+	 */
+	String getCacheKey();
+}
@@ -0,0 +1,376 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.common.layers.earthquakes;
+
+import gov.nasa.worldwind.geom.Position;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Columnar store of historic earthquake data, used by the
+ * {@link HistoricEarthquakesLayer}.
+ * <p/>
+ * Earthquakes are stored as a column per attribute, rather than an object per
+ * earthquake. Data in the columnar file format can be memory-mapped (or read
+ * into a single buffer) and used directly, with the columns being views on
+ * the underlying buffer. The columnar format (all values big-endian) is:
+ *
+ * <pre>
+ * int magic ('HEQC')
+ * int version (1)
+ * int count
+ * int reserved (0)
+ * double[count] latitudes (in degrees)
+ * double[count] longitudes (in degrees)
+ * double[count] elevations (in metres - negative indicates subsurface)
+ * double[count] magnitudes
+ * long[count] timestamps (in milliseconds since epoc 01 01 1970 00:00:00 UTC)
+ * </pre>
+ *
+ * The legacy record-based format, written by earlier versions of the
+ * {@link HistoricEarthquakesShapefileConverter}, can also be read.
+ *
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class HistoricEarthquakesData
+{
+	public final static int MAGIC = 0x48455143; //'HEQC'
+	public final static int VERSION = 1;
+
+	private final static int HEADER_SIZE = 16;
+
+	private final int count;
+	private final DoubleBuffer latitudes;
+	private final DoubleBuffer longitudes;
+	private final DoubleBuffer elevations;
+	private final DoubleBuffer magnitudes;
+	private final LongBuffer timestamps;
+
+	private HistoricEarthquakesData(int count, DoubleBuffer latitudes, DoubleBuffer longitudes,
+			DoubleBuffer elevations, DoubleBuffer magnitudes, LongBuffer timestamps)
+	{
+		this.count = count;
+		this.latitudes = latitudes;
+		this.longitudes = longitudes;
+		this.elevations = elevations;
+		this.magnitudes = magnitudes;
+		this.timestamps = timestamps;
+	}
+
+	/**
+	 * Create a data store that wraps the given columns. The arrays are not
+	 * copied.
+	 */
+	public static HistoricEarthquakesData fromArrays(int count, double[] latitudes, double[] longitudes,
+			double[] elevations, double[] magnitudes, long[] timestamps)
+	{
+		return new HistoricEarthquakesData(count, DoubleBuffer.wrap(latitudes, 0, count), DoubleBuffer.wrap(
+				longitudes, 0, count), DoubleBuffer.wrap(elevations, 0, count), DoubleBuffer.wrap(magnitudes, 0,
+				count), LongBuffer.wrap(timestamps, 0, count));
+	}
+
+	/**
+	 * @return True if the given buffer (from its current position) starts with
+	 *         the columnar format's magic number
+	 */
+	public static boolean isColumnar(ByteBuffer buffer)
+	{
+		return buffer.remaining() >= 4
+				&& buffer.duplicate().order(ByteOrder.BIG_ENDIAN).getInt(buffer.position()) == MAGIC;
+	}
+
+	/**
+	 * Read earthquake data in the columnar format from the given buffer. The
+	 * returned data is a view on the buffer; no data is copied.
+	 *
+	 * @throws IOException
+	 *             If the buffer doesn't contain data in a supported version of
+	 *             the columnar format
+	 */
+	public static HistoricEarthquakesData read(ByteBuffer buffer) throws IOException
+	{
+		buffer = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+		if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+		{
+			throw new IOException("Not a columnar earthquakes file");
+		}
+		int version = buffer.getInt(4);
+		if (version != VERSION)
+		{
+			throw new IOException("Unsupported earthquakes file version: " + version);
+		}
+		int count = buffer.getInt(8);
+		long columnSize = count * 8L;
+		if (count < 0 || HEADER_SIZE + columnSize * 5 > buffer.remaining())
+		{
+			throw new IOException("Truncated earthquakes file (" + count + " earthquakes, " + buffer.remaining()
+					+ " bytes)");
+		}
+
+		int position = HEADER_SIZE;
+		DoubleBuffer latitudes = column(buffer, position, columnSize).asDoubleBuffer();
+		DoubleBuffer longitudes = column(buffer, position += columnSize, columnSize).asDoubleBuffer();
+		DoubleBuffer elevations = column(buffer, position += columnSize, columnSize).asDoubleBuffer();
+		DoubleBuffer magnitudes = column(buffer, position += columnSize, columnSize).asDoubleBuffer();
+		LongBuffer timestamps = column(buffer, position += columnSize, columnSize).asLongBuffer();
+		return new HistoricEarthquakesData(count, latitudes, longitudes, elevations, magnitudes, timestamps);
+	}
+
+	private static ByteBuffer column(ByteBuffer buffer, int position, long size)
+	{
+		ByteBuffer column = buffer.duplicate();
+		column.position(position);
+		column.limit((int) (position + size));
+		return column.slice().order(ByteOrder.BIG_ENDIAN);
+	}
+
+	/**
+	 * Read earthquake data in the columnar format from the given stream. The
+	 * header is read first, and the rest of the stream is then read directly
+	 * into a new direct buffer of the size given by the header. The stream is
+	 * not closed.
+	 *
+	 * @see #read(ByteBuffer)
+	 */
+	public static HistoricEarthquakesData read(InputStream is) throws IOException
+	{
+		ReadableByteChannel channel = Channels.newChannel(is);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+		readFully(channel, header);
+		if (header.position() < HEADER_SIZE || header.getInt(0) != MAGIC)
+		{
+			throw new IOException("Not a columnar earthquakes file");
+		}
+		int count = header.getInt(8);
+		long size = HEADER_SIZE + count * 8L * 5;
+		if (count < 0 || size > Integer.MAX_VALUE)
+		{
+			throw new IOException("Invalid earthquake count: " + count);
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+		header.flip();
+		buffer.put(header);
+		readFully(channel, buffer);
+		buffer.flip();
+		return read(buffer);
+	}
+
+	private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException
+	{
+		while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+		{
+		}
+	}
+
+	/**
+	 * Memory-map the given file and read the columnar earthquake data from it.
+	 *
+	 * @see #read(ByteBuffer)
+	 */
+	public static HistoricEarthquakesData map(File file) throws IOException
+	{
+		FileInputStream fis = new FileInputStream(file);
+		try
+		{
+			FileChannel channel = fis.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return read(buffer);
+		}
+		finally
+		{
+			//the mapping remains valid after the channel is closed
+			fis.close();
+		}
+	}
+
+	/**
+	 * Read earthquake data in the legacy record-based format (an
+	 * {@link ObjectInputStream} containing latitude, longitude, elevation and
+	 * magnitude doubles followed by a timestamp long, per earthquake).
+	 */
+	public static HistoricEarthquakesData readLegacy(InputStream is) throws IOException
+	{
+		int count = 0;
+		double[] latitudes = new double[1024];
+		double[] longitudes = new double[1024];
+		double[] elevations = new double[1024];
+		double[] magnitudes = new double[1024];
+		long[] timestamps = new long[1024];
+
+		ObjectInputStream ois = new ObjectInputStream(is);
+		try
+		{
+			while (true)
+			{
+				double lat = ois.readDouble();
+				double lon = ois.readDouble();
+				double elevation = ois.readDouble();
+				double magnitude = ois.readDouble();
+				long timeInMillis = ois.readLong();
+
+				if (count == latitudes.length)
+				{
+					int capacity = count * 2;
+					latitudes = Arrays.copyOf(latitudes, capacity);
+					longitudes = Arrays.copyOf(longitudes, capacity);
+					elevations = Arrays.copyOf(elevations, capacity);
+					magnitudes = Arrays.copyOf(magnitudes, capacity);
+					timestamps = Arrays.copyOf(timestamps, capacity);
+				}
+				latitudes[count] = lat;
+				longitudes[count] = lon;
+				elevations[count] = elevation;
+				magnitudes[count] = magnitude;
+				timestamps[count] = timeInMillis;
+				count++;
+			}
+		}
+		catch (EOFException e)
+		{
+			//The legacy format has no record count, so read until there's no data left. When reading from a
+			//ZipInputStream, the ObjectInputStream.available() method always returns 0, so it can't be used.
+		}
+		finally
+		{
+			ois.close();
+		}
+
+		return fromArrays(count, latitudes, longitudes, elevations, magnitudes, timestamps);
+	}
+
+	/**
+	 * Write this data to the given file in the columnar format.
+	 */
+	public void write(File file) throws IOException
+	{
+		OutputStream os = new FileOutputStream(file);
+		try
+		{
+			write(os);
+		}
+		finally
+		{
+			os.close();
+		}
+	}
+
+	/**
+	 * Write this data to the given stream in the columnar format.
+	 */
+	public void write(OutputStream os) throws IOException
+	{
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os, 65536));
+		dos.writeInt(MAGIC);
+		dos.writeInt(VERSION);
+		dos.writeInt(count);
+		dos.writeInt(0);
+		for (DoubleBuffer column : new DoubleBuffer[] { latitudes, longitudes, elevations, magnitudes })
+		{
+			for (int i = 0; i < count; i++)
+			{
+				dos.writeDouble(column.get(i));
+			}
+		}
+		for (int i = 0; i < count; i++)
+		{
+			dos.writeLong(timestamps.get(i));
+		}
+		dos.flush();
+	}
+
+	/**
+	 * @return Number of earthquakes
+	 */
+	public int size()
+	{
+		return count;
+	}
+
+	public double getLatitude(int index)
+	{
+		return latitudes.get(index);
+	}
+
+	public double getLongitude(int index)
+	{
+		return longitudes.get(index);
+	}
+
+	public double getElevation(int index)
+	{
+		return elevations.get(index);
+	}
+
+	public double getMagnitude(int index)
+	{
+		return magnitudes.get(index);
+	}
+
+	public long getTimeInMillis(int index)
+	{
+		return timestamps.get(index);
+	}
+
+	/**
+	 * @return A read-only list view of the earthquake positions. Positions are
+	 *         created when requested, and are not retained.
+	 */
+	public List<Position> getPositions()
+	{
+		return new PositionList();
+	}
+
+	private class PositionList extends AbstractList<Position> implements RandomAccess
+	{
+		@Override
+		public Position get(int index)
+		{
+			if (index < 0 || index >= count)
+			{
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+			}
+			return Position.fromDegrees(latitudes.get(index), longitudes.get(index), elevations.get(index));
+		}
+
+		@Override
+		public int size()
+		{
+			return count;
+		}
+	}
+}
@@ -25,12 +25,13 @@ import gov.nasa.worldwind.util.Logging;
 import gov.nasa.worldwind.util.WWXML;
 
 import java.awt.Color;
-import java.io.EOFException;
+import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.List;
@@ -49,6 +50,7 @@ import au.gov.ga.worldwind.common.render.fastshape.FastShape;
 import au.gov.ga.worldwind.common.util.AVKeyMore;
 import au.gov.ga.worldwind.common.util.HSLColor;
 import au.gov.ga.worldwind.common.util.Loader;
+import au.gov.ga.worldwind.common.util.URLUtil;
 import au.gov.ga.worldwind.common.util.XMLUtil;
 
 /**
@@ -64,8 +66,11 @@ import au.gov.ga.worldwind.common.util.XMLUtil;
  * earthquake data outside the rendering thread to ensure the interface remains
  * responsive.
  * <p/>
- * Each record in the data file should have the following format (without line
- * breaks):
+ * The data file should be in the columnar format described by
+ * {@link HistoricEarthquakesData}, as written by the
+ * {@link HistoricEarthquakesShapefileConverter}. Uncompressed local files in
+ * this format are memory-mapped. Files in the legacy format, where each record
+ * has the following format (without line breaks), are also supported:
  * 
  * <pre>
  * double latitude (in degrees)
@@ -88,6 +93,10 @@ public class HistoricEarthquakesLayer extends AbstractLayer implements Loader
 
 	private final static int MAX_DOWNLOAD_ATTEMPTS = 3;
 
+	//one entry per 0.05 degrees of hue
+	private final static int HUE_TABLE_SIZE = 4801;
+	private final static float[] HUE_TABLE = createHueTable();
+
 	private final URL url;
 	private final String coloring;
 	private Long coloringMinDate;
@@ -198,6 +207,21 @@ public class HistoricEarthquakesLayer extends AbstractLayer implements Loader
 			@Override
 			public void run()
 			{
+				//local uncompressed files in the columnar format can be mapped directly
+				File file = URLUtil.urlToFile(url);
+				if (file != null && file.isFile() && !isZipFile())
+				{
+					try
+					{
+						loadEarthquakes(HistoricEarthquakesData.map(file));
+						return;
+					}
+					catch (IOException e)
+					{
+						//not columnar; fall through and read it with the downloader
+					}
+				}
+
 				RetrievalHandler handler = new RetrievalHandler()
 				{
 					@Override
@@ -221,44 +245,51 @@ public class HistoricEarthquakesLayer extends AbstractLayer implements Loader
 		thread.start();
 	}
 
+	protected boolean isZipFile()
+	{
+		return url.toExternalForm().toLowerCase().endsWith(".zip");
+	}
+
 	protected void loadData(InputStream is)
 	{
 		try
 		{
-			boolean isZipFile = url.toExternalForm().toLowerCase().endsWith(".zip");
-			if (isZipFile)
+			long startTime = System.currentTimeMillis();
+
+			if (isZipFile())
 			{
 				ZipInputStream zis = new ZipInputStream(is);
 				zis.getNextEntry(); //move to first entry
 				is = zis;
 			}
 
-			List<Earthquake> quakes = new ArrayList<Earthquake>();
-			ObjectInputStream ois = new ObjectInputStream(is);
-			try
+			//peek at the start of the stream to determine the format
+			is = new BufferedInputStream(is, 65536);
+			is.mark(4);
+			byte[] magic = new byte[4];
+			int read = 0, length;
+			while (read < magic.length && (length = is.read(magic, read, magic.length - read)) >= 0)
 			{
-				while (is.available() > 0)
-				{
-					double lat = ois.readDouble();
-					double lon = ois.readDouble();
-					double elevation = ois.readDouble();
-					double magnitude = ois.readDouble();
-					long timeInMillis = ois.readLong();
-
-					Position position = Position.fromDegrees(lat, lon, elevation);
-					Earthquake quake = new Earthquake(position, magnitude, timeInMillis);
-					quakes.add(quake);
-				}
+				read += length;
 			}
-			catch (EOFException e)
+			is.reset();
+
+			HistoricEarthquakesData data;
+			if (HistoricEarthquakesData.isColumnar(ByteBuffer.wrap(magic, 0, read)))
+			{
+				data = HistoricEarthquakesData.read(is);
+			}
+			else
 			{
-				//When reading from a ZipInputStream, the ObjectInputStream.available() method always returns 0,
-				//so just read it anyway. This will throw an EOFException at some stage (when there's no data
-				//left), this means we are at the end of the file. Ignore it.
+				data = HistoricEarthquakesData.readLegacy(is);
 			}
-			ois.close();
+			is.close();
 
-			loadEarthquakes(quakes);
+			loadEarthquakes(data);
+
+			Logging.logger().fine(
+					"Loaded " + data.size() + " earthquakes from " + url + " in "
+							+ (System.currentTimeMillis() - startTime) + "ms");
 		}
 		catch (IOException e)
 		{
@@ -278,17 +309,16 @@ public class HistoricEarthquakesLayer extends AbstractLayer implements Loader
 
 	protected void loadEarthquakes(List<Earthquake> earthquakes)
 	{
-		List<Position> positions = new ArrayList<Position>();
-		for (Earthquake earthquake : earthquakes)
-		{
-			positions.add(earthquake.position);
-		}
+		loadEarthquakes(toData(earthquakes));
+	}
 
-		FloatBuffer colorBuffer = FloatBuffer.allocate(positions.size() * 3);
-		generateColorBuffer(colorBuffer, earthquakes);
+	protected void loadEarthquakes(HistoricEarthquakesData data)
+	{
+		float[] colorBuffer = new float[data.size() * 3];
+		generateColorBuffer(FloatBuffer.wrap(colorBuffer), data);
 
-		FastShape shape = new FastShape(positions, GL.GL_POINTS);
-		shape.setColorBuffer(colorBuffer.array());
+		FastShape shape = new FastShape(data.getPositions(), GL.GL_POINTS);
+		shape.setColorBuffer(colorBuffer);
 		shape.setColorBufferElementSize(3);
 
 		synchronized (shapeLock)
@@ -299,101 +329,163 @@ public class HistoricEarthquakesLayer extends AbstractLayer implements Loader
 		firePropertyChange(AVKey.LAYER, null, this);
 	}
 
-	private void generateColorBuffer(FloatBuffer colorBuffer, List<Earthquake> earthquakes)
+	private void generateColorBuffer(FloatBuffer colorBuffer, HistoricEarthquakesData data)
 	{
 		if (DEPTH_COLORING.equalsIgnoreCase(coloring))
 		{
-			generateDepthColoring(colorBuffer, earthquakes);
+			generateDepthColoring(colorBuffer, data);
 		}
 		else if (DATE_COLORING.equalsIgnoreCase(coloring))
 		{
-			generateDateColoring(colorBuffer, earthquakes);
+			generateDateColoring(colorBuffer, data);
 		}
 		else
 		{
-			generateMagnitudeColoring(colorBuffer, earthquakes);
+			generateMagnitudeColoring(colorBuffer, data);
 		}
 	}
 
+	protected void generateMagnitudeColoring(FloatBuffer colorBuffer, List<Earthquake> earthquakes)
+	{
+		generateMagnitudeColoring(colorBuffer, toData(earthquakes));
+	}
+
 	/**
-	 * Populate the color buffer with colours based on earthquake date.
+	 * Populate the color buffer with colours based on earthquake magnitude.
 	 * <p/>
-	 * Blue (shallow) -> Red (deep)
+	 * Blue (small) -> Red (large)
 	 */
-	protected void generateMagnitudeColoring(FloatBuffer colorBuffer, List<Earthquake> earthquakes)
+	protected void generateMagnitudeColoring(FloatBuffer colorBuffer, HistoricEarthquakesData data)
 	{
 		//magnitude coloring
+		int count = data.size();
 		double minMagnitude = Double.MAX_VALUE;
 		double maxMagnitude = -Double.MAX_VALUE;
-		for (Earthquake earthquake : earthquakes)
+		for (int i = 0; i < count; i++)
 		{
-			minMagnitude = Math.min(minMagnitude, earthquake.magnitude);
-			maxMagnitude = Math.max(maxMagnitude, earthquake.magnitude);
+			minMagnitude = Math.min(minMagnitude, data.getMagnitude(i));
+			maxMagnitude = Math.max(maxMagnitude, data.getMagnitude(i));
 		}
-		for (Earthquake earthquake : earthquakes)
+		for (int i = 0; i < count; i++)
 		{
-			double percent = (earthquake.magnitude - minMagnitude) / (maxMagnitude - minMagnitude);
+			double percent = (data.getMagnitude(i) - minMagnitude) / (maxMagnitude - minMagnitude);
 
 			//scale the magnitude (VERY crude equalisation)
 			percent = 1 - Math.pow(percent, 0.2);
 
-			Color color = new HSLColor((float) (240d * percent), 100f, 50f).getRGB();
-			colorBuffer.put(color.getRed() / 255f).put(color.getGreen() / 255f).put(color.getBlue() / 255f);
+			putHueColor(colorBuffer, percent);
 		}
 	}
 
+	protected void generateDateColoring(FloatBuffer colorBuffer, List<Earthquake> earthquakes)
+	{
+		generateDateColoring(colorBuffer, toData(earthquakes));
+	}
+
 	/**
 	 * Populate the color buffer with colours based on earthquake date.
 	 * <p/>
 	 * Blue (old) -> Red (new)
 	 */
-	protected void generateDateColoring(FloatBuffer colorBuffer, List<Earthquake> earthquakes)
+	protected void generateDateColoring(FloatBuffer colorBuffer, HistoricEarthquakesData data)
 	{
+		int count = data.size();
 		long minTime = Long.MAX_VALUE;
 		long maxTime = Long.MIN_VALUE;
 
 		//if either of the custom min/max dates are null, calculate from the data
 		if (coloringMinDate == null || coloringMaxDate == null)
 		{
-			for (Earthquake earthquake : earthquakes)
+			for (int i = 0; i < count; i++)
 			{
-				minTime = Math.min(minTime, earthquake.timeInMillis);
-				maxTime = Math.max(maxTime, earthquake.timeInMillis);
+				minTime = Math.min(minTime, data.getTimeInMillis(i));
+				maxTime = Math.max(maxTime, data.getTimeInMillis(i));
 			}
 		}
 
 		minTime = coloringMinDate != null ? coloringMinDate : minTime;
 		maxTime = coloringMaxDate != null ? coloringMaxDate : maxTime;
 
-		for (Earthquake earthquake : earthquakes)
+		for (int i = 0; i < count; i++)
 		{
-			double percent = (earthquake.timeInMillis - minTime) / (double) (maxTime - minTime);
+			double percent = (data.getTimeInMillis(i) - minTime) / (double) (maxTime - minTime);
 			percent = 1 - Math.max(0, Math.min(1, percent));
-			Color color = new HSLColor((float) (240d * percent), 100f, 50f).getRGB();
-			colorBuffer.put(color.getRed() / 255f).put(color.getGreen() / 255f).put(color.getBlue() / 255f);
+			putHueColor(colorBuffer, percent);
 		}
 	}
 
+	protected void generateDepthColoring(FloatBuffer colorBuffer, List<Earthquake> earthquakes)
+	{
+		generateDepthColoring(colorBuffer, toData(earthquakes));
+	}
+
 	/**
 	 * Populate the color buffer with colours based on earthquake depth.
 	 * <p/>
 	 * Blue (shallow) -> Red (deep)
 	 */
-	protected void generateDepthColoring(FloatBuffer colorBuffer, List<Earthquake> earthquakes)
+	protected void generateDepthColoring(FloatBuffer colorBuffer, HistoricEarthquakesData data)
 	{
+		int count = data.size();
 		double minElevation = Double.MAX_VALUE;
 		double maxElevation = -Double.MAX_VALUE;
-		for (Earthquake earthquake : earthquakes)
+		for (int i = 0; i < count; i++)
+		{
+			minElevation = Math.min(minElevation, data.getElevation(i));
+			maxElevation = Math.max(maxElevation, data.getElevation(i));
+		}
+		for (int i = 0; i < count; i++)
 		{
-			minElevation = Math.min(minElevation, earthquake.position.elevation);
-			maxElevation = Math.max(maxElevation, earthquake.position.elevation);
+			double percent = (data.getElevation(i) - minElevation) / (maxElevation - minElevation);
+			putHueColor(colorBuffer, percent);
 		}
-		for (Earthquake earthquake : earthquakes)
+	}
+
+	/**
+	 * Put the RGB components of the fully saturated color with a hue of
+	 * <code>240 * percent</code> degrees (0 = red, 1 = blue) into the buffer.
+	 * Colors are looked up in a precomputed table rather than calculated for
+	 * each earthquake.
+	 */
+	protected static void putHueColor(FloatBuffer colorBuffer, double percent)
+	{
+		double index = percent * (HUE_TABLE_SIZE - 1) + 0.5;
+		int i = index != index || index <= 0 ? 0 : index >= HUE_TABLE_SIZE - 1 ? HUE_TABLE_SIZE - 1 : (int) index;
+		colorBuffer.put(HUE_TABLE, i * 3, 3);
+	}
+
+	private static float[] createHueTable()
+	{
+		float[] table = new float[HUE_TABLE_SIZE * 3];
+		for (int i = 0; i < HUE_TABLE_SIZE; i++)
+		{
+			float hue = 240f * i / (HUE_TABLE_SIZE - 1);
+			Color color = new HSLColor(hue, 100f, 50f).getRGB();
+			table[i * 3 + 0] = color.getRed() / 255f;
+			table[i * 3 + 1] = color.getGreen() / 255f;
+			table[i * 3 + 2] = color.getBlue() / 255f;
+		}
+		return table;
+	}
+
+	protected static HistoricEarthquakesData toData(List<Earthquake> earthquakes)
+	{
+		int count = earthquakes.size();
+		double[] latitudes = new double[count];
+		double[] longitudes = new double[count];
+		double[] elevations = new double[count];
+		double[] magnitudes = new double[count];
+		long[] timestamps = new long[count];
+		for (int i = 0; i < count; i++)
 		{
-			double percent = (earthquake.position.elevation - minElevation) / (maxElevation - minElevation);
-			Color color = new HSLColor((float) (240d * percent), 100f, 50f).getRGB();
-			colorBuffer.put(color.getRed() / 255f).put(color.getGreen() / 255f).put(color.getBlue() / 255f);
+			Earthquake earthquake = earthquakes.get(i);
+			latitudes[i] = earthquake.position.latitude.degrees;
+			longitudes[i] = earthquake.position.longitude.degrees;
+			elevations[i] = earthquake.position.elevation;
+			magnitudes[i] = earthquake.magnitude;
+			timestamps[i] = earthquake.timeInMillis;
 		}
+		return HistoricEarthquakesData.fromArrays(count, latitudes, longitudes, elevations, magnitudes, timestamps);
 	}
 
 	protected static class Earthquake
@@ -20,16 +20,23 @@ import gov.nasa.worldwind.formats.shapefile.Shapefile;
 import gov.nasa.worldwind.formats.shapefile.ShapefileRecord;
 import gov.nasa.worldwind.geom.LatLon;
 
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Calendar;
 
 /**
  * Helper class used for converting the large historic earthquakes shapefile
- * into a smaller double array, which is used by the
- * {@link HistoricEarthquakesLayer}.
+ * into the smaller columnar format ({@link HistoricEarthquakesData}) used by
+ * the {@link HistoricEarthquakesLayer}.
+ * <p/>
+ * Data files in the legacy record-based format (any input not ending in .shp)
+ * are also converted to the columnar format.
+ * <p/>
+ * Usage: <code>HistoricEarthquakesShapefileConverter [input [output]]</code>
  * 
  * @author Michael de Hoog (michael.dehoog@ga.gov.au)
  */
@@ -37,10 +44,36 @@ public class HistoricEarthquakesShapefileConverter
 {
 	public static void main(String[] args) throws IOException
 	{
-		File file = new File("D:/Earthquakes/quakes.shp");
-		File output = new File("D:/Earthquakes/quakes.dat");
-		ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(output));
+		File file = new File(args.length > 0 ? args[0] : "D:/Earthquakes/quakes.shp");
+		File output = new File(args.length > 1 ? args[1] : "D:/Earthquakes/quakes.dat");
+
+		long startTime = System.currentTimeMillis();
+		HistoricEarthquakesData data;
+		if (file.getName().toLowerCase().endsWith(".shp"))
+		{
+			data = convertShapefile(file);
+		}
+		else
+		{
+			InputStream is = new BufferedInputStream(new FileInputStream(file));
+			data = HistoricEarthquakesData.readLegacy(is);
+		}
+		data.write(output);
+
+		System.out.println("Converted " + data.size() + " earthquakes in "
+				+ (System.currentTimeMillis() - startTime) + "ms");
+	}
+
+	protected static HistoricEarthquakesData convertShapefile(File file)
+	{
 		Shapefile shapefile = new Shapefile(file);
+		int count = 0;
+		int capacity = 1024;
+		double[] latitudes = new double[capacity];
+		double[] longitudes = new double[capacity];
+		double[] elevations = new double[capacity];
+		double[] magnitudes = new double[capacity];
+		long[] timestamps = new long[capacity];
 
 		while (shapefile.hasNext())
 		{
@@ -60,16 +93,28 @@ public class HistoricEarthquakesShapefileConverter
 			double magnitude = getDoubleFromObject(attributes.getValue("MAG"), 0);
 			double elevation = getDoubleFromObject(attributes.getValue("DEPTH"), 0) * -1000;
 
+			if (count == latitudes.length)
+			{
+				capacity = count * 2;
+				latitudes = Arrays.copyOf(latitudes, capacity);
+				longitudes = Arrays.copyOf(longitudes, capacity);
+				elevations = Arrays.copyOf(elevations, capacity);
+				magnitudes = Arrays.copyOf(magnitudes, capacity);
+				timestamps = Arrays.copyOf(timestamps, capacity);
+			}
+
 			//although we don't particularly need double/long accuracy, once the binary file
 			//is zipped there is not much difference in size between the two (around 15%)
-			oos.writeDouble(latlon.getLatitude().degrees);
-			oos.writeDouble(latlon.getLongitude().degrees);
-			oos.writeDouble(elevation);
-			oos.writeDouble(magnitude);
-			oos.writeLong(timeInMillis);
+			latitudes[count] = latlon.getLatitude().degrees;
+			longitudes[count] = latlon.getLongitude().degrees;
+			elevations[count] = elevation;
+			magnitudes[count] = magnitude;
+			timestamps[count] = timeInMillis;
+			count++;
 		}
+		shapefile.close();
 
-		oos.close();
+		return HistoricEarthquakesData.fromArrays(count, latitudes, longitudes, elevations, magnitudes, timestamps);
 	}
 
 	protected static double getDoubleFromObject(Object object, double defalt)
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.common.layers.kml;
+
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.layers.Layer;
+import gov.nasa.worldwind.ogc.kml.KMLAbstractFeature;
+import gov.nasa.worldwind.ogc.kml.KMLConstants;
+import gov.nasa.worldwind.ogc.kml.KMLRoot;
+import gov.nasa.worldwind.ogc.kml.impl.KMLTraversalContext;
+import gov.nasa.worldwind.render.DrawContext;
+import gov.nasa.worldwind.render.PreRenderable;
+import gov.nasa.worldwind.render.Renderable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Renders the placemarks of a {@link KMLRoot} while the root is being parsed,
+ * so that large KML documents become visible before parsing completes.
+ * <p/>
+ * Placemarks reference shared state in the root that the parser modifies
+ * (such as the styles), so they can't be rendered while the parser is running.
+ * Instead, the parsing thread holds a lock, and releases it between batches of
+ * placemarks. The render thread never waits for the lock: it only renders the
+ * placemarks parsed so far if the lock is free. To give the render thread that
+ * chance, the parser pauses at the end of a batch (for at most
+ * {@link #MAX_PUBLISH_WAIT} milliseconds) until a frame has been rendered, but
+ * only while the layer is being drawn. Batches are also ended after
+ * {@link #MAX_BATCH_TIME} milliseconds, so that the parser is usually paused
+ * when the next frame is drawn.
+ * <p/>
+ * Pausing after every batch would leave the parser idle for most of each
+ * frame, so it only pauses after the first {@link #WAITED_BATCHES} batches
+ * (so the first placemarks appear quickly), and after that at most once every
+ * {@link #WAIT_INTERVAL} milliseconds.
+ * <p/>
+ * Once parsing has completed, this renderable should be replaced with a
+ * KMLController for the root.
+ * 
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class IncrementalKMLRenderable implements PreRenderable, Renderable
+{
+	public final static int DEFAULT_BATCH_SIZE = 256;
+	public final static long MAX_BATCH_TIME = 8; //milliseconds
+	public final static long MAX_PUBLISH_WAIT = 50; //milliseconds
+	public final static int WAITED_BATCHES = 4;
+	public final static long WAIT_INTERVAL = 500; //milliseconds
+
+	private final Layer layer;
+	private final int batchSize;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final List<KMLAbstractFeature> features = new ArrayList<KMLAbstractFeature>();
+	private final KMLTraversalContext tc = new KMLTraversalContext();
+	private boolean preRendered = false;
+
+	//accessed by the parsing thread only
+	private int unpublished = 0;
+	private long batchStart;
+	private int lastFrameAttempts = 0;
+	private int waits = 0;
+	private long lastWait;
+
+	//frames in which the render thread tried to draw the features, and succeeded
+	private volatile int frameAttempts = 0;
+	private final Object renderedLock = new Object();
+	private int renderedFrames = 0;
+
+	private final long startTime = System.nanoTime();
+	private volatile long firstFeatureTime = -1;
+	private volatile int featureCount = 0;
+
+	public IncrementalKMLRenderable(Layer layer)
+	{
+		this(layer, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * @param layer
+	 *            Layer that this renderable is added to; a redraw is
+	 *            requested after each batch of placemarks
+	 * @param batchSize
+	 *            Maximum number of placemarks parsed between releases of the
+	 *            lock
+	 */
+	public IncrementalKMLRenderable(Layer layer, int batchSize)
+	{
+		this.layer = layer;
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Parse the given root, publishing its placemarks to this renderable as
+	 * they are parsed.
+	 */
+	public void parse(KMLRoot root) throws XMLStreamException
+	{
+		String[] namespaces =
+				new String[] { root.getNamespaceURI(), KMLConstants.KML_2dot0_NAMESPACE,
+						KMLConstants.KML_2dot1_NAMESPACE, KMLConstants.KML_2dot2_NAMESPACE };
+		for (String namespace : namespaces)
+		{
+			if (namespace != null)
+			{
+				root.getParserContext().registerParser(new QName(namespace, "Placemark"),
+						new PublishingKMLPlacemark(namespace));
+			}
+		}
+
+		lock.lock();
+		try
+		{
+			batchStart = System.nanoTime();
+			root.parse(this);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Called by the parsing thread (with the lock held) after a placemark has
+	 * been parsed.
+	 */
+	protected void featureParsed(KMLAbstractFeature feature)
+	{
+		features.add(feature);
+		featureCount++;
+		if (firstFeatureTime < 0)
+		{
+			firstFeatureTime = System.nanoTime();
+			publish();
+		}
+		else if (++unpublished >= batchSize
+				|| System.nanoTime() - batchStart >= TimeUnit.MILLISECONDS.toNanos(MAX_BATCH_TIME))
+		{
+			publish();
+		}
+	}
+
+	private void publish()
+	{
+		unpublished = 0;
+		int rendered;
+		synchronized (renderedLock)
+		{
+			rendered = renderedFrames;
+		}
+
+		lock.unlock();
+		try
+		{
+			layer.firePropertyChange(AVKey.LAYER, null, layer);
+
+			//if the layer is being drawn, wait for a frame to render the features parsed so far
+			int attempts = frameAttempts;
+			if (attempts != lastFrameAttempts && shouldWait())
+			{
+				lastFrameAttempts = attempts;
+				waits++;
+				lastWait = System.nanoTime();
+				waitForRender(rendered);
+			}
+		}
+		finally
+		{
+			lock.lock();
+			batchStart = System.nanoTime();
+		}
+	}
+
+	private boolean shouldWait()
+	{
+		return waits < WAITED_BATCHES
+				|| System.nanoTime() - lastWait >= TimeUnit.MILLISECONDS.toNanos(WAIT_INTERVAL);
+	}
+
+	private void waitForRender(int rendered)
+	{
+		long deadline = System.currentTimeMillis() + MAX_PUBLISH_WAIT;
+		synchronized (renderedLock)
+		{
+			long remaining;
+			while (renderedFrames == rendered && (remaining = deadline - System.currentTimeMillis()) > 0)
+			{
+				try
+				{
+					renderedLock.wait(remaining);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return Number of placemarks parsed so far
+	 */
+	public int getFeatureCount()
+	{
+		return featureCount;
+	}
+
+	/**
+	 * @return Time (in milliseconds) from the creation of this renderable until
+	 *         the first placemark was parsed, or -1 if no placemark has been
+	 *         parsed
+	 */
+	public long getTimeToFirstFeature()
+	{
+		long time = firstFeatureTime;
+		return time < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(time - startTime);
+	}
+
+	@Override
+	public void preRender(DrawContext dc)
+	{
+		preRendered = false;
+		frameAttempts++;
+		if (!lock.tryLock())
+			return;
+
+		try
+		{
+			tc.initialize();
+			for (KMLAbstractFeature feature : features)
+			{
+				feature.preRender(tc, dc);
+			}
+			preRendered = true;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void render(DrawContext dc)
+	{
+		//don't render features that weren't prerendered this frame
+		if (!preRendered || !lock.tryLock())
+			return;
+
+		try
+		{
+			tc.initialize();
+			for (KMLAbstractFeature feature : features)
+			{
+				feature.render(tc, dc);
+			}
+		}
+		finally
+		{
+			lock.unlock();
+			synchronized (renderedLock)
+			{
+				renderedFrames++;
+				renderedLock.notifyAll();
+			}
+		}
+	}
+}
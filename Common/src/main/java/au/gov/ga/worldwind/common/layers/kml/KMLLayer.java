@@ -57,6 +57,10 @@ import au.gov.ga.worldwind.common.util.XMLUtil;
 /**
  * A {@link Layer} that parses and renders KML content from a provided KML
  * source.
+ * <p/>
+ * Placemarks are rendered as they are parsed (see
+ * {@link IncrementalKMLRenderable}), so large documents become visible before
+ * parsing completes.
  */
 public class KMLLayer extends RenderableLayer implements Loader, Hierarchical
 {
@@ -134,6 +138,7 @@ public class KMLLayer extends RenderableLayer implements Loader, Hierarchical
 					loading = true;
 					notifyLoadingListeners();
 
+					long startTime = System.currentTimeMillis();
 					try
 					{
 						String contentType = WWIO.makeMimeTypeForSuffix(WWIO.getSuffix(url.getPath()));
@@ -171,11 +176,27 @@ public class KMLLayer extends RenderableLayer implements Loader, Hierarchical
 							root = new KMLRoot(doc);
 						}
 
-						root.parse();
-						KMLController controller = new KMLController(root);
-						addRenderable(controller);
+						//show the placemarks as they are parsed, and replace them with the
+						//controller for the whole document once parsing is complete
+						IncrementalKMLRenderable incremental = new IncrementalKMLRenderable(KMLLayer.this);
+						addRenderable(incremental);
+						try
+						{
+							incremental.parse(root);
+							KMLController controller = new KMLController(root);
+							addRenderable(controller);
+						}
+						finally
+						{
+							removeRenderable(incremental);
+						}
 						setName(formName(url, root));
 
+						Logging.logger().fine(
+								"Loaded KML " + url + ": " + incremental.getFeatureCount() + " placemarks, first after "
+										+ incremental.getTimeToFirstFeature() + "ms, total "
+										+ (System.currentTimeMillis() - startTime) + "ms");
+
 						node = new KMLLayerTreeNode(KMLLayer.this, root);
 						notifyHierarchicalListeners(node);
 					}
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.common.layers.kml;
+
+import gov.nasa.worldwind.ogc.kml.KMLAbstractFeature;
+import gov.nasa.worldwind.ogc.kml.KMLPlacemark;
+import gov.nasa.worldwind.util.xml.XMLEventParserContext;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.XMLEvent;
+
+/**
+ * {@link KMLPlacemark} that notifies the {@link IncrementalKMLRenderable}
+ * passed to the parse arguments after it has been parsed, so that placemarks
+ * can be displayed before the whole document is parsed.
+ * 
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class PublishingKMLPlacemark extends KMLPlacemark
+{
+	public PublishingKMLPlacemark(String namespaceURI)
+	{
+		super(namespaceURI);
+	}
+
+	@Override
+	public Object parse(XMLEventParserContext ctx, XMLEvent inputEvent, Object... args) throws XMLStreamException
+	{
+		Object o = super.parse(ctx, inputEvent, args);
+		if (o instanceof KMLAbstractFeature && args != null)
+		{
+			for (Object arg : args)
+			{
+				if (arg instanceof IncrementalKMLRenderable)
+				{
+					((IncrementalKMLRenderable) arg).featureParsed((KMLAbstractFeature) o);
+				}
+			}
+		}
+		return o;
+	}
+}
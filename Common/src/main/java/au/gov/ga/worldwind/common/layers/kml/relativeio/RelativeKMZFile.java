@@ -24,10 +24,20 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
  * The {@link RelativeKMZFile} class is a subclass of {@link KMZFile} that
  * supports better resolving of relative KML references.
+ * <p/>
+ * The archive's entries are indexed by name when the file is opened, and
+ * support files are read directly from the shared {@link ZipFile} (which is
+ * threadsafe), so support file reads don't block each other. Entries whose
+ * paths are requested are extracted to a temporary file once.
  * 
  * @author Michael de Hoog (michael.dehoog@ga.gov.au)
  */
@@ -36,6 +46,8 @@ public class RelativeKMZFile extends KMZFile implements RelativeKMLDoc
 	private final File file;
 	private final String href;
 	private final KMLDoc parent;
+	private final Map<String, ZipEntry> entries = new ConcurrentHashMap<String, ZipEntry>();
+	private final Map<String, File> extracted = new ConcurrentHashMap<String, File>();
 
 	public RelativeKMZFile(File file, String href, KMLDoc parent) throws IOException
 	{
@@ -43,6 +55,16 @@ public class RelativeKMZFile extends KMZFile implements RelativeKMLDoc
 		this.file = file;
 		this.href = href;
 		this.parent = parent;
+
+		Enumeration<? extends ZipEntry> zipEntries = getZipFile().entries();
+		while (zipEntries.hasMoreElements())
+		{
+			ZipEntry entry = zipEntries.nextElement();
+			if (!entry.isDirectory())
+			{
+				entries.put(entry.getName(), entry);
+			}
+		}
 	}
 
 	@Override
@@ -64,7 +86,7 @@ public class RelativeKMZFile extends KMZFile implements RelativeKMLDoc
 	}
 
 	@Override
-	public synchronized InputStream getSupportFileStream(String path) throws IOException
+	public InputStream getSupportFileStream(String path) throws IOException
 	{
 		path = RelativizedPath.normalizePath(path);
 		RelativizedPath relativized = RelativizedPath.relativizePath(path, this);
@@ -74,10 +96,10 @@ public class RelativeKMZFile extends KMZFile implements RelativeKMLDoc
 			return relativized.relativeTo.getSupportFileStream(path);
 		}
 
-		InputStream inputStream = super.getSupportFileStream(path);
-		if (inputStream != null)
+		ZipEntry entry = entries.get(path);
+		if (entry != null)
 		{
-			return inputStream;
+			return getZipFile().getInputStream(entry);
 		}
 
 		File parentFile = file.getParentFile();
@@ -99,7 +121,7 @@ public class RelativeKMZFile extends KMZFile implements RelativeKMLDoc
 	}
 
 	@Override
-	public synchronized String getSupportFilePath(String path) throws IOException
+	public String getSupportFilePath(String path) throws IOException
 	{
 		path = RelativizedPath.normalizePath(path);
 		RelativizedPath relativized = RelativizedPath.relativizePath(path, this);
@@ -109,10 +131,10 @@ public class RelativeKMZFile extends KMZFile implements RelativeKMLDoc
 			return relativized.relativeTo.getSupportFilePath(path);
 		}
 
-		String superPath = super.getSupportFilePath(path);
-		if (superPath != null)
+		File extractedFile = extractEntry(path);
+		if (extractedFile != null)
 		{
-			return superPath;
+			return extractedFile.getPath();
 		}
 
 		File parentFile = file.getParentFile();
@@ -132,4 +154,48 @@ public class RelativeKMZFile extends KMZFile implements RelativeKMLDoc
 
 		return null;
 	}
+
+	/**
+	 * Extract the archive entry with the given name to a temporary file, if
+	 * it hasn't already been extracted.
+	 * 
+	 * @return Extracted file, or null if the archive doesn't contain the entry
+	 */
+	protected File extractEntry(String path) throws IOException
+	{
+		File extractedFile = extracted.get(path);
+		if (extractedFile != null)
+		{
+			return extractedFile;
+		}
+
+		ZipEntry entry = entries.get(path);
+		if (entry == null)
+		{
+			return null;
+		}
+
+		//only block other requests for the same entry
+		synchronized (entry)
+		{
+			extractedFile = extracted.get(path);
+			if (extractedFile == null)
+			{
+				String suffix = WWIO.getSuffix(path);
+				extractedFile = File.createTempFile("kmz", suffix != null ? "." + suffix : null);
+				extractedFile.deleteOnExit();
+				InputStream is = getZipFile().getInputStream(entry);
+				try
+				{
+					WWIO.saveBuffer(WWIO.readStreamToBuffer(is), extractedFile);
+				}
+				finally
+				{
+					is.close();
+				}
+				extracted.put(path, extractedFile);
+			}
+			return extractedFile;
+		}
+	}
 }
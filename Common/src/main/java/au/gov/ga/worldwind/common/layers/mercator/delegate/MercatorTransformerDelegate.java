@@ -16,10 +16,21 @@
 package au.gov.ga.worldwind.common.layers.mercator.delegate;
 
 import gov.nasa.worldwind.avlist.AVList;
+import gov.nasa.worldwind.cache.BasicMemoryCache;
 import gov.nasa.worldwind.geom.Angle;
 import gov.nasa.worldwind.layers.mercator.MercatorSector;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 
 import org.w3c.dom.Element;
 
@@ -30,6 +41,10 @@ import au.gov.ga.worldwind.common.layers.delegate.IImageTransformerDelegate;
 /**
  * {@link IImageTransformerDelegate} that transforms an image in the mercator
  * projection into a geodetic projection.
+ * <p/>
+ * The transformation only moves whole rows of the image, so the source row for
+ * each destination row is calculated once per latitude band and image height,
+ * and cached. Rows are copied directly between the image rasters.
  * 
  * @author Michael de Hoog (michael.dehoog@ga.gov.au)
  */
@@ -37,6 +52,10 @@ public class MercatorTransformerDelegate implements IImageTransformerDelegate
 {
 	private final static String DEFINITION_STRING = "MercatorTransformer";
 
+	private final static long ROW_MAP_CACHE_SIZE = 2000000;
+	private final static BasicMemoryCache rowMapCache = new BasicMemoryCache((long) (0.85 * ROW_MAP_CACHE_SIZE),
+			ROW_MAP_CACHE_SIZE);
+
 	@Override
 	public IDelegate fromDefinition(String definition, Element layerElement, AVList params)
 	{
@@ -56,35 +75,144 @@ public class MercatorTransformerDelegate implements IImageTransformerDelegate
 	@Override
 	public BufferedImage transformImage(BufferedImage image, IDelegatorTile tile)
 	{
-		MercatorSector sector;
 		if (tile instanceof DelegatorMercatorTextureTile)
 		{
-			sector = ((DelegatorMercatorTextureTile) tile).getMercatorSector();
+			return transformImage(image, ((DelegatorMercatorTextureTile) tile).getMercatorSector());
 		}
-		else
+		return image;
+	}
+
+	/**
+	 * Transform an image covering the given mercator sector into the geodetic
+	 * projection.
+	 */
+	protected static BufferedImage transformImage(BufferedImage image, MercatorSector sector)
+	{
+		int[] rowMap = getRowMap(sector, image.getHeight());
+
+		//create an image with the same color model and layout as the source, so rows can be copied directly
+		WritableRaster source = image.getRaster();
+		WritableRaster target = source.createCompatibleWritableRaster();
+		BufferedImage trans = new BufferedImage(image.getColorModel(), target, image.isAlphaPremultiplied(), null);
+
+		if (!copyRowsDirect(source, target, rowMap))
+		{
+			Object row = null;
+			int width = image.getWidth();
+			for (int y = 0; y < rowMap.length; y++)
+			{
+				row = source.getDataElements(0, rowMap[y], width, 1, row);
+				target.setDataElements(0, y, width, 1, row);
+			}
+		}
+		return trans;
+	}
+
+	/**
+	 * Get the source row for each destination row of an image of the given
+	 * height covering the given sector. Row maps are cached, as they are the
+	 * same for every tile in a latitude band of a level.
+	 */
+	protected static int[] getRowMap(MercatorSector sector, int height)
+	{
+		String key = sector.getMinLatPercent() + "," + sector.getMaxLatPercent() + "," + height;
+		int[] rowMap = (int[]) rowMapCache.getObject(key);
+		if (rowMap == null)
 		{
-			return image;
+			rowMap = calculateRowMap(sector, height);
+			rowMapCache.add(key, rowMap, rowMap.length * 4L);
 		}
+		return rowMap;
+	}
 
-		int type = image.getType();
-		if (type == 0)
-			type = BufferedImage.TYPE_INT_RGB;
-		BufferedImage trans = new BufferedImage(image.getWidth(), image.getHeight(), type);
+	protected static int[] calculateRowMap(MercatorSector sector, int height)
+	{
+		int[] rowMap = new int[height];
 		double miny = sector.getMinLatPercent();
 		double maxy = sector.getMaxLatPercent();
-		for (int y = 0; y < image.getHeight(); y++)
+		for (int y = 0; y < height; y++)
 		{
-			double sy = 1.0 - y / (double) (image.getHeight() - 1);
+			double sy = 1.0 - y / (double) (height - 1);
 			Angle lat = Angle.fromRadians(sy * sector.getDeltaLatRadians() + sector.getMinLatitude().radians);
 			double dy = 1.0 - (MercatorSector.gudermannianInverse(lat) - miny) / (maxy - miny);
 			dy = Math.max(0.0, Math.min(1.0, dy));
-			int iy = (int) (dy * (image.getHeight() - 1));
+			rowMap[y] = (int) (dy * (height - 1));
+		}
+		return rowMap;
+	}
+
+	/**
+	 * Copy rows between the backing arrays of two rasters with identical
+	 * layouts. Returns false if the rasters' layout isn't supported, in which
+	 * case nothing is copied.
+	 */
+	protected static boolean copyRowsDirect(Raster source, WritableRaster target, int[] rowMap)
+	{
+		DataBuffer sourceBuffer = source.getDataBuffer();
+		DataBuffer targetBuffer = target.getDataBuffer();
+		if (sourceBuffer.getNumBanks() != 1 || targetBuffer.getNumBanks() != 1
+				|| source.getSampleModelTranslateX() != 0 || source.getSampleModelTranslateY() != 0)
+		{
+			return false;
+		}
 
-			for (int x = 0; x < image.getWidth(); x++)
+		SampleModel sourceModel = source.getSampleModel();
+		SampleModel targetModel = target.getSampleModel();
+		int sourceStride, targetStride, rowLength;
+		if (sourceModel instanceof SinglePixelPackedSampleModel
+				&& targetModel instanceof SinglePixelPackedSampleModel)
+		{
+			sourceStride = ((SinglePixelPackedSampleModel) sourceModel).getScanlineStride();
+			targetStride = ((SinglePixelPackedSampleModel) targetModel).getScanlineStride();
+			rowLength = source.getWidth();
+		}
+		else if (sourceModel instanceof ComponentSampleModel && targetModel instanceof ComponentSampleModel)
+		{
+			sourceStride = ((ComponentSampleModel) sourceModel).getScanlineStride();
+			targetStride = ((ComponentSampleModel) targetModel).getScanlineStride();
+			int pixelStride = ((ComponentSampleModel) sourceModel).getPixelStride();
+			for (int bandOffset : ((ComponentSampleModel) sourceModel).getBandOffsets())
 			{
-				trans.setRGB(x, y, image.getRGB(x, iy));
+				if (bandOffset >= pixelStride)
+				{
+					//bands aren't interleaved within each row
+					return false;
+				}
 			}
+			rowLength = source.getWidth() * pixelStride;
 		}
-		return trans;
+		else
+		{
+			return false;
+		}
+
+		Object sourceArray = getArray(sourceBuffer);
+		Object targetArray = getArray(targetBuffer);
+		if (sourceArray == null || targetArray == null || rowLength > sourceStride || rowLength > targetStride)
+		{
+			return false;
+		}
+
+		int sourceOffset = sourceBuffer.getOffset();
+		int targetOffset = targetBuffer.getOffset();
+		for (int y = 0; y < rowMap.length; y++)
+		{
+			System.arraycopy(sourceArray, sourceOffset + rowMap[y] * sourceStride, targetArray, targetOffset + y
+					* targetStride, rowLength);
+		}
+		return true;
+	}
+
+	private static Object getArray(DataBuffer buffer)
+	{
+		if (buffer instanceof DataBufferInt)
+			return ((DataBufferInt) buffer).getData();
+		if (buffer instanceof DataBufferByte)
+			return ((DataBufferByte) buffer).getData();
+		if (buffer instanceof DataBufferUShort)
+			return ((DataBufferUShort) buffer).getData();
+		if (buffer instanceof DataBufferShort)
+			return ((DataBufferShort) buffer).getData();
+		return null;
 	}
 }
@@ -12,11 +12,12 @@ import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.logging.Level;
 
 import org.gdal.gdal.Band;
 import org.gdal.gdal.Dataset;
+import org.gdal.gdal.gdal;
 import org.gdal.gdalconst.gdalconstConstants;
 import org.gdal.osr.CoordinateTransformation;
 
@@ -33,12 +34,19 @@ import au.gov.ga.worldwind.common.util.Validate;
 /**
  * A {@link ModelProvider} that reads a band from a GDAL-supported raster file
  * and treats band values as depth/elevation.
+ * <p/>
+ * The raster is read in windows of whole rows of GDAL's native blocks, so
+ * the whole raster is never held in memory at once, and is stored in a
+ * compact {@link PositionGrid}.
  * 
  * @author James Navin (james.navin@ga.gov.au)
  */
 public class GDALRasterModelProvider extends AbstractDataProvider<ModelLayer> implements ModelProvider
 {
 	private static final int COLOR_BUFFER_ELEMENT_SIZE = 4;
+	
+	/** Approximate maximum size of the buffer used to read each window of the raster */
+	private static final int MAX_WINDOW_BYTES = 16 * 1024 * 1024;
 
 	private Sector sector = null;
 	private GDALRasterModelParameters modelParameters = null;
@@ -87,51 +95,56 @@ public class GDALRasterModelProvider extends AbstractDataProvider<ModelLayer> im
 			return false;
 		}
 		
-		List<Position> positions = new ArrayList<Position>();
-		float[][] values = new float[gdalDataset.getRasterXSize()][gdalDataset.getRasterYSize()];
+		long startTime = System.currentTimeMillis();
+		
+		PositionGrid grid = new PositionGrid(gdalDataset.getRasterXSize(), gdalDataset.getRasterYSize());
 		float[] minmax = new float[]{Float.MAX_VALUE, -Float.MAX_VALUE};
 		
-		readValuesFromDataset(gdalDataset, positions, values, minmax);
+		readValuesFromDataset(gdalDataset, grid, minmax);
 		
-		BinaryTriangleTree btt = new BinaryTriangleTree(positions, gdalDataset.GetRasterXSize(), gdalDataset.GetRasterYSize());
+		BinaryTriangleTree btt = new BinaryTriangleTree(grid, grid.getWidth(), grid.getHeight());
 		btt.setForceGLTriangles(true);
 		FastShape shape = btt.buildMesh(modelParameters.getMaxVariance());
 		
-		positions = shape.getPositions();
+		List<Position> positions = shape.getPositions();
 		
 		shape.setForceSortedPrimitives(true);
 		shape.setLighted(true);
 		shape.setCalculateNormals(true);
 		shape.setTwoSidedLighting(true);
 		
-		shape.setColorBuffer(createColorBufferForDataset(positions, values, minmax, gdalDataset));
+		shape.setColorBuffer(createColorBufferForDataset(positions, grid, minmax));
 		shape.setColorBufferElementSize(4);
 		
 		layer.addShape(shape);
 		
 		this.sector = shape.getSector();
 		
+		Logging.logger().log(Level.FINE, "Loaded " + grid.getWidth() + "x" + grid.getHeight() + " raster model from " + file
+				+ " in " + (System.currentTimeMillis() - startTime) + "ms");
+		
 		return true;
 	}
 
 	/**
-	 * Reads the values from the provided dataset into:
-	 * <ul>
-	 * 	<li>The provided positions list <code>(lat,lon,elevation)</code>
-	 *  <li>The provided values array <code>values[x,y] = elevation | NaN (nodata)</code>
-	 * </ul>
+	 * Reads the values from the provided dataset into the provided position
+	 * grid, one window at a time. Each window contains whole rows of the
+	 * band's native blocks.
+	 * <p/>
+	 * NODATA cells take the elevation of the previous cell if available; this
+	 * avoids nodata values 'falling' to the centre of the globe.
 	 */
-	private void readValuesFromDataset(Dataset gdalDataset, List<Position> positions, float[][] values, float[] minmax)
+	private void readValuesFromDataset(Dataset gdalDataset, PositionGrid grid, float[] minmax)
 	{
 		Band band = getModelBand(gdalDataset);
 		
 		int columns = band.getXSize();
 		int rows = band.getYSize();
+		int dataType = band.getDataType();
+		int windowRows = getWindowRows(band);
 		
-		ByteBuffer buffer = band.ReadRaster_Direct(0, 0, columns, rows, band.getDataType());
+		ByteBuffer buffer = ByteBuffer.allocateDirect(columns * windowRows * getDataTypeSize(dataType));
 		buffer.order(ByteOrder.nativeOrder()); // @see Band.ReadRaster_Direct
-		buffer.rewind();
-		
 		
 		double elevationOffset = getOffset(band);
 		double elevationScale = getScale(band);
@@ -141,45 +154,86 @@ public class GDALRasterModelProvider extends AbstractDataProvider<ModelLayer> im
 		double[] geoTransform = gdalDataset.GetGeoTransform();
 		CoordinateTransformation coordinateTransformation = getCoordinateTransformation(gdalDataset);
 		
-		int dataType = band.getDataType();
+		double[] datasetValues = new double[columns];
+		double[][] rowCoordinates = new double[columns][3];
 		
-		for (int y = 0; y < rows; y++)
+		for (int windowStart = 0; windowStart < rows; windowStart += windowRows)
 		{
-			for (int x = 0; x < columns; x++)
+			int windowHeight = Math.min(windowRows, rows - windowStart);
+			buffer.clear();
+			int result = band.ReadRaster_Direct(0, windowStart, columns, windowHeight, columns, windowHeight, dataType, buffer);
+			if (result != gdalconstConstants.CE_None)
 			{
-				double datasetValue = getValue(buffer, dataType);
-				double elevation = toElevation(elevationOffset, elevationScale, datasetValue);
+				throw new IllegalStateException("Error reading raster rows " + windowStart + " to " + (windowStart + windowHeight));
+			}
+			buffer.rewind();
+			
+			for (int y = windowStart; y < windowStart + windowHeight; y++)
+			{
+				for (int x = 0; x < columns; x++)
+				{
+					datasetValues[x] = getValue(buffer, dataType);
+					double[] transformedCoords = transformCoordinates(geoTransform, x, y);
+					rowCoordinates[x][0] = transformedCoords[0];
+					rowCoordinates[x][1] = transformedCoords[1];
+					rowCoordinates[x][2] = toElevation(elevationOffset, elevationScale, datasetValues[x]);
+				}
 				
-				double[] transformedCoords = transformCoordinates(geoTransform, x, y);
-				Position projectedCoordinates = projectCoordinates(coordinateTransformation, transformedCoords[0], transformedCoords[1], elevation);
-
-				Position position;
-				if (isNoData(nodata, (float)datasetValue))
+				projectCoordinates(coordinateTransformation, rowCoordinates);
+				
+				for (int x = 0; x < columns; x++)
 				{
-					// 'Smooth' out the mesh by setting nodata elevations to the last 'real' elevation value if available
-					// This avoids nodata values 'falling' to the centre of the globe
-					if (positions.size() > 0)
+					int index = x + y * columns;
+					double latitude = rowCoordinates[x][1];
+					double longitude = rowCoordinates[x][0];
+					double elevation = rowCoordinates[x][2];
+					
+					boolean isNoData = isNoData(nodata, (float)datasetValues[x]);
+					if (isNoData)
 					{
-						position = new PositionWithCoord(projectedCoordinates.latitude, projectedCoordinates.longitude, positions.get(positions.size() - 1).elevation, x, y);
+						if (index > 0)
+						{
+							elevation = grid.getElevation(index - 1);
+						}
 					}
 					else
 					{
-						position = new PositionWithCoord(projectedCoordinates, x, y);
+						minmax[0] = Math.min((float)elevation, minmax[0]);
+						minmax[1] = Math.max((float)elevation, minmax[1]);
 					}
-					values[x][y] = Float.NaN;
-				}
-				else
-				{
-					position = new PositionWithCoord(projectedCoordinates, x, y);
-					minmax[0] = Math.min((float)position.elevation, minmax[0]);
-					minmax[1] = Math.max((float)position.elevation, minmax[1]);
-					values[x][y] = (float)position.elevation;
+					grid.set(index, latitude, longitude, elevation, isNoData);
 				}
-				
-				positions.add(position);
 			}
 		}
 	}
+	
+	/**
+	 * @return The number of rows to read from the band in each window. This is
+	 *         a multiple of the band's native block height where possible, and
+	 *         limited so that the window buffer is no larger than
+	 *         {@value #MAX_WINDOW_BYTES} bytes (unless a single row is larger).
+	 */
+	protected int getWindowRows(Band band)
+	{
+		int[] blockWidth = new int[1];
+		int[] blockHeight = new int[1];
+		band.GetBlockSize(blockWidth, blockHeight);
+		
+		int rowBytes = Math.max(1, band.getXSize() * getDataTypeSize(band.getDataType()));
+		int maxRows = Math.max(1, MAX_WINDOW_BYTES / rowBytes);
+		int blockRows = Math.max(1, blockHeight[0]);
+		
+		int windowRows = maxRows >= blockRows ? (maxRows / blockRows) * blockRows : maxRows;
+		return Math.min(windowRows, Math.max(1, band.getYSize()));
+	}
+	
+	/**
+	 * @return The size in bytes of a value of the given GDAL data type
+	 */
+	private static int getDataTypeSize(int dataType)
+	{
+		return Math.max(1, gdal.GetDataTypeSize(dataType) / 8);
+	}
 
 	/**
 	 * @return A coordinate transform to use for this raster
@@ -232,31 +286,17 @@ public class GDALRasterModelProvider extends AbstractDataProvider<ModelLayer> im
 	}
 	
 	/**
-	 * Project the provided x,y,z coordinates from the source SRS to WGS84
+	 * Project the provided [x,y,z] coordinates from the source SRS to WGS84 [lon,lat,elevation], in place
 	 * 
 	 * @param ct The coordinate transformation to use for transforming the coordinates
-	 * @param x The x coordinate in source SRS
-	 * @param y The y coordinate in source SRS
-	 * @param elevation The elevation in source SRS
-	 *
-	 * @return The coordinates projected in WGS84
+	 * @param coordinates The coordinates in source SRS
 	 */
-	private Position projectCoordinates(CoordinateTransformation ct, double x, double y, double elevation)
+	private void projectCoordinates(CoordinateTransformation ct, double[][] coordinates)
 	{
-		if (ct == null)
+		if (ct != null)
 		{
-			return new Position(Angle.fromDegrees(y),
-							 	Angle.fromDegrees(x),
-							 	elevation);
+			ct.TransformPoints(coordinates);
 		}
-		
-		double transformed[] = new double[3];
-		ct.TransformPoint(transformed, x, y, elevation);
-		
-		Position projectedPosition = new Position(Angle.fromDegrees(transformed[1]),
-						 						  Angle.fromDegrees(transformed[0]),
-						 						  transformed[2]);
-		return projectedPosition;
 	}
 	
 	/**
@@ -373,7 +413,7 @@ public class GDALRasterModelProvider extends AbstractDataProvider<ModelLayer> im
 	 *
 	 * @return An RGBA color buffer that can be used directly by the {@link FastShape} class
 	 */
-	private float[] createColorBufferForDataset(List<Position> positions, float[][] values, float[] minmax, Dataset gdalDataset)
+	private float[] createColorBufferForDataset(List<Position> positions, PositionGrid grid, float[] minmax)
 	{
 		FloatBuffer colorBuffer = FloatBuffer.allocate(positions.size() * COLOR_BUFFER_ELEMENT_SIZE);
 		for (Position position : positions)
@@ -383,9 +423,8 @@ public class GDALRasterModelProvider extends AbstractDataProvider<ModelLayer> im
 			int u = pwv.u;
 			int v = pwv.v;
 			
-			float[] adjacentValues = getAdjacentValues(values, u, v);
 			//check all values around the current position for NODATA; if NODATA, use a transparent color
-			if (isNaN(adjacentValues))
+			if (grid.isNoDataAdjacent(u, v))
 			{
 				for (int i = 0; i < COLOR_BUFFER_ELEMENT_SIZE; i++)
 				{
@@ -397,7 +436,7 @@ public class GDALRasterModelProvider extends AbstractDataProvider<ModelLayer> im
 				Color color;
 				if (modelParameters.getColorMap() != null)
 				{
-					color = modelParameters.getColorMap().calculateColorNotingIsValuesPercentages(values[u][v], minmax[0], minmax[1]);
+					color = modelParameters.getColorMap().calculateColorNotingIsValuesPercentages(grid.getValue(u, v), minmax[0], minmax[1]);
 				}
 				else
 				{
@@ -413,23 +452,6 @@ public class GDALRasterModelProvider extends AbstractDataProvider<ModelLayer> im
 		return colorBuffer.array();
 	}
 
-	private float[] getAdjacentValues(float[][] values, int u, int v)
-	{
-		int un = u > 0 ? u - 1 : u;
-		int up = u < values.length - 1 ? u + 1 : u;
-		int vn = v > 0 ? v - 1 : v;
-		int vp = v < values[0].length - 1 ? v + 1 : v;
-		
-		float[] adjacentValues = new float[] {
-			values[u][v], values[un][v], 
-			values[up][v], values[u][vn], 
-			values[u][vp], values[un][vn], 
-			values[up][vn], values[un][vp], 
-			values[up][vp],
-		};
-		return adjacentValues;
-	}
-
 	private float getModelBandNodata(Dataset gdalDataset)
 	{
 		Double[] nodatas = new Double[1];
@@ -453,21 +475,6 @@ public class GDALRasterModelProvider extends AbstractDataProvider<ModelLayer> im
 		return false;
 	}
 	
-	/**
-	 * @return <code>true</code> if any value in the provided values is NaN
-	 */
-	private boolean isNaN(float... values)
-	{
-		for (float f : values)
-		{
-			if (Float.isNaN(f))
-			{
-				return true;
-			}
-		}
-		return false;
-	}
-	
 	/**
 	 * @return the modelParameters
 	 */
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.common.layers.model.gdal;
+
+import gov.nasa.worldwind.geom.Position;
+
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.RandomAccess;
+
+import au.gov.ga.worldwind.common.layers.model.gdal.GDALRasterModelProvider.PositionWithCoord;
+
+/**
+ * A compact, read-only list of the positions of a raster grid, ordered in the
+ * x-axis, then the y-axis.
+ * <p/>
+ * Positions are stored in primitive arrays, and a {@link PositionWithCoord}
+ * is created for a cell when it is requested. This uses a fraction of the
+ * memory of a list of {@link Position} objects, which matters for large
+ * rasters where most positions are only ever touched while building the mesh.
+ *
+ * @author James Navin (james.navin@ga.gov.au)
+ */
+public class PositionGrid extends AbstractList<Position> implements RandomAccess
+{
+	private final int width;
+	private final int height;
+	private final double[] latitudes;
+	private final double[] longitudes;
+	private final double[] elevations;
+	private final BitSet nodata;
+
+	public PositionGrid(int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+
+		int size = width * height;
+		latitudes = new double[size];
+		longitudes = new double[size];
+		elevations = new double[size];
+		nodata = new BitSet(size);
+	}
+
+	/**
+	 * Set the position of a cell in the grid.
+	 *
+	 * @param index
+	 *            Cell index (<code>x + y * width</code>)
+	 * @param isNoData
+	 *            Whether the cell's raster value is NODATA
+	 */
+	public void set(int index, double latitude, double longitude, double elevation, boolean isNoData)
+	{
+		latitudes[index] = latitude;
+		longitudes[index] = longitude;
+		elevations[index] = elevation;
+		nodata.set(index, isNoData);
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * @return The elevation of the position at the given index
+	 */
+	public double getElevation(int index)
+	{
+		return elevations[index];
+	}
+
+	/**
+	 * @return The raster value at the given cell, or NaN if the cell is NODATA
+	 */
+	public float getValue(int u, int v)
+	{
+		int index = u + v * width;
+		return nodata.get(index) ? Float.NaN : (float) elevations[index];
+	}
+
+	/**
+	 * @return <code>true</code> if the given cell, or any cell adjacent to it,
+	 *         is NODATA
+	 */
+	public boolean isNoDataAdjacent(int u, int v)
+	{
+		int un = u > 0 ? u - 1 : u;
+		int up = u < width - 1 ? u + 1 : u;
+		int vn = v > 0 ? v - 1 : v;
+		int vp = v < height - 1 ? v + 1 : v;
+
+		for (int y = vn; y <= vp; y++)
+		{
+			int rowStart = y * width;
+			int next = nodata.nextSetBit(rowStart + un);
+			if (next >= 0 && next <= rowStart + up)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Position get(int index)
+	{
+		if (index < 0 || index >= latitudes.length)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + latitudes.length);
+		}
+		return PositionWithCoord.fromDegrees(latitudes[index], longitudes[index], elevations[index], index % width,
+				index / width);
+	}
+
+	@Override
+	public int size()
+	{
+		return latitudes.length;
+	}
+}
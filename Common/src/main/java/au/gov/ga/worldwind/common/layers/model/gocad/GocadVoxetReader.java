@@ -30,6 +30,7 @@ import java.util.regex.Matcher;
 import javax.media.opengl.GL;
 
 import au.gov.ga.worldwind.common.render.fastshape.FastShape;
+import au.gov.ga.worldwind.common.util.ColorMapLookupTable;
 import au.gov.ga.worldwind.common.util.HSLColor;
 import au.gov.ga.worldwind.common.util.Validate;
 import au.gov.ga.worldwind.common.util.io.FloatReader;
@@ -384,18 +385,19 @@ public class GocadVoxetReader implements GocadReader<FastShape>
 	private FloatBuffer createColorBuffer(float[] values, float[] minmax)
 	{
 		FloatBuffer colorBuffer = FloatBuffer.allocate(values.length * 4);
+		ColorMapLookupTable lookupTable = null;
+		if (parameters.getColorMap() != null)
+		{
+			lookupTable = parameters.getColorMap().createLookupTable(minmax[0], minmax[1]);
+		}
 		for (float value : values)
 		{
 			//check that this value is valid; only non-NaN floats have points associated
 			if (!Float.isNaN(value))
 			{
-				if (parameters.getColorMap() != null)
+				if (lookupTable != null)
 				{
-					Color color = parameters.getColorMap().calculateColorNotingIsValuesPercentages(value, minmax[0], minmax[1]);
-					colorBuffer.put(color.getRed() / 255f)
-							   .put(color.getGreen() / 255f)
-							   .put(color.getBlue() / 255f)
-							   .put(color.getAlpha() / 255f);
+					lookupTable.putRGBA(value, colorBuffer);
 				}
 				else
 				{
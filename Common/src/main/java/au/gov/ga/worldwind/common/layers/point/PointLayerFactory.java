@@ -95,6 +95,7 @@ public class PointLayerFactory
 				DataLayerFactory.DATE_TIME_PATTERN, xpath);
 		WWXML.checkAndSetStringParam(domElement, params, AVKey.DATA_CACHE_NAME, "DataCacheName", xpath);
 		WWXML.checkAndSetStringParam(domElement, params, AVKeyMore.DATA_TYPE, "PointType", xpath);
+		WWXML.checkAndSetDoubleParam(domElement, params, AVKeyMore.CLUSTER_RESOLUTION, "ClusterResolution", xpath);
 
 		setupPointProvider(domElement, xpath, params);
 
@@ -23,6 +23,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.List;
 
+import au.gov.ga.worldwind.common.layers.data.ViewDependentSelector;
 import au.gov.ga.worldwind.common.layers.styled.Attribute;
 import au.gov.ga.worldwind.common.layers.styled.BasicStyleProvider;
 import au.gov.ga.worldwind.common.layers.styled.Style;
@@ -44,6 +45,7 @@ public class PointLayerHelper
 	protected final URL context;
 	protected final String url;
 	protected final String dataCacheName;
+	protected final Double clusterResolution;
 
 	@SuppressWarnings("unchecked")
 	public PointLayerHelper(AVList params)
@@ -54,6 +56,7 @@ public class PointLayerHelper
 		url = params.getStringValue(AVKey.URL);
 		dataCacheName = params.getStringValue(AVKey.DATA_CACHE_NAME);
 		pointProvider = (PointProvider) params.getValue(AVKeyMore.DATA_LAYER_PROVIDER);
+		clusterResolution = (Double) params.getValue(AVKeyMore.CLUSTER_RESOLUTION);
 
 		styleProvider.setStyles((List<Style>) params.getValue(AVKeyMore.DATA_LAYER_STYLES));
 		styleProvider.setAttributes((List<Attribute>) params.getValue(AVKeyMore.DATA_LAYER_ATTRIBUTES));
@@ -81,6 +84,16 @@ public class PointLayerHelper
 		return dataCacheName;
 	}
 
+	/**
+	 * @return Approximate number of point clusters to display across the
+	 *         visible sector (0 disables clustering), or null to use the
+	 *         {@link ViewDependentSelector#DEFAULT_CLUSTER_RESOLUTION}
+	 */
+	public Double getClusterResolution()
+	{
+		return clusterResolution;
+	}
+
 	public Sector getSector()
 	{
 		return pointProvider.getSector();
@@ -39,6 +39,8 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 
+import au.gov.ga.worldwind.common.layers.data.PositionQuadTree;
+import au.gov.ga.worldwind.common.layers.data.ViewDependentSelector;
 import au.gov.ga.worldwind.common.layers.point.PointLayer;
 import au.gov.ga.worldwind.common.layers.point.PointLayerHelper;
 import au.gov.ga.worldwind.common.layers.styled.StyleAndText;
@@ -47,6 +49,11 @@ import au.gov.ga.worldwind.common.util.DefaultLauncher;
 /**
  * {@link PointLayer} implementation which extends {@link MarkerLayer} and uses
  * Markers to represent points.
+ * <p/>
+ * Points are stored in a {@link PositionQuadTree}, and only the points within
+ * the visible sector are rendered (clustered by a {@link ViewDependentSelector}
+ * when zoomed out). Markers are created by the loading thread as points are
+ * added, so the render thread only has to select them.
  * 
  * @author Michael de Hoog (michael.dehoog@ga.gov.au)
  */
@@ -54,7 +61,9 @@ public class MarkerPointLayer extends MarkerLayer implements PointLayer, SelectL
 {
 	private final PointLayerHelper helper;
 
-	private List<Marker> markers = new ArrayList<Marker>();
+	private final PositionQuadTree<UrlMarker> points = new PositionQuadTree<UrlMarker>();
+	private volatile ViewDependentSelector<UrlMarker> selector;
+	private List<UrlMarker> lastVisible;
 	private UrlMarker pickedMarker;
 	private Material highlightMaterial = new Material(Color.white);
 
@@ -84,11 +93,32 @@ public class MarkerPointLayer extends MarkerLayer implements PointLayer, SelectL
 		if (isEnabled())
 		{
 			helper.requestPoints(this);
+			updateMarkers(dc);
 		}
 		this.tooltipAnnotation.render(dc);
 		super.render(dc);
 	}
 
+	/**
+	 * Update the markers to render to the markers of the points within the
+	 * visible sector.
+	 */
+	protected void updateMarkers(DrawContext dc)
+	{
+		ViewDependentSelector<UrlMarker> selector = this.selector;
+		if (selector == null)
+		{
+			return;
+		}
+
+		List<UrlMarker> visible = selector.select(dc);
+		if (visible != lastVisible)
+		{
+			setMarkers(new ArrayList<Marker>(visible));
+			lastVisible = visible;
+		}
+	}
+
 	@Override
 	public void setup(WorldWindow wwd)
 	{
@@ -103,6 +133,15 @@ public class MarkerPointLayer extends MarkerLayer implements PointLayer, SelectL
 
 	@Override
 	public void addPoint(Position position, AVList attributeValues)
+	{
+		points.add(position.getLatitude().degrees, position.getLongitude().degrees, createMarker(position,
+				attributeValues));
+	}
+
+	/**
+	 * Create a marker for the given point.
+	 */
+	protected UrlMarker createMarker(Position position, AVList attributeValues)
 	{
 		MarkerAttributes attributes = new BasicMarkerAttributes();
 		StyleAndText properties = helper.getStyle(attributeValues);
@@ -111,7 +150,7 @@ public class MarkerPointLayer extends MarkerLayer implements PointLayer, SelectL
 		UrlMarker marker = new UrlMarker(position, attributes);
 		marker.setUrl(properties.link);
 		marker.setTooltipText(properties.text);
-		markers.add(marker);
+		return marker;
 	}
 
 	/**
@@ -162,7 +201,7 @@ public class MarkerPointLayer extends MarkerLayer implements PointLayer, SelectL
 	@Override
 	public void loadComplete()
 	{
-		setMarkers(markers);
+		selector = new ViewDependentSelector<UrlMarker>(points, helper.getClusterResolution());
 	}
 
 	@Override
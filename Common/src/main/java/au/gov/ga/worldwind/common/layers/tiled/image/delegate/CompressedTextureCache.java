@@ -0,0 +1,460 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.common.layers.tiled.image.delegate;
+
+import gov.nasa.worldwind.util.Logging;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+
+import au.gov.ga.worldwind.common.util.DaemonThreadFactory;
+
+/**
+ * On-disk cache of compressed (DDS) textures, used by delegator layers that
+ * compress their textures. Stores the final DDS payload for a tile, after the
+ * tile's image has been read and transformed by the layer's delegates, so
+ * that subsequent loads of the tile are a single sequential read instead of
+ * an image decode, transform and DXT compression.
+ * <p/>
+ * Entries are stored in a directory per texture definition (a string
+ * describing everything that affects the texture, such as the reader and
+ * transformer delegates), and record the last modified time and length of the
+ * source file they were created from. Entries are ignored (and replaced when
+ * the texture is next stored) if the source file has changed, or if their
+ * definition doesn't match.
+ * <p/>
+ * Definition directories are touched whenever a cache is created for them.
+ * The first time a cache is created under a root directory, a background
+ * cleanup deletes the definition directories that haven't been used for
+ * {@link #MAX_UNUSED_AGE}, and then deletes the oldest entries until the
+ * total size is below {@link #MAX_SIZE}.
+ * <p/>
+ * Entries are guarded by their own set of locks rather than the tile file
+ * locks of the {@link FileLockSharer}, as entries are read and written while
+ * the layer holds the tile's file lock, and nesting two of the shared lock
+ * stripes could deadlock.
+ * <p/>
+ * Entry file format (big-endian):
+ *
+ * <pre>
+ * int magic ('GADC')
+ * int version (2)
+ * long source file last modified time
+ * long source file length
+ * int texture definition length
+ * byte[] texture definition (UTF-8)
+ * int DDS length
+ * byte[] DDS data
+ * </pre>
+ *
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class CompressedTextureCache
+{
+	public final static int MAGIC = 0x47414443; //'GADC'
+	public final static int VERSION = 2;
+	public final static String DIRECTORY = "CompressedTextures";
+	public final static long MAX_SIZE = 1L << 30; //bytes
+	public final static long MAX_UNUSED_AGE = 30L * 24 * 60 * 60 * 1000; //milliseconds
+
+	private final static String ENTRY_SUFFIX = ".dds";
+	private final static String TEMP_SUFFIX = ".tmp";
+	private final static long TEMP_MAX_AGE = 60 * 60 * 1000; //milliseconds
+	private final static int ENTRY_LOCK_STRIPES = 64; //must be a power of 2
+
+	private final static Object[] entryLocks = new Object[ENTRY_LOCK_STRIPES];
+	static
+	{
+		for (int i = 0; i < entryLocks.length; i++)
+		{
+			entryLocks[i] = new Object();
+		}
+	}
+
+	private final static Set<File> cleanedRoots = Collections.synchronizedSet(new HashSet<File>());
+	private final static ExecutorService cleanupExecutor = Executors
+			.newSingleThreadExecutor(new DaemonThreadFactory("Compressed texture cache cleanup"));
+
+	private final File directory;
+	private final String definition;
+	private final byte[] definitionBytes;
+
+	/**
+	 * Create a new cache.
+	 *
+	 * @param root
+	 *            Root directory of all compressed texture caches (such as the
+	 *            data file store's write location)
+	 * @param definition
+	 *            Texture definition; a string describing everything that
+	 *            affects the textures stored in this cache
+	 */
+	public CompressedTextureCache(File root, String definition)
+	{
+		this.definition = definition;
+		this.definitionBytes = toUTF8(definition);
+		this.directory =
+				new File(new File(root, DIRECTORY), String.format("%08x", definition.hashCode()) + "_"
+						+ definition.length());
+
+		//mark this definition as in use, so that it isn't cleaned up
+		directory.setLastModified(System.currentTimeMillis());
+		scheduleCleanup(root);
+	}
+
+	/**
+	 * Schedule a background cleanup of the caches under the given root
+	 * directory, if it hasn't already been cleaned up.
+	 */
+	protected static void scheduleCleanup(final File root)
+	{
+		if (cleanedRoots.add(root))
+		{
+			cleanupExecutor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					cleanup(root, MAX_SIZE, MAX_UNUSED_AGE, System.currentTimeMillis());
+				}
+			});
+		}
+	}
+
+	/**
+	 * Clean up the caches under the given root directory. Deletes definition
+	 * directories that haven't been used for <code>maxUnusedAge</code>, and
+	 * abandoned temporary files, and then deletes the oldest entries until the
+	 * total size of the entries is at most <code>maxSize</code>.
+	 * 
+	 * @return Number of bytes deleted
+	 */
+	public static long cleanup(File root, long maxSize, long maxUnusedAge, long now)
+	{
+		File[] definitionDirectories = new File(root, DIRECTORY).listFiles();
+		if (definitionDirectories == null)
+		{
+			return 0;
+		}
+
+		long deleted = 0;
+		List<File> entries = new ArrayList<File>();
+		for (File definitionDirectory : definitionDirectories)
+		{
+			if (definitionDirectory.isDirectory() && now - definitionDirectory.lastModified() > maxUnusedAge)
+			{
+				deleted += delete(definitionDirectory);
+			}
+			else
+			{
+				deleted += listEntries(definitionDirectory, entries, now);
+			}
+		}
+
+		long total = 0;
+		for (int i = 0; i < entries.size(); i++)
+		{
+			total += entries.get(i).length();
+		}
+		if (total <= maxSize)
+		{
+			return deleted;
+		}
+
+		//sort by last modified time (cached, as it is a file system call)
+		Integer[] order = new Integer[entries.size()];
+		final long[] lastModified = new long[entries.size()];
+		for (int i = 0; i < order.length; i++)
+		{
+			order[i] = i;
+			lastModified[i] = entries.get(i).lastModified();
+		}
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer o1, Integer o2)
+			{
+				return lastModified[o1] < lastModified[o2] ? -1 : lastModified[o1] == lastModified[o2] ? 0 : 1;
+			}
+		});
+		for (int i = 0; i < order.length && total > maxSize; i++)
+		{
+			File entry = entries.get(order[i]);
+			synchronized (getEntryLock(entry))
+			{
+				long length = entry.length();
+				if (entry.delete())
+				{
+					total -= length;
+					deleted += length;
+				}
+			}
+		}
+		return deleted;
+	}
+
+	/**
+	 * Add the entry files under the given directory to the list, deleting
+	 * temporary files that are older than {@link #TEMP_MAX_AGE}.
+	 * 
+	 * @return Number of bytes deleted
+	 */
+	private static long listEntries(File file, List<File> entries, long now)
+	{
+		File[] children = file.listFiles();
+		if (children == null)
+		{
+			if (file.getName().endsWith(ENTRY_SUFFIX))
+			{
+				entries.add(file);
+			}
+			else if (file.getName().endsWith(TEMP_SUFFIX) && now - file.lastModified() > TEMP_MAX_AGE)
+			{
+				long length = file.length();
+				return file.delete() ? length : 0;
+			}
+			return 0;
+		}
+
+		long deleted = 0;
+		for (File child : children)
+		{
+			deleted += listEntries(child, entries, now);
+		}
+		return deleted;
+	}
+
+	private static long delete(File file)
+	{
+		long deleted = 0;
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for (File child : children)
+			{
+				deleted += delete(child);
+			}
+		}
+		else
+		{
+			deleted = file.length();
+		}
+		file.delete();
+		return deleted;
+	}
+
+	/**
+	 * @return Texture definition of the textures stored in this cache
+	 */
+	public String getDefinition()
+	{
+		return definition;
+	}
+
+	/**
+	 * @return The file that a tile's texture is stored in
+	 */
+	public File getEntryFile(String tilePath)
+	{
+		return new File(directory, tilePath + ENTRY_SUFFIX);
+	}
+
+	/**
+	 * Read a tile's texture from the cache.
+	 *
+	 * @param tilePath
+	 *            Path of the tile (unique within the cache)
+	 * @param source
+	 *            URL of the file the texture was created from
+	 * @return The DDS texture, or null if the cache doesn't contain a current
+	 *         texture for the tile
+	 */
+	public ByteBuffer read(String tilePath, URL source)
+	{
+		File sourceFile = toFile(source);
+		File file = getEntryFile(tilePath);
+		if (sourceFile == null || !file.isFile())
+		{
+			return null;
+		}
+
+		synchronized (getEntryLock(file))
+		{
+			try
+			{
+				DataInputStream dis =
+						new DataInputStream(new BufferedInputStream(new FileInputStream(file),
+								(int) Math.min(file.length(), 1 << 20) + 1));
+				try
+				{
+					if (dis.readInt() != MAGIC || dis.readInt() != VERSION
+							|| dis.readLong() != sourceFile.lastModified() || dis.readLong() != sourceFile.length()
+							|| dis.readInt() != definitionBytes.length)
+					{
+						return null;
+					}
+					byte[] entryDefinition = new byte[definitionBytes.length];
+					dis.readFully(entryDefinition);
+					if (!Arrays.equals(definitionBytes, entryDefinition))
+					{
+						return null;
+					}
+					byte[] data = new byte[dis.readInt()];
+					dis.readFully(data);
+					return ByteBuffer.wrap(data);
+				}
+				finally
+				{
+					dis.close();
+				}
+			}
+			catch (IOException e)
+			{
+				//truncated or unreadable entry; it will be replaced
+				Logging.logger().log(Level.FINE, "Error reading compressed texture " + file, e);
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Store a tile's texture in the cache. Errors are logged and ignored.
+	 *
+	 * @param tilePath
+	 *            Path of the tile (unique within the cache)
+	 * @param source
+	 *            URL of the file the texture was created from
+	 * @param dds
+	 *            DDS texture to store (from its position to its limit; the
+	 *            buffer's position is not changed)
+	 */
+	public void write(String tilePath, URL source, ByteBuffer dds)
+	{
+		File sourceFile = toFile(source);
+		if (sourceFile == null)
+		{
+			return;
+		}
+
+		File file = getEntryFile(tilePath);
+		File temp = new File(file.getPath() + "." + Thread.currentThread().getId() + TEMP_SUFFIX);
+		try
+		{
+			file.getParentFile().mkdirs();
+			DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			try
+			{
+				dos.writeInt(MAGIC);
+				dos.writeInt(VERSION);
+				dos.writeLong(sourceFile.lastModified());
+				dos.writeLong(sourceFile.length());
+				//not writeUTF, which is limited to 64KB (large colour maps can exceed it)
+				dos.writeInt(definitionBytes.length);
+				dos.write(definitionBytes);
+				dos.writeInt(dds.remaining());
+				if (dds.hasArray())
+				{
+					dos.write(dds.array(), dds.arrayOffset() + dds.position(), dds.remaining());
+				}
+				else
+				{
+					byte[] data = new byte[dds.remaining()];
+					dds.duplicate().get(data);
+					dos.write(data);
+				}
+			}
+			finally
+			{
+				dos.close();
+			}
+
+			//write to a temporary file and then rename it, so readers never see a partial entry
+			synchronized (getEntryLock(file))
+			{
+				file.delete();
+				if (!temp.renameTo(file))
+				{
+					throw new IOException("Could not rename " + temp + " to " + file);
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			Logging.logger().log(Level.WARNING, "Error writing compressed texture " + file, e);
+			temp.delete();
+		}
+	}
+
+	/**
+	 * @return Object on which to synchronize when reading, replacing or
+	 *         deleting the given entry file. Never held while acquiring
+	 *         another lock.
+	 */
+	private static Object getEntryLock(File file)
+	{
+		int hash = file.getAbsolutePath().hashCode();
+		hash ^= (hash >>> 16);
+		return entryLocks[hash & (ENTRY_LOCK_STRIPES - 1)];
+	}
+
+	private static byte[] toUTF8(String s)
+	{
+		try
+		{
+			return s.getBytes("UTF-8");
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			//UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static File toFile(URL url)
+	{
+		if (url == null || !"file".equalsIgnoreCase(url.getProtocol()))
+		{
+			return null;
+		}
+		try
+		{
+			return new File(url.toURI());
+		}
+		catch (Exception e)
+		{
+			return new File(url.getPath());
+		}
+	}
+}
@@ -46,6 +46,7 @@ import gov.nasa.worldwind.util.WWXML;
 import gov.nasa.worldwind.wms.WMSTiledImageLayer;
 
 import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
@@ -53,6 +54,7 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import javax.imageio.ImageIO;
 import javax.xml.xpath.XPath;
@@ -77,9 +79,10 @@ import com.sun.opengl.util.texture.TextureIO;
  * functions such as downloading, saving, loading, and image transforming. This
  * allows full customisation of different functions of the layer.
  * <p>
- * It also uses the {@link FileLockSharer} to create/share the fileLock object.
+ * It also uses the {@link FileLockSharer} to create/share the fileLock objects.
  * This is so that multiple layers can point and write to the same data cache
- * name and synchronize with each other on the same fileLock object. (Note: this
+ * name and synchronize with each other. Tile reads and writes synchronize on
+ * the lock for the tile's file, so tiles are loaded concurrently. (Note: this
  * has not yet been added to Bulk Download facility).
  * 
  * @author Michael de Hoog (michael.dehoog@ga.gov.au)
@@ -91,6 +94,8 @@ public class DelegatorTiledImageLayer extends URLTransformerBasicTiledImageLayer
 	protected final URL context;
 	protected final ImageDelegateKit delegateKit;
 	protected boolean extractZipEntry = false;
+	protected boolean compressedTextureCacheEnabled = false;
+	protected CompressedTextureCache compressedTextureCache;
 
 	protected Globe currentGlobe;
 
@@ -114,6 +119,10 @@ public class DelegatorTiledImageLayer extends URLTransformerBasicTiledImageLayer
 		if (b != null)
 			this.setExtractZipEntry(b);
 
+		b = (Boolean) params.getValue(AVKeyMore.COMPRESSED_TEXTURE_CACHE);
+		if (b != null)
+			this.setCompressedTextureCacheEnabled(b);
+
 		//Share the filelock with other layers with the same cache name. This allows
 		//multiple layers to save and load from the same cache location.
 		fileLock = FileLockSharer.getLock(getLevels().getFirstLevel().getCacheName());
@@ -144,6 +153,8 @@ public class DelegatorTiledImageLayer extends URLTransformerBasicTiledImageLayer
 
 		XPath xpath = WWXML.makeXPath();
 		WWXML.checkAndSetBooleanParam(domElement, params, AVKeyMore.EXTRACT_ZIP_ENTRY, "ExtractZipEntry", xpath);
+		WWXML.checkAndSetBooleanParam(domElement, params, AVKeyMore.COMPRESSED_TEXTURE_CACHE,
+				"CompressedTextureCache", xpath);
 
 		return params;
 	}
@@ -158,6 +169,64 @@ public class DelegatorTiledImageLayer extends URLTransformerBasicTiledImageLayer
 		this.extractZipEntry = extractZipEntry;
 	}
 
+	/**
+	 * @return Are compressed (DDS) textures stored in a
+	 *         {@link CompressedTextureCache}, so that they don't need to be
+	 *         recreated each time a tile is loaded? Only used if the texture
+	 *         format is image/dds.
+	 */
+	public boolean isCompressedTextureCacheEnabled()
+	{
+		return compressedTextureCacheEnabled;
+	}
+
+	public void setCompressedTextureCacheEnabled(boolean compressedTextureCacheEnabled)
+	{
+		this.compressedTextureCacheEnabled = compressedTextureCacheEnabled;
+	}
+
+	/**
+	 * @return The cache to store this layer's compressed textures in, or null
+	 *         if compressed textures are not cached
+	 */
+	protected CompressedTextureCache getCompressedTextureCache()
+	{
+		if (!isCompressedTextureCacheEnabled() || !"image/dds".equalsIgnoreCase(getTextureFormat()))
+			return null;
+
+		//the definition can change if the layer's parameters change, so check it each time
+		String definition = getTextureDefinition();
+		if (definition == null)
+			return null;
+
+		CompressedTextureCache cache = compressedTextureCache;
+		if (cache == null || !cache.getDefinition().equals(definition))
+		{
+			cache = new CompressedTextureCache(getDataFileStore().getWriteLocation(), definition);
+			compressedTextureCache = cache;
+		}
+		return cache;
+	}
+
+	/**
+	 * @return A string describing everything that affects this layer's
+	 *         textures, other than the source images, or null if the textures
+	 *         can't be cached
+	 */
+	protected String getTextureDefinition()
+	{
+		String imageDefinition = delegateKit.getImageDefinition();
+		if (imageDefinition == null)
+			return null;
+
+		StringBuilder sb = new StringBuilder(imageDefinition);
+		sb.append("MipMaps=").append(isUseMipMaps());
+		int[] colors = (int[]) this.getValue(AVKey.TRANSPARENCY_COLORS);
+		if (colors != null)
+			sb.append(";TransparencyColors=").append(Arrays.toString(colors));
+		return sb.toString();
+	}
+
 	/**
 	 * Extension of {@link WMSTiledImageLayer} that provides access to the
 	 * wmsGetParamsFromDocument function.
@@ -303,7 +372,8 @@ public class DelegatorTiledImageLayer extends URLTransformerBasicTiledImageLayer
 
 		TextureData textureData;
 
-		synchronized (fileLock)
+		//only synchronize with writes of this tile's file, so different tiles can be read concurrently
+		synchronized (FileLockSharer.getFileLock(textureURL))
 		{
 			textureData = readTexture(tile, textureURL);
 		}
@@ -335,6 +405,15 @@ public class DelegatorTiledImageLayer extends URLTransformerBasicTiledImageLayer
 			if (url.toString().toLowerCase().endsWith("dds"))
 				return TextureIO.newTextureData(url, isUseMipMaps(), null);
 
+			//if the compressed texture has already been created for this tile, use it
+			CompressedTextureCache cache = getCompressedTextureCache();
+			if (cache != null)
+			{
+				ByteBuffer buffer = cache.read(tile.getPath(), url);
+				if (buffer != null)
+					return TextureIO.newTextureData(WWIO.getInputStreamFromByteBuffer(buffer), isUseMipMaps(), null);
+			}
+
 			BufferedImage image = readImage(tile, url);
 
 			if ("image/dds".equalsIgnoreCase(getTextureFormat()))
@@ -353,6 +432,9 @@ public class DelegatorTiledImageLayer extends URLTransformerBasicTiledImageLayer
 					buffer = DDSCompressor.compressImageURL(url, attributes);
 				}
 
+				if (cache != null)
+					cache.write(tile.getPath(), url, buffer);
+
 				//return the dds image as TextureData
 				return TextureIO.newTextureData(WWIO.getInputStreamFromByteBuffer(buffer), isUseMipMaps(), null);
 			}
@@ -414,8 +496,9 @@ public class DelegatorTiledImageLayer extends URLTransformerBasicTiledImageLayer
 	}
 
 	/**
-	 * Extension to superclass' DownloadPostProcessor which returns this class'
-	 * fileLock instead of the superclass'.
+	 * Extension to superclass' DownloadPostProcessor which returns the
+	 * {@link FileLockSharer} lock for the tile's file instead of the
+	 * superclass' fileLock.
 	 * 
 	 * @author Michael de Hoog
 	 */
@@ -432,7 +515,8 @@ public class DelegatorTiledImageLayer extends URLTransformerBasicTiledImageLayer
 		@Override
 		protected Object getFileLock()
 		{
-			return layer.fileLock;
+			File outputFile = getOutputFile();
+			return outputFile != null ? FileLockSharer.getFileLock(outputFile) : layer.fileLock;
 		}
 	}
 
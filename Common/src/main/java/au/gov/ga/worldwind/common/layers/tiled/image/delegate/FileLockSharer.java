@@ -15,6 +15,8 @@
  ******************************************************************************/
 package au.gov.ga.worldwind.common.layers.tiled.image.delegate;
 
+import java.io.File;
+import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -23,12 +25,31 @@ import java.util.Map;
  * synchronized before reading from and writing to the cache). This is useful as
  * some layers may share the same imagery but do different post processing on
  * the textures.
+ * <p/>
+ * Two kinds of lock are provided: a lock per cache location (see
+ * {@link #getLock(String)}), and a lock per file (see
+ * {@link #getFileLock(File)}). Tile reads and writes should synchronize on
+ * the file lock of the tile's file, so that a read only waits for a
+ * concurrent write of the same tile, and reads of different tiles run
+ * concurrently. File locks are striped: each file maps to one of a fixed set
+ * of lock objects, so no per-file state is retained.
  * 
  * @author Michael de Hoog (michael.dehoog@ga.gov.au)
  */
 public class FileLockSharer
 {
+	private static final int FILE_LOCK_STRIPES = 1024; //must be a power of 2
+
 	private static Map<String, Object> locks = new HashMap<String, Object>();
+	private static final Object[] fileLocks = new Object[FILE_LOCK_STRIPES];
+
+	static
+	{
+		for (int i = 0; i < fileLocks.length; i++)
+		{
+			fileLocks[i] = new Object();
+		}
+	}
 
 	/**
 	 * Get an object on which to synchronize for reading/writing to the cache
@@ -40,10 +61,62 @@ public class FileLockSharer
 	 */
 	public static Object getLock(String dataCacheName)
 	{
-		if (!locks.containsKey(dataCacheName))
+		synchronized (locks)
 		{
-			locks.put(dataCacheName, new Object());
+			Object lock = locks.get(dataCacheName);
+			if (lock == null)
+			{
+				lock = new Object();
+				locks.put(dataCacheName, lock);
+			}
+			return lock;
 		}
-		return locks.get(dataCacheName);
+	}
+
+	/**
+	 * Get an object on which to synchronize for reading/writing the given
+	 * file. The same object is always returned for the same file.
+	 * 
+	 * @param file
+	 *            File to read or write
+	 * @return Object on which to synchronize
+	 */
+	public static Object getFileLock(File file)
+	{
+		return getStripe(file.getAbsolutePath());
+	}
+
+	/**
+	 * Get an object on which to synchronize for reading/writing the file at
+	 * the given URL. For file URLs, this is the same object as returned by
+	 * {@link #getFileLock(File)} for the file.
+	 * 
+	 * @param url
+	 *            URL to read or write
+	 * @return Object on which to synchronize
+	 */
+	public static Object getFileLock(URL url)
+	{
+		if ("file".equalsIgnoreCase(url.getProtocol()))
+		{
+			File file;
+			try
+			{
+				file = new File(url.toURI());
+			}
+			catch (Exception e)
+			{
+				file = new File(url.getPath());
+			}
+			return getFileLock(file);
+		}
+		return getStripe(url.toString());
+	}
+
+	private static Object getStripe(String key)
+	{
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return fileLocks[hash & (FILE_LOCK_STRIPES - 1)];
 	}
 }
@@ -22,14 +22,19 @@ import gov.nasa.worldwind.globes.Globe;
 import gov.nasa.worldwind.util.BufferWrapper;
 import gov.nasa.worldwind.util.WWXML;
 
+import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Map.Entry;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.w3c.dom.Element;
 
+import au.gov.ga.worldwind.common.layers.delegate.ICacheKeyDelegate;
 import au.gov.ga.worldwind.common.layers.delegate.IDelegate;
 import au.gov.ga.worldwind.common.util.ColorMap;
+import au.gov.ga.worldwind.common.util.ColorMapLookupTable;
 import au.gov.ga.worldwind.common.util.XMLUtil;
 
 /**
@@ -70,14 +75,24 @@ import au.gov.ga.worldwind.common.util.XMLUtil;
  * <li>blue = the blue channel of the colour entry (integer in range [0, 255])
  * <li>alpha = the alpha channel of the colour entry (integer in range [0, 255])
  * </ul>
+ * <p/>
+ * Colours are looked up in a {@link ColorMapLookupTable}, which is sized so
+ * that the narrowest band between two colour map entries is still resolved by
+ * several samples (see {@link #calculateLookupTableResolution(ColorMap)}).
  * 
  * @author Michael de Hoog (michael.dehoog@ga.gov.au)
  */
-public class ColorMapElevationImageReaderDelegate extends ElevationImageReaderDelegate
+public class ColorMapElevationImageReaderDelegate extends ElevationImageReaderDelegate implements
+		ICacheKeyDelegate
 {
 	private final static String DEFINITION_STRING = "ColorMapReader";
 
+	private final static int MIN_LOOKUP_TABLE_RESOLUTION = 4096;
+	private final static int MAX_LOOKUP_TABLE_RESOLUTION = 1 << 18;
+	private final static int LOOKUP_TABLE_SAMPLES_PER_BAND = 16;
+
 	private final ColorMap colorMap;
+	private ColorMapLookupTable lookupTable;
 
 	@SuppressWarnings("unused")
 	private ColorMapElevationImageReaderDelegate()
@@ -124,28 +139,83 @@ public class ColorMapElevationImageReaderDelegate extends ElevationImageReaderDe
 				+ missingDataSignal + ")";
 	}
 
+	/**
+	 * The colour map is not part of the definition string (it is stored in the
+	 * layer element), so it is appended to the definition to form the cache
+	 * key.
+	 */
+	@Override
+	public String getCacheKey()
+	{
+		StringBuilder sb = new StringBuilder(toDefinition(null));
+		sb.append("ColorMap(").append(colorMap.isInterpolateHue()).append(',')
+				.append(colorMap.isValuesPercentages());
+		for (Entry<Double, Color> entry : colorMap.entrySet())
+		{
+			sb.append(',').append(entry.getKey()).append('=').append(Integer.toHexString(entry.getValue().getRGB()));
+		}
+		return sb.append(')').toString();
+	}
+
 	@Override
 	protected BufferedImage generateImage(BufferWrapper elevations, int width, int height, Globe globe, Sector sector)
 	{
 		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		ColorMapLookupTable lookupTable = getLookupTable();
+
+		for (int i = 0; i < width * height; i++)
+		{
+			double elevation = elevations.getDouble(i);
+			pixels[i] = elevation == missingDataSignal ? 0 : lookupTable.getARGB(elevation);
+		}
+
+		return image;
+	}
 
-		for (int y = 0, i = 0; y < height; y++)
+	protected ColorMapLookupTable getLookupTable()
+	{
+		//elevations are passed directly to the color map (never as percentages), so map 0..1 to 0%..100%
+		if (lookupTable == null)
+		{
+			lookupTable = colorMap.createLookupTable(calculateLookupTableResolution(colorMap), 0, 1);
+		}
+		return lookupTable;
+	}
+
+	/**
+	 * Calculate the lookup table resolution for the given colour map. A fixed
+	 * resolution spread across the whole elevation range (eg -11000m to 9000m)
+	 * is too coarse for narrow bands (eg -1m to 0m), so the resolution is
+	 * chosen so that the smallest gap between two entries is covered by
+	 * {@value #LOOKUP_TABLE_SAMPLES_PER_BAND} samples, within
+	 * [{@value #MIN_LOOKUP_TABLE_RESOLUTION},
+	 * {@value #MAX_LOOKUP_TABLE_RESOLUTION}].
+	 */
+	protected static int calculateLookupTableResolution(ColorMap colorMap)
+	{
+		if (colorMap.size() < 2)
 		{
-			for (int x = 0; x < width; x++, i++)
+			return MIN_LOOKUP_TABLE_RESOLUTION;
+		}
+
+		double smallestGap = Double.MAX_VALUE;
+		Double previous = null;
+		for (Double key : colorMap.keySet())
+		{
+			if (previous != null && key - previous > 0)
 			{
-				double elevation = elevations.getDouble(i);
-				if (elevation == missingDataSignal)
-				{
-					image.setRGB(x, y, 0);
-				}
-				else
-				{
-					int rgba = colorMap.calculateColor(elevation).getRGB();
-					image.setRGB(x, y, rgba);
-				}
+				smallestGap = Math.min(smallestGap, key - previous);
 			}
+			previous = key;
+		}
+		if (smallestGap == Double.MAX_VALUE)
+		{
+			return MIN_LOOKUP_TABLE_RESOLUTION;
 		}
 
-		return image;
+		double range = colorMap.lastKey() - colorMap.firstKey();
+		double resolution = Math.ceil(range / smallestGap * LOOKUP_TABLE_SAMPLES_PER_BAND) + 1;
+		return (int) Math.max(MIN_LOOKUP_TABLE_RESOLUTION, Math.min(MAX_LOOKUP_TABLE_RESOLUTION, resolution));
 	}
 }
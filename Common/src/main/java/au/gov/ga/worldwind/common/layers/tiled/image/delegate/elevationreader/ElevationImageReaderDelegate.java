@@ -110,8 +110,7 @@ public abstract class ElevationImageReaderDelegate implements ITileReaderDelegat
 				byteBuffer[0] = IOUtil.readByteBuffer(url, pixelType, byteOrder);
 			}
 
-			BufferedImage image =
-					generateImage(byteBuffer[0], tile.getWidth(), tile.getHeight(), globe, tile.getSector());
+			BufferedImage image = generateImage(tile, url, byteBuffer[0], globe);
 			if (mask[0] == null)
 				return image;
 			return MaskHelper.compose(image, mask[0]);
@@ -119,10 +118,31 @@ public abstract class ElevationImageReaderDelegate implements ITileReaderDelegat
 		else
 		{
 			BufferWrapper byteBuffer = IOUtil.readByteBuffer(url, pixelType, byteOrder);
-			return generateImage(byteBuffer, tile.getWidth(), tile.getHeight(), globe, tile.getSector());
+			return generateImage(tile, url, byteBuffer, globe);
 		}
 	}
 
+	/**
+	 * Generate an image from a tile's elevation data. Subclasses that require
+	 * information about the tile (such as its neighbours) can override this
+	 * method; by default it calls
+	 * {@link #generateImage(BufferWrapper, int, int, Globe, Sector)}.
+	 * 
+	 * @param tile
+	 *            Tile being read
+	 * @param url
+	 *            URL the elevation data was read from
+	 * @param elevations
+	 *            Wrapped elevation data
+	 * @param globe
+	 *            Current globe
+	 * @return Image generated from the elevation data
+	 */
+	protected BufferedImage generateImage(Tile tile, URL url, BufferWrapper elevations, Globe globe)
+	{
+		return generateImage(elevations, tile.getWidth(), tile.getHeight(), globe, tile.getSector());
+	}
+
 	/**
 	 * Generate an image from elevation data.
 	 * 
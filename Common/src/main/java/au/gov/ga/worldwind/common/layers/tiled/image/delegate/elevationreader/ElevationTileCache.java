@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.common.layers.tiled.image.delegate.elevationreader;
+
+import gov.nasa.worldwind.cache.BasicMemoryCache;
+import gov.nasa.worldwind.util.BufferWrapper;
+import gov.nasa.worldwind.util.Tile;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import au.gov.ga.worldwind.common.util.IOUtil;
+import au.gov.ga.worldwind.common.util.URLUtil;
+import au.gov.ga.worldwind.common.util.Util;
+
+/**
+ * Small memory cache of decoded elevation tiles, used by the
+ * {@link ElevationImageReaderDelegate}s to read the edges of neighbouring
+ * tiles without re-reading and decoding them from disk for every tile.
+ * <p/>
+ * Elevations are stored as <code>double</code> arrays, with missing data (and
+ * data outside the optional min/max elevation range) stored as
+ * {@link Double#NaN}.
+ *
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class ElevationTileCache
+{
+	private static final long CACHE_SIZE = 32000000;
+	private static final BasicMemoryCache cache = new BasicMemoryCache((long) (0.85 * CACHE_SIZE), CACHE_SIZE);
+
+	/**
+	 * Matches the tail of a tile URL: .../row/row_col.ext
+	 */
+	private static final Pattern TILE_URL_PATTERN = Pattern.compile("(\\d+)([/\\\\])(\\d+)_(\\d+)(\\.[^/\\\\]*)$");
+
+	/**
+	 * Convert the given elevation buffer into an array of doubles, replacing
+	 * missing or out of range values with {@link Double#NaN}, and add it to
+	 * the cache.
+	 */
+	public static double[] put(URL url, BufferWrapper elevations, double missingDataSignal, double minElevation,
+			double maxElevation)
+	{
+		double[] values = new double[elevations.length()];
+		for (int i = 0; i < values.length; i++)
+		{
+			double value = elevations.getDouble(i);
+			values[i] =
+					value != missingDataSignal && minElevation <= value && value <= maxElevation ? value : Double.NaN;
+		}
+		if (url != null)
+		{
+			cache.add(createKey(url, missingDataSignal, minElevation, maxElevation), values, values.length * 8L);
+		}
+		return values;
+	}
+
+	/**
+	 * Get the elevations of the tile that neighbours the given tile, reading
+	 * them from the neighbour's URL if they are not already cached.
+	 *
+	 * @param tile
+	 *            Tile whose neighbour is required
+	 * @param url
+	 *            URL of the tile
+	 * @param rowOffset
+	 *            Row offset of the neighbour (-1, 0 or 1)
+	 * @param colOffset
+	 *            Column offset of the neighbour (-1, 0 or 1)
+	 * @return Neighbour's elevations, or null if the neighbour isn't available
+	 *         locally
+	 */
+	public static double[] getNeighbour(Tile tile, URL url, int rowOffset, int colOffset, String pixelType,
+			String byteOrder, double missingDataSignal, double minElevation, double maxElevation)
+	{
+		URL neighbourUrl = getNeighbourURL(tile, url, rowOffset, colOffset);
+		if (neighbourUrl == null)
+		{
+			return null;
+		}
+
+		String key = createKey(neighbourUrl, missingDataSignal, minElevation, maxElevation);
+		double[] values = (double[]) cache.getObject(key);
+		if (values != null)
+		{
+			return values;
+		}
+
+		//only read neighbours that have already been downloaded; never request them
+		File file = URLUtil.urlToFile(neighbourUrl);
+		if (file == null || !file.exists())
+		{
+			return null;
+		}
+
+		try
+		{
+			BufferWrapper elevations = IOUtil.readByteBuffer(neighbourUrl, pixelType, byteOrder);
+			if (elevations == null || elevations.length() != tile.getWidth() * tile.getHeight())
+			{
+				return null;
+			}
+			return put(neighbourUrl, elevations, missingDataSignal, minElevation, maxElevation);
+		}
+		catch (Exception e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Calculate the URL of a neighbouring tile, by replacing the row and
+	 * column in the tile's URL. Returns null if the neighbour is outside the
+	 * level, or if the URL doesn't follow the standard tile naming convention.
+	 */
+	protected static URL getNeighbourURL(Tile tile, URL url, int rowOffset, int colOffset)
+	{
+		if (url == null)
+		{
+			return null;
+		}
+
+		int row = tile.getRow() + rowOffset;
+		int col = tile.getColumn() + colOffset;
+		if (row < 0 || col < 0)
+		{
+			return null;
+		}
+
+		String external = url.toExternalForm();
+		Matcher matcher = TILE_URL_PATTERN.matcher(external);
+		if (!matcher.find())
+		{
+			return null;
+		}
+		try
+		{
+			if (Integer.parseInt(matcher.group(1)) != tile.getRow()
+					|| Integer.parseInt(matcher.group(3)) != tile.getRow()
+					|| Integer.parseInt(matcher.group(4)) != tile.getColumn())
+			{
+				return null;
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+
+		//keep any zero padding used in the original URL
+		String rowString = Util.paddedInt(row, paddedWidth(matcher.group(3)));
+		String colString = Util.paddedInt(col, paddedWidth(matcher.group(4)));
+		String neighbour =
+				external.substring(0, matcher.start()) + rowString + matcher.group(2) + rowString + "_" + colString
+						+ matcher.group(5);
+		try
+		{
+			return new URL(neighbour);
+		}
+		catch (MalformedURLException e)
+		{
+			return null;
+		}
+	}
+
+	private static int paddedWidth(String number)
+	{
+		return number.length() > 1 && number.charAt(0) == '0' ? number.length() : 0;
+	}
+
+	private static String createKey(URL url, double missingDataSignal, double minElevation, double maxElevation)
+	{
+		return url.toExternalForm() + "," + missingDataSignal + "," + minElevation + "," + maxElevation;
+	}
+}
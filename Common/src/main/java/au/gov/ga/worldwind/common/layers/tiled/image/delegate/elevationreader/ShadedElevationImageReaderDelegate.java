@@ -17,19 +17,23 @@ package au.gov.ga.worldwind.common.layers.tiled.image.delegate.elevationreader;
 
 import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.avlist.AVList;
-import gov.nasa.worldwind.geom.Angle;
 import gov.nasa.worldwind.geom.Sector;
 import gov.nasa.worldwind.geom.Vec4;
 import gov.nasa.worldwind.globes.Globe;
 import gov.nasa.worldwind.util.BufferWrapper;
+import gov.nasa.worldwind.util.Tile;
 import gov.nasa.worldwind.util.WWXML;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.net.URL;
+import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.w3c.dom.Element;
 
+import au.gov.ga.worldwind.common.layers.delegate.ICacheKeyDelegate;
 import au.gov.ga.worldwind.common.layers.delegate.IDelegate;
 
 /**
@@ -39,7 +43,7 @@ import au.gov.ga.worldwind.common.layers.delegate.IDelegate;
  * 
  * <pre>
  * &lt;Delegate&gt;
- *   ShadedElevationReader(pixelType,byteOrder,missingData,(sunX,sunY,sunZ),exaggeration[,(min,max)])
+ *   ShadedElevationReader(pixelType,byteOrder,missingData,(sunX,sunY,sunZ[;sunX,sunY,sunZ...]),exaggeration[,(min,max)])
  * &lt;/Delegate&gt;
  * </pre>
  * 
@@ -53,23 +57,32 @@ import au.gov.ga.worldwind.common.layers.delegate.IDelegate;
  * <li>missingData = the value used in the elevation tiles to represent missing
  * data (float)
  * <li>(sunX, sunY, sunZ) = the vector representing the location of the virtual
- * sun. Expressed in arbitrary Cartesian coordinates (not geographic)
+ * sun. Expressed in arbitrary Cartesian coordinates (not geographic). Multiple
+ * sun vectors can be provided, separated by semicolons, for multi-directional
+ * shading.
  * <li>exaggeration = The vertical exaggeration to bake into the shading
  * (double)
  * <li>(min,max) = (Optional) The minimum and maximum elevation values to use
  * when calculating shading (in metres as doubles)
  * </ul>
  * Shading is calculated as a simple dot product between the calculated normals
- * of the elevation model and the sun vector.
+ * of the elevation model and the sun vector. When multiple sun vectors are
+ * provided, the shading is the average of the shading from each sun.
+ * <p/>
+ * Normals on the tile edges are calculated using the edges of neighbouring
+ * tiles (if they are available locally), which removes visible seams between
+ * tiles.
  * 
  * @author Michael de Hoog (michael.dehoog@ga.gov.au)
  */
-public class ShadedElevationImageReaderDelegate extends ElevationImageReaderDelegate
+public class ShadedElevationImageReaderDelegate extends ElevationImageReaderDelegate implements
+		ICacheKeyDelegate
 {
 	private final static String DEFINITION_STRING = "ShadedElevationReader";
+	private final static String vectorPattern = doublePattern + "," + doublePattern + "," + doublePattern;
 
 	protected final double exaggeration;
-	protected final Vec4 sunPosition;
+	protected final Vec4[] sunPositions;
 	protected final double minElevation;
 	protected final double maxElevation;
 
@@ -82,10 +95,17 @@ public class ShadedElevationImageReaderDelegate extends ElevationImageReaderDele
 
 	public ShadedElevationImageReaderDelegate(String pixelType, String byteOrder, double missingDataSignal,
 			double exaggeration, Vec4 sunPosition, double minElevation, double maxElevation)
+	{
+		this(pixelType, byteOrder, missingDataSignal, exaggeration, new Vec4[] { sunPosition }, minElevation,
+				maxElevation);
+	}
+
+	public ShadedElevationImageReaderDelegate(String pixelType, String byteOrder, double missingDataSignal,
+			double exaggeration, Vec4[] sunPositions, double minElevation, double maxElevation)
 	{
 		super(pixelType, byteOrder, missingDataSignal);
 		this.exaggeration = exaggeration;
-		this.sunPosition = sunPosition;
+		this.sunPositions = sunPositions;
 		this.minElevation = minElevation;
 		this.maxElevation = maxElevation;
 	}
@@ -97,31 +117,37 @@ public class ShadedElevationImageReaderDelegate extends ElevationImageReaderDele
 		{
 			String optionalMinMaxGroup = "(?:,\\(" + doublePattern + "," + doublePattern + "\\))?";
 			Pattern pattern =
-					Pattern.compile("(?:\\((\\w+),(\\w+)," + doublePattern + ",\\(" + doublePattern + ","
-							+ doublePattern + "," + doublePattern + "\\)," + doublePattern + optionalMinMaxGroup
-							+ "\\))");
+					Pattern.compile("(?:\\((\\w+),(\\w+)," + doublePattern + ",\\(((?:" + vectorPattern + ";)*"
+							+ vectorPattern + ")\\)," + doublePattern + optionalMinMaxGroup + "\\))");
 			Matcher matcher = pattern.matcher(definition);
 			if (matcher.find())
 			{
 				String pixelType = matcher.group(1);
 				String byteOrder = matcher.group(2);
 				double missingDataSignal = Double.parseDouble(matcher.group(3));
-				double sunPositionX = Double.parseDouble(matcher.group(4));
-				double sunPositionY = Double.parseDouble(matcher.group(5));
-				double sunPositionZ = Double.parseDouble(matcher.group(6));
-				double exaggeration = Double.parseDouble(matcher.group(7));
-				Vec4 sunPosition = new Vec4(sunPositionX, sunPositionY, sunPositionZ).normalize3();
+				String[] sunVectors = matcher.group(4).split(";");
+				int exaggerationGroup = matcher.groupCount() - 2;
+				double exaggeration = Double.parseDouble(matcher.group(exaggerationGroup));
+
+				Vec4[] sunPositions = new Vec4[sunVectors.length];
+				for (int i = 0; i < sunVectors.length; i++)
+				{
+					String[] split = sunVectors[i].split(",");
+					sunPositions[i] =
+							new Vec4(Double.parseDouble(split[0]), Double.parseDouble(split[1]),
+									Double.parseDouble(split[2])).normalize3();
+				}
 
 				double minElevation = -Double.MAX_VALUE;
 				double maxElevation = Double.MAX_VALUE;
-				if (matcher.groupCount() >= 9 && matcher.group(8) != null && matcher.group(9) != null)
+				if (matcher.group(exaggerationGroup + 1) != null && matcher.group(exaggerationGroup + 2) != null)
 				{
-					minElevation = Double.parseDouble(matcher.group(8));
-					maxElevation = Double.parseDouble(matcher.group(9));
+					minElevation = Double.parseDouble(matcher.group(exaggerationGroup + 1));
+					maxElevation = Double.parseDouble(matcher.group(exaggerationGroup + 2));
 				}
 
 				return new ShadedElevationImageReaderDelegate(WWXML.parseDataType(pixelType),
-						WWXML.parseByteOrder(byteOrder), missingDataSignal, exaggeration, sunPosition, minElevation,
+						WWXML.parseByteOrder(byteOrder), missingDataSignal, exaggeration, sunPositions, minElevation,
 						maxElevation);
 			}
 		}
@@ -131,93 +157,191 @@ public class ShadedElevationImageReaderDelegate extends ElevationImageReaderDele
 	@Override
 	public String toDefinition(Element layerElement)
 	{
+		StringBuilder sb = new StringBuilder();
+		for (Vec4 sunPosition : sunPositions)
+		{
+			if (sb.length() > 0)
+			{
+				sb.append(";");
+			}
+			sb.append(sunPosition.x + "," + sunPosition.y + "," + sunPosition.z);
+		}
+		String minMax =
+				minElevation == -Double.MAX_VALUE && maxElevation == Double.MAX_VALUE ? "" : ",(" + minElevation + ","
+						+ maxElevation + ")";
 		return DEFINITION_STRING + "(" + WWXML.dataTypeAsText(pixelType) + "," + WWXML.byteOrderAsText(byteOrder) + ","
-				+ missingDataSignal + ",(" + sunPosition.x + "," + sunPosition.y + "," + sunPosition.z + "),"
-				+ exaggeration + ")";
+				+ missingDataSignal + ",(" + sb + ")," + exaggeration + minMax + ")";
+	}
+
+	/**
+	 * Shading of the tile edges depends on the neighbouring tiles, which may
+	 * not have been available when a tile was shaded, so shaded tiles can't be
+	 * cached against their source file alone.
+	 */
+	@Override
+	public String getCacheKey()
+	{
+		return null;
+	}
+
+	@Override
+	protected BufferedImage generateImage(Tile tile, URL url, BufferWrapper elevations, Globe globe)
+	{
+		int width = tile.getWidth();
+		int height = tile.getHeight();
+		double[] values = ElevationTileCache.put(url, elevations, missingDataSignal, minElevation, maxElevation);
+
+		//read the edges of the neighbouring tiles (rows increase northwards, and the data's first row is north)
+		double[] north = getNeighbour(tile, url, 1, 0);
+		double[] south = getNeighbour(tile, url, -1, 0);
+		double[] west = getNeighbour(tile, url, 0, -1);
+		double[] east = getNeighbour(tile, url, 0, 1);
+
+		double[] grid = createHaloGrid(values, width, height, north, south, west, east);
+		return shade(grid, width, height, tile.getSector());
 	}
 
 	@Override
 	protected BufferedImage generateImage(BufferWrapper elevations, int width, int height, Globe globe, Sector sector)
 	{
-		//image has one less in width and height than verts array, because normals are calculated using neighbors
-		//it would be optimal to read the neighboring tiles for normals on tile edges; this would fix visible tile edges
+		double[] values = ElevationTileCache.put(null, elevations, missingDataSignal, minElevation, maxElevation);
+		double[] grid = createHaloGrid(values, width, height, null, null, null, null);
+		return shade(grid, width, height, sector);
+	}
 
-		BufferedImage image = new BufferedImage(width - 1, height - 1, BufferedImage.TYPE_INT_ARGB);
+	protected double[] getNeighbour(Tile tile, URL url, int rowOffset, int colOffset)
+	{
+		return ElevationTileCache.getNeighbour(tile, url, rowOffset, colOffset, pixelType, byteOrder,
+				missingDataSignal, minElevation, maxElevation);
+	}
 
-		Vec4[] verts =
-				calculateTileVerts(width, height, sector, elevations, missingDataSignal, exaggeration * 0.000005);
-		Vec4[] normals = calculateNormals(width, height, verts);
+	/**
+	 * Create a (width + 2) x (height + 2) grid of elevations, containing the
+	 * tile's elevations surrounded by a one pixel halo from the neighbouring
+	 * tiles. Halo values for missing neighbours (and the corners) are NaN.
+	 */
+	protected static double[] createHaloGrid(double[] values, int width, int height, double[] north,
+			double[] south, double[] west, double[] east)
+	{
+		int gridWidth = width + 2;
+		double[] grid = new double[gridWidth * (height + 2)];
+		Arrays.fill(grid, Double.NaN);
 
-		for (int y = 0, i = 0; y < height - 1; y++)
+		for (int y = 0; y < height; y++)
+		{
+			System.arraycopy(values, y * width, grid, (y + 1) * gridWidth + 1, width);
+		}
+		if (north != null)
+		{
+			System.arraycopy(north, (height - 1) * width, grid, 1, width);
+		}
+		if (south != null)
 		{
-			for (int x = 0; x < width - 1; x++, i++)
+			System.arraycopy(south, 0, grid, (height + 1) * gridWidth + 1, width);
+		}
+		for (int y = 0; y < height; y++)
+		{
+			if (west != null)
 			{
-				int argb = 0;
-				Vec4 normal = normals[i];
-				if (normal != null)
-				{
-					double light = Math.max(0d, normal.dot3(sunPosition));
-
-					int r = (int) (255.0 * light);
-					int g = (int) (255.0 * light);
-					int b = (int) (255.0 * light);
-
-					argb = (0xff) << 24 | (r & 0xff) << 16 | (g & 0xff) << 8 | (b & 0xff);
-				}
-				image.setRGB(x, y, argb);
+				grid[(y + 1) * gridWidth] = west[y * width + width - 1];
+			}
+			if (east != null)
+			{
+				grid[(y + 1) * gridWidth + width + 1] = east[y * width];
 			}
 		}
-
-		return image;
+		return grid;
 	}
 
-	protected Vec4[] calculateTileVerts(int width, int height, Sector sector, BufferWrapper elevations,
-			double missingDataSignal, double exaggeration)
+	/**
+	 * Shade the given halo grid into an image of the tile's size.
+	 */
+	protected BufferedImage shade(double[] grid, int width, int height, Sector sector)
 	{
-		Vec4[] verts = new Vec4[width * height];
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+		//elevations are scaled to the same magnitude as the lat/lon degree spacing
+		double scale = exaggeration * 0.000005;
 		double dlon = sector.getDeltaLonDegrees() / width;
 		double dlat = sector.getDeltaLatDegrees() / height;
 
+		int suns = sunPositions.length;
+		double[] sunX = new double[suns];
+		double[] sunY = new double[suns];
+		double[] sunZ = new double[suns];
+		for (int s = 0; s < suns; s++)
+		{
+			sunX[s] = sunPositions[s].x;
+			sunY[s] = sunPositions[s].y;
+			sunZ[s] = sunPositions[s].z;
+		}
+
+		int gridWidth = width + 2;
 		for (int y = 0, i = 0; y < height; y++)
 		{
-			Angle lat = sector.getMaxLatitude().subtractDegrees(dlat * y);
-			for (int x = 0; x < width; x++, i++)
+			int g = (y + 1) * gridWidth + 1;
+			for (int x = 0; x < width; x++, i++, g++)
 			{
-				Angle lon = sector.getMinLongitude().addDegrees(dlon * x);
-				double elevation = elevations.getDouble(i);
-				if (elevation != missingDataSignal && minElevation <= elevation && elevation <= maxElevation)
+				double c = grid[g];
+				if (Double.isNaN(c))
+				{
+					pixels[i] = 0;
+					continue;
+				}
+
+				double dx = gradient(grid[g - 1], c, grid[g + 1], dlon);
+				double dy = gradient(grid[g + gridWidth], c, grid[g - gridWidth], dlat);
+				if (Double.isNaN(dx) || Double.isNaN(dy))
 				{
-					verts[i] = new Vec4(lat.degrees, lon.degrees, elevation * exaggeration);
+					pixels[i] = 0;
+					continue;
 				}
+
+				//normal of the surface (lat,lon,elevation) is (dy, dx, -1), normalized
+				dx *= scale;
+				dy *= scale;
+				double length = Math.sqrt(dx * dx + dy * dy + 1);
+				double nx = dy / length;
+				double ny = dx / length;
+				double nz = -1 / length;
+
+				double light = 0;
+				for (int s = 0; s < suns; s++)
+				{
+					light += Math.max(0d, nx * sunX[s] + ny * sunY[s] + nz * sunZ[s]);
+				}
+				int v = (int) (255.0 * light / suns) & 0xff;
+				pixels[i] = 0xff << 24 | v << 16 | v << 8 | v;
 			}
 		}
 
-		return verts;
+		return image;
 	}
 
-	protected Vec4[] calculateNormals(int width, int height, Vec4[] verts)
+	/**
+	 * Calculate the gradient at a point given its value and the values either
+	 * side of it. Uses a central difference if both sides are available,
+	 * otherwise a one-sided difference. Returns NaN if neither side is
+	 * available.
+	 */
+	protected static double gradient(double before, double center, double after, double spacing)
 	{
-		Vec4[] norms = new Vec4[(width - 1) * (height - 1)];
-		for (int y = 0, i = 0; y < height - 1; y++)
+		boolean hasBefore = !Double.isNaN(before);
+		boolean hasAfter = !Double.isNaN(after);
+		if (hasBefore && hasAfter)
 		{
-			for (int x = 0; x < width - 1; x++, i++)
-			{
-				//v0-v1
-				//|
-				//v2
-
-				int vertIndex = width * y + x;
-				Vec4 v0 = verts[vertIndex];
-				if (v0 != null)
-				{
-					Vec4 v1 = verts[vertIndex + 1];
-					Vec4 v2 = verts[vertIndex + width];
-
-					norms[i] = v1 != null && v2 != null ? v1.subtract3(v0).cross3(v0.subtract3(v2)).normalize3() : null;
-				}
-			}
+			return (after - before) / (2 * spacing);
+		}
+		if (hasAfter)
+		{
+			return (after - center) / spacing;
+		}
+		if (hasBefore)
+		{
+			return (center - before) / spacing;
 		}
-		return norms;
+		return Double.NaN;
 	}
 
 	protected double[] getMinMax(BufferWrapper elevations, double missingDataSignal)
@@ -40,6 +40,7 @@ import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Arrays;
@@ -54,6 +55,7 @@ import au.gov.ga.worldwind.common.render.fastshape.FastShape;
 import au.gov.ga.worldwind.common.render.fastshape.FastShapeRenderListener;
 import au.gov.ga.worldwind.common.util.AVKeyMore;
 import au.gov.ga.worldwind.common.util.ColorMap;
+import au.gov.ga.worldwind.common.util.ColorMapLookupTable;
 import au.gov.ga.worldwind.common.util.CoordinateTransformationUtil;
 import au.gov.ga.worldwind.common.util.GeometryUtil;
 import au.gov.ga.worldwind.common.util.Util;
@@ -79,6 +81,7 @@ public class BasicVolumeLayer extends AbstractLayer implements VolumeLayer, Wire
 	protected CoordinateTransformation coordinateTransformation;
 	protected String paintedVariable;
 	protected ColorMap colorMap;
+	protected ColorMapLookupTable colorMapLookupTable;
 	protected Color noDataColor;
 	protected boolean reverseNormals = false;
 	protected boolean useOrderedRendering = false;
@@ -701,34 +704,55 @@ public class BasicVolumeLayer extends AbstractLayer implements VolumeLayer, Wire
 	protected BufferedImage generateTexture(int axis, int position, Rectangle rectangle)
 	{
 		BufferedImage image = new BufferedImage(rectangle.width, rectangle.height, BufferedImage.TYPE_INT_ARGB);
-		float minimum = dataProvider.getMinValue();
-		float maximum = dataProvider.getMaxValue();
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		ColorMapLookupTable lookupTable = getColorMapLookupTable();
+		int noDataRGB = noDataColor != null ? noDataColor.getRGB() : 0;
+		float noDataValue = dataProvider.getNoDataValue();
+		int i = 0;
 		for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++)
 		{
-			for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++)
+			for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++, i++)
 			{
 				int vx = axis == 2 ? x : axis == 1 ? x : position;
 				int vy = axis == 2 ? y : axis == 1 ? position : x;
 				int vz = axis == 2 ? position : y;
 				float value = dataProvider.getValue(vx, vy, vz);
-				int rgb = noDataColor != null ? noDataColor.getRGB() : 0;
-				if (value != dataProvider.getNoDataValue())
+				int rgb = noDataRGB;
+				if (value != noDataValue)
 				{
-					if (colorMap != null)
+					if (lookupTable != null)
 					{
-						rgb = colorMap.calculateColorNotingIsValuesPercentages(value, minimum, maximum).getRGB();
+						rgb = lookupTable.getARGB(value);
 					}
 					else
 					{
 						rgb = Color.HSBtoRGB(-0.3f - value * 0.7f, 1.0f, 1.0f);
 					}
 				}
-				image.setRGB(x - rectangle.x, y - rectangle.y, rgb);
+				pixels[i] = rgb;
 			}
 		}
 		return image;
 	}
 
+	/**
+	 * @return The lookup table for the {@link ColorMap} (created when first
+	 *         required), or null if this layer has no color map.
+	 */
+	protected ColorMapLookupTable getColorMapLookupTable()
+	{
+		if (colorMap == null)
+		{
+			return null;
+		}
+		if (colorMapLookupTable == null)
+		{
+			colorMapLookupTable =
+					colorMap.createLookupTable(dataProvider.getMinValue(), dataProvider.getMaxValue());
+		}
+		return colorMapLookupTable;
+	}
+
 	/**
 	 * Update the given {@link TextureRenderer} with the provided image, and
 	 * sets the {@link FastShape}'s texture it.
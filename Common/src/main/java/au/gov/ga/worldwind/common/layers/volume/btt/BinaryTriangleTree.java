@@ -19,29 +19,51 @@ import gov.nasa.worldwind.geom.Position;
 
 import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.media.opengl.GL;
 
 import au.gov.ga.worldwind.common.render.fastshape.FastShape;
+import au.gov.ga.worldwind.common.util.DaemonThreadFactory;
 import au.gov.ga.worldwind.common.util.Util;
 import au.gov.ga.worldwind.common.util.Validate;
 
 /**
  * A mesh generation helper which uses a grid of positions to generate a mesh.
  * Uses the Binary Triangle Tree mesh simplification algorithm.
+ * <p/>
+ * The area is divided into independent power-of-2-plus-1 squares, and the
+ * tree for each square is built on flat primitive arrays (see
+ * {@link TriangleTree}). Large meshes build their squares in parallel; the
+ * results are combined in the same order as a sequential build, so the
+ * generated mesh is identical.
  * 
  * @author Michael de Hoog (michael.dehoog@ga.gov.au)
  */
 public class BinaryTriangleTree
 {
+	/**
+	 * Meshes with fewer positions than this are built on the calling thread
+	 */
+	private final static int MIN_PARALLEL_SIZE = 256 * 256;
+	private final static ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime()
+			.availableProcessors(), new DaemonThreadFactory("Binary triangle tree builder"));
+
 	private final List<Position> positions;
+	private final double[] elevations;
 	private final int width;
 	private final int height;
 	private boolean generateTextureCoordinates = false;
 	private boolean forceGLTriangles = false;
+	private boolean parallel = true;
 
 	/**
 	 * Create a new {@link BinaryTriangleTree} object.
@@ -61,6 +83,13 @@ public class BinaryTriangleTree
 		this.positions = positions;
 		this.width = width;
 		this.height = height;
+
+		elevations = new double[positions.size()];
+		int i = 0;
+		for (Position position : positions)
+		{
+			elevations[i++] = position.elevation;
+		}
 	}
 
 	/**
@@ -102,6 +131,25 @@ public class BinaryTriangleTree
 		this.forceGLTriangles = forceGLTriangles;
 	}
 
+	/**
+	 * @return Are large meshes built using multiple threads?
+	 */
+	public boolean isParallel()
+	{
+		return parallel;
+	}
+
+	/**
+	 * Enable/disable building the independent squares of large meshes on
+	 * multiple threads. The generated mesh is the same either way.
+	 * 
+	 * @param parallel
+	 */
+	public void setParallel(boolean parallel)
+	{
+		this.parallel = parallel;
+	}
+
 	/**
 	 * Build a mesh from the position grid.
 	 * 
@@ -147,9 +195,9 @@ public class BinaryTriangleTree
 			return buildFullMesh(rectangle);
 		}
 
-		List<BTTTriangle> triangles = new ArrayList<BTTTriangle>();
-		buildMesh(maxVariance, rectangle.x, rectangle.y, rectangle.width, rectangle.height, false, false, triangles);
-		return buildFastShape(triangles);
+		List<int[]> squares = new ArrayList<int[]>();
+		buildMesh(rectangle.x, rectangle.y, rectangle.width, rectangle.height, false, false, squares);
+		return buildFastShape(buildTrees(maxVariance, squares));
 	}
 
 	/**
@@ -171,7 +219,7 @@ public class BinaryTriangleTree
 			return buildFullMesh(rectangle);
 		}
 
-		List<BTTTriangle> triangles = new ArrayList<BTTTriangle>();
+		List<int[]> squares = new ArrayList<int[]>();
 
 		int centerWidth = Util.nextLowestPowerOf2Plus1(rectangle.width);
 		int centerHeight = Util.nextLowestPowerOf2Plus1(rectangle.height);
@@ -180,18 +228,17 @@ public class BinaryTriangleTree
 		int remainingWidth = rectangle.width - centerWidth - centerXOffset;
 		int remainingHeight = rectangle.height - centerHeight - centerYOffset;
 
-		buildMesh(maxVariance, rectangle.x + centerXOffset, rectangle.y + centerYOffset, centerWidth, centerHeight,
-				false, false, triangles);
-		buildMesh(maxVariance, rectangle.x, rectangle.y, centerWidth + centerXOffset, centerYOffset + 1, true, true,
-				triangles);
-		buildMesh(maxVariance, rectangle.x, rectangle.y + centerYOffset, centerXOffset + 1, rectangle.height
-				- centerYOffset, true, false, triangles);
-		buildMesh(maxVariance, rectangle.x + centerWidth + centerXOffset - 1, rectangle.y, remainingWidth + 1,
-				centerHeight + centerYOffset, false, true, triangles);
-		buildMesh(maxVariance, rectangle.x + centerXOffset, rectangle.y + centerHeight + centerYOffset - 1,
-				rectangle.width - centerXOffset, remainingHeight + 1, false, false, triangles);
-
-		return buildFastShape(triangles);
+		buildMesh(rectangle.x + centerXOffset, rectangle.y + centerYOffset, centerWidth, centerHeight, false, false,
+				squares);
+		buildMesh(rectangle.x, rectangle.y, centerWidth + centerXOffset, centerYOffset + 1, true, true, squares);
+		buildMesh(rectangle.x, rectangle.y + centerYOffset, centerXOffset + 1, rectangle.height - centerYOffset, true,
+				false, squares);
+		buildMesh(rectangle.x + centerWidth + centerXOffset - 1, rectangle.y, remainingWidth + 1, centerHeight
+				+ centerYOffset, false, true, squares);
+		buildMesh(rectangle.x + centerXOffset, rectangle.y + centerHeight + centerYOffset - 1, rectangle.width
+				- centerXOffset, remainingHeight + 1, false, false, squares);
+
+		return buildFastShape(buildTrees(maxVariance, squares));
 	}
 
 	/**
@@ -294,13 +341,10 @@ public class BinaryTriangleTree
 	}
 
 	/**
-	 * Build a mesh within the given rectangle, adding triangles to the triangle
-	 * list. Because the BTT algorithm only supports power-of-2-plus-1 squares,
-	 * this function divides the rectangle area into squares and then builds the
-	 * tree from the sub-squares.
+	 * Divide the given rectangle into squares, adding the squares to the
+	 * square list. Because the BTT algorithm only supports power-of-2-plus-1
+	 * squares, the mesh is built from a tree for each of these sub-squares.
 	 * 
-	 * @param maxVariance
-	 *            BTT algorithm variance
 	 * @param x
 	 *            Rectangle x coordinate
 	 * @param y
@@ -313,11 +357,11 @@ public class BinaryTriangleTree
 	 *            Begin the mesh building from the right instead of left?
 	 * @param reverseY
 	 *            Begin the mesh building from the bottom instead of top?
-	 * @param triangles
-	 *            Triangle list to add generated triangles to
+	 * @param squares
+	 *            List to add the squares to, as {x, y, size} arrays
 	 */
-	protected void buildMesh(float maxVariance, int x, int y, int width, int height, boolean reverseX,
-			boolean reverseY, List<BTTTriangle> triangles)
+	protected void buildMesh(int x, int y, int width, int height, boolean reverseX, boolean reverseY,
+			List<int[]> squares)
 	{
 		//cannot build a mesh between less that 2 rows/columns
 		if (width < 2 || height < 2)
@@ -337,7 +381,7 @@ public class BinaryTriangleTree
 				{
 					int tx = reverseX ? width - xStart - currentWidth + x * 2 : xStart;
 					int ty = reverseY ? height - yStart - yOffset - currentWidth + y * 2 : yStart + yOffset;
-					buildTree(maxVariance, tx, ty, currentWidth, triangles);
+					squares.add(new int[] { tx, ty, currentWidth });
 				}
 				remainingWidth -= currentWidth - 1;
 				xStart += currentWidth - 1;
@@ -348,109 +392,103 @@ public class BinaryTriangleTree
 	}
 
 	/**
-	 * Build a BinaryTriangleTree starting at the x,y coordinate.
+	 * Build a tree for each of the given squares, and return the leaf
+	 * triangles of all the trees, in square order.
 	 * 
 	 * @param maxVariance
 	 *            BTT algorithm variance
-	 * @param x
-	 *            x coordinate from which to start
-	 * @param y
-	 *            y coordinate from which to start
-	 * @param size
-	 *            Size of the square (must be a power of 2 plus 1)
-	 * @param triangles
-	 *            Triangle list to add generated triangles to
+	 * @param squares
+	 *            Squares to build trees for, as {x, y, size} arrays
+	 * @return Leaf triangles, as {apex, left, right} index triples
 	 */
-	protected void buildTree(float maxVariance, int x, int y, int size, List<BTTTriangle> triangles)
+	protected int[] buildTrees(final float maxVariance, List<int[]> squares)
 	{
-		/*
-		 *  left
-		 *     +---+
-		 *     |\  |
-		 *     | \ |
-		 *     |  \|
-		 *     +---+
-		 *  apex   right
-		 */
+		int[][] leaves = new int[squares.size()][];
 
-		int apex1 = x + y * width, left1 = x + (y + size - 1) * width, right1 = (x + size - 1) + y * width;
-		BTTTriangle t1 = new BTTTriangle(apex1, left1, right1);
-
-		int apex2 = (x + size - 1) + (y + size - 1) * width, left2 = (x + size - 1) + y * width, right2 =
-				x + (y + size - 1) * width;
-		BTTTriangle t2 = new BTTTriangle(apex2, left2, right2);
-
-		t1.bottomNeighbour = t2;
-		t2.bottomNeighbour = t1;
-
-		buildFace(maxVariance, t1, x, y, size);
-		buildFace(maxVariance, t2, x, y, size);
-
-		addLeavesToTriangleList(t1, triangles);
-		addLeavesToTriangleList(t2, triangles);
-	}
-
-	/**
-	 * Recursively sub-divide triangles within t if the triangle variance is
-	 * greater than the maxVariance.
-	 * 
-	 * @param maxVariance
-	 *            BTT algorithm variance
-	 * @param t
-	 *            Triangle to sub-divide
-	 * @param x
-	 *            x coordinate from which the area started
-	 * @param y
-	 *            y coordinate from which the area started
-	 * @param size
-	 *            Size of the square (must be a power of 2 plus 1)
-	 */
-	protected void buildFace(float maxVariance, BTTTriangle t, int x, int y, int size)
-	{
-		if (t.leftChild != null)
+		long area = 0;
+		for (int[] square : squares)
 		{
-			buildFace(maxVariance, t.leftChild, x, y, size);
-			buildFace(maxVariance, t.rightChild, x, y, size);
+			area += (long) square[2] * square[2];
 		}
-		else
+
+		if (parallel && squares.size() > 1 && area >= MIN_PARALLEL_SIZE)
 		{
-			boolean atLowestLevel =
-					Math.abs(t.apexIndex - t.leftIndex) == 1 || Math.abs(t.apexIndex - t.rightIndex) == 1;
-			if (!atLowestLevel)
+			List<Future<int[]>> futures = new ArrayList<Future<int[]>>(squares.size());
+			for (final int[] square : squares)
 			{
-				if (isAnyIndexOnEdge(t.apexIndex, t.leftIndex, t.rightIndex, x, y, size)
-						|| calculateVariance(t.apexIndex, t.leftIndex, t.rightIndex) >= maxVariance)
+				futures.add(executor.submit(new Callable<int[]>()
 				{
-					trySplitFace(t);
-					buildFace(maxVariance, t.leftChild, x, y, size);
-					buildFace(maxVariance, t.rightChild, x, y, size);
+					@Override
+					public int[] call() throws Exception
+					{
+						return buildTree(maxVariance, square[0], square[1], square[2]);
+					}
+				}));
+			}
+			try
+			{
+				for (int i = 0; i < leaves.length; i++)
+				{
+					leaves[i] = futures.get(i).get();
 				}
 			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while building mesh", e);
+			}
+			catch (ExecutionException e)
+			{
+				throw new IllegalStateException("Error building mesh", e.getCause());
+			}
+			finally
+			{
+				for (Future<int[]> future : futures)
+				{
+					future.cancel(true);
+				}
+			}
+		}
+		else
+		{
+			for (int i = 0; i < leaves.length; i++)
+			{
+				int[] square = squares.get(i);
+				leaves[i] = buildTree(maxVariance, square[0], square[1], square[2]);
+			}
 		}
+
+		int length = 0;
+		for (int[] l : leaves)
+		{
+			length += l.length;
+		}
+		int[] triangles = new int[length];
+		int offset = 0;
+		for (int[] l : leaves)
+		{
+			System.arraycopy(l, 0, triangles, offset, l.length);
+			offset += l.length;
+		}
+		return triangles;
 	}
 
 	/**
-	 * Test if any of the provided indices are on the edge of the BTT
-	 * calculation square.
+	 * Build a BinaryTriangleTree starting at the x,y coordinate.
 	 * 
-	 * @param apexIndex
-	 *            Index of the triangle apex position
-	 * @param leftIndex
-	 *            Index of the triangle left position
-	 * @param rightIndex
-	 *            Index of the triangle right position
+	 * @param maxVariance
+	 *            BTT algorithm variance
 	 * @param x
-	 *            x coordinate from which the area started
+	 *            x coordinate from which to start
 	 * @param y
-	 *            y coordinate from which the area started
+	 *            y coordinate from which to start
 	 * @param size
 	 *            Size of the square (must be a power of 2 plus 1)
-	 * @return True if the provided indices are on the edge of the area
+	 * @return Leaf triangles of the tree, as {apex, left, right} index triples
 	 */
-	protected boolean isAnyIndexOnEdge(int apexIndex, int leftIndex, int rightIndex, int x, int y, int size)
+	protected int[] buildTree(float maxVariance, int x, int y, int size)
 	{
-		return isIndexOnEdge(apexIndex, x, y, size) || isIndexOnEdge(leftIndex, x, y, size)
-				|| isIndexOnEdge(rightIndex, x, y, size);
+		return new TriangleTree(x, y, size).build(maxVariance);
 	}
 
 	/**
@@ -473,108 +511,6 @@ public class BinaryTriangleTree
 		return ix == x || iy == y || ix == x + size - 1 || iy == y + size - 1;
 	}
 
-	/**
-	 * Try splitting the given triangle. If the triangle's bottom neighbour
-	 * isn't split, it also gets split to ensure there's no gaps in the mesh.
-	 * 
-	 * @param t
-	 *            Triangle to split.
-	 */
-	protected void trySplitFace(BTTTriangle t)
-	{
-		if (t.bottomNeighbour != null)
-		{
-			if (t.bottomNeighbour.bottomNeighbour != t)
-			{
-				trySplitFace(t.bottomNeighbour);
-			}
-			splitFace(t);
-			splitFace(t.bottomNeighbour);
-			t.leftChild.rightNeighbour = t.bottomNeighbour.rightChild;
-			t.rightChild.leftNeighbour = t.bottomNeighbour.leftChild;
-			t.bottomNeighbour.leftChild.rightNeighbour = t.rightChild;
-			t.bottomNeighbour.rightChild.leftNeighbour = t.leftChild;
-		}
-		else
-		{
-			splitFace(t);
-		}
-	}
-
-	/**
-	 * Actually split the given triangle.
-	 * 
-	 * @param t
-	 *            Triangle to split.
-	 */
-	protected void splitFace(BTTTriangle t)
-	{
-		int midpointIndex = hypotenuseMidpointIndex(t.leftIndex, t.rightIndex);
-		t.rightChild = new BTTTriangle(midpointIndex, t.rightIndex, t.apexIndex);
-		t.leftChild = new BTTTriangle(midpointIndex, t.apexIndex, t.leftIndex);
-		t.leftChild.leftNeighbour = t.rightChild;
-		t.rightChild.rightNeighbour = t.leftChild;
-
-		t.leftChild.bottomNeighbour = t.leftNeighbour;
-		if (t.leftNeighbour != null)
-		{
-			if (t.leftNeighbour.bottomNeighbour == t)
-			{
-				t.leftNeighbour.bottomNeighbour = t.leftChild;
-			}
-			else if (t.leftNeighbour.leftNeighbour == t)
-			{
-				t.leftNeighbour.leftNeighbour = t.leftChild;
-			}
-			else
-			{
-				t.leftNeighbour.rightNeighbour = t.leftChild;
-			}
-		}
-
-		t.rightChild.bottomNeighbour = t.rightNeighbour;
-		if (t.rightNeighbour != null)
-		{
-			if (t.rightNeighbour.bottomNeighbour == t)
-			{
-				t.rightNeighbour.bottomNeighbour = t.rightChild;
-			}
-			else if (t.rightNeighbour.rightNeighbour == t)
-			{
-				t.rightNeighbour.rightNeighbour = t.rightChild;
-			}
-			else
-			{
-				t.rightNeighbour.leftNeighbour = t.rightChild;
-			}
-		}
-	}
-
-	/**
-	 * Calculate the variance of the provided triangle.
-	 * 
-	 * @param apexIndex
-	 *            Index of the triangle apex position.
-	 * @param leftIndex
-	 *            Index of the triangle left position.
-	 * @param rightIndex
-	 *            Index of the triangle right position.
-	 * @return Variance of the triangle.
-	 */
-	protected float calculateVariance(int apexIndex, int leftIndex, int rightIndex)
-	{
-		if (Math.abs(apexIndex - leftIndex) == 1 || Math.abs(apexIndex - rightIndex) == 1)
-			return 0;
-
-		int midpointIndex = hypotenuseMidpointIndex(leftIndex, rightIndex);
-		double midpointElevation = positions.get(midpointIndex).elevation;
-		double interpolatedElevation = (positions.get(leftIndex).elevation + positions.get(rightIndex).elevation) / 2;
-		float delta = (float) Math.abs(midpointElevation - interpolatedElevation);
-		delta = Math.max(delta, calculateVariance(midpointIndex, rightIndex, apexIndex));
-		delta = Math.max(delta, calculateVariance(midpointIndex, apexIndex, leftIndex));
-		return delta;
-	}
-
 	/**
 	 * Index of the midpoint position between the two provided indices.
 	 * 
@@ -594,76 +530,63 @@ public class BinaryTriangleTree
 	}
 
 	/**
-	 * Recursively add all the leaves of the binary triangle tree to the
-	 * provided triangle list, beginning at the provided triangle.
-	 * 
-	 * @param t
-	 *            Parent triangle to add leaves from
-	 * @param triangles
-	 *            Triangle list to add leaves to
-	 */
-	protected void addLeavesToTriangleList(BTTTriangle t, List<BTTTriangle> triangles)
-	{
-		if (t.leftChild == null || t.rightChild == null)
-		{
-			triangles.add(t);
-		}
-		else
-		{
-			//recurse through children
-			addLeavesToTriangleList(t.leftChild, triangles);
-			addLeavesToTriangleList(t.rightChild, triangles);
-		}
-	}
-
-	/**
-	 * Build a {@link FastShape} object from the list of binary triangle tree
-	 * leaves.
+	 * Build a {@link FastShape} object from the binary triangle tree leaves.
+	 * Grid positions that are equal are shared by a single vertex.
 	 * 
 	 * @param triangles
-	 *            Triangle list.
+	 *            Leaf triangles, as {apex, left, right} index triples
 	 * @return FastShape containing triangles from the provided triangle list.
 	 */
-	protected FastShape buildFastShape(List<BTTTriangle> triangles)
+	protected FastShape buildFastShape(int[] triangles)
 	{
 		List<Position> positions = new ArrayList<Position>();
 		List<Integer> originalIndices = new ArrayList<Integer>();
 		Map<Position, Integer> positionIndexMap = new HashMap<Position, Integer>();
-		int[] indices = new int[triangles.size() * 3];
-		int i = 0;
+		int[] indices = new int[triangles.length];
+
+		//vertex index for each grid index, to avoid looking up the map for every triangle corner
+		int[] gridVertexIndices = new int[this.positions.size()];
+		Arrays.fill(gridVertexIndices, -1);
+		boolean useGridVertexIndices = true;
 
-		for (BTTTriangle triangle : triangles)
+		int[] corners = new int[3];
+		for (int t = 0; t < triangles.length; t += 3)
 		{
-			Position apexPosition = this.positions.get(triangle.apexIndex);
-			Position leftPosition = this.positions.get(triangle.leftIndex);
-			Position rightPosition = this.positions.get(triangle.rightIndex);
-			Integer apexIndex = positionIndexMap.get(apexPosition);
-			Integer leftIndex = positionIndexMap.get(leftPosition);
-			Integer rightIndex = positionIndexMap.get(rightPosition);
-			if (apexIndex == null)
+			//look up all corners before adding any, as the original implementation did
+			for (int c = 0; c < 3; c++)
 			{
-				apexIndex = positions.size();
-				positionIndexMap.put(apexPosition, apexIndex);
-				positions.add(apexPosition);
-				originalIndices.add(triangle.apexIndex);
-			}
-			if (leftIndex == null)
-			{
-				leftIndex = positions.size();
-				positionIndexMap.put(leftPosition, leftIndex);
-				positions.add(leftPosition);
-				originalIndices.add(triangle.leftIndex);
+				int gridIndex = triangles[t + c];
+				int vertexIndex = useGridVertexIndices ? gridVertexIndices[gridIndex] : -1;
+				if (vertexIndex < 0)
+				{
+					Integer index = positionIndexMap.get(this.positions.get(gridIndex));
+					vertexIndex = index == null ? -1 : index;
+				}
+				corners[c] = vertexIndex;
 			}
-			if (rightIndex == null)
+			for (int c = 0; c < 3; c++)
 			{
-				rightIndex = positions.size();
-				positionIndexMap.put(rightPosition, rightIndex);
-				positions.add(rightPosition);
-				originalIndices.add(triangle.rightIndex);
+				int gridIndex = triangles[t + c];
+				if (corners[c] < 0)
+				{
+					Position position = this.positions.get(gridIndex);
+					corners[c] = positions.size();
+					if (positionIndexMap.put(position, corners[c]) != null)
+					{
+						//two equal positions were added in the same triangle, so the map no longer
+						//agrees with the grid indices; fall back to map lookups only
+						useGridVertexIndices = false;
+					}
+					positions.add(position);
+					originalIndices.add(gridIndex);
+				}
+				gridVertexIndices[gridIndex] = corners[c];
 			}
-			indices[i++] = leftIndex;
-			indices[i++] = apexIndex;
-			indices[i++] = rightIndex;
+
+			//corners are apex, left, right; the mesh uses left, apex, right winding
+			indices[t] = corners[1];
+			indices[t + 1] = corners[0];
+			indices[t + 2] = corners[2];
 		}
 
 		FastShape shape = new FastShape(positions, indices, GL.GL_TRIANGLES);
@@ -671,7 +594,7 @@ public class BinaryTriangleTree
 		if (generateTextureCoordinates)
 		{
 			float[] textureCoordinateBuffer = new float[positions.size() * 2];
-			i = 0;
+			int i = 0;
 			for (Integer index : originalIndices)
 			{
 				int x = index % width;
@@ -686,34 +609,298 @@ public class BinaryTriangleTree
 	}
 
 	/**
-	 * Helper class that stores binary triangle tree information.
+	 * The binary triangle tree for a single power-of-2-plus-1 square. Instead
+	 * of an object per triangle, triangles are stored as indices into flat
+	 * int arrays, with -1 representing no triangle.
+	 * <p/>
+	 * Triangle variances are cached in an implicit binary tree (the two root
+	 * triangles are nodes 2 and 3, and the children of node n are nodes 2n
+	 * and 2n+1), up to a maximum depth.
+	 */
+	protected class TriangleTree
+	{
+		private final static int MAX_VARIANCE_CACHE_SIZE = 1 << 20;
+		private final static int NONE = -1;
+
+		private final int x;
+		private final int y;
+		private final int size;
+
+		private int count = 0;
+		private int[] apex;
+		private int[] left;
+		private int[] right;
+		private int[] node;
+		private int[] leftChild;
+		private int[] rightChild;
+		private int[] leftNeighbour;
+		private int[] rightNeighbour;
+		private int[] bottomNeighbour;
+
+		private final float[] varianceCache;
+
+		public TriangleTree(int x, int y, int size)
+		{
+			this.x = x;
+			this.y = y;
+			this.size = size;
+
+			int capacity = 64;
+			apex = new int[capacity];
+			left = new int[capacity];
+			right = new int[capacity];
+			node = new int[capacity];
+			leftChild = new int[capacity];
+			rightChild = new int[capacity];
+			leftNeighbour = new int[capacity];
+			rightNeighbour = new int[capacity];
+			bottomNeighbour = new int[capacity];
+
+			//a square of size 2^k+1 has 2k levels of triangles below the two roots
+			int levels = 2 * Integer.numberOfTrailingZeros(Math.max(1, size - 1)) + 2;
+			int cacheSize = levels >= 31 ? MAX_VARIANCE_CACHE_SIZE : Math.min(MAX_VARIANCE_CACHE_SIZE, 1 << levels);
+			varianceCache = new float[cacheSize];
+			Arrays.fill(varianceCache, -1f);
+		}
+
+		/**
+		 * Build the tree, and return its leaf triangles.
+		 */
+		public int[] build(float maxVariance)
+		{
+			/*
+			 *  left
+			 *     +---+
+			 *     |\  |
+			 *     | \ |
+			 *     |  \|
+			 *     +---+
+			 *  apex   right
+			 */
+
+			int t1 = add(x + y * width, x + (y + size - 1) * width, (x + size - 1) + y * width, 2);
+			int t2 = add((x + size - 1) + (y + size - 1) * width, (x + size - 1) + y * width, x + (y + size - 1) * width, 3);
+
+			bottomNeighbour[t1] = t2;
+			bottomNeighbour[t2] = t1;
+
+			buildFace(maxVariance, t1);
+			buildFace(maxVariance, t2);
+
+			IntList leaves = new IntList();
+			addLeaves(t1, leaves);
+			addLeaves(t2, leaves);
+			return leaves.toArray();
+		}
+
+		private int add(int apexIndex, int leftIndex, int rightIndex, int nodeIndex)
+		{
+			if (count == apex.length)
+			{
+				int capacity = count * 2;
+				apex = Arrays.copyOf(apex, capacity);
+				left = Arrays.copyOf(left, capacity);
+				right = Arrays.copyOf(right, capacity);
+				node = Arrays.copyOf(node, capacity);
+				leftChild = Arrays.copyOf(leftChild, capacity);
+				rightChild = Arrays.copyOf(rightChild, capacity);
+				leftNeighbour = Arrays.copyOf(leftNeighbour, capacity);
+				rightNeighbour = Arrays.copyOf(rightNeighbour, capacity);
+				bottomNeighbour = Arrays.copyOf(bottomNeighbour, capacity);
+			}
+
+			int t = count++;
+			apex[t] = apexIndex;
+			left[t] = leftIndex;
+			right[t] = rightIndex;
+			node[t] = nodeIndex;
+			leftChild[t] = rightChild[t] = NONE;
+			leftNeighbour[t] = rightNeighbour[t] = bottomNeighbour[t] = NONE;
+			return t;
+		}
+
+		/**
+		 * Recursively sub-divide triangle t if the triangle variance is
+		 * greater than the maxVariance.
+		 */
+		private void buildFace(float maxVariance, int t)
+		{
+			if (leftChild[t] != NONE)
+			{
+				buildFace(maxVariance, leftChild[t]);
+				buildFace(maxVariance, rightChild[t]);
+			}
+			else
+			{
+				boolean atLowestLevel = Math.abs(apex[t] - left[t]) == 1 || Math.abs(apex[t] - right[t]) == 1;
+				if (!atLowestLevel)
+				{
+					if (isIndexOnEdge(apex[t], x, y, size) || isIndexOnEdge(left[t], x, y, size)
+							|| isIndexOnEdge(right[t], x, y, size)
+							|| variance(apex[t], left[t], right[t], node[t]) >= maxVariance)
+					{
+						trySplitFace(t);
+						buildFace(maxVariance, leftChild[t]);
+						buildFace(maxVariance, rightChild[t]);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Try splitting the given triangle. If the triangle's bottom neighbour
+		 * isn't split, it also gets split to ensure there's no gaps in the
+		 * mesh.
+		 */
+		private void trySplitFace(int t)
+		{
+			if (bottomNeighbour[t] != NONE)
+			{
+				if (bottomNeighbour[bottomNeighbour[t]] != t)
+				{
+					trySplitFace(bottomNeighbour[t]);
+				}
+				//splitting the bottom neighbour may have changed it, so don't read it earlier
+				int b = bottomNeighbour[t];
+				splitFace(t);
+				splitFace(b);
+				rightNeighbour[leftChild[t]] = rightChild[b];
+				leftNeighbour[rightChild[t]] = leftChild[b];
+				rightNeighbour[leftChild[b]] = rightChild[t];
+				leftNeighbour[rightChild[b]] = leftChild[t];
+			}
+			else
+			{
+				splitFace(t);
+			}
+		}
+
+		/**
+		 * Actually split the given triangle.
+		 */
+		private void splitFace(int t)
+		{
+			int midpointIndex = hypotenuseMidpointIndex(left[t], right[t]);
+			int rc = add(midpointIndex, right[t], apex[t], childNode(node[t], 0));
+			int lc = add(midpointIndex, apex[t], left[t], childNode(node[t], 1));
+			rightChild[t] = rc;
+			leftChild[t] = lc;
+			leftNeighbour[lc] = rc;
+			rightNeighbour[rc] = lc;
+
+			int ln = leftNeighbour[t];
+			bottomNeighbour[lc] = ln;
+			if (ln != NONE)
+			{
+				if (bottomNeighbour[ln] == t)
+				{
+					bottomNeighbour[ln] = lc;
+				}
+				else if (leftNeighbour[ln] == t)
+				{
+					leftNeighbour[ln] = lc;
+				}
+				else
+				{
+					rightNeighbour[ln] = lc;
+				}
+			}
+
+			int rn = rightNeighbour[t];
+			bottomNeighbour[rc] = rn;
+			if (rn != NONE)
+			{
+				if (bottomNeighbour[rn] == t)
+				{
+					bottomNeighbour[rn] = rc;
+				}
+				else if (rightNeighbour[rn] == t)
+				{
+					rightNeighbour[rn] = rc;
+				}
+				else
+				{
+					leftNeighbour[rn] = rc;
+				}
+			}
+		}
+
+		private int childNode(int nodeIndex, int child)
+		{
+			if (nodeIndex == NONE)
+			{
+				return NONE;
+			}
+			long childIndex = 2L * nodeIndex + child;
+			return childIndex < varianceCache.length ? (int) childIndex : NONE;
+		}
+
+		/**
+		 * Calculate the variance of the provided triangle (the maximum
+		 * difference between the elevation of a hypotenuse midpoint and the
+		 * interpolated elevation, for this triangle and all its descendants).
+		 */
+		private float variance(int apexIndex, int leftIndex, int rightIndex, int nodeIndex)
+		{
+			if (Math.abs(apexIndex - leftIndex) == 1 || Math.abs(apexIndex - rightIndex) == 1)
+				return 0;
+
+			if (nodeIndex != NONE && varianceCache[nodeIndex] != -1f)
+				return varianceCache[nodeIndex];
+
+			int midpointIndex = hypotenuseMidpointIndex(leftIndex, rightIndex);
+			double midpointElevation = elevations[midpointIndex];
+			double interpolatedElevation = (elevations[leftIndex] + elevations[rightIndex]) / 2;
+			float delta = (float) Math.abs(midpointElevation - interpolatedElevation);
+			delta = Math.max(delta, variance(midpointIndex, rightIndex, apexIndex, childNode(nodeIndex, 0)));
+			delta = Math.max(delta, variance(midpointIndex, apexIndex, leftIndex, childNode(nodeIndex, 1)));
+
+			if (nodeIndex != NONE)
+				varianceCache[nodeIndex] = delta;
+			return delta;
+		}
+
+		/**
+		 * Recursively add all the leaves of the tree to the provided list,
+		 * beginning at the provided triangle.
+		 */
+		private void addLeaves(int t, IntList leaves)
+		{
+			if (leftChild[t] == NONE || rightChild[t] == NONE)
+			{
+				leaves.add(apex[t]);
+				leaves.add(left[t]);
+				leaves.add(right[t]);
+			}
+			else
+			{
+				//recurse through children
+				addLeaves(leftChild[t], leaves);
+				addLeaves(rightChild[t], leaves);
+			}
+		}
+	}
+
+	/**
+	 * Minimal growable int array.
 	 */
-	protected class BTTTriangle
+	private static class IntList
 	{
-		public final int apexIndex;
-		public final int leftIndex;
-		public final int rightIndex;
-		public BTTTriangle leftChild;
-		public BTTTriangle rightChild;
-		public BTTTriangle leftNeighbour;
-		public BTTTriangle rightNeighbour;
-		public BTTTriangle bottomNeighbour;
-
-		public BTTTriangle(int apexIndex, int leftIndex, int rightIndex)
+		private int[] values = new int[96];
+		private int size = 0;
+
+		public void add(int value)
 		{
-			this.apexIndex = apexIndex;
-			this.leftIndex = leftIndex;
-			this.rightIndex = rightIndex;
+			if (size == values.length)
+			{
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
 		}
 
-		@Override
-		public String toString()
+		public int[] toArray()
 		{
-			return "Left: " + (leftIndex % BinaryTriangleTree.this.width) + ","
-					+ (leftIndex / BinaryTriangleTree.this.width) + ", Apex: "
-					+ (apexIndex % BinaryTriangleTree.this.width) + "," + (apexIndex / BinaryTriangleTree.this.width)
-					+ ", Right: " + (rightIndex % BinaryTriangleTree.this.width) + ","
-					+ (rightIndex / BinaryTriangleTree.this.width);
+			return Arrays.copyOf(values, size);
 		}
 	}
 }
@@ -15,19 +15,49 @@
  ******************************************************************************/
 package au.gov.ga.worldwind.common.terrain;
 
+import gov.nasa.worldwind.geom.Angle;
+import gov.nasa.worldwind.geom.LatLon;
 import gov.nasa.worldwind.geom.Sector;
 import gov.nasa.worldwind.globes.ElevationModel;
 import gov.nasa.worldwind.terrain.CompoundElevationModel;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import au.gov.ga.worldwind.common.layers.Bounded;
 
 /**
  * Extension to {@link CompoundElevationModel} that implements the
  * {@link Bounded} interface.
+ * <p/>
+ * The child models are indexed by their sectors (see {@link SectorGridIndex}),
+ * so that elevation queries only touch the children that cover the queried
+ * location or sector, instead of testing every child. Children that don't
+ * implement {@link Bounded} are tested on every query. Best resolution answers
+ * are cached per sector.
+ * <p/>
+ * The index is rebuilt when children are added or removed through this
+ * class' methods. Subclasses that modify the elevationModels list directly
+ * should call {@link #invalidateIndex()}.
  * 
  * @author Michael de Hoog (michael.dehoog@ga.gov.au)
  */
 public class BoundedCompoundElevationModel extends CompoundElevationModel implements Bounded
 {
+	protected final static int RESOLUTION_CACHE_SIZE = 256;
+
+	private volatile ModelIndex index;
+	private int modifications = 0; //guarded by resolutionCache
+	private final Map<Sector, Double> resolutionCache = new LinkedHashMap<Sector, Double>(16, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Sector, Double> eldest)
+		{
+			return size() > RESOLUTION_CACHE_SIZE;
+		}
+	};
+
 	@Override
 	public Sector getSector()
 	{
@@ -45,4 +75,244 @@ public class BoundedCompoundElevationModel extends CompoundElevationModel implem
 		}
 		return sector;
 	}
+
+	@Override
+	public void addElevationModel(ElevationModel em)
+	{
+		super.addElevationModel(em);
+		invalidateIndex();
+	}
+
+	@Override
+	public void addElevationModel(int index, ElevationModel em)
+	{
+		super.addElevationModel(index, em);
+		invalidateIndex();
+	}
+
+	@Override
+	public void removeElevationModel(ElevationModel em)
+	{
+		super.removeElevationModel(em);
+		invalidateIndex();
+	}
+
+	@Override
+	public void removeElevationModel(int index)
+	{
+		super.removeElevationModel(index);
+		invalidateIndex();
+	}
+
+	@Override
+	public void setElevationModel(int index, ElevationModel em)
+	{
+		super.setElevationModel(index, em);
+		invalidateIndex();
+	}
+
+	/**
+	 * Discard the index of child models and the cached resolutions. The index
+	 * is rebuilt on the next query.
+	 */
+	public void invalidateIndex()
+	{
+		synchronized (resolutionCache)
+		{
+			modifications++;
+			index = null;
+			resolutionCache.clear();
+		}
+	}
+
+	protected ModelIndex getIndex()
+	{
+		ModelIndex index = this.index;
+		if (index == null)
+		{
+			int modification;
+			synchronized (resolutionCache)
+			{
+				modification = modifications;
+			}
+
+			index = new ModelIndex(getElevationModels());
+
+			//don't install an index built from a list that was modified while it was being built
+			synchronized (resolutionCache)
+			{
+				if (modification == modifications && this.index == null)
+				{
+					this.index = index;
+				}
+				else if (this.index != null)
+				{
+					index = this.index;
+				}
+			}
+		}
+		return index;
+	}
+
+	@Override
+	public double getUnmappedElevation(Angle latitude, Angle longitude)
+	{
+		ModelIndex index = getIndex();
+		int[] candidates = index.grid.query(latitude.degrees, longitude.degrees);
+
+		// Iterate from highest resolution to lowest, and return the first value that isn't the missing data signal.
+		for (int i = candidates.length - 1; i >= 0; i--)
+		{
+			ElevationModel em = index.models[candidates[i]];
+			if (!em.contains(latitude, longitude))
+				continue;
+
+			double emValue = em.getUnmappedElevation(latitude, longitude);
+			if (emValue != em.getMissingDataSignal())
+				return emValue;
+		}
+		return getMissingDataSignal();
+	}
+
+	@Override
+	public double getElevations(Sector sector, List<? extends LatLon> latlons, double targetResolution,
+			double[] buffer)
+	{
+		return doGetElevations(sector, latlons, targetResolution, buffer, true);
+	}
+
+	@Override
+	public double getUnmappedElevations(Sector sector, List<? extends LatLon> latlons, double targetResolution,
+			double[] buffer)
+	{
+		return doGetElevations(sector, latlons, targetResolution, buffer, false);
+	}
+
+	protected double doGetElevations(Sector sector, List<? extends LatLon> latlons, double targetResolution,
+			double[] buffer, boolean mapMissingData)
+	{
+		ModelIndex index = getIndex();
+		int[] candidates = query(index, sector);
+
+		// Fill the buffer from the lowest resolution model to the highest, potentially overwriting values at each
+		// step. Models leave the buffer untouched for locations outside their coverage area.
+		double resolutionAchieved = 0;
+		for (int i = 0; i < candidates.length; i++)
+		{
+			ElevationModel em = index.models[candidates[i]];
+			if (em.intersects(sector) < 0)
+				continue;
+
+			double r;
+			if (mapMissingData || index.models.length == 1)
+				r = em.getElevations(sector, latlons, targetResolution, buffer);
+			else
+				r = em.getUnmappedElevations(sector, latlons, targetResolution, buffer);
+
+			if (r < resolutionAchieved || resolutionAchieved == 0)
+				resolutionAchieved = r;
+		}
+		return resolutionAchieved;
+	}
+
+	@Override
+	public double getBestResolution(Sector sector)
+	{
+		if (sector == null)
+			return super.getBestResolution(sector);
+
+		synchronized (resolutionCache)
+		{
+			Double cached = resolutionCache.get(sector);
+			if (cached != null)
+				return cached;
+		}
+
+		ModelIndex index = getIndex();
+		int[] candidates = query(index, sector);
+		double res = 0;
+		for (int i = 0; i < candidates.length; i++)
+		{
+			ElevationModel em = index.models[candidates[i]];
+			if (em.intersects(sector) < 0)
+				continue;
+
+			double r = em.getBestResolution(sector);
+			if (r < res || res == 0)
+				res = r;
+		}
+		res = res != 0 ? res : Double.MAX_VALUE;
+
+		//only cache if the index hasn't been invalidated during the calculation
+		synchronized (resolutionCache)
+		{
+			if (index == this.index)
+				resolutionCache.put(sector, res);
+		}
+		return res;
+	}
+
+	@Override
+	public int intersects(Sector sector)
+	{
+		ModelIndex index = getIndex();
+		int[] candidates = query(index, sector);
+		boolean intersects = false;
+		for (int i = 0; i < candidates.length; i++)
+		{
+			int c = index.models[candidates[i]].intersects(sector);
+			if (c == 0) // sector fully contained in the model
+				return 0;
+			if (c == 1)
+				intersects = true;
+		}
+		return intersects ? 1 : -1;
+	}
+
+	@Override
+	public boolean contains(Angle latitude, Angle longitude)
+	{
+		ModelIndex index = getIndex();
+		int[] candidates = index.grid.query(latitude.degrees, longitude.degrees);
+		for (int i = 0; i < candidates.length; i++)
+		{
+			if (index.models[candidates[i]].contains(latitude, longitude))
+				return true;
+		}
+		return false;
+	}
+
+	private static int[] query(ModelIndex index, Sector sector)
+	{
+		return index.grid.query(sector.getMinLatitude().degrees, sector.getMinLongitude().degrees,
+				sector.getMaxLatitude().degrees, sector.getMaxLongitude().degrees);
+	}
+
+	/**
+	 * Snapshot of the child models, in resolution order, and the index of
+	 * their sectors.
+	 */
+	protected static class ModelIndex
+	{
+		public final ElevationModel[] models;
+		public final SectorGridIndex grid = new SectorGridIndex();
+
+		public ModelIndex(List<ElevationModel> models)
+		{
+			this.models = models.toArray(new ElevationModel[models.size()]);
+			for (ElevationModel model : this.models)
+			{
+				Sector sector = model instanceof Bounded ? ((Bounded) model).getSector() : null;
+				if (sector == null)
+				{
+					grid.addUnbounded();
+				}
+				else
+				{
+					grid.add(sector.getMinLatitude().degrees, sector.getMinLongitude().degrees,
+							sector.getMaxLatitude().degrees, sector.getMaxLongitude().degrees);
+				}
+			}
+		}
+	}
 }
@@ -33,7 +33,6 @@ import org.w3c.dom.Element;
 
 import au.gov.ga.worldwind.common.util.AVKeyMore;
 import au.gov.ga.worldwind.common.util.IOUtil;
-import au.gov.ga.worldwind.common.util.URLUtil;
 import au.gov.ga.worldwind.common.util.Util;
 
 /**
@@ -115,16 +114,13 @@ public class FileElevationModel extends BoundedBasicElevationModel
 	@Override
 	protected BufferWrapper readElevations(URL url) throws IOException
 	{
-		//overridden to handle unzipping the file if required
-
-		if (!URLUtil.isForResourceWithExtension(url, "zip"))
-		{
-			return super.readElevations(url);
-		}
+		//overridden to handle unzipping the file if required, and to memory-map
+		//local tiles instead of copying them to the heap; the tiles are never
+		//written by this model, so no locking is required and reads are concurrent
 
 		try
 		{
-			return IOUtil.readByteBuffer(url, this.getElevationDataType(), this.getElevationDataByteOrder());
+			return IOUtil.mapByteBuffer(url, this.getElevationDataType(), this.getElevationDataByteOrder());
 		}
 		catch (java.io.IOException e)
 		{
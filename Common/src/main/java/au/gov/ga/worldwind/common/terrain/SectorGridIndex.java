@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.common.terrain;
+
+import java.util.Arrays;
+
+import au.gov.ga.worldwind.common.util.Validate;
+
+/**
+ * Index of latitude/longitude bounding boxes (in degrees), stored in a regular
+ * grid of cells. Used by the {@link BoundedCompoundElevationModel} to find the
+ * child models that cover a location or sector, without testing every child.
+ * <p/>
+ * Items are identified by the order in which they were added (starting at 0),
+ * and queries return the identifiers of the matching items in ascending order.
+ * Items that cover too many cells (such as global models), and unbounded
+ * items, are kept in a separate list that is tested on every query.
+ * <p/>
+ * This class is not threadsafe; it should be completely built before being
+ * shared between threads.
+ * 
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class SectorGridIndex
+{
+	public final static double DEFAULT_CELL_SIZE = 1; //degrees
+	public final static int DEFAULT_MAX_CELLS_PER_ITEM = 256;
+
+	private final static int[] EMPTY = new int[0];
+
+	private final double cellSize;
+	private final int maxCellsPerItem;
+	private final int rows;
+	private final int columns;
+
+	private double[] minLatitudes = new double[16];
+	private double[] minLongitudes = new double[16];
+	private double[] maxLatitudes = new double[16];
+	private double[] maxLongitudes = new double[16];
+	private int size = 0;
+
+	private final int[][] cells;
+	private final int[] cellSizes;
+	private int[] large = new int[16];
+	private int largeSize = 0;
+
+	public SectorGridIndex()
+	{
+		this(DEFAULT_CELL_SIZE, DEFAULT_MAX_CELLS_PER_ITEM);
+	}
+
+	/**
+	 * @param cellSize
+	 *            Size (in degrees) of the grid cells
+	 * @param maxCellsPerItem
+	 *            Items that cover more than this number of cells are tested on
+	 *            every query instead of being stored in the grid
+	 */
+	public SectorGridIndex(double cellSize, int maxCellsPerItem)
+	{
+		Validate.isTrue(cellSize > 0, "Cell size must be greater than 0");
+		Validate.isTrue(maxCellsPerItem > 0, "Max cells per item must be greater than 0");
+		this.cellSize = cellSize;
+		this.maxCellsPerItem = maxCellsPerItem;
+		this.rows = (int) Math.ceil(180 / cellSize);
+		this.columns = (int) Math.ceil(360 / cellSize);
+		this.cells = new int[rows * columns][];
+		this.cellSizes = new int[rows * columns];
+	}
+
+	/**
+	 * Add an item with the given bounds (inclusive).
+	 *
+	 * @return Identifier of the added item
+	 */
+	public int add(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude)
+	{
+		int index = size;
+		ensureCapacity(size + 1);
+		minLatitudes[index] = minLatitude;
+		minLongitudes[index] = minLongitude;
+		maxLatitudes[index] = maxLatitude;
+		maxLongitudes[index] = maxLongitude;
+		size++;
+
+		int minRow = row(minLatitude), maxRow = row(maxLatitude);
+		int minColumn = column(minLongitude), maxColumn = column(maxLongitude);
+		if (Double.isNaN(minLatitude) || Double.isNaN(minLongitude) || Double.isNaN(maxLatitude)
+				|| Double.isNaN(maxLongitude)
+				|| (long) (maxRow - minRow + 1) * (maxColumn - minColumn + 1) > maxCellsPerItem)
+		{
+			addLarge(index);
+			return index;
+		}
+
+		for (int row = minRow; row <= maxRow; row++)
+		{
+			for (int column = minColumn; column <= maxColumn; column++)
+			{
+				int cell = row * columns + column;
+				if (cells[cell] == null)
+				{
+					cells[cell] = new int[4];
+				}
+				else if (cellSizes[cell] == cells[cell].length)
+				{
+					cells[cell] = Arrays.copyOf(cells[cell], cellSizes[cell] * 2);
+				}
+				cells[cell][cellSizes[cell]++] = index;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Add an item without bounds, which matches every query.
+	 *
+	 * @return Identifier of the added item
+	 */
+	public int addUnbounded()
+	{
+		return add(Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+	}
+
+	/**
+	 * @return Number of items in this index
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Find the items whose bounds contain the given location.
+	 *
+	 * @return Identifiers of the matching items, in ascending order
+	 */
+	public int[] query(double latitude, double longitude)
+	{
+		int cell = row(latitude) * columns + column(longitude);
+		int[] cellItems = cells[cell] != null ? cells[cell] : EMPTY;
+		int cellSize = cellSizes[cell];
+
+		//merge the (ascending) cell and large lists
+		int[] results = new int[cellSize + largeSize];
+		int count = 0, i = 0, j = 0;
+		while (i < cellSize || j < largeSize)
+		{
+			int index;
+			if (j >= largeSize || (i < cellSize && cellItems[i] < large[j]))
+				index = cellItems[i++];
+			else
+				index = large[j++];
+
+			if (intersects(index, latitude, longitude, latitude, longitude))
+			{
+				results[count++] = index;
+			}
+		}
+		return count == results.length ? results : Arrays.copyOf(results, count);
+	}
+
+	/**
+	 * Find the items whose bounds intersect the given bounds (inclusive).
+	 *
+	 * @return Identifiers of the matching items, in ascending order
+	 */
+	public int[] query(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude)
+	{
+		int minRow = row(minLatitude), maxRow = row(maxLatitude);
+		int minColumn = column(minLongitude), maxColumn = column(maxLongitude);
+
+		//if the query covers more cells than there are items, a linear scan is cheaper
+		if ((long) (maxRow - minRow + 1) * (maxColumn - minColumn + 1) > size)
+		{
+			int[] results = new int[size];
+			int count = 0;
+			for (int index = 0; index < size; index++)
+			{
+				if (intersects(index, minLatitude, minLongitude, maxLatitude, maxLongitude))
+				{
+					results[count++] = index;
+				}
+			}
+			return Arrays.copyOf(results, count);
+		}
+
+		int candidateCount = largeSize;
+		for (int row = minRow; row <= maxRow; row++)
+		{
+			for (int column = minColumn; column <= maxColumn; column++)
+			{
+				candidateCount += cellSizes[row * columns + column];
+			}
+		}
+
+		int[] candidates = Arrays.copyOf(large, candidateCount);
+		int count = largeSize;
+		for (int row = minRow; row <= maxRow; row++)
+		{
+			for (int column = minColumn; column <= maxColumn; column++)
+			{
+				int cell = row * columns + column;
+				if (cellSizes[cell] > 0)
+				{
+					System.arraycopy(cells[cell], 0, candidates, count, cellSizes[cell]);
+					count += cellSizes[cell];
+				}
+			}
+		}
+
+		//items can be stored in more than one cell, so remove duplicates
+		Arrays.sort(candidates, 0, count);
+		int resultCount = 0;
+		for (int i = 0; i < count; i++)
+		{
+			int index = candidates[i];
+			if ((resultCount == 0 || candidates[resultCount - 1] != index)
+					&& intersects(index, minLatitude, minLongitude, maxLatitude, maxLongitude))
+			{
+				candidates[resultCount++] = index;
+			}
+		}
+		return Arrays.copyOf(candidates, resultCount);
+	}
+
+	private boolean intersects(int index, double minLatitude, double minLongitude, double maxLatitude,
+			double maxLongitude)
+	{
+		if (Double.isNaN(minLatitudes[index]) || Double.isNaN(minLongitudes[index])
+				|| Double.isNaN(maxLatitudes[index]) || Double.isNaN(maxLongitudes[index]))
+		{
+			return true;
+		}
+		return minLatitude <= maxLatitudes[index] && maxLatitude >= minLatitudes[index]
+				&& minLongitude <= maxLongitudes[index] && maxLongitude >= minLongitudes[index];
+	}
+
+	private int row(double latitude)
+	{
+		return Math.max(0, Math.min(rows - 1, (int) ((latitude + 90) / cellSize)));
+	}
+
+	private int column(double longitude)
+	{
+		return Math.max(0, Math.min(columns - 1, (int) ((longitude + 180) / cellSize)));
+	}
+
+	private void addLarge(int index)
+	{
+		if (largeSize == large.length)
+		{
+			large = Arrays.copyOf(large, largeSize * 2);
+		}
+		large[largeSize++] = index;
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity > minLatitudes.length)
+		{
+			int length = Math.max(capacity, minLatitudes.length * 2);
+			minLatitudes = Arrays.copyOf(minLatitudes, length);
+			minLongitudes = Arrays.copyOf(minLongitudes, length);
+			maxLatitudes = Arrays.copyOf(maxLatitudes, length);
+			maxLongitudes = Arrays.copyOf(maxLongitudes, length);
+		}
+	}
+}
@@ -28,6 +28,7 @@ import gov.nasa.worldwind.util.Logging;
 import gov.nasa.worldwind.util.Tile;
 import gov.nasa.worldwind.util.WWXML;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 
@@ -45,6 +46,10 @@ import au.gov.ga.worldwind.common.util.IOUtil;
  * and write to the same data cache name and synchronize with each other on the
  * same fileLock object. (Note: this has not yet been added to Bulk Download
  * facility).
+ * <p/>
+ * Elevation tiles are read and written while synchronized on the file lock of
+ * the tile's file, so that tile reads only wait for a concurrent write of the
+ * same tile.
  * 
  * @author Michael de Hoog (michael.dehoog@ga.gov.au)
  */
@@ -118,7 +123,8 @@ public class SharedLockBasicElevationModel extends URLTransformerBasicElevationM
 		@Override
 		protected Object getFileLock()
 		{
-			return em.fileLock;
+			File outputFile = getOutputFile();
+			return outputFile != null ? FileLockSharer.getFileLock(outputFile) : em.fileLock;
 		}
 	}
 
@@ -131,7 +137,8 @@ public class SharedLockBasicElevationModel extends URLTransformerBasicElevationM
 	{
 		try
 		{
-			synchronized (this.fileLock)
+			//only synchronize with writers of the same tile, so that different tiles are read concurrently
+			synchronized (FileLockSharer.getFileLock(url))
 			{
 				return IOUtil.readByteBuffer(url, getElevationDataType(), getElevationDataByteOrder());
 			}
@@ -56,11 +56,14 @@ public interface AVKeyMore extends AVKey
 	final static String FOLLOW_TERRAIN = "au.gov.ga.worldwind.AVKeyMore.FollowTerrain";
 	final static String SUBSEGMENTS = "au.gov.ga.worldwind.AVKeyMore.Subsegments";
 	final static String PATH = "au.gov.ga.worldwind.AVKeyMore.Path";
+	final static String PREFETCH = "au.gov.ga.worldwind.AVKeyMore.Prefetch";
+	final static String MAX_REQUESTS_IN_FLIGHT = "au.gov.ga.worldwind.AVKeyMore.MaxRequestsInFlight";
 
 	//data layers
 	final static String DATA_LAYER_PROVIDER = "au.gov.ga.worldwind.AVKeyMore.DataLayerProvider";
 	final static String DATA_LAYER_STYLES = "au.gov.ga.worldwind.AVKeyMore.DataLayerStyles";
 	final static String DATA_LAYER_ATTRIBUTES = "au.gov.ga.worldwind.AVKeyMore.DataLayerAttributes";
+	final static String CLUSTER_RESOLUTION = "au.gov.ga.worldwind.AVKeyMore.ClusterResolution";
 
 	//geometry layer
 	final static String SHAPE_TYPE = "au.gov.ga.worldwind.AVKeyMore.ShapeType";
@@ -84,6 +87,7 @@ public interface AVKeyMore extends AVKey
 
 	//elevation model
 	final static String EXTRACT_ZIP_ENTRY = "au.gov.ga.worldwind.AVKeyMore.ExtractZipEntry";
+	final static String COMPRESSED_TEXTURE_CACHE = "au.gov.ga.worldwind.AVKeyMore.CompressedTextureCache";
 
 	//voxet model
 	final static String BILINEAR_MINIFICATION = "au.gov.ga.worldwind.AVKeyMore.BilinearMinification";
@@ -129,4 +129,32 @@ public class ColorMap extends TreeMap<Double, Color>
 			return calculateColorAsPercentage(value, minimum, maximum);
 		return calculateColor(value);
 	}
+
+	/**
+	 * Create a precomputed lookup table for this color map, for mapping large
+	 * numbers of values to colors. The lookup table has the same behaviour as
+	 * {@link #calculateColorNotingIsValuesPercentages(double, double, double)}
+	 * (within the precision of the table's resolution).
+	 *
+	 * @param resolution
+	 *            Number of samples in the table
+	 * @param minimum
+	 * @param maximum
+	 * @return Lookup table for this color map
+	 */
+	public ColorMapLookupTable createLookupTable(int resolution, double minimum, double maximum)
+	{
+		return new ColorMapLookupTable(this, resolution, minimum, maximum);
+	}
+
+	/**
+	 * Create a precomputed lookup table for this color map using the
+	 * {@link ColorMapLookupTable#DEFAULT_RESOLUTION}.
+	 *
+	 * @see #createLookupTable(int, double, double)
+	 */
+	public ColorMapLookupTable createLookupTable(double minimum, double maximum)
+	{
+		return createLookupTable(ColorMapLookupTable.DEFAULT_RESOLUTION, minimum, maximum);
+	}
 }
@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.common.util;
+
+import java.awt.Color;
+import java.nio.FloatBuffer;
+
+/**
+ * Precomputed lookup table for a {@link ColorMap}. The color map is sampled at
+ * a fixed number of evenly spaced values across its domain, so that mapping a
+ * value to a color is a single array lookup, rather than a tree search and
+ * color interpolation (and allocation) per value.
+ * <p/>
+ * If the color map's values are percentages, the domain of the table is the
+ * minimum and maximum provided at creation; otherwise the domain is from the
+ * color map's first key to its last key. Values outside the domain are
+ * clamped, which matches the behaviour of {@link ColorMap#calculateColor(double)}.
+ * <p/>
+ * Instances are immutable and can be shared between threads. They are not
+ * updated if the color map they were created from is modified.
+ *
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class ColorMapLookupTable
+{
+	public final static int DEFAULT_RESOLUTION = 1024;
+
+	private final int[] argb;
+	private final float[] rgba;
+	private final double offset;
+	private final double scale;
+
+	/**
+	 * Create a new lookup table by sampling the given color map.
+	 *
+	 * @param colorMap
+	 *            Color map to sample
+	 * @param resolution
+	 *            Number of samples in the table (must be at least 2)
+	 * @param minimum
+	 *            Value that maps to 0% (only used if the color map's values
+	 *            are percentages)
+	 * @param maximum
+	 *            Value that maps to 100% (only used if the color map's values
+	 *            are percentages)
+	 */
+	public ColorMapLookupTable(ColorMap colorMap, int resolution, double minimum, double maximum)
+	{
+		Validate.isTrue(resolution >= 2, "Resolution must be at least 2");
+
+		argb = new int[resolution];
+		rgba = new float[resolution * 4];
+
+		//domain of the color map's keys covered by the table
+		double keyMin = 0, keyMax = 1;
+		if (!colorMap.isValuesPercentages() && !colorMap.isEmpty())
+		{
+			keyMin = colorMap.firstKey();
+			keyMax = colorMap.lastKey();
+		}
+
+		for (int i = 0; i < resolution; i++)
+		{
+			double key = keyMin + (keyMax - keyMin) * i / (resolution - 1);
+			Color color = colorMap.calculateColor(key);
+			argb[i] = color.getRGB();
+			rgba[i * 4 + 0] = color.getRed() / 255f;
+			rgba[i * 4 + 1] = color.getGreen() / 255f;
+			rgba[i * 4 + 2] = color.getBlue() / 255f;
+			rgba[i * 4 + 3] = color.getAlpha() / 255f;
+		}
+
+		//calculate the linear transform from value to table index
+		double valueMin = keyMin, valueMax = keyMax;
+		if (colorMap.isValuesPercentages())
+		{
+			valueMin = minimum;
+			valueMax = maximum;
+		}
+		double window = valueMax - valueMin;
+		this.offset = valueMin;
+		this.scale = window > 0 ? (resolution - 1) / window : 0;
+	}
+
+	/**
+	 * @return The number of samples in this table
+	 */
+	public int getResolution()
+	{
+		return argb.length;
+	}
+
+	/**
+	 * @return The index of the table entry for the given value, or -1 if the
+	 *         value is NaN
+	 */
+	public int indexOf(double value)
+	{
+		double index = (value - offset) * scale + 0.5;
+		if (index != index) //NaN
+		{
+			return -1;
+		}
+		if (index <= 0)
+		{
+			return 0;
+		}
+		int last = argb.length - 1;
+		return index >= last ? last : (int) index;
+	}
+
+	/**
+	 * @return The packed ARGB color for the given value (0 if NaN)
+	 */
+	public int getARGB(double value)
+	{
+		int index = indexOf(value);
+		return index < 0 ? 0 : argb[index];
+	}
+
+	/**
+	 * Put the RGBA components (between 0 and 1) of the color for the given
+	 * value into the buffer.
+	 */
+	public void putRGBA(double value, FloatBuffer buffer)
+	{
+		int index = indexOf(value);
+		if (index < 0)
+		{
+			buffer.put(0).put(0).put(0).put(0);
+		}
+		else
+		{
+			buffer.put(rgba, index * 4, 4);
+		}
+	}
+
+	/**
+	 * Map an array of values to packed ARGB colors. NaN values are mapped to
+	 * 0 (transparent).
+	 *
+	 * @param values
+	 *            Values to map
+	 * @param valuesOffset
+	 *            Index of the first value to map
+	 * @param colors
+	 *            Array to put the ARGB colors into
+	 * @param colorsOffset
+	 *            Index in the colors array of the first color
+	 * @param length
+	 *            Number of values to map
+	 */
+	public void mapARGB(float[] values, int valuesOffset, int[] colors, int colorsOffset, int length)
+	{
+		int last = argb.length - 1;
+		for (int i = 0; i < length; i++)
+		{
+			double index = (values[valuesOffset + i] - offset) * scale + 0.5;
+			colors[colorsOffset + i] =
+					index != index ? 0 : index <= 0 ? argb[0] : index >= last ? argb[last] : argb[(int) index];
+		}
+	}
+
+	/**
+	 * Map an array of values to packed ARGB colors.
+	 *
+	 * @see #mapARGB(float[], int, int[], int, int)
+	 */
+	public int[] mapARGB(float[] values)
+	{
+		int[] colors = new int[values.length];
+		mapARGB(values, 0, colors, 0, values.length);
+		return colors;
+	}
+
+	/**
+	 * Map an array of values to RGBA float colors (4 floats per value, each
+	 * between 0 and 1). NaN values are mapped to 0 (transparent black).
+	 *
+	 * @param values
+	 *            Values to map
+	 * @param valuesOffset
+	 *            Index of the first value to map
+	 * @param colors
+	 *            Array to put the RGBA colors into
+	 * @param colorsOffset
+	 *            Index in the colors array of the first color's red component
+	 * @param length
+	 *            Number of values to map
+	 */
+	public void mapRGBA(float[] values, int valuesOffset, float[] colors, int colorsOffset, int length)
+	{
+		for (int i = 0; i < length; i++)
+		{
+			int index = indexOf(values[valuesOffset + i]);
+			int c = colorsOffset + i * 4;
+			if (index < 0)
+			{
+				colors[c] = colors[c + 1] = colors[c + 2] = colors[c + 3] = 0;
+			}
+			else
+			{
+				System.arraycopy(rgba, index * 4, colors, c, 4);
+			}
+		}
+	}
+
+	/**
+	 * Map an array of values to RGBA float colors.
+	 *
+	 * @see #mapRGBA(float[], int, float[], int, int)
+	 */
+	public float[] mapRGBA(float[] values)
+	{
+		float[] colors = new float[values.length * 4];
+		mapRGBA(values, 0, colors, 0, values.length);
+		return colors;
+	}
+}
@@ -17,11 +17,22 @@ package au.gov.ga.worldwind.common.util;
 
 import java.awt.Dimension;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Created on Jun 12, 2009 @ 11:39:16 AM.
+ * <p/>
+ * Decodes DXT compressed DDS data. Blocks are decoded directly into an ARGB
+ * pixel array, without allocating per block, and large surfaces are decoded
+ * on multiple threads.
  * 
  * @author joel-cohen
  */
@@ -31,66 +42,20 @@ public class DDSUncompressor
 
 	private static final int DDSCAPS_TEXTURE = 0x1000;
 
-	protected static class Color
-	{
-
-		private int r, g, b;
-
-		public Color()
-		{
-			this.r = this.g = this.b = 0;
-		}
-
-		public Color(int r, int g, int b)
-		{
-			this.r = r;
-			this.g = g;
-			this.b = b;
-		}
+	public static final int FORMAT_DXT1 = fourCC("DXT1");
+	public static final int FORMAT_DXT3 = fourCC("DXT3");
+	public static final int FORMAT_DXT5 = fourCC("DXT5");
 
-		@Override
-		public boolean equals(Object o)
-		{
-			if (this == o)
-			{
-				return true;
-			}
-			if (o == null || getClass() != o.getClass())
-			{
-				return false;
-			}
+	private static final int HEADER_SIZE = 128;
+	private static final int FORMAT_OFFSET = 84;
 
-			final Color color = (Color) o;
+	/**
+	 * Surfaces with at least this many blocks (a 1024x1024 surface) are decoded
+	 * on multiple threads.
+	 */
+	private static final int PARALLEL_BLOCK_THRESHOLD = 256 * 256;
 
-			if (b != color.b)
-			{
-				return false;
-			}
-			if (g != color.g)
-			{
-				return false;
-			}
-			//noinspection RedundantIfStatement
-			if (r != color.r)
-			{
-				return false;
-			}
-
-			return true;
-		}
-
-		@Override
-		public int hashCode()
-		{
-			int result;
-			result = r;
-			result = 29 * result + g;
-			result = 29 * result + b;
-			return result;
-		}
-	}
-
-	protected static Dimension readHeaderDxt3(ByteBuffer buffer)
+	protected static Dimension readHeader(ByteBuffer buffer)
 	{
 		buffer.rewind();
 
@@ -114,9 +79,7 @@ public class DDSUncompressor
 		int fourCC = buffer.getInt();
 		assert fourCC == DDPF_FOURCC;
 
-		byte[] format = new byte[4];
-		buffer.get(format);
-		assert new String(format).equals("DXT3");
+		/*int format =*/buffer.getInt();
 
 		/*int bpp =*/buffer.getInt(); // bits per pixel for RGB (non-compressed) formats
 		buffer.getInt(); // rgb bit masks for RGB formats
@@ -132,6 +95,22 @@ public class DDSUncompressor
 		return new Dimension(width, height);
 	}
 
+	protected static Dimension readHeaderDxt3(ByteBuffer buffer)
+	{
+		Dimension dimension = readHeader(buffer);
+		assert buffer.getInt(FORMAT_OFFSET) == FORMAT_DXT3;
+		return dimension;
+	}
+
+	/**
+	 * @return The DXT format (one of the FORMAT_ constants) of the DDS file in
+	 *         the given buffer
+	 */
+	public static int readFormat(ByteBuffer buffer)
+	{
+		return buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(FORMAT_OFFSET);
+	}
+
 	public static BufferedImage readDxt3(ByteBuffer buffer)
 	{
 		buffer.order(ByteOrder.LITTLE_ENDIAN);
@@ -140,96 +119,349 @@ public class DDSUncompressor
 		return readDxt3Buffer(buffer, dimension.width, dimension.height);
 	}
 
+	/**
+	 * Decode DXT3 data into a premultiplied image. The output is the same as
+	 * previous versions of this class: colors are multiplied by alpha before
+	 * being stored in the premultiplied image.
+	 */
 	public static BufferedImage readDxt3Buffer(ByteBuffer buffer, int width, int height)
 	{
 		buffer.order(ByteOrder.LITTLE_ENDIAN);
 
-		int[] pixels = new int[16];
-		int[] alphas = new int[16];
-
+		//the legacy decode stores pixels already converted to premultiplied form, so they can be written directly
 		BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		int[] argb = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+		decode(buffer, FORMAT_DXT3, width, height, argb, true);
+		return result;
+	}
+
+	/**
+	 * Read a DXT1, DXT3 or DXT5 compressed DDS file (the top level only) into
+	 * a non-premultiplied ARGB image. The image is backed by the decoded pixel
+	 * array; it is not copied.
+	 */
+	public static BufferedImage read(ByteBuffer buffer)
+	{
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		Dimension dimension = readHeader(buffer);
+		int format = buffer.getInt(FORMAT_OFFSET);
+
+		BufferedImage result = new BufferedImage(dimension.width, dimension.height, BufferedImage.TYPE_INT_ARGB);
+		int[] argb = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+		decode(buffer, format, dimension.width, dimension.height, argb, false);
+		return result;
+	}
+
+	/**
+	 * Decode DXT1, DXT3 or DXT5 compressed data into non-premultiplied ARGB
+	 * pixels. The data is read from the buffer's position, which is advanced
+	 * past the decoded data. Large surfaces are decoded on multiple threads.
+	 *
+	 * @param buffer
+	 *            Compressed blocks
+	 * @param format
+	 *            One of the FORMAT_ constants
+	 * @param width
+	 *            Width of the surface in pixels
+	 * @param height
+	 *            Height of the surface in pixels
+	 * @return ARGB pixels, ordered in the x-axis, then the y-axis
+	 */
+	public static int[] decode(ByteBuffer buffer, int format, int width, int height)
+	{
+		int[] argb = new int[width * height];
+		decode(buffer, format, width, height, argb, false);
+		return argb;
+	}
+
+	/**
+	 * @param legacy
+	 *            If true, decode as previous versions of this class did: 5/6
+	 *            bit colors and 4 bit alphas are shifted rather than scaled to
+	 *            8 bits, and colors are multiplied by alpha; pixels are
+	 *            stored as they would be by setRGB on a premultiplied image
+	 */
+	private static void decode(ByteBuffer buffer, final int format, final int width, final int height,
+			final int[] argb, final boolean legacy)
+	{
+		if (format != FORMAT_DXT1 && format != FORMAT_DXT3 && format != FORMAT_DXT5)
+		{
+			throw new IllegalArgumentException("Unsupported DDS format: 0x" + Integer.toHexString(format));
+		}
+		if (argb.length < width * height)
+		{
+			throw new IllegalArgumentException("Pixel array is too small for a " + width + "x" + height + " surface");
+		}
+
+		final int blockRows = (height + 3) / 4;
+		int blocks = blockRows * ((width + 3) / 4);
+		int size = blocks * (format == FORMAT_DXT1 ? 8 : 16);
+		if (buffer.remaining() < size)
+		{
+			throw new IllegalArgumentException("DDS data is truncated (" + buffer.remaining() + " of " + size
+					+ " bytes)");
+		}
+
+		final ByteBuffer data = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		buffer.position(buffer.position() + size);
+
+		int threads = blocks >= PARALLEL_BLOCK_THRESHOLD ? Math.min(blockRows, DecoderPool.THREADS) : 1;
+		if (threads <= 1)
+		{
+			decodeBlockRows(data, format, width, height, argb, 0, blockRows, legacy);
+			return;
+		}
+
+		//split the surface into bands of block rows, decoding the last band on the calling thread
+		List<Future<?>> futures = new ArrayList<Future<?>>(threads - 1);
+		for (int i = 0; i < threads - 1; i++)
+		{
+			final int fromRow = blockRows * i / threads;
+			final int toRow = blockRows * (i + 1) / threads;
+			futures.add(DecoderPool.EXECUTOR.submit(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					decodeBlockRows(data, format, width, height, argb, fromRow, toRow, legacy);
+				}
+			}));
+		}
+		decodeBlockRows(data, format, width, height, argb, blockRows * (threads - 1) / threads, blockRows, legacy);
 
-		int numTilesWide = width / 4;
-		int numTilesHigh = height / 4;
-		for (int i = 0; i < numTilesHigh; i++)
+		for (Future<?> future : futures)
 		{
-			for (int j = 0; j < numTilesWide; j++)
+			try
+			{
+				future.get();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while decoding DDS data", e);
+			}
+			catch (ExecutionException e)
 			{
-				// Read the alpha table.
-				long alphaData = buffer.getLong();
-				for (int k = alphas.length - 1; k >= 0; k--)
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException)
+				{
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error)
 				{
-					alphas[k] = (int) (alphaData >>> (k * 4)) & 0xF; // Alphas are just 4 bits per pixel
-					alphas[k] <<= 4;
+					throw (Error) cause;
 				}
+				throw new IllegalStateException("Error decoding DDS data", cause);
+			}
+		}
+	}
 
-				short minColor = buffer.getShort();
-				short maxColor = buffer.getShort();
-				Color[] lookupTable = expandLookupTable(minColor, maxColor);
+	/**
+	 * Decode a range of block rows. Uses absolute reads, so the same buffer can
+	 * be shared between threads decoding different rows.
+	 */
+	private static void decodeBlockRows(ByteBuffer data, int format, int width, int height, int[] argb,
+			int fromRow, int toRow, boolean legacy)
+	{
+		int blocksWide = (width + 3) / 4;
+		int blockSize = format == FORMAT_DXT1 ? 8 : 16;
+		int[] colors = new int[4];
+		int[] alphaTable = new int[8];
+		int[] alphas = new int[16];
 
-				int colorData = buffer.getInt();
+		for (int blockY = fromRow; blockY < toRow; blockY++)
+		{
+			int rows = Math.min(4, height - blockY * 4);
+			for (int blockX = 0; blockX < blocksWide; blockX++)
+			{
+				int offset = (blockY * blocksWide + blockX) * blockSize;
 
-				for (int k = pixels.length - 1; k >= 0; k--)
+				if (format == FORMAT_DXT3)
+				{
+					long alphaData = data.getLong(offset);
+					for (int k = 0; k < 16; k++)
+					{
+						int alpha = (int) (alphaData >>> (k * 4)) & 0xF; // Alphas are just 4 bits per pixel
+						alphas[k] = legacy ? alpha << 4 : alpha * 17;
+					}
+				}
+				else if (format == FORMAT_DXT5)
 				{
-					int colorCode = (colorData >>> k * 2) & 0x03;
-					pixels[k] =
-							(alphas[k] << 24)
-									| getPixel888(multiplyAlpha(lookupTable[colorCode], alphas[k]));
+					long alphaData = data.getLong(offset);
+					expandAlphaTable((int) alphaData & 0xFF, (int) (alphaData >>> 8) & 0xFF, alphaTable);
+					for (int k = 0; k < 16; k++)
+					{
+						alphas[k] = alphaTable[(int) (alphaData >>> (16 + k * 3)) & 0x07];
+					}
 				}
 
-				result.setRGB(j * 4, i * 4, 4, 4, pixels, 0, 4);
+				int colorOffset = offset + blockSize - 8;
+				int minColor = data.getShort(colorOffset) & 0xFFFF;
+				int maxColor = data.getShort(colorOffset + 2) & 0xFFFF;
+				int colorData = data.getInt(colorOffset + 4);
+
+				//DXT1 blocks with the first color <= the second use 3 colors and transparent black
+				boolean punchThrough = format == FORMAT_DXT1 && minColor <= maxColor;
+				expandColorTable(minColor, maxColor, punchThrough, legacy, colors);
+
+				int columns = Math.min(4, width - blockX * 4);
+				for (int y = 0; y < rows; y++)
+				{
+					int index = (blockY * 4 + y) * width + blockX * 4;
+					for (int x = 0; x < columns; x++)
+					{
+						int k = y * 4 + x;
+						int colorCode = (colorData >>> (k * 2)) & 0x03;
+						int alpha;
+						if (format == FORMAT_DXT1)
+						{
+							alpha = punchThrough && colorCode == 3 ? 0 : 0xFF;
+						}
+						else
+						{
+							alpha = alphas[k];
+						}
+
+						int color = colors[colorCode];
+						if (legacy)
+						{
+							color = multiplyAlpha(color, alpha);
+						}
+						argb[index + x] = (alpha << 24) | color;
+					}
+				}
 			}
 		}
-		return result;
 	}
 
-	private static Color multiplyAlpha(Color color, int alpha)
+	/**
+	 * Multiply the color by alpha (as previous versions of this class did),
+	 * and then convert it to the premultiplied form that
+	 * {@link BufferedImage#setRGB(int, int, int)} would store it as.
+	 */
+	private static int multiplyAlpha(int color, int alpha)
 	{
-		Color result = new Color();
+		byte[] table = PremultiplyTable.TABLE;
+		int row = alpha << 8;
+		int r = table[row | ((((color >> 16) & 0xFF) * alpha) >> 8)] & 0xFF;
+		int g = table[row | ((((color >> 8) & 0xFF) * alpha) >> 8)] & 0xFF;
+		int b = table[row | (((color & 0xFF) * alpha) >> 8)] & 0xFF;
+		return r << 16 | g << 8 | b;
+	}
 
-		double alphaF = alpha / 256.0;
+	private static void expandColorTable(int minColor, int maxColor, boolean punchThrough, boolean legacy,
+			int[] result)
+	{
+		int r0, g0, b0, r1, g1, b1;
+		if (legacy)
+		{
+			r0 = (minColor & 0xf800) >>> 8;
+			g0 = (minColor & 0x07e0) >>> 3;
+			b0 = (minColor & 0x001f) << 3;
+			r1 = (maxColor & 0xf800) >>> 8;
+			g1 = (maxColor & 0x07e0) >>> 3;
+			b1 = (maxColor & 0x001f) << 3;
+		}
+		else
+		{
+			//replicate the high bits into the low bits, so that the full 0-255 range is used
+			r0 = expand5(minColor >>> 11);
+			g0 = expand6(minColor >>> 5);
+			b0 = expand5(minColor);
+			r1 = expand5(maxColor >>> 11);
+			g1 = expand6(maxColor >>> 5);
+			b1 = expand5(maxColor);
+		}
 
-		result.r = (int) (color.r * alphaF);
-		result.g = (int) (color.g * alphaF);
-		result.b = (int) (color.b * alphaF);
-		return result;
+		result[0] = r0 << 16 | g0 << 8 | b0;
+		result[1] = r1 << 16 | g1 << 8 | b1;
+		if (punchThrough)
+		{
+			result[2] = ((r0 + r1) / 2) << 16 | ((g0 + g1) / 2) << 8 | ((b0 + b1) / 2);
+			result[3] = 0;
+		}
+		else
+		{
+			result[2] = ((2 * r0 + r1 + 1) / 3) << 16 | ((2 * g0 + g1 + 1) / 3) << 8 | ((2 * b0 + b1 + 1) / 3);
+			result[3] = ((r0 + 2 * r1 + 1) / 3) << 16 | ((g0 + 2 * g1 + 1) / 3) << 8 | ((b0 + 2 * b1 + 1) / 3);
+		}
 	}
 
-	protected static Color getColor565(int pixel)
+	private static void expandAlphaTable(int alpha0, int alpha1, int[] result)
 	{
-		Color color = new Color();
+		result[0] = alpha0;
+		result[1] = alpha1;
+		if (alpha0 > alpha1)
+		{
+			for (int i = 1; i < 7; i++)
+			{
+				result[i + 1] = ((7 - i) * alpha0 + i * alpha1 + 3) / 7;
+			}
+		}
+		else
+		{
+			for (int i = 1; i < 5; i++)
+			{
+				result[i + 1] = ((5 - i) * alpha0 + i * alpha1 + 2) / 5;
+			}
+			result[6] = 0;
+			result[7] = 0xFF;
+		}
+	}
 
-		color.r = (int) (((long) pixel) & 0xf800) >>> 8;
-		color.g = (int) (((long) pixel) & 0x07e0) >>> 3;
-		color.b = (int) (((long) pixel) & 0x001f) << 3;
+	private static int expand5(int value)
+	{
+		value &= 0x1F;
+		return (value << 3) | (value >>> 2);
+	}
 
-		return color;
+	private static int expand6(int value)
+	{
+		value &= 0x3F;
+		return (value << 2) | (value >>> 4);
 	}
 
-	private static Color[] expandLookupTable(short minColor, short maxColor)
+	private static int fourCC(String code)
 	{
-		Color[] result =
-				new Color[] { getColor565(minColor), getColor565(maxColor), new Color(),
-						new Color() };
+		return code.charAt(0) | code.charAt(1) << 8 | code.charAt(2) << 16 | code.charAt(3) << 24;
+	}
 
-		result[2].r = (2 * result[0].r + result[1].r + 1) / 3;
-		result[2].g = (2 * result[0].g + result[1].g + 1) / 3;
-		result[2].b = (2 * result[0].b + result[1].b + 1) / 3;
+	/**
+	 * Lookup table of premultiplied components, indexed by alpha and then the
+	 * component. Created by the JDK's own conversion, so pixels written
+	 * directly match those written using setRGB.
+	 */
+	private static class PremultiplyTable
+	{
+		private static final byte[] TABLE = createTable();
 
-		result[3].r = (result[0].r + 2 * result[1].r + 1) / 3;
-		result[3].g = (result[0].g + 2 * result[1].g + 1) / 3;
-		result[3].b = (result[0].b + 2 * result[1].b + 1) / 3;
+		private static byte[] createTable()
+		{
+			int[] argb = new int[256 * 256];
+			for (int i = 0; i < argb.length; i++)
+			{
+				argb[i] = (i >> 8) << 24 | (i & 0xFF);
+			}
+			BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB_PRE);
+			image.setRGB(0, 0, 256, 256, argb, 0, 256);
+			int[] premultiplied = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
 
-		return result;
+			byte[] table = new byte[premultiplied.length];
+			for (int i = 0; i < table.length; i++)
+			{
+				table[i] = (byte) premultiplied[i];
+			}
+			return table;
+		}
 	}
 
-	protected static int getPixel888(Color color)
+	/**
+	 * Lazily created pool of threads used to decode large surfaces.
+	 */
+	private static class DecoderPool
 	{
-		int r = color.r;
-		int g = color.g;
-		int b = color.b;
-		return r << 16 | g << 8 | b;
+		private static final int THREADS = Runtime.getRuntime().availableProcessors();
+		private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS,
+				new DaemonThreadFactory("DDS decoder"));
 	}
-
-
 }
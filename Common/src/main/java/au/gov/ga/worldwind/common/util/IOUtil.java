@@ -22,10 +22,13 @@ import gov.nasa.worldwind.util.BufferWrapper;
 import gov.nasa.worldwind.util.Logging;
 import gov.nasa.worldwind.util.WWIO;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import au.gov.ga.worldwind.common.downloader.ZipRetriever;
 
@@ -123,6 +126,59 @@ public class IOUtil extends WWIO
 		return wrapper;
 	}
 
+	/**
+	 * Map the resource referenced by the provided url into memory, if it is a
+	 * local file. The returned buffer is a read-only view of the file, so no
+	 * heap copy of the file's contents is made.
+	 * <p/>
+	 * Zip archives and non-file resources can't be mapped, and are read using
+	 * {@link #readByteBuffer(URL)} instead.
+	 * <p/>
+	 * The mapping remains valid until the buffer is garbage collected, so this
+	 * should only be used for files that are not rewritten while the buffer is
+	 * in use (truncating a mapped file invalidates the mapping).
+	 */
+	public static ByteBuffer mapByteBuffer(URL url) throws IOException
+	{
+		File file = URLUtil.urlToFile(url);
+		if (file == null || !file.isFile() || URLUtil.isForResourceWithExtension(url, "zip"))
+		{
+			return readByteBuffer(url);
+		}
+
+		FileInputStream fis = new FileInputStream(file);
+		try
+		{
+			FileChannel channel = fis.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally
+		{
+			//the mapping remains valid after the channel is closed
+			fis.close();
+		}
+	}
+
+	/**
+	 * Map the resource referenced by the provided url into memory, if it is a
+	 * local file (see {@link #mapByteBuffer(URL)}).
+	 * <p/>
+	 * The provided pixel types and byte ordering is used to wrap the
+	 * {@link ByteBuffer} with a {@link BufferWrapper} that can read the
+	 * underlying data.
+	 */
+	public static BufferWrapper mapByteBuffer(URL url, String pixelType, String byteOrder) throws IOException
+	{
+		ByteBuffer byteBuffer = mapByteBuffer(url);
+
+		AVList bufferParams = new AVListImpl();
+		bufferParams.setValue(AVKey.DATA_TYPE, pixelType);
+		bufferParams.setValue(AVKey.BYTE_ORDER, byteOrder);
+		BufferWrapper wrapper = BufferWrapper.wrap(byteBuffer, bufferParams);
+
+		return wrapper;
+	}
+
 	/**
 	 * Read the bytes from the resource referenced by the provided InputStream.
 	 * <p/>
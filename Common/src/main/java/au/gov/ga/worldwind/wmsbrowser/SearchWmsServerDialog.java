@@ -76,6 +76,8 @@ import au.gov.ga.worldwind.wmsbrowser.search.CSWSearchService;
 import au.gov.ga.worldwind.wmsbrowser.search.ChainingSearchService;
 import au.gov.ga.worldwind.wmsbrowser.search.CompoundSearchService;
 import au.gov.ga.worldwind.wmsbrowser.search.DirectUrlSearchService;
+import au.gov.ga.worldwind.wmsbrowser.search.StreamingSearchService;
+import au.gov.ga.worldwind.wmsbrowser.search.WmsServerSearchListener;
 import au.gov.ga.worldwind.wmsbrowser.search.WmsServerSearchResult;
 import au.gov.ga.worldwind.wmsbrowser.search.WmsServerSearchService;
 import au.gov.ga.worldwind.wmsbrowser.wmsserver.WmsServer;
@@ -669,10 +671,11 @@ public class SearchWmsServerDialog extends JDialog
 	/**
 	 * A runnable task that performs a search with the given search string
 	 */
-	private class SearchTask implements Runnable
+	private class SearchTask implements Runnable, WmsServerSearchListener
 	{
 		private ExecutorService executor;
 		private String searchString;
+		private List<WmsServerSearchResult> partialResults = new ArrayList<WmsServerSearchResult>();
 
 		private Future<List<WmsServerSearchResult>> searchFuture; 
 		
@@ -696,11 +699,15 @@ public class SearchWmsServerDialog extends JDialog
 			
 			showSearchingMessage();
 			
-			// Perform the search on a separate thread
+			// Perform the search on a separate thread, displaying partial results as they arrive
 			searchFuture = executor.submit(new Callable<List<WmsServerSearchResult>>(){
 				@Override
 				public List<WmsServerSearchResult> call() throws Exception
 				{
+					if (searchService instanceof StreamingSearchService)
+					{
+						return ((StreamingSearchService) searchService).searchForServers(searchString, SearchTask.this);
+					}
 					List<WmsServerSearchResult> searchResults = searchService.searchForServers(searchString);
 					return searchResults;
 				}
@@ -727,11 +734,37 @@ public class SearchWmsServerDialog extends JDialog
 			executor.shutdownNow();
 		}
 		
+		@Override
+		public void resultsFound(List<WmsServerSearchResult> results)
+		{
+			synchronized (partialResults)
+			{
+				if (isCancelled())
+				{
+					return;
+				}
+				for (WmsServerSearchResult result : results)
+				{
+					if (!partialResults.contains(result))
+					{
+						partialResults.add(result);
+					}
+				}
+				setSearchResults(partialResults);
+			}
+			updateSearchResultsPanel();
+		}
+		
 		public void cancel()
 		{
 			searchFuture.cancel(true);
 		}
 		
+		private boolean isCancelled()
+		{
+			return searchFuture != null && searchFuture.isCancelled();
+		}
+		
 		public boolean isDone()
 		{
 			return searchFuture == null || searchFuture.isDone();
@@ -28,26 +28,17 @@ import java.util.List;
 public class ChainingSearchService extends DelegatingSearchService implements WmsServerSearchService
 {
 	@Override
-	public List<WmsServerSearchResult> searchForServers(String searchString)
+	public List<WmsServerSearchResult> searchForServers(String searchString, WmsServerSearchListener listener)
 	{
-		try
+		for (WmsServerSearchService service : getServicesSnapshot())
 		{
-			lockServices();
-			
-			for (WmsServerSearchService service : getServices())
+			List<WmsServerSearchResult> servers = search(service, searchString, listener);
+			if (!servers.isEmpty())
 			{
-				List<WmsServerSearchResult> servers = service.searchForServers(searchString);
-				if (!servers.isEmpty())
-				{
-					return servers;
-				}
+				return servers;
 			}
-			
-			return Collections.emptyList();
-		}
-		finally
-		{
-			unlockServices();
 		}
+		
+		return Collections.emptyList();
 	}
 }
@@ -15,41 +15,130 @@
  ******************************************************************************/
 package au.gov.ga.worldwind.wmsbrowser.search;
 
+import gov.nasa.worldwind.util.Logging;
+
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import au.gov.ga.worldwind.common.util.DaemonThreadFactory;
 
 /**
  * An implementation of the {@link WmsServerSearchService} interface
- * that queries each search service in turn and accumulates the results
+ * that queries each search service concurrently and accumulates the results
  * into a single returned list of servers.
+ * <p/>
+ * Results are returned in the order of the delegate services, regardless of
+ * the order in which the services respond. Services that do not respond within
+ * the configured timeout are cancelled, and their results are omitted.
  * 
  * @author James Navin (james.navin@ga.gov.au)
  */
 public class CompoundSearchService extends DelegatingSearchService implements WmsServerSearchService
 {
+	/** The default per-service timeout, in milliseconds */
+	public static final long DEFAULT_TIMEOUT = 30000;
+	
+	private static final ExecutorService searchExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("Compound WMS search"));
+	
+	private long timeout = DEFAULT_TIMEOUT;
 
+	/**
+	 * @return The time (in milliseconds) to wait for each service to respond
+	 */
+	public long getTimeout()
+	{
+		return timeout;
+	}
+	
+	/**
+	 * Set the time (in milliseconds) to wait for each service to respond
+	 */
+	public void setTimeout(long timeout)
+	{
+		this.timeout = timeout;
+	}
+	
 	@Override
-	public List<WmsServerSearchResult> searchForServers(String searchString)
+	public List<WmsServerSearchResult> searchForServers(final String searchString, final WmsServerSearchListener listener)
 	{
+		List<WmsServerSearchService> services = getServicesSnapshot();
+		if (services.isEmpty())
+		{
+			return Collections.emptyList();
+		}
+		
+		CompletionService<List<WmsServerSearchResult>> completionService = 
+				new ExecutorCompletionService<List<WmsServerSearchResult>>(searchExecutor);
+		
+		List<Future<List<WmsServerSearchResult>>> futures = new ArrayList<Future<List<WmsServerSearchResult>>>(services.size());
+		for (final WmsServerSearchService service : services)
+		{
+			futures.add(completionService.submit(new Callable<List<WmsServerSearchResult>>()
+			{
+				@Override
+				public List<WmsServerSearchResult> call() throws Exception
+				{
+					return search(service, searchString, listener);
+				}
+			}));
+		}
+		
+		// Wait for the services to complete, up to the timeout
+		long deadline = System.currentTimeMillis() + timeout;
 		try
 		{
-			lockServices();
-			
-			Set<WmsServerSearchResult> result = new LinkedHashSet<WmsServerSearchResult>(); // Maintain insertion order
-			for (WmsServerSearchService service : getServices())
+			for (int i = 0; i < futures.size(); i++)
 			{
-				List<WmsServerSearchResult> servers = service.searchForServers(searchString);
-				result.addAll(servers);
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0 || completionService.poll(remaining, TimeUnit.MILLISECONDS) == null)
+				{
+					Logging.logger().fine("WMS search for '" + searchString + "' timed out");
+					break;
+				}
 			}
-			
-			return new ArrayList<WmsServerSearchResult>(result);
 		}
-		finally
+		catch (InterruptedException e)
+		{
+			// Search cancelled; return whatever has already been found
+			Thread.currentThread().interrupt();
+		}
+		
+		Set<WmsServerSearchResult> result = new LinkedHashSet<WmsServerSearchResult>(); // Maintain insertion order
+		for (Future<List<WmsServerSearchResult>> future : futures)
 		{
-			unlockServices();
+			if (!future.isDone())
+			{
+				future.cancel(true);
+				continue;
+			}
+			
+			try
+			{
+				result.addAll(future.get());
+			}
+			catch (ExecutionException e)
+			{
+				Logging.logger().log(Level.FINE, "WMS search service failed", e.getCause());
+			}
+			catch (Exception e)
+			{
+				// Cancelled
+			}
 		}
+		
+		return new ArrayList<WmsServerSearchResult>(result);
 	}
 
 }
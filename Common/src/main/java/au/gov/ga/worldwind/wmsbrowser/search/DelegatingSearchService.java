@@ -28,7 +28,7 @@ import au.gov.ga.worldwind.common.util.LenientReadWriteLock;
  * 
  * @author James Navin (james.navin@ga.gov.au)
  */
-public abstract class DelegatingSearchService implements WmsServerSearchService
+public abstract class DelegatingSearchService implements StreamingSearchService
 {
 	private List<WmsServerSearchService> searchServices = new ArrayList<WmsServerSearchService>();
 	private ReadWriteLock servicesLock = new LenientReadWriteLock();
@@ -48,6 +48,49 @@ public abstract class DelegatingSearchService implements WmsServerSearchService
 		return searchServices;
 	}
 	
+	/**
+	 * @return A snapshot of the current list of services. Allows the services to be
+	 * queried without holding the services lock.
+	 */
+	protected List<WmsServerSearchService> getServicesSnapshot()
+	{
+		try
+		{
+			lockServices();
+			return new ArrayList<WmsServerSearchService>(searchServices);
+		}
+		finally
+		{
+			unlockServices();
+		}
+	}
+	
+	@Override
+	public List<WmsServerSearchResult> searchForServers(String searchString)
+	{
+		return searchForServers(searchString, null);
+	}
+	
+	/**
+	 * Perform a search on the provided service, passing the listener through to
+	 * streaming services, and notifying it directly of the results of others.
+	 */
+	protected static List<WmsServerSearchResult> search(WmsServerSearchService service, String searchString,
+			WmsServerSearchListener listener)
+	{
+		if (service instanceof StreamingSearchService)
+		{
+			return ((StreamingSearchService) service).searchForServers(searchString, listener);
+		}
+		
+		List<WmsServerSearchResult> results = service.searchForServers(searchString);
+		if (listener != null && !results.isEmpty())
+		{
+			listener.resultsFound(results);
+		}
+		return results;
+	}
+	
 	public void addService(WmsServerSearchService service)
 	{
 		try
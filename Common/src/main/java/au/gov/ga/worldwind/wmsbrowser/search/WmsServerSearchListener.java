@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.wmsbrowser.search;
+
+import java.util.List;
+
+/**
+ * A listener interface for receiving partial search results from a
+ * {@link StreamingSearchService} as they become available.
+ * 
+ * @author James Navin (james.navin@ga.gov.au)
+ */
+public interface WmsServerSearchListener
+{
+	/**
+	 * Called when a (possibly partial) set of results has been found. May be called
+	 * from any thread, and may be called multiple times for a single search.
+	 * 
+	 * @param results The newly found results. Never <code>null</code>.
+	 */
+	void resultsFound(List<WmsServerSearchResult> results);
+}
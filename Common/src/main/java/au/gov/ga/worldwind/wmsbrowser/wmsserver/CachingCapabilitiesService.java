@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.wmsbrowser.wmsserver;
+
+import gov.nasa.worldwind.ogc.wms.WMSCapabilities;
+import gov.nasa.worldwind.util.Logging;
+import gov.nasa.worldwind.wms.CapabilitiesRequest;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+import au.gov.ga.worldwind.common.downloader.Downloader;
+import au.gov.ga.worldwind.common.downloader.RetrievalResult;
+
+/**
+ * A {@link WmsCapabilitiesService} that caches capabilities documents, keyed
+ * by capabilities URL and WMS version.
+ * <p/>
+ * Parsed capabilities are kept in memory, and the raw capabilities documents
+ * are persisted in the {@link Downloader} cache so that they survive between
+ * sessions. Both caches expire entries once they are older than the
+ * configured time-to-live.
+ * <p/>
+ * Like the {@link DefaultCapabilitiesService}, v1.3.0 is tried first, then
+ * v1.1.1. However, any cached version is preferred over a network request.
+ *
+ * @author James Navin (james.navin@ga.gov.au)
+ */
+public class CachingCapabilitiesService implements WmsCapabilitiesService
+{
+	/** The versions to request, in order of preference */
+	private static final String[] VERSIONS = new String[] { "1.3.0", "1.1.1" };
+
+	/** Default time-to-live of cached capabilities: one day */
+	public static final long DEFAULT_TIME_TO_LIVE = 24 * 60 * 60 * 1000L;
+
+	private final Map<String, CacheEntry> cache = new ConcurrentHashMap<String, CacheEntry>();
+	private long timeToLive = DEFAULT_TIME_TO_LIVE;
+
+	public CachingCapabilitiesService()
+	{
+	}
+
+	public CachingCapabilitiesService(long timeToLive)
+	{
+		setTimeToLive(timeToLive);
+	}
+
+	/**
+	 * @return The time (in milliseconds) that capabilities are cached for
+	 */
+	public long getTimeToLive()
+	{
+		return timeToLive;
+	}
+
+	/**
+	 * Set the time (in milliseconds) that capabilities are cached for
+	 */
+	public void setTimeToLive(long timeToLive)
+	{
+		this.timeToLive = Math.max(0, timeToLive);
+	}
+
+	/**
+	 * Remove all in-memory cached capabilities. Persisted capabilities
+	 * documents will be reused on the next request if they have not expired.
+	 */
+	public void clear()
+	{
+		cache.clear();
+	}
+
+	@Override
+	public WMSCapabilities retrieveCapabilities(URL url) throws Exception
+	{
+		if (url == null)
+		{
+			return null;
+		}
+
+		// First check the in-memory cache for any supported version
+		long now = System.currentTimeMillis();
+		for (String version : VERSIONS)
+		{
+			CacheEntry entry = cache.get(createKey(url, version));
+			if (entry != null && now - entry.time < timeToLive)
+			{
+				return entry.capabilities;
+			}
+		}
+
+		// Then try each version in turn, using the persistent cache where possible
+		for (String version : VERSIONS)
+		{
+			WMSCapabilities capabilities = retrieveCapabilities(url, version);
+			if (capabilities != null)
+			{
+				cache.put(createKey(url, version), new CacheEntry(capabilities, now));
+				return capabilities;
+			}
+		}
+		return null;
+	}
+
+	protected WMSCapabilities retrieveCapabilities(URL url, String version) throws Exception
+	{
+		CapabilitiesRequest request = new CapabilitiesRequest(url.toURI());
+		request.setVersion(version);
+		URL requestUrl = request.getUri().toURL();
+
+		RetrievalResult result = Downloader.downloadImmediatelyIfExpired(requestUrl, timeToLive, false);
+		if (result == null || !result.hasData())
+		{
+			return null;
+		}
+
+		try
+		{
+			return new WMSCapabilities(result.getAsInputStream()).parse();
+		}
+		catch (Exception e)
+		{
+			// Unparseable document (eg. a service exception); remove it so it isn't reused
+			Logging.logger().log(Level.FINE, "Unable to parse capabilities from " + requestUrl, e);
+			Downloader.removeCache(requestUrl);
+			return null;
+		}
+	}
+
+	private static String createKey(URL url, String version)
+	{
+		return url.toExternalForm() + "#" + version;
+	}
+
+	private static class CacheEntry
+	{
+		final WMSCapabilities capabilities;
+		final long time;
+
+		CacheEntry(WMSCapabilities capabilities, long time)
+		{
+			this.capabilities = capabilities;
+			this.time = time;
+		}
+	}
+}
@@ -24,7 +24,7 @@ package au.gov.ga.worldwind.wmsbrowser.wmsserver;
  */
 public class WmsCapabilitiesServiceAccessor
 {
-	private static WmsCapabilitiesService service = new DefaultCapabilitiesService();
+	private static WmsCapabilitiesService service = new CachingCapabilitiesService();
 	
 	public static WmsCapabilitiesService getService()
 	{
@@ -39,7 +39,7 @@ import au.gov.ga.worldwind.common.util.Validate;
 public class WmsServerImpl implements WmsServer
 {
 	/** The default capabilities service. Can be overridden through injection using the {@link #setCapabilitiesService()} method */
-	private static final WmsCapabilitiesService DEFAULT_CAPABILITIES_SERVICE = new DefaultCapabilitiesService();
+	private static final WmsCapabilitiesService DEFAULT_CAPABILITIES_SERVICE = WmsCapabilitiesServiceAccessor.getService();
 	
 	private static ExecutorService loaderService = Executors.newSingleThreadExecutor(new DaemonThreadFactory("WMS Server layer loader"));
 
@@ -0,0 +1,140 @@
+package au.gov.ga.worldwind.common.layers.crust;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link CrustData} class
+ */
+public class CrustDataTest
+{
+	@Test
+	public void testReadTextWithMixedSeparators() throws Exception
+	{
+		DoubleBuffer elevations = readText(" -1200.5, 3.25\n\t1e3 ,-4.5E-2\r\n0,+7.\n", 6);
+
+		assertEquals(-1200.5, elevations.get(0), 0);
+		assertEquals(3.25, elevations.get(1), 0);
+		assertEquals(1000, elevations.get(2), 0);
+		assertEquals(-0.045, elevations.get(3), 0);
+		assertEquals(0, elevations.get(4), 0);
+		assertEquals(7, elevations.get(5), 0);
+	}
+
+	@Test
+	public void testReadTextMatchesParseDouble() throws Exception
+	{
+		Random random = new Random(0);
+		String[] strings = new String[1000];
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < strings.length; i++)
+		{
+			double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 8);
+			strings[i] = i % 3 == 0 ? String.format("%.3f", value) : Double.toString(value);
+			sb.append(strings[i]).append(i % 2 == 0 ? "," : " ");
+		}
+
+		DoubleBuffer elevations = readText(sb.toString(), strings.length);
+		for (int i = 0; i < strings.length; i++)
+		{
+			assertEquals(strings[i], Double.parseDouble(strings[i]), elevations.get(i), 0);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadTextTooFewValues() throws Exception
+	{
+		readText("1,2,3", 4);
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadTextTooManyValues() throws Exception
+	{
+		readText("1,2,3,4,5", 4);
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadTextInvalidNumber() throws Exception
+	{
+		readText("1,2,abc,4", 4);
+	}
+
+	@Test
+	public void testBinaryRoundTrip() throws Exception
+	{
+		DoubleBuffer elevations = readText("1 2 3 4 5 -6.5", 6);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		CrustData.write(elevations, 3, 2, baos);
+
+		ByteBuffer buffer = ByteBuffer.wrap(baos.toByteArray());
+		assertTrue(CrustData.isBinary(buffer));
+		DoubleBuffer read = CrustData.read(buffer, 3, 2);
+		assertEquals(6, read.remaining());
+		assertEquals(1, read.get(0), 0);
+		assertEquals(-6.5, read.get(5), 0);
+	}
+
+	@Test
+	public void testBinaryStream() throws Exception
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		CrustData.write(readText("1 2 3 4 5 -6.5", 6), 3, 2, baos);
+
+		DoubleBuffer read = CrustData.read(new ByteArrayInputStream(baos.toByteArray()), 3, 2);
+		assertTrue(read.isDirect());
+		assertEquals(6, read.remaining());
+		assertEquals(1, read.get(0), 0);
+		assertEquals(-6.5, read.get(5), 0);
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedBinaryStream() throws Exception
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		CrustData.write(readText("1 2 3 4 5 6", 6), 3, 2, baos);
+		byte[] bytes = baos.toByteArray();
+		CrustData.read(new ByteArrayInputStream(bytes, 0, bytes.length - 1), 3, 2);
+	}
+
+	@Test(expected = IOException.class)
+	public void testBinaryWrongSize() throws Exception
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		CrustData.write(readText("1 2 3 4 5 6", 6), 3, 2, baos);
+		CrustData.read(ByteBuffer.wrap(baos.toByteArray()), 2, 3);
+	}
+
+	@Test
+	public void testTextIsNotBinary()
+	{
+		assertFalse(CrustData.isBinary(ByteBuffer.wrap("1,2,3".getBytes())));
+	}
+
+	@Test
+	public void testMappedFile() throws Exception
+	{
+		File file = File.createTempFile("crust", ".dat");
+		file.deleteOnExit();
+		CrustData.write(readText("1 2 3 4", 4), 2, 2, file);
+
+		DoubleBuffer mapped = CrustData.map(file, 2, 2);
+		assertEquals(4, mapped.remaining());
+		assertEquals(4, mapped.get(3), 0);
+	}
+
+	private static DoubleBuffer readText(String text, int count) throws IOException
+	{
+		return CrustData.readText(new ByteArrayInputStream(text.getBytes("US-ASCII")), count);
+	}
+}
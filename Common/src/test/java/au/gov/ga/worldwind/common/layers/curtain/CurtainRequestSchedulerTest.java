@@ -0,0 +1,290 @@
+package au.gov.ga.worldwind.common.layers.curtain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link CurtainRequestScheduler} class
+ */
+public class CurtainRequestSchedulerTest
+{
+	@Test
+	public void testRequestsInFlightAreLimited()
+	{
+		CurtainRequestScheduler scheduler = new CurtainRequestScheduler();
+		scheduler.setMaxRequestsInFlight(2);
+		scheduler.beginFrame();
+
+		Runnable first = scheduler.schedule(new TestTask(1), 0);
+		assertNotNull(first);
+		assertNull(scheduler.schedule(new TestTask(1), 0)); //already in flight
+		assertNotNull(scheduler.schedule(new TestTask(2), 0));
+		assertNull(scheduler.schedule(new TestTask(3), 0));
+		assertEquals(2, scheduler.getRequestsInFlight());
+
+		first.run();
+		assertEquals(1, scheduler.getRequestsInFlight());
+		assertNotNull(scheduler.schedule(new TestTask(3), 0));
+	}
+
+	@Test
+	public void testTimedOutRequestsAreForgotten()
+	{
+		CurtainRequestScheduler scheduler = new CurtainRequestScheduler();
+		scheduler.setMaxRequestsInFlight(1);
+		scheduler.setInFlightTimeout(1000);
+		scheduler.beginFrame();
+
+		assertNotNull(scheduler.schedule(new TestTask(1), 0));
+		assertNull(scheduler.schedule(new TestTask(2), 500));
+		assertNotNull(scheduler.schedule(new TestTask(2), 1500));
+	}
+
+	@Test
+	public void testStaleRequestsAreCancelled()
+	{
+		CurtainRequestScheduler scheduler = new CurtainRequestScheduler();
+		scheduler.beginFrame();
+		TestTask stale = new TestTask(1);
+		TestTask current = new TestTask(2);
+		Runnable scheduledStale = scheduler.schedule(stale, 0);
+		Runnable scheduledCurrent = scheduler.schedule(current, 0);
+
+		//the view changes; only the second tile is still required
+		scheduler.beginFrame();
+		scheduler.beginFrame();
+		assertNull(scheduler.schedule(current, 0));
+
+		scheduledStale.run();
+		scheduledCurrent.run();
+		assertEquals(0, stale.runCount);
+		assertEquals(1, current.runCount);
+		assertEquals(1, scheduler.getCancelledCount());
+		assertEquals(1, scheduler.getCompletedCount());
+		assertEquals(0, scheduler.getRequestsInFlight());
+	}
+
+	@Test
+	public void testDeferredReleaseHoldsSlotUntilReleased()
+	{
+		final CurtainRequestScheduler scheduler = new CurtainRequestScheduler();
+		scheduler.setMaxRequestsInFlight(1);
+		scheduler.beginFrame();
+		assertNull(scheduler.deferRelease()); //not running a request
+
+		final Runnable[] download = new Runnable[1];
+		Runnable scheduled = scheduler.schedule(new TestTask(1)
+		{
+			@Override
+			public void run()
+			{
+				//start an asynchronous download
+				download[0] = scheduler.deferRelease();
+			}
+		}, 0);
+		scheduled.run();
+		assertEquals(new TestTask(1), download[0]);
+		assertEquals(1, scheduler.getRequestsInFlight());
+		assertNull(scheduler.schedule(new TestTask(2), 0));
+
+		//download completes
+		scheduler.release(download[0]);
+		assertEquals(0, scheduler.getRequestsInFlight());
+		assertNotNull(scheduler.schedule(new TestTask(2), 0));
+	}
+
+	@Test
+	public void testReleaseBeforeTaskReturns()
+	{
+		final CurtainRequestScheduler scheduler = new CurtainRequestScheduler();
+		scheduler.beginFrame();
+		Runnable scheduled = scheduler.schedule(new TestTask(1)
+		{
+			@Override
+			public void run()
+			{
+				//download completes before the request task returns
+				scheduler.release(scheduler.deferRelease());
+			}
+		}, 0);
+		scheduled.run();
+		assertEquals(0, scheduler.getRequestsInFlight());
+		assertNotNull(scheduler.schedule(new TestTask(1), 0));
+	}
+
+	@Test
+	public void testRequiredRequestsAreNotCancelled()
+	{
+		CurtainRequestScheduler scheduler = new CurtainRequestScheduler();
+		scheduler.beginFrame();
+		TestTask task = new TestTask(1);
+		Runnable scheduled = scheduler.schedule(task, 0);
+
+		//the task service is full for a few frames, so the request is only marked as required
+		for (int i = 0; i < 3; i++)
+		{
+			scheduler.beginFrame();
+			scheduler.markRequired(task);
+		}
+
+		scheduled.run();
+		assertEquals(1, task.runCount);
+		assertEquals(0, scheduler.getCancelledCount());
+	}
+
+	@Test
+	public void testPrefetchRangeFollowsViewMovement()
+	{
+		CurtainRequestScheduler scheduler = new CurtainRequestScheduler();
+		scheduler.setLookaheadTime(1000);
+		scheduler.updateViewPercent(0.5, 0);
+		assertNull(scheduler.getPrefetchRange());
+
+		for (int i = 1; i <= 20; i++)
+		{
+			scheduler.updateViewPercent(0.5 - i * 0.002, i * 100);
+		}
+		double[] range = scheduler.getPrefetchRange();
+		assertNotNull(range);
+		assertEquals(0.44, range[0], 0.001);
+		assertEquals(0.46, range[1], 1e-9);
+	}
+
+	@Test
+	public void testPrefetchingReducesMissedFrames()
+	{
+		int withoutPrefetch = simulateFlight(false);
+		int withPrefetch = simulateFlight(true);
+		assertTrue("Prefetching should reduce the frames drawn without the full resolution tile (" + withPrefetch
+				+ " vs " + withoutPrefetch + ")", withPrefetch < withoutPrefetch / 2);
+	}
+
+	/**
+	 * Simulate the view moving along a curtain at a constant speed, with tile
+	 * requests that take a fixed number of frames to load. The request and
+	 * prefetch loop models that of the {@link TiledCurtainLayer}; it doesn't
+	 * exercise the layer itself, which requires a draw context.
+	 *
+	 * @return Number of frames in which the tile under the view wasn't loaded
+	 */
+	private static int simulateFlight(boolean prefetch)
+	{
+		final int columns = 200;
+		final int frameTime = 50; //milliseconds
+		final int loadFrames = 20;
+		final int framesPerColumn = 8;
+
+		CurtainRequestScheduler scheduler = new CurtainRequestScheduler();
+		scheduler.setMaxRequestsInFlight(4);
+		Set<Integer> loaded = new HashSet<Integer>();
+		List<Runnable> pending = new ArrayList<Runnable>();
+		List<Integer> pendingStart = new ArrayList<Integer>();
+
+		int missed = 0;
+		for (int frame = 0; frame < columns * framesPerColumn; frame++)
+		{
+			double percent = frame / (double) (columns * framesPerColumn);
+			int column = (int) (percent * columns);
+
+			scheduler.beginFrame();
+			List<Runnable> requests = new ArrayList<Runnable>();
+			if (!loaded.contains(column))
+			{
+				missed++;
+				requests.add(new LoadTask(column, loaded));
+			}
+			if (prefetch)
+			{
+				scheduler.updateViewPercent(percent, frame * frameTime);
+				double[] range = scheduler.getPrefetchRange();
+				if (range != null)
+				{
+					for (int c = (int) (range[0] * columns); c <= Math.min(columns - 1, range[1] * columns); c++)
+					{
+						if (!loaded.contains(c))
+						{
+							requests.add(new LoadTask(c, loaded));
+						}
+					}
+				}
+			}
+			for (Runnable request : requests)
+			{
+				Runnable scheduled = scheduler.schedule(request, frame * frameTime);
+				if (scheduled != null)
+				{
+					pending.add(scheduled);
+					pendingStart.add(frame);
+				}
+			}
+
+			//complete the requests that have finished loading
+			for (int i = pending.size() - 1; i >= 0; i--)
+			{
+				if (frame - pendingStart.get(i) >= loadFrames)
+				{
+					pending.remove(i).run();
+					pendingStart.remove(i);
+				}
+			}
+		}
+		return missed;
+	}
+
+	private static class TestTask implements Runnable
+	{
+		private final int id;
+		private int runCount = 0;
+
+		public TestTask(int id)
+		{
+			this.id = id;
+		}
+
+		@Override
+		public void run()
+		{
+			runCount++;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			return obj instanceof TestTask && ((TestTask) obj).id == id;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return id;
+		}
+	}
+
+	private static class LoadTask extends TestTask
+	{
+		private final int column;
+		private final Set<Integer> loaded;
+
+		public LoadTask(int column, Set<Integer> loaded)
+		{
+			super(column);
+			this.column = column;
+			this.loaded = loaded;
+		}
+
+		@Override
+		public void run()
+		{
+			loaded.add(column);
+		}
+	}
+}
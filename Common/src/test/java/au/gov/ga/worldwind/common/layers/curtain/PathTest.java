@@ -1,5 +1,6 @@
 package au.gov.ga.worldwind.common.layers.curtain;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import gov.nasa.worldwind.geom.Angle;
 import gov.nasa.worldwind.geom.LatLon;
@@ -85,6 +86,48 @@ public class PathTest
 		assertLatLonsEqual(expected, result);
 	}
 	
+	@Test
+	public void testGetSegmentPercentsIncludesVerticesAndSubsegments()
+	{
+		Path path = createPath(0d, -90d, 0d, 0d, 0d, 90d);
+		
+		double[] expected = new double[] { 0.25, 0.375, 0.5, 0.625, 0.75 };
+		double[] result = path.getSegmentPercents(new Segment(0.25, 0.75, 0, 1), 4);
+		
+		assertArrayEquals(expected, result, 0.0001);
+	}
+	
+	@Test
+	public void testGetSegmentPercentsMergesDuplicatePoints()
+	{
+		Path path = createPath(0d, -90d, 0d, 0d, 0d, 90d);
+		
+		double[] expected = new double[] { 0.25, 0.5, 0.75 };
+		double[] result = path.getSegmentPercents(new Segment(0.25, 0.75, 0, 1), 2);
+		
+		assertArrayEquals(expected, result, 0);
+	}
+	
+	@Test
+	public void testGetClosestPercentStraightPath()
+	{
+		Path path = createPath(0d, 0d, 0d, 10d);
+		
+		double result = path.getClosestPercent(LatLon.fromDegrees(1d, 2.5d));
+		
+		assertEquals(0.25, result, 0.001);
+	}
+	
+	@Test
+	public void testGetClosestPercentBeyondEnd()
+	{
+		Path path = createPath(0d, 0d, 0d, 10d);
+		
+		double result = path.getClosestPercent(LatLon.fromDegrees(0d, 15d));
+		
+		assertEquals(1.0, result, 0.0001);
+	}
+	
 	/**
 	 * Creates a path from lat-lon locations specified by the provided angles in degrees in [lat,lon,lat,lon,...] format
 	 */
@@ -0,0 +1,101 @@
+package au.gov.ga.worldwind.common.layers.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link PositionQuadTree} class
+ */
+public class PositionQuadTreeTest
+{
+	private PositionQuadTree<Integer> tree;
+	private double[] latitudes;
+	private double[] longitudes;
+
+	@Before
+	public void setup()
+	{
+		tree = new PositionQuadTree<Integer>(4, 10);
+
+		Random random = new Random(0);
+		latitudes = new double[1000];
+		longitudes = new double[latitudes.length];
+		for (int i = 0; i < latitudes.length; i++)
+		{
+			latitudes[i] = random.nextDouble() * 180 - 90;
+			longitudes[i] = random.nextDouble() * 360 - 180;
+			tree.add(latitudes[i], longitudes[i], i);
+		}
+	}
+
+	@Test
+	public void testGetAllReturnsEveryItem()
+	{
+		assertEquals(latitudes.length, tree.size());
+		assertEquals(latitudes.length, new HashSet<Integer>(tree.getAll()).size());
+	}
+
+	@Test
+	public void testQueryMatchesBruteForce()
+	{
+		List<Integer> results = new ArrayList<Integer>();
+		tree.query(-30, 100, 10, 160, 0, results);
+
+		Set<Integer> expected = new HashSet<Integer>();
+		for (int i = 0; i < latitudes.length; i++)
+		{
+			if (latitudes[i] >= -30 && latitudes[i] <= 10 && longitudes[i] >= 100 && longitudes[i] <= 160)
+			{
+				expected.add(i);
+			}
+		}
+
+		assertEquals(expected.size(), results.size());
+		assertEquals(expected, new HashSet<Integer>(results));
+	}
+
+	@Test
+	public void testClusteringReducesResults()
+	{
+		List<Integer> results = new ArrayList<Integer>();
+		tree.query(-90, -180, 90, 180, 90, results);
+
+		assertTrue(results.size() > 0);
+		assertTrue(results.size() <= 16);
+	}
+
+	@Test
+	public void testItemsAtTheSamePositionAreAllFound()
+	{
+		PositionQuadTree<Integer> tree = new PositionQuadTree<Integer>(4, 10);
+		for (int i = 0; i < 100; i++)
+		{
+			tree.add(-35, 149, i);
+		}
+		tree.add(10, 10, -1);
+
+		List<Integer> results = new ArrayList<Integer>();
+		tree.query(-36, 148, -34, 150, 0, results);
+		assertEquals(100, results.size());
+		assertTrue(!results.contains(-1));
+	}
+
+	@Test
+	public void testOutOfRangePositionsAreClamped()
+	{
+		tree.add(95, 200, -1);
+
+		List<Integer> results = new ArrayList<Integer>();
+		tree.query(89, 179, 90, 180, 0, results);
+		assertTrue(results.contains(-1));
+	}
+}
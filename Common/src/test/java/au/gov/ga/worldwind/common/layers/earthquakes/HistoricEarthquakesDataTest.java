@@ -0,0 +1,118 @@
+package au.gov.ga.worldwind.common.layers.earthquakes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link HistoricEarthquakesData} class
+ */
+public class HistoricEarthquakesDataTest
+{
+	private static final double[] LATITUDES = { -10, 0, 45.5 };
+	private static final double[] LONGITUDES = { 120, -60.25, 179.9 };
+	private static final double[] ELEVATIONS = { -1000, 0, -35000 };
+	private static final double[] MAGNITUDES = { 2.5, 7.1, 4 };
+	private static final long[] TIMESTAMPS = { -1000000000000L, 0, 1300000000000L };
+
+	@Test
+	public void testColumnarRoundTrip() throws Exception
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		createData().write(baos);
+
+		ByteBuffer buffer = ByteBuffer.wrap(baos.toByteArray());
+		assertTrue(HistoricEarthquakesData.isColumnar(buffer));
+		assertData(HistoricEarthquakesData.read(buffer));
+	}
+
+	@Test
+	public void testColumnarStream() throws Exception
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		createData().write(baos);
+
+		assertData(HistoricEarthquakesData.read(new ByteArrayInputStream(baos.toByteArray())));
+	}
+
+	@Test
+	public void testMappedFile() throws Exception
+	{
+		File file = File.createTempFile("HistoricEarthquakesDataTest", ".dat");
+		try
+		{
+			createData().write(file);
+			assertData(HistoricEarthquakesData.map(file));
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testLegacyFormat() throws Exception
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(baos);
+		for (int i = 0; i < LATITUDES.length; i++)
+		{
+			oos.writeDouble(LATITUDES[i]);
+			oos.writeDouble(LONGITUDES[i]);
+			oos.writeDouble(ELEVATIONS[i]);
+			oos.writeDouble(MAGNITUDES[i]);
+			oos.writeLong(TIMESTAMPS[i]);
+		}
+		oos.close();
+
+		assertFalse(HistoricEarthquakesData.isColumnar(ByteBuffer.wrap(baos.toByteArray())));
+		assertData(HistoricEarthquakesData.readLegacy(new ByteArrayInputStream(baos.toByteArray())));
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedFile() throws Exception
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		createData().write(baos);
+		byte[] bytes = baos.toByteArray();
+		HistoricEarthquakesData.read(ByteBuffer.wrap(bytes, 0, bytes.length - 1));
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedStream() throws Exception
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		createData().write(baos);
+		byte[] bytes = baos.toByteArray();
+		HistoricEarthquakesData.read(new ByteArrayInputStream(bytes, 0, bytes.length - 1));
+	}
+
+	private static HistoricEarthquakesData createData()
+	{
+		return HistoricEarthquakesData.fromArrays(LATITUDES.length, LATITUDES.clone(), LONGITUDES.clone(),
+				ELEVATIONS.clone(), MAGNITUDES.clone(), TIMESTAMPS.clone());
+	}
+
+	private static void assertData(HistoricEarthquakesData data)
+	{
+		assertEquals(LATITUDES.length, data.size());
+		assertEquals(LATITUDES.length, data.getPositions().size());
+		for (int i = 0; i < LATITUDES.length; i++)
+		{
+			assertEquals(LATITUDES[i], data.getLatitude(i), 0);
+			assertEquals(LONGITUDES[i], data.getLongitude(i), 0);
+			assertEquals(ELEVATIONS[i], data.getElevation(i), 0);
+			assertEquals(MAGNITUDES[i], data.getMagnitude(i), 0);
+			assertEquals(TIMESTAMPS[i], data.getTimeInMillis(i));
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package au.gov.ga.worldwind.common.layers.kml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gov.nasa.worldwind.avlist.AVListImpl;
+import gov.nasa.worldwind.ogc.kml.impl.KMLController;
+import gov.nasa.worldwind.render.Renderable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link KMLLayer} class, checking that placemarks are
+ * published by an {@link IncrementalKMLRenderable} while parsing, which is
+ * then replaced by a {@link KMLController}.
+ */
+public class KMLLayerTest
+{
+	private static final int PLACEMARKS = 1000;
+	private static final long TIMEOUT = 30000; //milliseconds
+
+	private File kml;
+
+	@Before
+	public void setup() throws Exception
+	{
+		kml = File.createTempFile("test", ".kml");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(kml), "UTF-8");
+		try
+		{
+			writer.write("<kml xmlns=\"http://www.opengis.net/kml/2.2\"><Document><name>test</name>");
+			for (int i = 0; i < PLACEMARKS; i++)
+			{
+				writer.write("<Placemark><name>" + i + "</name><Point><coordinates>" + (i % 180) + ","
+						+ (i % 90) + ",0</coordinates></Point></Placemark>");
+			}
+			writer.write("</Document></kml>");
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+
+	@After
+	public void tearDown()
+	{
+		kml.delete();
+	}
+
+	@Test
+	public void testIncrementalRenderableIsReplacedByController() throws Exception
+	{
+		RecordingKMLLayer layer = new RecordingKMLLayer(kml);
+		layer.waitForLoad();
+
+		List<String> expected = new ArrayList<String>();
+		expected.add("add IncrementalKMLRenderable");
+		expected.add("add KMLController");
+		expected.add("remove IncrementalKMLRenderable");
+		assertEquals(expected, layer.events);
+		assertEquals(PLACEMARKS, layer.incremental.getFeatureCount());
+		assertTrue(layer.incremental.getTimeToFirstFeature() >= 0);
+		assertEquals("test", layer.getName());
+
+		int count = 0;
+		for (Renderable renderable : layer.getRenderables())
+		{
+			assertFalse(renderable instanceof IncrementalKMLRenderable);
+			count++;
+		}
+		assertEquals(1, count);
+	}
+
+	@Test
+	public void testPlacemarksArePublishedInBatches() throws Exception
+	{
+		RecordingKMLLayer layer = new RecordingKMLLayer(kml);
+		layer.waitForLoad();
+
+		//a redraw is requested for the first placemark, and after each batch
+		assertTrue(layer.redraws > 1);
+		assertTrue(layer.redraws <= 1 + PLACEMARKS);
+	}
+
+	private static class RecordingKMLLayer extends KMLLayer
+	{
+		private final List<String> events = new ArrayList<String>();
+		private IncrementalKMLRenderable incremental;
+		private volatile int redraws = 0;
+		private boolean loaded; //no initializer: the load thread may set it before the constructor returns
+
+		public RecordingKMLLayer(File file) throws Exception
+		{
+			super(file.toURI().toURL(), null, new AVListImpl());
+		}
+
+		@Override
+		public synchronized void addRenderable(Renderable renderable)
+		{
+			if (renderable instanceof IncrementalKMLRenderable)
+			{
+				incremental = (IncrementalKMLRenderable) renderable;
+			}
+			events.add("add " + renderable.getClass().getSimpleName());
+			super.addRenderable(renderable);
+		}
+
+		@Override
+		public synchronized void removeRenderable(Renderable renderable)
+		{
+			events.add("remove " + renderable.getClass().getSimpleName());
+			super.removeRenderable(renderable);
+		}
+
+		@Override
+		protected synchronized void notifyLoadingListeners()
+		{
+			//the final notification is fired after the layer has been named and
+			//the tree node created, so the load is complete
+			if (!isLoading())
+			{
+				loaded = true;
+				notifyAll();
+			}
+			super.notifyLoadingListeners();
+		}
+
+		@Override
+		public void firePropertyChange(String propertyName, Object oldValue, Object newValue)
+		{
+			if (newValue == this)
+			{
+				redraws++;
+			}
+			super.firePropertyChange(propertyName, oldValue, newValue);
+		}
+
+		public synchronized void waitForLoad() throws InterruptedException
+		{
+			long deadline = System.currentTimeMillis() + TIMEOUT;
+			long remaining;
+			while (!loaded && (remaining = deadline - System.currentTimeMillis()) > 0)
+			{
+				wait(remaining);
+			}
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package au.gov.ga.worldwind.common.layers.kml.relativeio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link RelativeKMZFile} class
+ */
+public class RelativeKMZFileTest
+{
+	private static final String KML = "<kml xmlns=\"http://www.opengis.net/kml/2.2\"><Document/></kml>";
+	private static final byte[] ICON = new byte[] { 1, 2, 3, 4 };
+	private static final byte[] TEXTURE = new byte[100000];
+	static
+	{
+		for (int i = 0; i < TEXTURE.length; i++)
+		{
+			TEXTURE[i] = (byte) i;
+		}
+	}
+
+	private File kmz;
+
+	@Before
+	public void setup() throws IOException
+	{
+		kmz = File.createTempFile("test", ".kmz");
+		ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(kmz));
+		try
+		{
+			addEntry(zos, "doc.kml", KML.getBytes("UTF-8"));
+			zos.putNextEntry(new ZipEntry("images/"));
+			zos.closeEntry();
+			addEntry(zos, "images/icon.png", ICON);
+			addEntry(zos, "models/textures/texture.jpg", TEXTURE);
+		}
+		finally
+		{
+			zos.close();
+		}
+	}
+
+	@After
+	public void tearDown()
+	{
+		kmz.delete();
+	}
+
+	@Test
+	public void testSupportFileStreamReadsNestedEntries() throws Exception
+	{
+		RelativeKMZFile file = new RelativeKMZFile(kmz, kmz.getName(), null);
+
+		assertArrayEquals(ICON, read(file.getSupportFileStream("images/icon.png")));
+		assertArrayEquals(TEXTURE, read(file.getSupportFileStream("models/textures/texture.jpg")));
+		assertArrayEquals(TEXTURE, read(file.getSupportFileStream("models/../models/textures/texture.jpg")));
+	}
+
+	@Test
+	public void testDirectoriesAndMissingEntriesAreNotExtracted() throws Exception
+	{
+		RelativeKMZFile file = new RelativeKMZFile(kmz, kmz.getName(), null);
+
+		assertNull(file.extractEntry("images/"));
+		assertNull(file.extractEntry("missing.png"));
+	}
+
+	@Test
+	public void testSupportFilePathExtractsNestedEntry() throws Exception
+	{
+		RelativeKMZFile file = new RelativeKMZFile(kmz, kmz.getName(), null);
+
+		String path = file.getSupportFilePath("models/textures/texture.jpg");
+		assertNotNull(path);
+		assertTrue(path.endsWith(".jpg"));
+		assertArrayEquals(TEXTURE, read(new FileInputStream(path)));
+		assertEquals(path, file.getSupportFilePath("models/textures/texture.jpg"));
+	}
+
+	@Test
+	public void testConcurrentSupportFilePathsExtractOnce() throws Exception
+	{
+		final RelativeKMZFile file = new RelativeKMZFile(kmz, kmz.getName(), null);
+		int before = countExtractedFiles();
+
+		int threads = 16;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			Set<Future<String>> futures = new HashSet<Future<String>>();
+			for (int i = 0; i < threads; i++)
+			{
+				futures.add(executor.submit(new Callable<String>()
+				{
+					@Override
+					public String call() throws Exception
+					{
+						start.await();
+						return file.getSupportFilePath("models/textures/texture.jpg");
+					}
+				}));
+			}
+			start.countDown();
+
+			Set<String> paths = new HashSet<String>();
+			for (Future<String> future : futures)
+			{
+				paths.add(future.get());
+			}
+
+			//every thread gets the same, completely extracted, file
+			assertEquals(1, paths.size());
+			assertEquals(before + 1, countExtractedFiles());
+			assertArrayEquals(TEXTURE, read(new FileInputStream(paths.iterator().next())));
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	private static int countExtractedFiles()
+	{
+		String[] names = new File(System.getProperty("java.io.tmpdir")).list();
+		int count = 0;
+		for (String name : names)
+		{
+			if (name.startsWith("kmz") && name.endsWith(".jpg"))
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static void addEntry(ZipOutputStream zos, String name, byte[] data) throws IOException
+	{
+		zos.putNextEntry(new ZipEntry(name));
+		zos.write(data);
+		zos.closeEntry();
+	}
+
+	private static byte[] read(InputStream is) throws IOException
+	{
+		assertNotNull(is);
+		try
+		{
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = is.read(buffer)) >= 0)
+			{
+				baos.write(buffer, 0, read);
+			}
+			return baos.toByteArray();
+		}
+		finally
+		{
+			is.close();
+		}
+	}
+}
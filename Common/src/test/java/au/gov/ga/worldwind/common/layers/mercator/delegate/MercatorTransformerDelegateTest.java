@@ -0,0 +1,175 @@
+package au.gov.ga.worldwind.common.layers.mercator.delegate;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gov.nasa.worldwind.geom.Angle;
+import gov.nasa.worldwind.layers.mercator.MercatorSector;
+
+import java.awt.Point;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link MercatorTransformerDelegate} class, comparing the
+ * row-mapped transform with the original per-pixel implementation
+ */
+public class MercatorTransformerDelegateTest
+{
+	private static final int[] IMAGE_TYPES = { BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB,
+			BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_GRAY };
+
+	@Test
+	public void testMatchesPerPixelTransform()
+	{
+		for (int type : IMAGE_TYPES)
+		{
+			for (int size : new int[] { 256, 101 })
+			{
+				BufferedImage image = createImage(type, size);
+				for (int level = 0; level <= 5; level++)
+				{
+					for (MercatorSector sector : getTestSectors(level))
+					{
+						BufferedImage expected = perPixelTransform(image, sector);
+						BufferedImage actual = MercatorTransformerDelegate.transformImage(image, sector);
+						assertImagesEqual("type " + type + ", size " + size + ", level " + level + ", sector "
+								+ sector.getMinLatPercent() + ".." + sector.getMaxLatPercent(), expected, actual);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMatchesPerPixelTransformForBandedImage()
+	{
+		//banded rasters can't be copied directly, so this uses the fallback copy
+		int size = 64;
+		WritableRaster raster = Raster.createBandedRaster(DataBuffer.TYPE_BYTE, size, size, 3, new Point());
+		ColorModel colorModel =
+				new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), false, false,
+						Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+		BufferedImage image = new BufferedImage(colorModel, raster, false, null);
+		fill(image);
+
+		for (int level = 0; level <= 3; level++)
+		{
+			for (MercatorSector sector : getTestSectors(level))
+			{
+				assertImagesEqual("level " + level, perPixelTransform(image, sector),
+						MercatorTransformerDelegate.transformImage(image, sector));
+			}
+		}
+	}
+
+	@Test
+	public void testPoleEdgeRowMapsAreInRange()
+	{
+		int height = 256;
+		for (MercatorSector sector : new MercatorSector[] { sector(3, 0), sector(3, 7) })
+		{
+			int[] rowMap = MercatorTransformerDelegate.calculateRowMap(sector, height);
+			assertEquals(height, rowMap.length);
+			assertEquals(0, rowMap[0]);
+			for (int y = 1; y < height; y++)
+			{
+				assertTrue(rowMap[y] >= rowMap[y - 1]);
+				assertTrue(rowMap[y] < height);
+			}
+		}
+	}
+
+	/**
+	 * The sectors of the pole-edge tiles, and the tiles either side of the
+	 * equator, of the given level.
+	 */
+	private static MercatorSector[] getTestSectors(int level)
+	{
+		int bands = 1 << level;
+		if (bands == 1)
+		{
+			return new MercatorSector[] { sector(level, 0) };
+		}
+		return new MercatorSector[] { sector(level, 0), sector(level, bands / 2 - 1), sector(level, bands / 2),
+				sector(level, bands - 1) };
+	}
+
+	/**
+	 * @return The sector of the given latitude band (numbered from the south)
+	 *         of the given level
+	 */
+	private static MercatorSector sector(int level, int band)
+	{
+		double delta = 2.0 / (1 << level);
+		return new MercatorSector(-1.0 + band * delta, -1.0 + (band + 1) * delta, Angle.NEG180, Angle.POS180);
+	}
+
+	private static BufferedImage createImage(int type, int size)
+	{
+		BufferedImage image = new BufferedImage(size, size, type);
+		fill(image);
+		return image;
+	}
+
+	private static void fill(BufferedImage image)
+	{
+		for (int y = 0; y < image.getHeight(); y++)
+		{
+			for (int x = 0; x < image.getWidth(); x++)
+			{
+				int alpha = 255 - (x * 3 + y) % 200;
+				image.setRGB(x, y, (alpha << 24) | ((x * 7 + y * 13) & 0xff) << 16 | ((y * 31) & 0xff) << 8
+						| ((x * 17) & 0xff));
+			}
+		}
+	}
+
+	/**
+	 * The transform as originally implemented, using getRGB/setRGB for every
+	 * pixel.
+	 */
+	private static BufferedImage perPixelTransform(BufferedImage image, MercatorSector sector)
+	{
+		int type = image.getType();
+		if (type == 0)
+			type = BufferedImage.TYPE_INT_RGB;
+		BufferedImage trans = new BufferedImage(image.getWidth(), image.getHeight(), type);
+		double miny = sector.getMinLatPercent();
+		double maxy = sector.getMaxLatPercent();
+		for (int y = 0; y < image.getHeight(); y++)
+		{
+			double sy = 1.0 - y / (double) (image.getHeight() - 1);
+			Angle lat = Angle.fromRadians(sy * sector.getDeltaLatRadians() + sector.getMinLatitude().radians);
+			double dy = 1.0 - (MercatorSector.gudermannianInverse(lat) - miny) / (maxy - miny);
+			dy = Math.max(0.0, Math.min(1.0, dy));
+			int iy = (int) (dy * (image.getHeight() - 1));
+
+			for (int x = 0; x < image.getWidth(); x++)
+			{
+				trans.setRGB(x, y, image.getRGB(x, iy));
+			}
+		}
+		return trans;
+	}
+
+	private static void assertImagesEqual(String message, BufferedImage expected, BufferedImage actual)
+	{
+		assertEquals(message, expected.getWidth(), actual.getWidth());
+		assertEquals(message, expected.getHeight(), actual.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++)
+		{
+			int[] expectedRow = expected.getRGB(0, y, expected.getWidth(), 1, null, 0, expected.getWidth());
+			int[] actualRow = actual.getRGB(0, y, actual.getWidth(), 1, null, 0, actual.getWidth());
+			assertArrayEquals(message + ", row " + y, expectedRow, actualRow);
+		}
+	}
+}
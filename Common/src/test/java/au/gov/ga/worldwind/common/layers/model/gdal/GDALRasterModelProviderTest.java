@@ -26,8 +26,10 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import org.gdal.gdal.Band;
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
 import org.jmock.Expectations;
@@ -230,6 +232,35 @@ public class GDALRasterModelProviderTest
 		doScaleOffsetTest(scale, offset);
 	}
 
+	@Test
+	public void testLoadInSingleRowWindowsMatchesDefaultWindows() throws Exception
+	{
+		RasterProperties testRaster = TEST_RASTERS.get(0);
+		URL url = setupTestWithRaster(testRaster);
+
+		assertTrue(classUnderTest.doLoadData(url, modelLayer));
+		List<Position> expected = matcher.shape.getPositions();
+		float[] expectedColors = matcher.shape.getColorBuffer();
+
+		classUnderTest = new GDALRasterModelProvider()
+		{
+			@Override
+			protected int getWindowRows(Band band)
+			{
+				return 1;
+			}
+		};
+		assertTrue(classUnderTest.doLoadData(url, modelLayer));
+		List<Position> actual = matcher.shape.getPositions();
+
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++)
+		{
+			assertEquals(expected.get(i), actual.get(i));
+		}
+		assertTrue(Arrays.equals(expectedColors, matcher.shape.getColorBuffer()));
+	}
+
 	private void doScaleOffsetTest(final float scale, final float offset)
 	{
 		RasterProperties testRaster = TEST_RASTERS.get(1);
@@ -0,0 +1,236 @@
+package au.gov.ga.worldwind.common.layers.tiled.image.delegate;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import gov.nasa.worldwind.avlist.AVKey;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import au.gov.ga.worldwind.common.layers.tiled.image.delegate.elevationreader.ColorMapElevationImageReaderDelegate;
+import au.gov.ga.worldwind.common.util.ColorMap;
+
+/**
+ * Unit tests for the {@link CompressedTextureCache} class
+ */
+public class CompressedTextureCacheTest
+{
+	private static final String TILE_PATH = "Test Cache/0/0000/0000_0000";
+	private static final String DEFINITION = "ColorToAlphaTransformer(0xffffff);MipMaps=true";
+
+	private File root;
+	private File source;
+	private URL sourceURL;
+
+	@Before
+	public void setup() throws Exception
+	{
+		root = File.createTempFile("CompressedTextureCacheTest", "");
+		root.delete();
+		root.mkdirs();
+		source = new File(root, "source.png");
+		writeSource(new byte[] { 1, 2, 3 });
+		sourceURL = source.toURI().toURL();
+	}
+
+	@After
+	public void tearDown()
+	{
+		delete(root);
+	}
+
+	@Test
+	public void testWrittenTextureIsRead()
+	{
+		CompressedTextureCache cache = new CompressedTextureCache(root, DEFINITION);
+		assertNull(cache.read(TILE_PATH, sourceURL));
+
+		byte[] dds = createDDS(1000);
+		ByteBuffer buffer = ByteBuffer.wrap(dds);
+		cache.write(TILE_PATH, sourceURL, buffer);
+		assertEquals(0, buffer.position());
+
+		ByteBuffer read = new CompressedTextureCache(root, DEFINITION).read(TILE_PATH, sourceURL);
+		assertNotNull(read);
+		assertArrayEquals(dds, toArray(read));
+	}
+
+	@Test
+	public void testTextureIsInvalidatedWhenSourceChanges() throws Exception
+	{
+		CompressedTextureCache cache = new CompressedTextureCache(root, DEFINITION);
+		cache.write(TILE_PATH, sourceURL, ByteBuffer.wrap(createDDS(100)));
+		assertNotNull(cache.read(TILE_PATH, sourceURL));
+
+		writeSource(new byte[] { 1, 2, 3, 4 });
+		assertNull(cache.read(TILE_PATH, sourceURL));
+
+		byte[] dds = createDDS(200);
+		cache.write(TILE_PATH, sourceURL, ByteBuffer.wrap(dds));
+		assertArrayEquals(dds, toArray(cache.read(TILE_PATH, sourceURL)));
+	}
+
+	@Test
+	public void testTextureIsNotSharedBetweenDefinitions()
+	{
+		new CompressedTextureCache(root, DEFINITION).write(TILE_PATH, sourceURL, ByteBuffer.wrap(createDDS(100)));
+		assertNull(new CompressedTextureCache(root, DEFINITION + ";Other").read(TILE_PATH, sourceURL));
+	}
+
+	@Test
+	public void testTextureIsNotSharedBetweenColorMaps()
+	{
+		ColorMap red = new ColorMap();
+		red.put(0d, Color.black);
+		red.put(1000d, Color.red);
+		ColorMap blue = new ColorMap();
+		blue.put(0d, Color.black);
+		blue.put(1000d, Color.blue);
+
+		//same pixel type, byte order and missing data value, so the definition strings are equal
+		ColorMapElevationImageReaderDelegate redReader =
+				new ColorMapElevationImageReaderDelegate(AVKey.INT16, AVKey.LITTLE_ENDIAN, -9999d, red);
+		ColorMapElevationImageReaderDelegate blueReader =
+				new ColorMapElevationImageReaderDelegate(AVKey.INT16, AVKey.LITTLE_ENDIAN, -9999d, blue);
+		assertEquals(redReader.toDefinition(null), blueReader.toDefinition(null));
+		assertFalse(redReader.getCacheKey().equals(blueReader.getCacheKey()));
+
+		byte[] redDDS = createDDS(100);
+		byte[] blueDDS = createDDS(200);
+		CompressedTextureCache redCache = new CompressedTextureCache(root, redReader.getCacheKey());
+		CompressedTextureCache blueCache = new CompressedTextureCache(root, blueReader.getCacheKey());
+		redCache.write(TILE_PATH, sourceURL, ByteBuffer.wrap(redDDS));
+		assertNull(blueCache.read(TILE_PATH, sourceURL));
+
+		blueCache.write(TILE_PATH, sourceURL, ByteBuffer.wrap(blueDDS));
+		assertArrayEquals(redDDS, toArray(redCache.read(TILE_PATH, sourceURL)));
+		assertArrayEquals(blueDDS, toArray(blueCache.read(TILE_PATH, sourceURL)));
+
+		//editing the colour map changes the key
+		red.put(500d, Color.green);
+		assertFalse(redCache.getDefinition().equals(redReader.getCacheKey()));
+	}
+
+	@Test
+	public void testLargeDefinitionIsCached()
+	{
+		//longer than the 64KB limit of modified UTF-8 strings, with non-ASCII characters
+		StringBuilder sb = new StringBuilder(DEFINITION);
+		while (sb.length() < 100000)
+		{
+			sb.append(";ColorMap(\u00e9").append(sb.length()).append(')');
+		}
+		String definition = sb.toString();
+
+		byte[] dds = createDDS(100);
+		new CompressedTextureCache(root, definition).write(TILE_PATH, sourceURL, ByteBuffer.wrap(dds));
+		assertArrayEquals(dds, toArray(new CompressedTextureCache(root, definition).read(TILE_PATH, sourceURL)));
+		assertNull(new CompressedTextureCache(root, definition + ";Other").read(TILE_PATH, sourceURL));
+	}
+
+	@Test
+	public void testCleanupDeletesUnusedDefinitions()
+	{
+		CompressedTextureCache used = new CompressedTextureCache(root, DEFINITION);
+		CompressedTextureCache unused = new CompressedTextureCache(root, DEFINITION + ";Old");
+		used.write(TILE_PATH, sourceURL, ByteBuffer.wrap(createDDS(100)));
+		unused.write(TILE_PATH, sourceURL, ByteBuffer.wrap(createDDS(100)));
+
+		long now = System.currentTimeMillis();
+		File unusedDirectory = unused.getEntryFile(TILE_PATH);
+		while (!unusedDirectory.getParentFile().getName().equals(CompressedTextureCache.DIRECTORY))
+		{
+			unusedDirectory = unusedDirectory.getParentFile();
+		}
+		unusedDirectory.setLastModified(now - 2 * CompressedTextureCache.MAX_UNUSED_AGE);
+
+		CompressedTextureCache.cleanup(root, CompressedTextureCache.MAX_SIZE, CompressedTextureCache.MAX_UNUSED_AGE,
+				now);
+		assertFalse(unusedDirectory.exists());
+		assertNotNull(used.read(TILE_PATH, sourceURL));
+	}
+
+	@Test
+	public void testCleanupEnforcesMaxSize()
+	{
+		CompressedTextureCache cache = new CompressedTextureCache(root, DEFINITION);
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < 10; i++)
+		{
+			cache.write(TILE_PATH + i, sourceURL, ByteBuffer.wrap(createDDS(1000)));
+			cache.getEntryFile(TILE_PATH + i).setLastModified(now - (10 - i) * 1000);
+		}
+		long entryLength = cache.getEntryFile(TILE_PATH + 0).length();
+
+		long deleted =
+				CompressedTextureCache.cleanup(root, entryLength * 4, CompressedTextureCache.MAX_UNUSED_AGE, now);
+		assertEquals(entryLength * 6, deleted);
+		for (int i = 0; i < 10; i++)
+		{
+			//the oldest entries are deleted first
+			assertEquals(i >= 6, cache.getEntryFile(TILE_PATH + i).exists());
+		}
+		assertTrue(cache.read(TILE_PATH + 9, sourceURL) != null);
+	}
+
+	@Test
+	public void testNonFileSourcesAreNotCached() throws Exception
+	{
+		URL url = new URL("http://localhost/tiles/0/0000/0000_0000.png");
+		CompressedTextureCache cache = new CompressedTextureCache(root, DEFINITION);
+		cache.write(TILE_PATH, url, ByteBuffer.wrap(createDDS(100)));
+		assertNull(cache.read(TILE_PATH, url));
+	}
+
+	private void writeSource(byte[] data) throws IOException
+	{
+		long lastModified = source.lastModified();
+		FileOutputStream fos = new FileOutputStream(source);
+		fos.write(data);
+		fos.close();
+		//ensure the timestamp changes, even on file systems with a coarse resolution
+		source.setLastModified(Math.max(lastModified + 2000, System.currentTimeMillis()));
+	}
+
+	private static byte[] createDDS(int length)
+	{
+		byte[] dds = new byte[length];
+		for (int i = 0; i < length; i++)
+		{
+			dds[i] = (byte) (i * 31 + length);
+		}
+		return dds;
+	}
+
+	private static byte[] toArray(ByteBuffer buffer)
+	{
+		byte[] array = new byte[buffer.remaining()];
+		buffer.duplicate().get(array);
+		return array;
+	}
+
+	private static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for (File child : children)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,51 @@
+package au.gov.ga.worldwind.common.layers.tiled.image.delegate;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link FileLockSharer} class
+ */
+public class FileLockSharerTest
+{
+	@Test
+	public void testCacheLockIsSharedByName()
+	{
+		Object lock = FileLockSharer.getLock("Earth/Test Cache");
+		assertSame(lock, FileLockSharer.getLock("Earth/Test Cache"));
+		assertNotSame(lock, FileLockSharer.getLock("Earth/Other Cache"));
+	}
+
+	@Test
+	public void testFileLockIsSharedBetweenFileAndURL() throws Exception
+	{
+		File file = new File(System.getProperty("java.io.tmpdir"), "Test Cache/0/0000/0000_0000.png");
+		URL url = file.toURI().toURL();
+
+		assertSame(FileLockSharer.getFileLock(file), FileLockSharer.getFileLock(url));
+		assertSame(FileLockSharer.getFileLock(file), FileLockSharer.getFileLock(new File(file.getPath())));
+	}
+
+	@Test
+	public void testFileLocksAreSpreadAcrossTiles()
+	{
+		File dir = new File(System.getProperty("java.io.tmpdir"), "Test Cache/5/0012");
+		Object first = FileLockSharer.getFileLock(new File(dir, "0012_0000.png"));
+		int same = 0;
+		for (int col = 1; col < 100; col++)
+		{
+			if (FileLockSharer.getFileLock(new File(dir, "0012_" + String.format("%04d", col) + ".png")) == first)
+			{
+				same++;
+			}
+		}
+		//neighbouring tiles should (almost) never share a lock
+		assertTrue(same <= 1);
+	}
+}
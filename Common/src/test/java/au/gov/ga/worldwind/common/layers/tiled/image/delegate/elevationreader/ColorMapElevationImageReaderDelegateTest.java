@@ -0,0 +1,85 @@
+package au.gov.ga.worldwind.common.layers.tiled.image.delegate.elevationreader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gov.nasa.worldwind.avlist.AVKey;
+
+import java.awt.Color;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import au.gov.ga.worldwind.common.util.ColorMap;
+import au.gov.ga.worldwind.common.util.ColorMapLookupTable;
+
+/**
+ * Unit tests for the {@link ColorMapElevationImageReaderDelegate} class
+ */
+public class ColorMapElevationImageReaderDelegateTest
+{
+	private static final int TOLERANCE = 12;
+
+	private ColorMap colorMap;
+
+	@Before
+	public void setup()
+	{
+		//bathymetry/topography map with a narrow band just below sea level
+		colorMap = new ColorMap();
+		colorMap.setInterpolateHue(false);
+		colorMap.put(-11000d, new Color(0, 0, 64));
+		colorMap.put(-1d, new Color(0, 128, 255));
+		colorMap.put(0d, new Color(0, 160, 0));
+		colorMap.put(9000d, Color.white);
+	}
+
+	@Test
+	public void testLookupTableMatchesColorMapAtBreakPoints()
+	{
+		ColorMapLookupTable lookupTable = createDelegate().getLookupTable();
+		for (double elevation : colorMap.keySet())
+		{
+			assertColorEquals(elevation, colorMap.calculateColor(elevation), lookupTable.getARGB(elevation));
+		}
+	}
+
+	@Test
+	public void testNarrowBandIsResolved()
+	{
+		ColorMapLookupTable lookupTable = createDelegate().getLookupTable();
+		for (double elevation = -1; elevation <= 0; elevation += 0.125)
+		{
+			assertColorEquals(elevation, colorMap.calculateColor(elevation), lookupTable.getARGB(elevation));
+		}
+	}
+
+	@Test
+	public void testResolutionIsSizedFromSmallestGap()
+	{
+		ColorMap wide = new ColorMap();
+		wide.put(0d, Color.black);
+		wide.put(1000d, Color.white);
+		int wideResolution = ColorMapElevationImageReaderDelegate.calculateLookupTableResolution(wide);
+		int narrowResolution = ColorMapElevationImageReaderDelegate.calculateLookupTableResolution(colorMap);
+
+		assertEquals(4096, wideResolution);
+		assertTrue(narrowResolution > wideResolution);
+		assertTrue(narrowResolution <= 1 << 18);
+		assertEquals(4096, ColorMapElevationImageReaderDelegate.calculateLookupTableResolution(new ColorMap()));
+	}
+
+	private ColorMapElevationImageReaderDelegate createDelegate()
+	{
+		return new ColorMapElevationImageReaderDelegate(AVKey.INT16, AVKey.LITTLE_ENDIAN, -32768d, colorMap);
+	}
+
+	private static void assertColorEquals(double elevation, Color expected, int actual)
+	{
+		Color color = new Color(actual, true);
+		String message = "Color at " + elevation + ": expected " + expected + ", was " + color;
+		assertEquals(message, expected.getRed(), color.getRed(), TOLERANCE);
+		assertEquals(message, expected.getGreen(), color.getGreen(), TOLERANCE);
+		assertEquals(message, expected.getBlue(), color.getBlue(), TOLERANCE);
+		assertEquals(message, expected.getAlpha(), color.getAlpha(), TOLERANCE);
+	}
+}
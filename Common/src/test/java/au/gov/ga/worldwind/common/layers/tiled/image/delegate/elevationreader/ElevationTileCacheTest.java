@@ -0,0 +1,202 @@
+package au.gov.ga.worldwind.common.layers.tiled.image.delegate.elevationreader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.avlist.AVList;
+import gov.nasa.worldwind.avlist.AVListImpl;
+import gov.nasa.worldwind.geom.LatLon;
+import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.util.Level;
+import gov.nasa.worldwind.util.Tile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link ElevationTileCache} class
+ */
+public class ElevationTileCacheTest
+{
+	public static final int TILE_SIZE = 4;
+
+	private File dir;
+
+	@Before
+	public void setup() throws IOException
+	{
+		dir = createTempDir();
+	}
+
+	@After
+	public void tearDown()
+	{
+		delete(dir);
+	}
+
+	@Test
+	public void testNeighbourURLKeepsPadding() throws Exception
+	{
+		Tile tile = createTile(5, 7);
+		URL url = new URL("http://example.com/tiles/3/0005/0005_0007.bil");
+
+		assertEquals("http://example.com/tiles/3/0006/0006_0007.bil",
+				ElevationTileCache.getNeighbourURL(tile, url, 1, 0).toExternalForm());
+		assertEquals("http://example.com/tiles/3/0005/0005_0006.bil",
+				ElevationTileCache.getNeighbourURL(tile, url, 0, -1).toExternalForm());
+	}
+
+	@Test
+	public void testNeighbourURLWithoutPadding() throws Exception
+	{
+		Tile tile = createTile(9, 7);
+		URL url = new URL("file:/tiles/3/9/9_7.bil");
+
+		assertEquals("file:/tiles/3/10/10_7.bil", ElevationTileCache.getNeighbourURL(tile, url, 1, 0)
+				.toExternalForm());
+	}
+
+	@Test
+	public void testNeighbourURLOutsideLevel() throws Exception
+	{
+		Tile tile = createTile(0, 0);
+		URL url = new URL("file:/tiles/3/0000/0000_0000.bil");
+
+		assertNull(ElevationTileCache.getNeighbourURL(tile, url, -1, 0));
+		assertNull(ElevationTileCache.getNeighbourURL(tile, url, 0, -1));
+	}
+
+	@Test
+	public void testNeighbourURLForNonTileURL() throws Exception
+	{
+		Tile tile = createTile(5, 7);
+
+		assertNull(ElevationTileCache.getNeighbourURL(tile, null, 1, 0));
+		assertNull(ElevationTileCache.getNeighbourURL(tile, new URL("http://example.com/wms?row=5&col=7"), 1, 0));
+		//row/column in the URL don't match the tile
+		assertNull(ElevationTileCache.getNeighbourURL(tile, new URL("file:/tiles/3/0005/0005_0008.bil"), 1, 0));
+		assertNull(ElevationTileCache.getNeighbourURL(tile, new URL("file:/tiles/3/0004/0005_0007.bil"), 1, 0));
+	}
+
+	@Test
+	public void testRemoteNeighbourIsNeverRead() throws Exception
+	{
+		Tile tile = createTile(5, 7);
+		URL url = new URL("http://localhost:1/tiles/3/0005/0005_0007.bil");
+
+		assertNull(getNeighbour(tile, url, 0, 1));
+	}
+
+	@Test
+	public void testMissingNeighbourIsNull() throws Exception
+	{
+		Tile tile = createTile(5, 7);
+		URL url = writeTile(dir, 5, 7, 0);
+
+		assertNull(getNeighbour(tile, url, 0, 1));
+	}
+
+	@Test
+	public void testLocalNeighbourIsRead() throws Exception
+	{
+		Tile tile = createTile(5, 7);
+		URL url = writeTile(dir, 5, 7, 0);
+		short[] east = new short[TILE_SIZE * TILE_SIZE];
+		for (int i = 0; i < east.length; i++)
+		{
+			east[i] = (short) i;
+		}
+		east[1] = -1;
+		writeTile(dir, 5, 8, east);
+
+		double[] values = getNeighbour(tile, url, 0, 1);
+		assertNotNull(values);
+		assertEquals(east.length, values.length);
+		assertEquals(0, values[0], 0);
+		assertEquals(Double.NaN, values[1], 0);
+		assertEquals(east.length - 1, values[east.length - 1], 0);
+	}
+
+	private static double[] getNeighbour(Tile tile, URL url, int rowOffset, int colOffset)
+	{
+		return ElevationTileCache.getNeighbour(tile, url, rowOffset, colOffset, AVKey.INT16, AVKey.LITTLE_ENDIAN,
+				-1, -Double.MAX_VALUE, Double.MAX_VALUE);
+	}
+
+	public static Tile createTile(int row, int col)
+	{
+		AVList params = new AVListImpl();
+		params.setValue(AVKey.LEVEL_NUMBER, 3);
+		params.setValue(AVKey.LEVEL_NAME, "3");
+		params.setValue(AVKey.TILE_DELTA, LatLon.fromDegrees(1, 1));
+		params.setValue(AVKey.TILE_WIDTH, TILE_SIZE);
+		params.setValue(AVKey.TILE_HEIGHT, TILE_SIZE);
+		params.setValue(AVKey.DATA_CACHE_NAME, "Test Cache");
+		params.setValue(AVKey.SERVICE, "http://localhost/");
+		params.setValue(AVKey.FORMAT_SUFFIX, ".bil");
+		Level level = new Level(params);
+		return new Tile(Sector.fromDegrees(row - 90, row - 89, col - 180, col - 179), level, row, col);
+	}
+
+	/**
+	 * Write a little endian Int16 tile with a constant value in the standard
+	 * row/row_col.bil layout under the given directory.
+	 */
+	public static URL writeTile(File dir, int row, int col, int value) throws IOException
+	{
+		short[] values = new short[TILE_SIZE * TILE_SIZE];
+		for (int i = 0; i < values.length; i++)
+		{
+			values[i] = (short) value;
+		}
+		return writeTile(dir, row, col, values);
+	}
+
+	public static URL writeTile(File dir, int row, int col, short[] values) throws IOException
+	{
+		File file = new File(dir, String.format("%04d/%04d_%04d.bil", row, row, col));
+		file.getParentFile().mkdirs();
+		ByteBuffer buffer = ByteBuffer.allocate(values.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.asShortBuffer().put(values);
+		FileOutputStream fos = new FileOutputStream(file);
+		try
+		{
+			fos.write(buffer.array());
+		}
+		finally
+		{
+			fos.close();
+		}
+		return file.toURI().toURL();
+	}
+
+	public static File createTempDir() throws IOException
+	{
+		File dir = File.createTempFile("elevation", "");
+		dir.delete();
+		dir.mkdirs();
+		return dir;
+	}
+
+	public static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for (File child : children)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,117 @@
+package au.gov.ga.worldwind.common.layers.tiled.image.delegate.elevationreader;
+
+import static au.gov.ga.worldwind.common.layers.tiled.image.delegate.elevationreader.ElevationTileCacheTest.TILE_SIZE;
+import static au.gov.ga.worldwind.common.layers.tiled.image.delegate.elevationreader.ElevationTileCacheTest.createTempDir;
+import static au.gov.ga.worldwind.common.layers.tiled.image.delegate.elevationreader.ElevationTileCacheTest.createTile;
+import static au.gov.ga.worldwind.common.layers.tiled.image.delegate.elevationreader.ElevationTileCacheTest.delete;
+import static au.gov.ga.worldwind.common.layers.tiled.image.delegate.elevationreader.ElevationTileCacheTest.writeTile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.geom.Vec4;
+import gov.nasa.worldwind.util.Tile;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import au.gov.ga.worldwind.common.util.IOUtil;
+
+/**
+ * Unit tests for the {@link ShadedElevationImageReaderDelegate} class
+ */
+public class ShadedElevationImageReaderDelegateTest
+{
+	private File dir;
+	private ShadedElevationImageReaderDelegate delegate;
+
+	@Before
+	public void setup() throws IOException
+	{
+		dir = createTempDir();
+		delegate =
+				new ShadedElevationImageReaderDelegate(AVKey.INT16, AVKey.LITTLE_ENDIAN, -32768, 10, new Vec4(-0.7,
+						0.7, -1).normalize3(), -Double.MAX_VALUE, Double.MAX_VALUE);
+	}
+
+	@After
+	public void tearDown()
+	{
+		delete(dir);
+	}
+
+	@Test
+	public void testFlatTileWithoutNeighboursIsEvenlyShaded() throws Exception
+	{
+		BufferedImage image = shade(createTile(5, 7), writeTile(dir, 5, 7, 0));
+
+		int rgb = image.getRGB(1, 1);
+		for (int y = 0; y < TILE_SIZE; y++)
+		{
+			for (int x = 0; x < TILE_SIZE; x++)
+			{
+				assertEquals(rgb, image.getRGB(x, y));
+			}
+		}
+	}
+
+	@Test
+	public void testEdgesAreShadedUsingNeighbours() throws Exception
+	{
+		URL url = writeTile(dir, 5, 7, 0);
+		writeTile(dir, 5, 8, 1000); //east
+		writeTile(dir, 6, 7, 1000); //north
+
+		BufferedImage image = shade(createTile(5, 7), url);
+
+		int interior = image.getRGB(1, 2);
+		//the east column and north row slope up towards the neighbours
+		for (int i = 0; i < TILE_SIZE - 1; i++)
+		{
+			assertTrue(image.getRGB(TILE_SIZE - 1, i + 1) != interior);
+			assertTrue(image.getRGB(i, 0) != interior);
+		}
+		//the west column and south row have no neighbours, and stay flat
+		for (int i = 1; i < TILE_SIZE - 1; i++)
+		{
+			assertEquals(interior, image.getRGB(0, i));
+			assertEquals(interior, image.getRGB(i, TILE_SIZE - 1));
+		}
+	}
+
+	@Test
+	public void testSeamIsShadedTheSameOnBothSides() throws Exception
+	{
+		//a step between two flat tiles
+		URL westUrl = writeTile(dir, 5, 7, 0);
+		URL eastUrl = writeTile(dir, 5, 8, 1000);
+
+		BufferedImage westImage = shade(createTile(5, 7), westUrl);
+		BufferedImage eastImage = shade(createTile(5, 8), eastUrl);
+
+		for (int y = 0; y < TILE_SIZE; y++)
+		{
+			assertEquals(westImage.getRGB(TILE_SIZE - 1, y), eastImage.getRGB(0, y));
+			assertTrue(westImage.getRGB(TILE_SIZE - 1, y) != westImage.getRGB(0, y));
+			assertTrue(eastImage.getRGB(0, y) != eastImage.getRGB(TILE_SIZE - 1, y));
+		}
+	}
+
+	@Test
+	public void testShadedTilesAreNotCached()
+	{
+		//edge shading depends on the neighbouring tiles, not just the tile's source file
+		assertNull(delegate.getCacheKey());
+	}
+
+	private BufferedImage shade(Tile tile, URL url) throws IOException
+	{
+		return delegate.generateImage(tile, url, IOUtil.readByteBuffer(url, AVKey.INT16, AVKey.LITTLE_ENDIAN), null);
+	}
+}
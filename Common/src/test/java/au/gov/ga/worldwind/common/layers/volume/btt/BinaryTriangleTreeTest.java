@@ -57,6 +57,32 @@ public class BinaryTriangleTreeTest
 		Assert.assertTrue(areImagesEqual(image, reference));
 	}
 
+	@Test
+	public void testParallelBuildMatchesSequentialBuild()
+	{
+		int width = 600;
+		int height = 400;
+		List<Position> positions = new ArrayList<Position>(width * height);
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				positions.add(Position.fromDegrees(y, x, Math.sin(x * 0.05) * 50 + Math.cos(y * 0.07) * 30));
+			}
+		}
+
+		BinaryTriangleTree sequential = new BinaryTriangleTree(positions, width, height);
+		sequential.setParallel(false);
+		FastShape expected = sequential.buildMesh(1);
+
+		BinaryTriangleTree parallel = new BinaryTriangleTree(positions, width, height);
+		parallel.setParallel(true);
+		FastShape actual = parallel.buildMesh(1);
+
+		Assert.assertEquals(expected.getPositions(), actual.getPositions());
+		Assert.assertArrayEquals(expected.getIndices(), actual.getIndices());
+	}
+
 	protected BufferedImage shapeToImage(FastShape shape, int width, int height)
 	{
 		int[] indices = shape.getIndices();
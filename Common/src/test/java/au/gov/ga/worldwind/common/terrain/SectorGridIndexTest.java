@@ -0,0 +1,112 @@
+package au.gov.ga.worldwind.common.terrain;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link SectorGridIndex} class
+ */
+public class SectorGridIndexTest
+{
+	@Test
+	public void testPointQueryReturnsContainingItemsInOrder()
+	{
+		SectorGridIndex index = new SectorGridIndex();
+		index.add(-90, -180, 90, 180); //global, stored in the large list
+		index.add(-30, 130, -20, 140);
+		index.add(-25, 135, -24, 136);
+		index.add(10, 10, 11, 11);
+
+		assertArrayEquals(new int[] { 0, 1, 2 }, index.query(-24.5, 135.5));
+		assertArrayEquals(new int[] { 0, 1 }, index.query(-29, 131));
+		assertArrayEquals(new int[] { 0, 3 }, index.query(10.5, 10.5));
+	}
+
+	@Test
+	public void testSectorQueryRemovesDuplicates()
+	{
+		SectorGridIndex index = new SectorGridIndex();
+		index.add(-30, 130, -20, 140);
+		index.add(0, 0, 1, 1);
+		index.add(-21, 139, -19, 141);
+
+		assertArrayEquals(new int[] { 0, 2 }, index.query(-22, 138, -19.5, 140.5));
+		assertArrayEquals(new int[] {}, index.query(50, 50, 51, 51));
+	}
+
+	@Test
+	public void testUnboundedItemsMatchEveryQuery()
+	{
+		SectorGridIndex index = new SectorGridIndex();
+		index.add(5, 5, 6, 6);
+		index.addUnbounded();
+
+		assertArrayEquals(new int[] { 1 }, index.query(-45, 100));
+		assertArrayEquals(new int[] { 0, 1 }, index.query(5.5, 5.5));
+		assertArrayEquals(new int[] { 1 }, index.query(-45, 100, -44, 101));
+	}
+
+	@Test
+	public void testQueriesMatchLinearScan()
+	{
+		Random random = new Random(0);
+		int count = 500;
+		double[][] bounds = new double[count][];
+		SectorGridIndex index = new SectorGridIndex();
+		for (int i = 0; i < count; i++)
+		{
+			bounds[i] = randomBounds(random);
+			index.add(bounds[i][0], bounds[i][1], bounds[i][2], bounds[i][3]);
+		}
+
+		for (int q = 0; q < 200; q++)
+		{
+			double[] query = randomBounds(random);
+			int[] result = index.query(query[0], query[1], query[2], query[3]);
+			int expected = 0;
+			for (int i = 0; i < count; i++)
+			{
+				if (query[0] <= bounds[i][2] && query[2] >= bounds[i][0] && query[1] <= bounds[i][3]
+						&& query[3] >= bounds[i][1])
+				{
+					assertTrue(expected < result.length);
+					assertEquals(i, result[expected++]);
+				}
+			}
+			assertEquals(expected, result.length);
+		}
+	}
+
+	@Test
+	public void testQueryCostScalesWithOverlap()
+	{
+		//many small, non-overlapping models; a point query should only see the one under it
+		SectorGridIndex index = new SectorGridIndex();
+		index.addUnbounded();
+		for (int lat = -60; lat < 60; lat++)
+		{
+			for (int lon = -170; lon < 170; lon += 2)
+			{
+				index.add(lat + 0.1, lon + 0.1, lat + 0.9, lon + 0.9);
+			}
+		}
+
+		assertArrayEquals(new int[] { 0 }, index.query(-60.05, 0.5));
+		int[] result = index.query(-59.5, -169.5);
+		assertEquals(2, result.length);
+		assertEquals(0, result[0]);
+	}
+
+	private static double[] randomBounds(Random random)
+	{
+		double lat = random.nextDouble() * 170 - 85;
+		double lon = random.nextDouble() * 350 - 175;
+		double size = random.nextDouble() < 0.1 ? random.nextDouble() * 40 : random.nextDouble() * 3;
+		return new double[] { lat, lon, Math.min(90, lat + size), Math.min(180, lon + size) };
+	}
+}
@@ -0,0 +1,92 @@
+package au.gov.ga.worldwind.common.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link ColorMapLookupTable} class
+ */
+public class ColorMapLookupTableTest
+{
+	private ColorMap colorMap;
+
+	@Before
+	public void setup()
+	{
+		colorMap = new ColorMap();
+		colorMap.setInterpolateHue(false);
+		colorMap.put(-100d, new Color(0, 0, 0, 255));
+		colorMap.put(100d, new Color(255, 255, 255, 255));
+	}
+
+	@Test
+	public void testAbsoluteValuesMatchColorMap()
+	{
+		ColorMapLookupTable table = colorMap.createLookupTable(201, 0, 0);
+
+		for (int value = -100; value <= 100; value += 5)
+		{
+			assertEquals(colorMap.calculateColor(value).getRGB(), table.getARGB(value));
+		}
+	}
+
+	@Test
+	public void testValuesOutsideDomainAreClamped()
+	{
+		ColorMapLookupTable table = colorMap.createLookupTable(201, 0, 0);
+
+		assertEquals(Color.black.getRGB(), table.getARGB(-1000));
+		assertEquals(Color.white.getRGB(), table.getARGB(1000));
+	}
+
+	@Test
+	public void testPercentageValuesMatchColorMap()
+	{
+		colorMap.clear();
+		colorMap.put(0d, Color.black);
+		colorMap.put(1d, Color.white);
+		colorMap.setValuesPercentages(true);
+
+		ColorMapLookupTable table = colorMap.createLookupTable(256, 1000, 1255);
+
+		for (int value = 1000; value <= 1255; value += 15)
+		{
+			assertEquals(colorMap.calculateColorNotingIsValuesPercentages(value, 1000, 1255).getRGB(),
+					table.getARGB(value));
+		}
+	}
+
+	@Test
+	public void testNaNIsTransparent()
+	{
+		ColorMapLookupTable table = colorMap.createLookupTable(201, 0, 0);
+
+		assertEquals(0, table.getARGB(Double.NaN));
+	}
+
+	@Test
+	public void testBulkMapping()
+	{
+		ColorMapLookupTable table = colorMap.createLookupTable(201, 0, 0);
+		float[] values = new float[] { -100, 0, Float.NaN, 100 };
+
+		int[] argb = table.mapARGB(values);
+		float[] rgba = table.mapRGBA(values);
+
+		assertEquals(4, argb.length);
+		assertEquals(16, rgba.length);
+		for (int i = 0; i < values.length; i++)
+		{
+			int expected = table.getARGB(values[i]);
+			assertEquals(expected, argb[i]);
+			assertEquals(((expected >> 16) & 0xff) / 255f, rgba[i * 4 + 0], 0.0001f);
+			assertEquals(((expected >> 8) & 0xff) / 255f, rgba[i * 4 + 1], 0.0001f);
+			assertEquals((expected & 0xff) / 255f, rgba[i * 4 + 2], 0.0001f);
+			assertEquals(((expected >> 24) & 0xff) / 255f, rgba[i * 4 + 3], 0.0001f);
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package au.gov.ga.worldwind.common.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link DDSUncompressor} class
+ */
+public class DDSUncompressorTest
+{
+	@Test
+	public void testDxt3MatchesPreviousDecoder()
+	{
+		int width = 64, height = 32;
+		byte[] data = randomBlocks(width, height, 16, 1);
+
+		BufferedImage expected = readDxt3BufferPrevious(wrap(data), width, height);
+		ByteBuffer buffer = wrap(data);
+		BufferedImage actual = DDSUncompressor.readDxt3Buffer(buffer, width, height);
+
+		assertEquals(data.length, buffer.position());
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				assertEquals("Pixel " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+			}
+		}
+		assertArrayEquals(((DataBufferInt) expected.getRaster().getDataBuffer()).getData(),
+				((DataBufferInt) actual.getRaster().getDataBuffer()).getData());
+	}
+
+	@Test
+	public void testDxt1Block()
+	{
+		//white and black, 4 color mode: indices 0,1,2,3 in the first row, then all 0
+		int[] argb = DDSUncompressor.decode(block(0xFFFF, 0x0000, 0xE4), DDSUncompressor.FORMAT_DXT1, 4, 4);
+		assertEquals(0xFFFFFFFF, argb[0]);
+		assertEquals(0xFF000000, argb[1]);
+		assertEquals(0xFFAAAAAA, argb[2]);
+		assertEquals(0xFF555555, argb[3]);
+		assertEquals(0xFFFFFFFF, argb[4]);
+
+		//black and white, 3 color mode with transparent black
+		argb = DDSUncompressor.decode(block(0x0000, 0xFFFF, 0xE4), DDSUncompressor.FORMAT_DXT1, 4, 4);
+		assertEquals(0xFF000000, argb[0]);
+		assertEquals(0xFFFFFFFF, argb[1]);
+		assertEquals(0xFF7F7F7F, argb[2]);
+		assertEquals(0x00000000, argb[3]);
+	}
+
+	@Test
+	public void testDxt5Alpha()
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.put((byte) 0xFF).put((byte) 0x00);
+		//alpha indices 0,1,2,7 for the first four pixels (3 bits each)
+		long indices = 0 | 1 << 3 | 2 << 6 | 7 << 9;
+		for (int i = 0; i < 6; i++)
+		{
+			buffer.put((byte) (indices >>> (i * 8)));
+		}
+		buffer.put(block(0xFFFF, 0xFFFF, 0));
+		buffer.flip();
+
+		int[] argb = DDSUncompressor.decode(buffer, DDSUncompressor.FORMAT_DXT5, 4, 4);
+		assertEquals(0xFFFFFFFF, argb[0]);
+		assertEquals(0x00FFFFFF, argb[1]);
+		assertEquals(0xDBFFFFFF, argb[2]);
+		assertEquals(0x24FFFFFF, argb[3]);
+	}
+
+	@Test
+	public void testPartialBlocksAreClipped()
+	{
+		int[] argb = DDSUncompressor.decode(block(0xF800, 0xF800, 0), DDSUncompressor.FORMAT_DXT1, 3, 2);
+		assertEquals(6, argb.length);
+		for (int pixel : argb)
+		{
+			assertEquals(0xFFFF0000, pixel);
+		}
+	}
+
+	@Test
+	public void testLargeSurfaceDecodesInParallel()
+	{
+		int width = 1024, height = 1032;
+		byte[] data = randomBlocks(width, height, 16, 2);
+
+		int[] actual = DDSUncompressor.decode(wrap(data), DDSUncompressor.FORMAT_DXT5, width, height);
+
+		//decode each row of blocks separately, which is below the parallel threshold
+		int rowSize = width / 4 * 16;
+		int[] expected = new int[width * height];
+		for (int row = 0; row < height / 4; row++)
+		{
+			ByteBuffer buffer = ByteBuffer.wrap(data, row * rowSize, rowSize);
+			int[] rowPixels = DDSUncompressor.decode(buffer, DDSUncompressor.FORMAT_DXT5, width, 4);
+			System.arraycopy(rowPixels, 0, expected, row * 4 * width, rowPixels.length);
+		}
+		assertArrayEquals(expected, actual);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTruncatedDataThrows()
+	{
+		DDSUncompressor.decode(ByteBuffer.allocate(15), DDSUncompressor.FORMAT_DXT3, 4, 4);
+	}
+
+	private static ByteBuffer block(int color0, int color1, int indices)
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putShort((short) color0).putShort((short) color1).putInt(indices);
+		buffer.flip();
+		return buffer;
+	}
+
+	private static byte[] randomBlocks(int width, int height, int blockSize, long seed)
+	{
+		byte[] data = new byte[(width / 4) * (height / 4) * blockSize];
+		new Random(seed).nextBytes(data);
+		return data;
+	}
+
+	private static ByteBuffer wrap(byte[] data)
+	{
+		return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * The DXT3 decoder from previous versions of {@link DDSUncompressor},
+	 * which the current decoder must match.
+	 */
+	private static BufferedImage readDxt3BufferPrevious(ByteBuffer buffer, int width, int height)
+	{
+		int[] pixels = new int[16];
+		int[] alphas = new int[16];
+
+		BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+
+		for (int i = 0; i < height / 4; i++)
+		{
+			for (int j = 0; j < width / 4; j++)
+			{
+				long alphaData = buffer.getLong();
+				for (int k = alphas.length - 1; k >= 0; k--)
+				{
+					alphas[k] = (int) (alphaData >>> (k * 4)) & 0xF;
+					alphas[k] <<= 4;
+				}
+
+				int[][] lookupTable = expandLookupTablePrevious(buffer.getShort(), buffer.getShort());
+				int colorData = buffer.getInt();
+
+				for (int k = pixels.length - 1; k >= 0; k--)
+				{
+					int[] color = lookupTable[(colorData >>> k * 2) & 0x03];
+					double alphaF = alphas[k] / 256.0;
+					int r = (int) (color[0] * alphaF);
+					int g = (int) (color[1] * alphaF);
+					int b = (int) (color[2] * alphaF);
+					pixels[k] = (alphas[k] << 24) | r << 16 | g << 8 | b;
+				}
+
+				result.setRGB(j * 4, i * 4, 4, 4, pixels, 0, 4);
+			}
+		}
+		return result;
+	}
+
+	private static int[][] expandLookupTablePrevious(short minColor, short maxColor)
+	{
+		int[][] result = new int[4][];
+		result[0] = color565Previous(minColor);
+		result[1] = color565Previous(maxColor);
+		result[2] = new int[3];
+		result[3] = new int[3];
+		for (int c = 0; c < 3; c++)
+		{
+			result[2][c] = (2 * result[0][c] + result[1][c] + 1) / 3;
+			result[3][c] = (result[0][c] + 2 * result[1][c] + 1) / 3;
+		}
+		return result;
+	}
+
+	private static int[] color565Previous(int pixel)
+	{
+		return new int[] { (int) (((long) pixel) & 0xf800) >>> 8, (int) (((long) pixel) & 0x07e0) >>> 3,
+				(int) (((long) pixel) & 0x001f) << 3 };
+	}
+}
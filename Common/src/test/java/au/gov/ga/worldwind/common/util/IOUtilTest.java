@@ -2,6 +2,7 @@ package au.gov.ga.worldwind.common.util;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.util.BufferWrapper;
 
@@ -73,4 +74,46 @@ public class IOUtilTest
 		assertEquals(513, bufferWrapper.getInt(0));
 		assertEquals(1027, bufferWrapper.getInt(1));
 	}
+	
+	@Test
+	public void testMapByteBufferFile() throws Exception
+	{
+		ByteBuffer byteBuffer = IOUtil.mapByteBuffer(getClass().getResource("bytes.out"));
+		
+		assertNotNull(byteBuffer);
+		assertTrue(byteBuffer.isReadOnly());
+		assertEquals(5, byteBuffer.remaining());
+		
+		assertEquals(1, byteBuffer.get());
+		assertEquals(2, byteBuffer.get());
+		assertEquals(3, byteBuffer.get());
+		assertEquals(4, byteBuffer.get());
+		assertEquals(5, byteBuffer.get());
+	}
+	
+	@Test
+	public void testMapByteBufferZip() throws Exception
+	{
+		ByteBuffer byteBuffer = IOUtil.mapByteBuffer(getClass().getResource("bytes.zip"));
+		
+		assertNotNull(byteBuffer);
+		
+		assertEquals(1, byteBuffer.get());
+		assertEquals(2, byteBuffer.get());
+		assertEquals(3, byteBuffer.get());
+		assertEquals(4, byteBuffer.get());
+		assertEquals(5, byteBuffer.get());
+	}
+	
+	@Test
+	public void testMapByteBufferWrapperWithNonNativeFormat() throws Exception
+	{
+		BufferWrapper bufferWrapper = IOUtil.mapByteBuffer(getClass().getResource("bytes.out"), AVKey.INT16, AVKey.LITTLE_ENDIAN);
+		
+		assertNotNull(bufferWrapper);
+		assertEquals(4, bufferWrapper.getSizeInBytes());
+		
+		assertEquals(513, bufferWrapper.getInt(0));
+		assertEquals(1027, bufferWrapper.getInt(1));
+	}
 }
@@ -0,0 +1,136 @@
+package au.gov.ga.worldwind.wmsbrowser.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import au.gov.ga.worldwind.wmsbrowser.wmsserver.WmsServerImpl;
+
+/**
+ * Unit tests for the {@link CompoundSearchService} class
+ * 
+ * @author James Navin (james.navin@ga.gov.au)
+ */
+public class CompoundSearchServiceTest
+{
+	private CompoundSearchService classUnderTest;
+	
+	private WmsServerSearchResult result1;
+	private WmsServerSearchResult result2;
+	private WmsServerSearchResult result3;
+	
+	@Before
+	public void setup() throws Exception
+	{
+		classUnderTest = new CompoundSearchService();
+		
+		result1 = new WmsServerSearchResultImpl(new WmsServerImpl(new URL("http://server1/wms")));
+		result2 = new WmsServerSearchResultImpl(new WmsServerImpl(new URL("http://server2/wms")));
+		result3 = new WmsServerSearchResultImpl(new WmsServerImpl(new URL("http://server3/wms")));
+	}
+	
+	@Test
+	public void testSearchWithNoServices()
+	{
+		assertTrue(classUnderTest.searchForServers("test").isEmpty());
+	}
+	
+	@Test
+	public void testResultsAreInServiceOrder()
+	{
+		classUnderTest.addService(new DelayedSearchService(200, result1));
+		classUnderTest.addService(new DelayedSearchService(0, result2));
+		classUnderTest.addService(new DelayedSearchService(100, result3));
+		
+		List<WmsServerSearchResult> results = classUnderTest.searchForServers("test");
+		
+		assertEquals(3, results.size());
+		assertEquals(result1, results.get(0));
+		assertEquals(result2, results.get(1));
+		assertEquals(result3, results.get(2));
+	}
+	
+	@Test
+	public void testServicesAreQueriedConcurrently()
+	{
+		classUnderTest.addService(new DelayedSearchService(500, result1));
+		classUnderTest.addService(new DelayedSearchService(500, result2));
+		classUnderTest.addService(new DelayedSearchService(500, result3));
+		
+		long start = System.currentTimeMillis();
+		List<WmsServerSearchResult> results = classUnderTest.searchForServers("test");
+		long elapsed = System.currentTimeMillis() - start;
+		
+		assertEquals(3, results.size());
+		assertTrue("Search took " + elapsed + "ms", elapsed < 1400);
+	}
+	
+	@Test
+	public void testSlowServiceIsOmittedAfterTimeout()
+	{
+		classUnderTest.setTimeout(300);
+		classUnderTest.addService(new DelayedSearchService(0, result1));
+		classUnderTest.addService(new DelayedSearchService(5000, result2));
+		classUnderTest.addService(new DelayedSearchService(0, result3));
+		
+		List<WmsServerSearchResult> results = classUnderTest.searchForServers("test");
+		
+		assertEquals(2, results.size());
+		assertEquals(result1, results.get(0));
+		assertEquals(result3, results.get(1));
+	}
+	
+	@Test
+	public void testListenerIsNotifiedOfPartialResults()
+	{
+		classUnderTest.addService(new DelayedSearchService(100, result1));
+		classUnderTest.addService(new DelayedSearchService(0, result2));
+		
+		final List<WmsServerSearchResult> notified = Collections.synchronizedList(new ArrayList<WmsServerSearchResult>());
+		classUnderTest.searchForServers("test", new WmsServerSearchListener()
+		{
+			@Override
+			public void resultsFound(List<WmsServerSearchResult> results)
+			{
+				notified.addAll(results);
+			}
+		});
+		
+		assertEquals(2, notified.size());
+		assertEquals(result2, notified.get(0));
+		assertEquals(result1, notified.get(1));
+	}
+	
+	private static class DelayedSearchService implements WmsServerSearchService
+	{
+		private final long delay;
+		private final WmsServerSearchResult result;
+		
+		public DelayedSearchService(long delay, WmsServerSearchResult result)
+		{
+			this.delay = delay;
+			this.result = result;
+		}
+		
+		@Override
+		public List<WmsServerSearchResult> searchForServers(String searchString)
+		{
+			try
+			{
+				Thread.sleep(delay);
+			}
+			catch (InterruptedException e)
+			{
+				return Collections.emptyList();
+			}
+			return Collections.singletonList(result);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+#!/usr/bin/env python
+# Copyright 2012 Geoscience Australia
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+"""
+Long-lived Mapnik tile renderer used by the Tiler's MapnikRenderer.
+
+Usage: mapnik_worker.py <mapfile> [reproject]
+
+Loads the mapfile once, then renders tile requests read from stdin, writing
+the encoded images to stdout. See MapnikWorker.java for the protocol.
+"""
+
+import os
+import struct
+import sys
+
+MAGIC = 0x4D4E4B57  # 'MNKW'
+VERSION = 1
+CLOSE = 0
+RENDER = 1
+OK = 0
+ERROR = 1
+
+REQUEST = struct.Struct('>ddddii')
+
+
+def read_fully(stream, length):
+    data = b''
+    while len(data) < length:
+        chunk = stream.read(length - len(data))
+        if not chunk:
+            raise EOFError()
+        data += chunk
+    return data
+
+
+def read_utf(stream):
+    length, = struct.unpack('>H', read_fully(stream, 2))
+    return read_fully(stream, length).decode('utf-8')
+
+
+def write_utf(stream, string):
+    data = string.encode('utf-8')[:65535]
+    stream.write(struct.pack('>H', len(data)))
+    stream.write(data)
+
+
+def load_map(mapfile, reproject):
+    import mapnik
+    m = mapnik.Map(256, 256)
+    mapnik.load_map(m, mapfile)
+    if reproject:
+        m.srs = '+init=epsg:4326'
+    return mapnik, m
+
+
+def main():
+    if len(sys.argv) < 2:
+        sys.stderr.write(__doc__)
+        return 2
+
+    stdin = getattr(sys.stdin, 'buffer', sys.stdin)
+    stdout = getattr(sys.stdout, 'buffer', sys.stdout)
+    if sys.platform == 'win32':
+        import msvcrt
+        msvcrt.setmode(stdin.fileno(), os.O_BINARY)
+        msvcrt.setmode(stdout.fileno(), os.O_BINARY)
+
+    stdout.write(struct.pack('>ii', MAGIC, VERSION))
+    try:
+        mapnik, m = load_map(sys.argv[1], len(sys.argv) > 2 and sys.argv[2] == 'reproject')
+    except Exception as e:
+        stdout.write(struct.pack('>b', ERROR))
+        write_utf(stdout, str(e))
+        stdout.flush()
+        return 1
+    stdout.write(struct.pack('>b', OK))
+    stdout.flush()
+
+    while True:
+        try:
+            request, = struct.unpack('>b', read_fully(stdin, 1))
+        except EOFError:
+            break
+        if request != RENDER:
+            break
+
+        minlon, minlat, maxlon, maxlat, width, height = REQUEST.unpack(read_fully(stdin, REQUEST.size))
+        image_format = read_utf(stdin)
+        try:
+            m.resize(width, height)
+            m.zoom_to_box(mapnik.Box2d(minlon, minlat, maxlon, maxlat))
+            image = mapnik.Image(width, height)
+            mapnik.render(m, image)
+            data = image.tostring('jpeg' if image_format == 'jpg' else 'png')
+        except Exception as e:
+            stdout.write(struct.pack('>b', ERROR))
+            write_utf(stdout, str(e))
+        else:
+            stdout.write(struct.pack('>bi', OK, len(data)))
+            stdout.write(data)
+
+        stdout.flush()
+
+    return 0
+
+
+if __name__ == '__main__':
+    sys.exit(main())
@@ -424,7 +424,7 @@ public class Overviewer
 		private int width;
 		private int height;
 		private int bands;
-		private TypeHandler typeHandler;
+		private ElevationMixer mixer;
 		private boolean bilinear;
 
 		public ElevationOverviewCreator(int width, int height, int bands, int bufferType, ByteOrder byteOrder,
@@ -444,7 +444,7 @@ public class Overviewer
 			if (outsideValues != null && outsideValues.length() != bands)
 				throw new IllegalArgumentException("Outside values array length doesn't equal the number of bands");
 
-			typeHandler = createTypeHandler();
+			mixer = ElevationMixer.create(bufferTypeSize, floatingPoint);
 
 			this.outsideValues = outsideValues;
 			this.byteOrder = byteOrder;
@@ -454,22 +454,6 @@ public class Overviewer
 			this.bilinear = bilinear;
 		}
 
-		private TypeHandler createTypeHandler()
-		{
-			switch (bufferTypeSize)
-			{
-			case 1:
-				return new ByteTypeHandler();
-			case 2:
-				return new ShortTypeHandler();
-			case 4:
-				return floatingPoint ? new FloatTypeHandler() : new IntTypeHandler();
-			case 8:
-				return new DoubleTypeHandler();
-			}
-			return null;
-		}
-
 		@Override
 		public void mix(File src0, File src1, File src2, File src3, File dst, boolean ignoreBlank) throws IOException
 		{
@@ -526,57 +510,8 @@ public class Overviewer
 						src3fis != null ? getFileChannelAsByteBuffer(src3fis.getChannel(), (int) src3.length(),
 								byteOrder) : null;
 
-				for (int b = 0; b < bands; b++)
-				{
-					int offset = b * width * height * bufferTypeSize;
-					Object outsideValue =
-							outsideValues == null ? null : typeHandler.getNumberArrayValue(b, outsideValues);
-
-					for (int y = 0; y < height; y++)
-					{
-						int sy = y % (height / 2);
-						for (int x = 0; x < width; x++)
-						{
-							int sx = x % (width / 2);
-							ByteBuffer buffer = selectBuffer(src0bb, src1bb, src2bb, src3bb, x, y, width, height);
-							Object value = outsideValue;
-							if (buffer != null)
-							{
-								int index0 = ((sy * 2) * width + (sx * 2)) * bufferTypeSize + offset;
-								Object v0 = typeHandler.getBufferValue(index0, buffer);
-
-								if (bilinear)
-								{
-									int index1 = ((sy * 2) * width + (sx * 2 + 1)) * bufferTypeSize + offset;
-									int index2 = ((sy * 2 + 1) * width + sx * 2) * bufferTypeSize + offset;
-									int index3 = ((sy * 2 + 1) * width + (sx * 2 + 1)) * bufferTypeSize + offset;
-
-									Object v1 = typeHandler.getBufferValue(index1, buffer);
-									Object v2 = typeHandler.getBufferValue(index2, buffer);
-									Object v3 = typeHandler.getBufferValue(index3, buffer);
-
-									if (outsideValue == null
-											|| !(v0.equals(outsideValue) || v1.equals(outsideValue)
-													|| v2.equals(outsideValue) || v3.equals(outsideValue)))
-									{
-										value = typeHandler.average(v0, v1, v2, v3);
-									}
-								}
-								else
-								{
-									if (outsideValue == null || !v0.equals(outsideValue))
-									{
-										value = v0;
-									}
-								}
-							}
-							if (value == null)
-								dstbb.position(dstbb.position() + bufferTypeSize);
-							else
-								typeHandler.putBufferValue(dstbb, value);
-						}
-					}
-				}
+				ByteBuffer[] sources = new ByteBuffer[] { src0bb, src1bb, src2bb, src3bb };
+				mixer.mix(sources, dstbb, width, height, bands, outsideValues, bilinear);
 			}
 			finally
 			{
@@ -602,145 +537,397 @@ public class Overviewer
 			bb.rewind();
 			return bb;
 		}
-
-		private <E extends Buffer> E selectBuffer(E src0, E src1, E src2, E src3, int x, int y, int w, int h)
-		{
-			// +--+--+
-			// |i1|i3|
-			// +--+--+
-			// |i0|i2|
-			// +--+--+
-			return (x < w / 2) ? (y < h / 2 ? src1 : src0) : (y < h / 2 ? src3 : src2);
-		}
-	}
-
-	private interface TypeHandler
-	{
-		public Object getNumberArrayValue(int index, NullableNumberArray na);
-
-		public Object getBufferValue(int index, ByteBuffer buffer);
-
-		public void putBufferValue(ByteBuffer buffer, Object value);
-
-		public Object average(Object v0, Object v1, Object v2, Object v3);
 	}
 
-	private static class ByteTypeHandler implements TypeHandler
+	/**
+	 * Mixes the four child rasters of an elevation overview into the parent
+	 * raster, by downsampling each child into a quadrant of the parent. There
+	 * is an implementation for each data type, which copies the rasters into
+	 * primitive arrays and mixes them without boxing each sample.
+	 * <p/>
+	 * If a child raster is missing, its quadrant is set to the outside value
+	 * (or left as zero if there is no outside value for the band). When
+	 * bilinear, each parent sample is the average of four child samples, or
+	 * the outside value if any of the four samples is the outside value.
+	 */
+	static abstract class ElevationMixer
 	{
-		public Object getNumberArrayValue(int index, NullableNumberArray na)
+		/**
+		 * @return A mixer for data of the given type
+		 */
+		static ElevationMixer create(int bufferTypeSize, boolean floatingPoint)
 		{
-			return na.getByte(index);
+			switch (bufferTypeSize)
+			{
+			case 1:
+				return new ByteMixer();
+			case 2:
+				return new ShortMixer();
+			case 4:
+				return floatingPoint ? new FloatMixer() : new IntMixer();
+			case 8:
+				return new DoubleMixer();
+			}
+			return null;
 		}
 
-		public Object getBufferValue(int index, ByteBuffer buffer)
+		/**
+		 * Mix the child rasters.
+		 * 
+		 * @param sources
+		 *            Child rasters, in the order bottom-left, top-left,
+		 *            bottom-right, top-right (null if the child doesn't exist)
+		 * @param dst
+		 *            Buffer to write the parent raster to
+		 * @param width
+		 *            Width of each raster (multiple of 2)
+		 * @param height
+		 *            Height of each raster (multiple of 2)
+		 * @param bands
+		 *            Number of bands in each raster
+		 * @param outsideValues
+		 *            Value to set data outside the dataset extents to (can be
+		 *            null)
+		 * @param bilinear
+		 *            Should bilinear minification be used?
+		 */
+		abstract void mix(ByteBuffer[] sources, ByteBuffer dst, int width, int height, int bands,
+				NullableNumberArray outsideValues, boolean bilinear);
+
+		/**
+		 * @return Offset of the top-left sample of the given quadrant in the
+		 *         parent raster
+		 */
+		protected static int quadrantOffset(int quadrant, int width, int height)
 		{
-			return buffer.get(index);
+			int x = quadrant < 2 ? 0 : width / 2;
+			int y = quadrant % 2 == 0 ? height / 2 : 0;
+			return y * width + x;
 		}
+	}
 
-		public void putBufferValue(ByteBuffer buffer, Object value)
+	private static class ByteMixer extends ElevationMixer
+	{
+		@Override
+		void mix(ByteBuffer[] sources, ByteBuffer dst, int width, int height, int bands,
+				NullableNumberArray outsideValues, boolean bilinear)
 		{
-			buffer.put((Byte) value);
-		}
+			int size = width * height;
+			byte[][] src = new byte[4][];
+			for (int q = 0; q < 4; q++)
+			{
+				if (sources[q] != null)
+				{
+					src[q] = new byte[size * bands];
+					sources[q].get(src[q]);
+				}
+			}
 
-		public Object average(Object v0, Object v1, Object v2, Object v3)
-		{
-			return (byte) ((((Byte) v0).shortValue() + ((Byte) v1).shortValue() + ((Byte) v2).shortValue() + ((Byte) v3)
-					.shortValue()) / (short) 4);
+			byte[] out = new byte[size * bands];
+			for (int b = 0; b < bands; b++)
+			{
+				Byte outside = outsideValues == null ? null : outsideValues.getByte(b);
+				boolean hasOutside = outside != null;
+				byte ov = hasOutside ? outside : 0;
+				int offset = b * size;
+
+				for (int q = 0; q < 4; q++)
+				{
+					byte[] s = src[q];
+					if (s == null && !hasOutside)
+						continue;
+
+					int d0 = offset + quadrantOffset(q, width, height);
+					for (int sy = 0; sy < height / 2; sy++)
+					{
+						int d = d0 + sy * width;
+						int i = offset + sy * 2 * width;
+						for (int sx = 0; sx < width / 2; sx++, d++, i += 2)
+						{
+							if (s == null)
+							{
+								out[d] = ov;
+							}
+							else if (bilinear)
+							{
+								byte v0 = s[i], v1 = s[i + 1], v2 = s[i + width], v3 = s[i + width + 1];
+								out[d] =
+										hasOutside && (v0 == ov || v1 == ov || v2 == ov || v3 == ov) ? ov
+												: (byte) ((v0 + v1 + v2 + v3) / 4);
+							}
+							else
+							{
+								out[d] = s[i];
+							}
+						}
+					}
+				}
+			}
+			dst.put(out);
 		}
 	}
 
-	private static class ShortTypeHandler implements TypeHandler
+	private static class ShortMixer extends ElevationMixer
 	{
-		public Object getNumberArrayValue(int index, NullableNumberArray na)
+		@Override
+		void mix(ByteBuffer[] sources, ByteBuffer dst, int width, int height, int bands,
+				NullableNumberArray outsideValues, boolean bilinear)
 		{
-			return na.getShort(index);
-		}
+			int size = width * height;
+			short[][] src = new short[4][];
+			for (int q = 0; q < 4; q++)
+			{
+				if (sources[q] != null)
+				{
+					src[q] = new short[size * bands];
+					sources[q].asShortBuffer().get(src[q]);
+				}
+			}
 
-		public Object getBufferValue(int index, ByteBuffer buffer)
-		{
-			return buffer.getShort(index);
-		}
+			short[] out = new short[size * bands];
+			for (int b = 0; b < bands; b++)
+			{
+				Short outside = outsideValues == null ? null : outsideValues.getShort(b);
+				boolean hasOutside = outside != null;
+				short ov = hasOutside ? outside : 0;
+				int offset = b * size;
 
-		public void putBufferValue(ByteBuffer buffer, Object value)
-		{
-			buffer.putShort((Short) value);
-		}
+				for (int q = 0; q < 4; q++)
+				{
+					short[] s = src[q];
+					if (s == null && !hasOutside)
+						continue;
 
-		public Object average(Object v0, Object v1, Object v2, Object v3)
-		{
-			return (short) ((((Short) v0).intValue() + ((Short) v1).intValue() + ((Short) v2).intValue() + ((Short) v3)
-					.intValue()) / 4);
+					int d0 = offset + quadrantOffset(q, width, height);
+					for (int sy = 0; sy < height / 2; sy++)
+					{
+						int d = d0 + sy * width;
+						int i = offset + sy * 2 * width;
+						for (int sx = 0; sx < width / 2; sx++, d++, i += 2)
+						{
+							if (s == null)
+							{
+								out[d] = ov;
+							}
+							else if (bilinear)
+							{
+								short v0 = s[i], v1 = s[i + 1], v2 = s[i + width], v3 = s[i + width + 1];
+								out[d] =
+										hasOutside && (v0 == ov || v1 == ov || v2 == ov || v3 == ov) ? ov
+												: (short) ((v0 + v1 + v2 + v3) / 4);
+							}
+							else
+							{
+								out[d] = s[i];
+							}
+						}
+					}
+				}
+			}
+			dst.asShortBuffer().put(out);
 		}
 	}
 
-	private static class IntTypeHandler implements TypeHandler
+	private static class IntMixer extends ElevationMixer
 	{
-		public Object getNumberArrayValue(int index, NullableNumberArray na)
+		@Override
+		void mix(ByteBuffer[] sources, ByteBuffer dst, int width, int height, int bands,
+				NullableNumberArray outsideValues, boolean bilinear)
 		{
-			return na.getInt(index);
-		}
+			int size = width * height;
+			int[][] src = new int[4][];
+			for (int q = 0; q < 4; q++)
+			{
+				if (sources[q] != null)
+				{
+					src[q] = new int[size * bands];
+					sources[q].asIntBuffer().get(src[q]);
+				}
+			}
 
-		public Object getBufferValue(int index, ByteBuffer buffer)
-		{
-			return buffer.getInt(index);
-		}
+			int[] out = new int[size * bands];
+			for (int b = 0; b < bands; b++)
+			{
+				Integer outside = outsideValues == null ? null : outsideValues.getInt(b);
+				boolean hasOutside = outside != null;
+				int ov = hasOutside ? outside : 0;
+				int offset = b * size;
 
-		public void putBufferValue(ByteBuffer buffer, Object value)
-		{
-			buffer.putInt((Integer) value);
-		}
+				for (int q = 0; q < 4; q++)
+				{
+					int[] s = src[q];
+					if (s == null && !hasOutside)
+						continue;
 
-		public Object average(Object v0, Object v1, Object v2, Object v3)
-		{
-			return (int) ((((Integer) v0).longValue() + ((Integer) v1).longValue() + ((Integer) v2).longValue() + ((Integer) v3)
-					.longValue()) / 4l);
+					int d0 = offset + quadrantOffset(q, width, height);
+					for (int sy = 0; sy < height / 2; sy++)
+					{
+						int d = d0 + sy * width;
+						int i = offset + sy * 2 * width;
+						for (int sx = 0; sx < width / 2; sx++, d++, i += 2)
+						{
+							if (s == null)
+							{
+								out[d] = ov;
+							}
+							else if (bilinear)
+							{
+								int v0 = s[i], v1 = s[i + 1], v2 = s[i + width], v3 = s[i + width + 1];
+								out[d] =
+										hasOutside && (v0 == ov || v1 == ov || v2 == ov || v3 == ov) ? ov
+												: (int) (((long) v0 + v1 + v2 + v3) / 4l);
+							}
+							else
+							{
+								out[d] = s[i];
+							}
+						}
+					}
+				}
+			}
+			dst.asIntBuffer().put(out);
 		}
 	}
 
-	private static class FloatTypeHandler implements TypeHandler
+	/**
+	 * Floating point outside values are compared using their bit patterns (as
+	 * {@link Float#equals(Object)} does), so that NaN can be used as an
+	 * outside value.
+	 */
+	private static class FloatMixer extends ElevationMixer
 	{
-		public Object getNumberArrayValue(int index, NullableNumberArray na)
+		@Override
+		void mix(ByteBuffer[] sources, ByteBuffer dst, int width, int height, int bands,
+				NullableNumberArray outsideValues, boolean bilinear)
 		{
-			return na.getFloat(index);
-		}
+			int size = width * height;
+			float[][] src = new float[4][];
+			for (int q = 0; q < 4; q++)
+			{
+				if (sources[q] != null)
+				{
+					src[q] = new float[size * bands];
+					sources[q].asFloatBuffer().get(src[q]);
+				}
+			}
 
-		public Object getBufferValue(int index, ByteBuffer buffer)
-		{
-			return buffer.getFloat(index);
-		}
+			float[] out = new float[size * bands];
+			for (int b = 0; b < bands; b++)
+			{
+				Float outside = outsideValues == null ? null : outsideValues.getFloat(b);
+				boolean hasOutside = outside != null;
+				float ov = hasOutside ? outside : 0;
+				int ovBits = Float.floatToIntBits(ov);
+				int offset = b * size;
 
-		public void putBufferValue(ByteBuffer buffer, Object value)
-		{
-			buffer.putFloat((Float) value);
-		}
+				for (int q = 0; q < 4; q++)
+				{
+					float[] s = src[q];
+					if (s == null && !hasOutside)
+						continue;
 
-		public Object average(Object v0, Object v1, Object v2, Object v3)
-		{
-			return (float) ((((Float) v0).doubleValue() + ((Float) v1).doubleValue() + ((Float) v2).doubleValue() + ((Float) v3)
-					.doubleValue()) / 4d);
+					int d0 = offset + quadrantOffset(q, width, height);
+					for (int sy = 0; sy < height / 2; sy++)
+					{
+						int d = d0 + sy * width;
+						int i = offset + sy * 2 * width;
+						for (int sx = 0; sx < width / 2; sx++, d++, i += 2)
+						{
+							if (s == null)
+							{
+								out[d] = ov;
+							}
+							else if (bilinear)
+							{
+								float v0 = s[i], v1 = s[i + 1], v2 = s[i + width], v3 = s[i + width + 1];
+								out[d] =
+										hasOutside
+												&& (Float.floatToIntBits(v0) == ovBits
+														|| Float.floatToIntBits(v1) == ovBits
+														|| Float.floatToIntBits(v2) == ovBits || Float
+														.floatToIntBits(v3) == ovBits) ? ov
+												: (float) (((double) v0 + v1 + v2 + v3) / 4d);
+							}
+							else
+							{
+								float v0 = s[i];
+								out[d] = hasOutside && Float.floatToIntBits(v0) == ovBits ? ov : v0;
+							}
+						}
+					}
+				}
+			}
+			dst.asFloatBuffer().put(out);
 		}
 	}
 
-	private static class DoubleTypeHandler implements TypeHandler
+	/**
+	 * @see FloatMixer
+	 */
+	private static class DoubleMixer extends ElevationMixer
 	{
-		public Object getNumberArrayValue(int index, NullableNumberArray na)
+		@Override
+		void mix(ByteBuffer[] sources, ByteBuffer dst, int width, int height, int bands,
+				NullableNumberArray outsideValues, boolean bilinear)
 		{
-			return na.getDouble(index);
-		}
+			int size = width * height;
+			double[][] src = new double[4][];
+			for (int q = 0; q < 4; q++)
+			{
+				if (sources[q] != null)
+				{
+					src[q] = new double[size * bands];
+					sources[q].asDoubleBuffer().get(src[q]);
+				}
+			}
 
-		public Object getBufferValue(int index, ByteBuffer buffer)
-		{
-			return buffer.getDouble(index);
-		}
+			double[] out = new double[size * bands];
+			for (int b = 0; b < bands; b++)
+			{
+				Double outside = outsideValues == null ? null : outsideValues.getDouble(b);
+				boolean hasOutside = outside != null;
+				double ov = hasOutside ? outside : 0;
+				long ovBits = Double.doubleToLongBits(ov);
+				int offset = b * size;
 
-		public void putBufferValue(ByteBuffer buffer, Object value)
-		{
-			buffer.putDouble((Double) value);
-		}
+				for (int q = 0; q < 4; q++)
+				{
+					double[] s = src[q];
+					if (s == null && !hasOutside)
+						continue;
 
-		public Object average(Object v0, Object v1, Object v2, Object v3)
-		{
-			return ((Double) v0 + (Double) v1 + (Double) v2 + (Double) v3) / 4d;
+					int d0 = offset + quadrantOffset(q, width, height);
+					for (int sy = 0; sy < height / 2; sy++)
+					{
+						int d = d0 + sy * width;
+						int i = offset + sy * 2 * width;
+						for (int sx = 0; sx < width / 2; sx++, d++, i += 2)
+						{
+							if (s == null)
+							{
+								out[d] = ov;
+							}
+							else if (bilinear)
+							{
+								double v0 = s[i], v1 = s[i + 1], v2 = s[i + width], v3 = s[i + width + 1];
+								out[d] =
+										hasOutside
+												&& (Double.doubleToLongBits(v0) == ovBits
+														|| Double.doubleToLongBits(v1) == ovBits
+														|| Double.doubleToLongBits(v2) == ovBits || Double
+														.doubleToLongBits(v3) == ovBits) ? ov
+												: (v0 + v1 + v2 + v3) / 4d;
+							}
+							else
+							{
+								double v0 = s[i];
+								out[d] = hasOutside && Double.doubleToLongBits(v0) == ovBits ? ov : v0;
+							}
+						}
+					}
+				}
+			}
+			dst.asDoubleBuffer().put(out);
 		}
 	}
 }
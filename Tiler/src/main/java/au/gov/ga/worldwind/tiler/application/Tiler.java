@@ -23,7 +23,9 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
@@ -35,6 +37,7 @@ import org.gdal.gdal.Dataset;
 
 import au.gov.ga.worldwind.tiler.gdal.GDALTile;
 import au.gov.ga.worldwind.tiler.gdal.GDALTileParameters;
+import au.gov.ga.worldwind.tiler.mapnik.MapnikRenderer;
 import au.gov.ga.worldwind.tiler.mapnik.MapnikUtil;
 import au.gov.ga.worldwind.tiler.util.LatLon;
 import au.gov.ga.worldwind.tiler.util.MinMaxArray;
@@ -42,6 +45,7 @@ import au.gov.ga.worldwind.tiler.util.NullableNumberArray;
 import au.gov.ga.worldwind.tiler.util.NumberArray;
 import au.gov.ga.worldwind.tiler.util.ProgressReporter;
 import au.gov.ga.worldwind.tiler.util.Sector;
+import au.gov.ga.worldwind.tiler.util.TilerException;
 import au.gov.ga.worldwind.tiler.util.Util;
 
 /**
@@ -276,114 +280,208 @@ public class Tiler
 		int ysize = maxY - minY + 1;
 		int size = xsize * ysize;
 		int count = (startY - minY) * xsize + (startX - minX);
-		for (int Y = startY; Y <= maxY; Y++)
-		{
-			if (progress.isCancelled())
-				break;
 
-			File rowDir = new File(levelDir, Util.paddedInt(Y, 4));
-			if (!rowDir.exists())
-			{
-				rowDir.mkdirs();
-			}
+		//render Mapnik tiles in batches using a single worker process, if available
+		MapnikRenderer renderer = null;
+		List<Sector> batchSectors = new ArrayList<Sector>();
+		List<File> batchFiles = new ArrayList<File>();
+		if (type == TilingType.Mapnik)
+		{
+			renderer = MapnikRenderer.start(mapFile, reprojectIfRequired, progress.getLogger());
+		}
 
-			for (int X = (Y == startY ? startX : minX); X <= maxX; X++)
+		try
+		{
+			for (int Y = startY; Y <= maxY; Y++)
 			{
 				if (progress.isCancelled())
 					break;
 
-				count++;
-				progress.getLogger().fine(
-						"Tile (" + X + "," + Y + "), " + count + "/" + size + " (" + (count * 100 / size)
-								+ "%) (column " + (X - minX + 1) + "/" + xsize + ", row " + (Y - minY + 1) + "/"
-								+ ysize + ")");
-				progress.progress(count / (double) size);
-
-				final double lat1 = (Y * tilesizedegrees) + origin.getLatitude();
-				final double lon1 = (X * tilesizedegrees) + origin.getLongitude();
-				final double lat2 = lat1 + tilesizedegrees;
-				final double lon2 = lon1 + tilesizedegrees;
-				Sector s = new Sector(lat1, lon1, lat2, lon2);
-
-				final File dst = new File(rowDir, Util.paddedInt(Y, 4) + "_" + Util.paddedInt(X, 4) + "." + outputExt);
-				if (dst.exists())
+				File rowDir = new File(levelDir, Util.paddedInt(Y, 4));
+				if (!rowDir.exists())
 				{
-					progress.getLogger().warning(dst.getAbsolutePath() + " already exists");
+					rowDir.mkdirs();
 				}
-				else
+
+				for (int X = (Y == startY ? startX : minX); X <= maxX; X++)
 				{
-					try
-					{
-						if (type == TilingType.Mapnik)
-						{
-							MapnikUtil.tile(s, tilesize, tilesize, ignoreBlank, reprojectIfRequired, mapFile, dst,
-									progress.getLogger());
-						}
-						else
-						{
-							GDALTileParameters parameters =
-									new GDALTileParameters(dataset, new Dimension(tilesize, tilesize), s);
-							parameters.addAlpha = addAlpha;
-							parameters.selectedBand = band;
-							parameters.reprojectIfRequired = reprojectIfRequired;
-							parameters.bilinearInterpolationIfRequired = linearInterpolationIfRequired;
-							parameters.noData = outsideValues;
-							parameters.minMaxs = replaceMinMaxs;
-							parameters.replacement = replace;
-							parameters.otherwise = otherwise;
+					if (progress.isCancelled())
+						break;
 
-							GDALTile tile = new GDALTile(parameters);
-							if (type == TilingType.Elevations)
-							{
-								tile = tile.convertToType(bufferType);
+					count++;
+					progress.getLogger().fine(
+							"Tile (" + X + "," + Y + "), " + count + "/" + size + " (" + (count * 100 / size)
+									+ "%) (column " + (X - minX + 1) + "/" + xsize + ", row " + (Y - minY + 1) + "/"
+									+ ysize + ")");
+					progress.progress(count / (double) size);
 
-								tile.updateMinMax(minMax, outsideValues);
+					final double lat1 = (Y * tilesizedegrees) + origin.getLatitude();
+					final double lon1 = (X * tilesizedegrees) + origin.getLongitude();
+					final double lat2 = lat1 + tilesizedegrees;
+					final double lon2 = lon1 + tilesizedegrees;
+					Sector s = new Sector(lat1, lon1, lat2, lon2);
 
-								ByteBuffer bb = tile.getBuffer();
-								bb.rewind();
-								RandomAccessFile raf = null;
-								try
-								{
-									raf = new RandomAccessFile(dst, "rw");
-									MappedByteBuffer mbb = raf.getChannel().map(MapMode.READ_WRITE, 0, bb.limit());
-									mbb.order(bb.order());
-									mbb.put(bb);
-								}
-								finally
+					final File dst = new File(rowDir, Util.paddedInt(Y, 4) + "_" + Util.paddedInt(X, 4) + "." + outputExt);
+					if (dst.exists())
+					{
+						progress.getLogger().warning(dst.getAbsolutePath() + " already exists");
+					}
+					else
+					{
+						try
+						{
+							if (type == TilingType.Mapnik && renderer != null)
+							{
+								batchSectors.add(s);
+								batchFiles.add(dst);
+								if (batchSectors.size() >= MapnikRenderer.MAX_BATCH_SIZE)
 								{
-									if (raf != null)
-										raf.close();
+									renderer =
+											renderMapnikBatch(renderer, batchSectors, batchFiles, tilesize, ignoreBlank,
+													reprojectIfRequired, mapFile, progress);
 								}
 							}
+							else if (type == TilingType.Mapnik)
+							{
+								MapnikUtil.tile(s, tilesize, tilesize, ignoreBlank, reprojectIfRequired, mapFile, dst,
+										progress.getLogger());
+							}
 							else
 							{
-								if (!(ignoreBlank && tile.isBlank()))
+								GDALTileParameters parameters =
+										new GDALTileParameters(dataset, new Dimension(tilesize, tilesize), s);
+								parameters.addAlpha = addAlpha;
+								parameters.selectedBand = band;
+								parameters.reprojectIfRequired = reprojectIfRequired;
+								parameters.bilinearInterpolationIfRequired = linearInterpolationIfRequired;
+								parameters.noData = outsideValues;
+								parameters.minMaxs = replaceMinMaxs;
+								parameters.replacement = replace;
+								parameters.otherwise = otherwise;
+
+								GDALTile tile = new GDALTile(parameters);
+								if (type == TilingType.Elevations)
+								{
+									tile = tile.convertToType(bufferType);
+
+									tile.updateMinMax(minMax, outsideValues);
+
+									ByteBuffer bb = tile.getBuffer();
+									bb.rewind();
+									RandomAccessFile raf = null;
+									try
+									{
+										raf = new RandomAccessFile(dst, "rw");
+										MappedByteBuffer mbb = raf.getChannel().map(MapMode.READ_WRITE, 0, bb.limit());
+										mbb.order(bb.order());
+										mbb.put(bb);
+									}
+									finally
+									{
+										if (raf != null)
+											raf.close();
+									}
+								}
+								else
 								{
-									BufferedImage image = tile.getAsImage();
-									writeImage(image, imageFormat, dst, jpegQuality);
+									if (!(ignoreBlank && tile.isBlank()))
+									{
+										BufferedImage image = tile.getAsImage();
+										writeImage(image, imageFormat, dst, jpegQuality);
+									}
 								}
 							}
 						}
-					}
-					catch (Exception e)
-					{
-						progress.getLogger().severe(e.getMessage());
-						try
-						{
-							Thread.sleep(1);
-						}
-						catch (InterruptedException e1)
+						catch (Exception e)
 						{
-							e1.printStackTrace();
+							progress.getLogger().severe(e.getMessage());
+							try
+							{
+								Thread.sleep(1);
+							}
+							catch (InterruptedException e1)
+							{
+								e1.printStackTrace();
+							}
 						}
 					}
 				}
+
+				//render the remainder of the row before moving on, so that resuming works per row
+				if (renderer != null)
+				{
+					renderer =
+							renderMapnikBatch(renderer, batchSectors, batchFiles, tilesize, ignoreBlank,
+									reprojectIfRequired, mapFile, progress);
+				}
+			}
+		}
+		finally
+		{
+			//also close the worker process if tiling fails
+			if (renderer != null)
+			{
+				renderer.close();
 			}
 		}
 
 		progress.getLogger().info("Tile generation " + (progress.isCancelled() ? "cancelled" : "complete"));
 	}
 
+	/**
+	 * Render and save a batch of Mapnik tiles, and clear the batch. If the
+	 * renderer fails, it is closed, and the batch is rendered one tile at a
+	 * time using {@link MapnikUtil#tile}.
+	 * 
+	 * @return The renderer to use for subsequent batches (null if it failed)
+	 */
+	private static MapnikRenderer renderMapnikBatch(MapnikRenderer renderer, List<Sector> sectors, List<File> files,
+			int tilesize, boolean ignoreBlank, boolean reprojectIfRequired, File mapFile, ProgressReporter progress)
+	{
+		if (sectors.isEmpty())
+		{
+			return renderer;
+		}
+
+		String format = files.get(0).getName().toLowerCase().endsWith("jpg") ? "jpg" : "png";
+		try
+		{
+			byte[][] images = renderer.render(sectors, tilesize, tilesize, format);
+			for (int i = 0; i < images.length; i++)
+			{
+				if (images[i] != null)
+				{
+					MapnikUtil.saveTile(images[i], files.get(i), ignoreBlank, progress.getLogger());
+				}
+			}
+		}
+		catch (TilerException e)
+		{
+			progress.getLogger().severe(e.getMessage());
+			renderer.close();
+			renderer = null;
+
+			for (int i = 0; i < sectors.size(); i++)
+			{
+				try
+				{
+					MapnikUtil.tile(sectors.get(i), tilesize, tilesize, ignoreBlank, reprojectIfRequired, mapFile,
+							files.get(i), progress.getLogger());
+				}
+				catch (TilerException e1)
+				{
+					progress.getLogger().severe(e1.getMessage());
+				}
+			}
+		}
+		finally
+		{
+			sectors.clear();
+			files.clear();
+		}
+		return renderer;
+	}
+
 	public static void writeImage(BufferedImage image, String format, File file, float jpegQuality) throws IOException
 	{
 		if ("jpg".equalsIgnoreCase(format))
@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.tiler.mapnik;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+import au.gov.ga.worldwind.tiler.util.InputStreamHandler;
+import au.gov.ga.worldwind.tiler.util.Sector;
+import au.gov.ga.worldwind.tiler.util.TilerException;
+
+/**
+ * Renders tiles from a Mapnik XML mapfile using a long-lived worker process,
+ * which loads the map once and renders batches of tiles, rather than starting
+ * a new process (and re-parsing the map) for every tile as
+ * {@link MapnikUtil#tile(Sector, int, int, boolean, boolean, File, File, Logger)}
+ * does.
+ * <p/>
+ * The worker process is started with the command in the
+ * <code>tiler.mapnik.worker</code> system property (or
+ * {@link #DEFAULT_WORKER_COMMAND} if not set), followed by the mapfile path
+ * and, if reprojecting, the <code>reproject</code> argument. See
+ * {@link MapnikWorker} for the protocol.
+ * <p/>
+ * Instances are not thread safe.
+ * 
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class MapnikRenderer implements Closeable
+{
+	public static final String WORKER_PROPERTY = "tiler.mapnik.worker";
+	public static final String DEFAULT_WORKER_COMMAND = "python mapnik/mapnik_worker.py";
+
+	/**
+	 * Maximum number of requests written before reading responses. Requests
+	 * are small, so a batch fits in the pipe buffer, and writing a batch never
+	 * blocks while the worker is blocked writing responses.
+	 */
+	public static final int MAX_BATCH_SIZE = 64;
+
+	private final DataInputStream in;
+	private final DataOutputStream out;
+	private final Process process;
+	private final Logger logger;
+
+	/**
+	 * Start a worker process for the given mapfile.
+	 * 
+	 * @return A renderer connected to the worker, or null if the worker could
+	 *         not be started (eg if Mapnik or the worker is not installed)
+	 */
+	public static MapnikRenderer start(File mapFile, boolean reproject, final Logger logger)
+	{
+		String command = System.getProperty(WORKER_PROPERTY, DEFAULT_WORKER_COMMAND);
+		List<String> args = new ArrayList<String>(Arrays.asList(command.trim().split("\\s+")));
+		args.add(mapFile.getAbsolutePath());
+		if (reproject)
+		{
+			args.add("reproject");
+		}
+
+		Process process = null;
+		try
+		{
+			process = new ProcessBuilder(args).start();
+			new InputStreamHandler(process.getErrorStream())
+			{
+				@Override
+				public void handle(String string)
+				{
+					logger.warning(string);
+				}
+			};
+			return new MapnikRenderer(process.getInputStream(), process.getOutputStream(), process, logger);
+		}
+		catch (Exception e)
+		{
+			if (process != null)
+			{
+				process.destroy();
+			}
+			logger.info("Could not start Mapnik worker '" + command + "': " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Create a renderer connected to a worker over the given streams, and wait
+	 * for the worker to load its map.
+	 * 
+	 * @throws TilerException
+	 *             If the worker failed to load its map, or doesn't implement
+	 *             the protocol
+	 */
+	public MapnikRenderer(InputStream fromWorker, OutputStream toWorker, Process process, Logger logger)
+			throws TilerException
+	{
+		this.in = new DataInputStream(new BufferedInputStream(fromWorker, 65536));
+		this.out = new DataOutputStream(new BufferedOutputStream(toWorker));
+		this.process = process;
+		this.logger = logger;
+
+		try
+		{
+			if (in.readInt() != MapnikWorker.MAGIC)
+			{
+				throw new TilerException("Not a Mapnik worker");
+			}
+			int version = in.readInt();
+			if (version != MapnikWorker.VERSION)
+			{
+				throw new TilerException("Unsupported Mapnik worker version: " + version);
+			}
+			if (in.readByte() != MapnikWorker.OK)
+			{
+				throw new TilerException("Mapnik worker failed to load map: " + in.readUTF());
+			}
+		}
+		catch (IOException e)
+		{
+			throw new TilerException("Error starting Mapnik worker: " + e.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Render a list of tiles. Tiles are sent to the worker in batches of at
+	 * most {@link #MAX_BATCH_SIZE}.
+	 * 
+	 * @param sectors
+	 *            Extents of each tile
+	 * @param width
+	 *            Width of the tiles
+	 * @param height
+	 *            Height of the tiles
+	 * @param format
+	 *            Image format ("png" or "jpg")
+	 * @return The encoded image for each tile; null for tiles that failed to
+	 *         render (the error is logged)
+	 * @throws TilerException
+	 *             If communication with the worker fails
+	 */
+	public byte[][] render(List<Sector> sectors, int width, int height, String format) throws TilerException
+	{
+		byte[][] images = new byte[sectors.size()][];
+		try
+		{
+			for (int start = 0; start < sectors.size(); start += MAX_BATCH_SIZE)
+			{
+				int end = Math.min(sectors.size(), start + MAX_BATCH_SIZE);
+				for (int i = start; i < end; i++)
+				{
+					Sector sector = sectors.get(i);
+					out.writeByte(MapnikWorker.RENDER);
+					out.writeDouble(sector.getMinLongitude());
+					out.writeDouble(sector.getMinLatitude());
+					out.writeDouble(sector.getMaxLongitude());
+					out.writeDouble(sector.getMaxLatitude());
+					out.writeInt(width);
+					out.writeInt(height);
+					out.writeUTF(format);
+				}
+				out.flush();
+
+				for (int i = start; i < end; i++)
+				{
+					if (in.readByte() == MapnikWorker.OK)
+					{
+						images[i] = new byte[in.readInt()];
+						in.readFully(images[i]);
+					}
+					else
+					{
+						logger.severe("Error rendering tile " + sectors.get(i) + ": " + in.readUTF());
+					}
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			throw new TilerException("Error communicating with Mapnik worker: " + e.getLocalizedMessage());
+		}
+		return images;
+	}
+
+	@Override
+	public void close()
+	{
+		try
+		{
+			out.writeByte(MapnikWorker.CLOSE);
+			out.close();
+			in.close();
+		}
+		catch (IOException e)
+		{
+			//ignore; the worker has already stopped
+		}
+		if (process != null)
+		{
+			try
+			{
+				process.waitFor();
+			}
+			catch (InterruptedException e)
+			{
+				process.destroy();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -16,8 +16,11 @@
 package au.gov.ga.worldwind.tiler.mapnik;
 
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -182,4 +185,47 @@ public class MapnikUtil
 			}
 		}
 	}
+
+	/**
+	 * Save a tile rendered by a {@link MapnikRenderer} to the given file.
+	 * 
+	 * @param image
+	 *            Encoded tile image
+	 * @param dst
+	 *            Output image file
+	 * @param ignoreBlank
+	 *            Should blank (transparent) tiles be ignored? If true, blank
+	 *            tiles are not written. Only works for images with alpha (PNG
+	 *            output).
+	 * @param logger
+	 *            Logger which logs errors
+	 */
+	public static void saveTile(byte[] image, File dst, boolean ignoreBlank, Logger logger)
+	{
+		try
+		{
+			if (ignoreBlank)
+			{
+				BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(image));
+				if (decoded != null && decoded.getColorModel().hasAlpha() && Util.isEmpty(decoded))
+				{
+					return;
+				}
+			}
+
+			OutputStream os = new FileOutputStream(dst);
+			try
+			{
+				os.write(image);
+			}
+			finally
+			{
+				os.close();
+			}
+		}
+		catch (IOException e)
+		{
+			logger.severe(e.getLocalizedMessage());
+		}
+	}
 }
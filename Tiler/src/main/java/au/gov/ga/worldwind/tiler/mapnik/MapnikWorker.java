@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.tiler.mapnik;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import au.gov.ga.worldwind.tiler.util.Sector;
+
+/**
+ * Base class for long-lived tile renderer workers, used by the
+ * {@link MapnikRenderer}. A worker loads its map once, and then renders tiles
+ * on request until it is closed.
+ * <p/>
+ * Workers communicate with the {@link MapnikRenderer} over a pair of streams
+ * (normally the worker process' standard input and output), using the
+ * following protocol (all values big-endian, strings in modified UTF-8 as
+ * written by {@link DataOutputStream#writeUTF(String)}):
+ * 
+ * <pre>
+ * On startup, the worker writes:
+ *   int magic ('MNKW'), int version (1)
+ *   byte status: 0 if the map was loaded, or 1 followed by a string error message
+ * 
+ * The renderer then writes any number of requests:
+ *   byte RENDER (1), double minLongitude, double minLatitude, double maxLongitude, double maxLatitude,
+ *       int width, int height, string format ("png" or "jpg")
+ *   byte CLOSE (0) to stop the worker
+ * 
+ * The worker answers each render request, in order:
+ *   byte status: 0 followed by int length and the encoded image bytes,
+ *                or 1 followed by a string error message
+ * </pre>
+ * 
+ * Requests can be pipelined: the renderer writes a batch of requests before
+ * reading the responses.
+ * <p/>
+ * The Mapnik worker is implemented in <code>mapnik/mapnik_worker.py</code>,
+ * using the Mapnik Python bindings. {@link TestPatternWorker} implements the
+ * protocol without Mapnik, for testing.
+ * 
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public abstract class MapnikWorker
+{
+	public static final int MAGIC = 0x4D4E4B57; //'MNKW'
+	public static final int VERSION = 1;
+
+	public static final byte CLOSE = 0;
+	public static final byte RENDER = 1;
+
+	public static final byte OK = 0;
+	public static final byte ERROR = 1;
+
+	/**
+	 * Render a tile.
+	 * 
+	 * @param sector
+	 *            Extents of the tile
+	 * @param width
+	 *            Width of the tile in pixels
+	 * @param height
+	 *            Height of the tile in pixels
+	 * @param format
+	 *            Image format ("png" or "jpg")
+	 * @return The encoded image
+	 * @throws Exception
+	 *             If rendering fails; the error is returned to the renderer,
+	 *             and the worker continues with the next request
+	 */
+	protected abstract byte[] render(Sector sector, int width, int height, String format) throws Exception;
+
+	/**
+	 * Serve requests from the given input stream until a close request is
+	 * received or the stream ends.
+	 * 
+	 * @param in
+	 *            Stream to read requests from
+	 * @param out
+	 *            Stream to write responses to
+	 * @param loadError
+	 *            Error message if the worker failed to load its map (null if
+	 *            successful); if not null, it is sent to the renderer and the
+	 *            worker stops
+	 */
+	public void serve(InputStream in, OutputStream out, String loadError) throws IOException
+	{
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(in));
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out, 65536));
+
+		dos.writeInt(MAGIC);
+		dos.writeInt(VERSION);
+		if (loadError != null)
+		{
+			dos.writeByte(ERROR);
+			dos.writeUTF(loadError);
+			dos.flush();
+			return;
+		}
+		dos.writeByte(OK);
+		dos.flush();
+
+		while (true)
+		{
+			byte type;
+			try
+			{
+				type = dis.readByte();
+			}
+			catch (EOFException e)
+			{
+				return;
+			}
+			if (type != RENDER)
+			{
+				return;
+			}
+
+			double minLongitude = dis.readDouble();
+			double minLatitude = dis.readDouble();
+			double maxLongitude = dis.readDouble();
+			double maxLatitude = dis.readDouble();
+			int width = dis.readInt();
+			int height = dis.readInt();
+			String format = dis.readUTF();
+
+			byte[] image = null;
+			String error = null;
+			try
+			{
+				image = render(new Sector(minLatitude, minLongitude, maxLatitude, maxLongitude), width, height, format);
+			}
+			catch (Exception e)
+			{
+				error = e.getMessage() != null ? e.getMessage() : e.toString();
+			}
+
+			if (image != null)
+			{
+				dos.writeByte(OK);
+				dos.writeInt(image.length);
+				dos.write(image);
+			}
+			else
+			{
+				dos.writeByte(ERROR);
+				dos.writeUTF(error != null ? error : "No image rendered");
+			}
+
+			//only flush once all pipelined requests have been answered
+			if (dis.available() == 0)
+			{
+				dos.flush();
+			}
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.tiler.mapnik;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+
+import javax.imageio.ImageIO;
+
+import au.gov.ga.worldwind.tiler.util.Sector;
+
+/**
+ * {@link MapnikWorker} that doesn't require Mapnik, and renders a test pattern
+ * (a checkerboard in 1 degree squares, plus a cross through the tile centre)
+ * for each tile. Used to test the {@link MapnikRenderer} batching protocol and
+ * throughput.
+ * <p/>
+ * Can be run as a worker process by setting the <code>tiler.mapnik.worker</code>
+ * system property to <code>java -cp &lt;classpath&gt; au.gov.ga.worldwind.tiler.mapnik.TestPatternWorker</code>.
+ * 
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class TestPatternWorker extends MapnikWorker
+{
+	public static void main(String[] args) throws Exception
+	{
+		new TestPatternWorker().serve(System.in, System.out, null);
+	}
+
+	@Override
+	protected byte[] render(Sector sector, int width, int height, String format) throws Exception
+	{
+		boolean jpg = "jpg".equalsIgnoreCase(format);
+		BufferedImage image =
+				new BufferedImage(width, height, jpg ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		try
+		{
+			double xscale = width / sector.getDeltaLongitude();
+			double yscale = height / sector.getDeltaLatitude();
+			int minX = (int) Math.floor(sector.getMinLongitude());
+			int minY = (int) Math.floor(sector.getMinLatitude());
+			for (int lat = minY; lat < sector.getMaxLatitude(); lat++)
+			{
+				for (int lon = minX; lon < sector.getMaxLongitude(); lon++)
+				{
+					g.setColor(((lat + lon) & 1) == 0 ? Color.WHITE : Color.GRAY);
+					int x1 = (int) Math.round((lon - sector.getMinLongitude()) * xscale);
+					int x2 = (int) Math.round((lon + 1 - sector.getMinLongitude()) * xscale);
+					int y1 = (int) Math.round((sector.getMaxLatitude() - lat - 1) * yscale);
+					int y2 = (int) Math.round((sector.getMaxLatitude() - lat) * yscale);
+					g.fillRect(x1, y1, x2 - x1, y2 - y1);
+				}
+			}
+			g.setColor(Color.RED);
+			g.drawLine(width / 2, 0, width / 2, height);
+			g.drawLine(0, height / 2, width, height / 2);
+		}
+		finally
+		{
+			g.dispose();
+		}
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ImageIO.write(image, jpg ? "jpg" : "png", baos);
+		return baos.toByteArray();
+	}
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.tiler.ribbon;
+
+/**
+ * Calculates the number of pixels of constant color at the top and bottom of
+ * each column of an image, in a single pass over the image's rows.
+ * <p/>
+ * Rows are added in blocks, from the top of the image to the bottom. For each
+ * column, the first and last rows at which the color changes from the row
+ * above are recorded; the constant pixels from the top are the rows before the
+ * first change, and the constant pixels from the bottom are the rows from the
+ * last change to the bottom of the image. Columns that are a single color are
+ * entirely constant from the top, and have no constant pixels from the bottom.
+ * <p/>
+ * Columns are independent, so different column ranges of the same block can be
+ * added concurrently from different threads.
+ *
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class ConstantColumnDetector
+{
+	private final int width;
+	private final int height;
+	private final int[] previous;
+	private final int[] firstChange;
+	private final int[] lastChange;
+	private int rowsAdded = 0;
+
+	public ConstantColumnDetector(int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+		this.previous = new int[width];
+		this.firstChange = new int[width];
+		this.lastChange = new int[width];
+	}
+
+	/**
+	 * Add a block of rows for a range of columns. Blocks must be added in
+	 * order from the top of the image, and every column must be added for a
+	 * block before the {@link #nextBlock(int)} call.
+	 *
+	 * @param argb
+	 *            ARGB colors of the block's pixels, ordered in the x-axis, then
+	 *            the y-axis
+	 * @param rows
+	 *            Number of rows in the block
+	 * @param fromX
+	 *            First column to add (inclusive)
+	 * @param toX
+	 *            Last column to add (exclusive)
+	 */
+	public void addRows(int[] argb, int rows, int fromX, int toX)
+	{
+		int y = 0;
+		if (rowsAdded == 0 && rows > 0)
+		{
+			//the first row of the image has nothing to compare to
+			System.arraycopy(argb, fromX, previous, fromX, toX - fromX);
+			y = 1;
+		}
+
+		//scan row by row, so the block is read sequentially
+		for (; y < rows; y++)
+		{
+			int row = rowsAdded + y;
+			for (int x = fromX, i = y * width + fromX; x < toX; x++, i++)
+			{
+				int color = argb[i];
+				if (color != previous[x])
+				{
+					if (firstChange[x] == 0)
+					{
+						firstChange[x] = row;
+					}
+					lastChange[x] = row;
+					previous[x] = color;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Mark the end of a block of rows, after all columns have been added.
+	 *
+	 * @param rows
+	 *            Number of rows in the block
+	 */
+	public void nextBlock(int rows)
+	{
+		rowsAdded += rows;
+	}
+
+	/**
+	 * @return Number of pixels of constant color at the top of each column
+	 */
+	public int[] getConstantPixelsFromTop()
+	{
+		int[] fromTop = new int[width];
+		for (int x = 0; x < width; x++)
+		{
+			fromTop[x] = firstChange[x] == 0 ? height : firstChange[x];
+		}
+		return fromTop;
+	}
+
+	/**
+	 * @return Number of pixels of constant color at the bottom of each column
+	 */
+	public int[] getConstantPixelsFromBottom()
+	{
+		int[] fromBottom = new int[width];
+		for (int x = 0; x < width; x++)
+		{
+			fromBottom[x] = lastChange[x] == 0 ? 0 : height - lastChange[x];
+		}
+		return fromBottom;
+	}
+}
@@ -22,7 +22,17 @@ import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 
 import javax.imageio.ImageIO;
 
@@ -90,6 +100,43 @@ public class RibbonTiler
 
 		printLevelsSummary(context, width, height, levels);
 
+		//GDAL datasets can't be read concurrently, so the source is read on this thread, and the images are
+		//processed, encoded and written by the task queue's threads
+		TaskQueue tasks = new TaskQueue(context.getThreads());
+		try
+		{
+			createTiles(context, dataset, width, height, levels, tasks);
+		}
+		finally
+		{
+			tasks.shutdown();
+		}
+
+		if (context.isCopySource())
+		{
+			try
+			{
+				Util.copyFileToDirectory(context.getSourceFile(), context.getTilesetRoot(), true);
+			}
+			catch (Exception e)
+			{
+				e.printStackTrace();
+			}
+		}
+
+		if (!context.isSuppressLayerDefinition())
+		{
+			LayerDefinitionCreator creator = new LayerDefinitionCreator();
+			creator.createDefinition(context);
+			log(context, "", true);
+			log(context, "Layer definition file generated at " + context.getLayerDefinitionFile().getAbsolutePath(),
+					true);
+		}
+	}
+
+	private void createTiles(final RibbonTilingContext context, Dataset dataset, final int width, final int height,
+			int levels, TaskQueue tasks) throws Exception
+	{
 		int[] constantPixelsFromTop = null;
 		int[] constantPixelsFromBottom = null;
 		if (context.isRemoveConstantColumns())
@@ -107,58 +154,48 @@ public class RibbonTiler
 			}
 			else
 			{
-				constantPixelsFromTop = new int[width];
-				constantPixelsFromBottom = new int[width];
-
-				int constantWidth = Math.max(1, 10 * context.getTilesize() * context.getTilesize() / height);
-				for (int startX = 0; startX < width; startX += constantWidth)
+				final ConstantColumnDetector detector = new ConstantColumnDetector(width, height);
+
+				//read the image in blocks of full-width rows; each block is split into column ranges which are
+				//scanned concurrently, while the next block is read
+				int blockHeight = Math.max(1, 10 * context.getTilesize() * context.getTilesize() / width);
+				int columnsPerTask = (width - 1) / context.getThreads() + 1;
+				int lastBlockHeight = 0;
+				int lastPercent = -1;
+				for (int startY = 0; startY < height; startY += blockHeight)
 				{
-					int w = Math.min(constantWidth, width - startX);
+					final int h = Math.min(blockHeight, height - startY);
 
-					//get an image of the full height, 1 pixel wide at column x
-					Rectangle src =
-							new Rectangle(context.getInsets().left + startX, context.getInsets().top, w, height);
+					Rectangle src = new Rectangle(context.getInsets().left, context.getInsets().top + startY, width, h);
 					GDALTileParameters parameters = new GDALTileParameters(dataset, src.getSize(), src);
 					GDALTile tile = new GDALTile(parameters);
-					BufferedImage image = tile.getAsImage();
+					final int[] argb = RibbonTilerUtils.getARGB(tile.getAsImage());
 
-					log(context, (100 * (startX + 1) / width) + "% done", false);
+					tasks.await();
+					detector.nextBlock(lastBlockHeight);
+					lastBlockHeight = h;
 
-					for (int x = 0; x < w; x++)
+					for (int startX = 0; startX < width; startX += columnsPerTask)
 					{
-						int fromTop = 0;
-						int fromBottom = 0;
-						int lastColor = 0;
-						for (int y = 0; y < height; y++)
-						{
-							int thisColor = image.getRGB(x, y);
-							if (y > 0 && lastColor != thisColor)
-							{
-								break;
-							}
-							lastColor = thisColor;
-							fromTop++;
-						}
-
-						if (fromTop < height)
+						final int fromX = startX;
+						final int toX = Math.min(width, startX + columnsPerTask);
+						tasks.submit(new Callable<Object>()
 						{
-							for (int y = height - 1; y >= 0; y--)
+							@Override
+							public Object call()
 							{
-								int thisColor = image.getRGB(x, y);
-								if (y < height - 1 && lastColor != thisColor)
-								{
-									break;
-								}
-								lastColor = thisColor;
-								fromBottom++;
+								detector.addRows(argb, h, fromX, toX);
+								return null;
 							}
-						}
-
-						constantPixelsFromTop[startX + x] = fromTop;
-						constantPixelsFromBottom[startX + x] = fromBottom;
+						});
 					}
+
+					lastPercent = logProgress(context, startY + h, height, lastPercent);
 				}
+				tasks.await();
 
+				constantPixelsFromTop = detector.getConstantPixelsFromTop();
+				constantPixelsFromBottom = detector.getConstantPixelsFromBottom();
 				RibbonTilerUtils.saveIntArrayToFile(constantPixelsFromTop, topFile);
 				RibbonTilerUtils.saveIntArrayToFile(constantPixelsFromBottom, bottomFile);
 			}
@@ -173,6 +210,9 @@ public class RibbonTiler
 
 		//create top level tiles
 		log(context, "Creating top level tiles...", false);
+		final int[] fromTop = constantPixelsFromTop;
+		final int[] fromBottom = constantPixelsFromBottom;
+		int lastPercent = -1;
 		for (int y = 0, row = 0; y < height; y += context.getTilesize() * xStrips, row++)
 		{
 			//create row directory
@@ -184,7 +224,9 @@ public class RibbonTiler
 
 			for (int x = 0, col = 0; x < width; x += context.getTilesize() * yStrips, col++)
 			{
-				File imageFile = tileFile(levelDir, row, col, context.getFormat());
+				lastPercent = logProgress(context, row * cols + col + 1, rows * cols, lastPercent);
+
+				final File imageFile = tileFile(levelDir, row, col, context.getFormat());
 				if (imageFile.exists())
 				{
 					continue;
@@ -195,18 +237,29 @@ public class RibbonTiler
 				Rectangle src = new Rectangle(x + context.getInsets().left, y + context.getInsets().top, w, h);
 				GDALTileParameters parameters = new GDALTileParameters(dataset, src.getSize(), src);
 				GDALTile tile = new GDALTile(parameters);
-				BufferedImage image = tile.getAsImage();
+				final BufferedImage image = tile.getAsImage();
 
-				if (context.isRemoveConstantColumns())
+				final int startX = x;
+				final int startY = y;
+				tasks.submit(new Callable<Object>()
 				{
-					image =
-							removeConstantColumns(image, constantPixelsFromTop, constantPixelsFromBottom, x, y, width,
-									height, context.isMask());
-				}
-
-				ImageIO.write(image, context.getFormat(), imageFile);
+					@Override
+					public Object call() throws IOException
+					{
+						BufferedImage output = image;
+						if (context.isRemoveConstantColumns())
+						{
+							output =
+									removeConstantColumns(image, fromTop, fromBottom, startX, startY, width, height,
+											context.isMask());
+						}
+						ImageIO.write(output, context.getFormat(), imageFile);
+						return null;
+					}
+				});
 			}
 		}
+		tasks.await();
 
 		//create overviews
 		for (int level = levels - 2; level >= 0; level--)
@@ -266,7 +319,7 @@ public class RibbonTiler
 					//if lastRows == 1: 0,1,2,3 / 4,5,6,7
 					//            else: 0,1,0,1 / 2,3,2,3
 
-					File imageFile = tileFile(levelDir, row, col, context.getFormat());
+					final File imageFile = tileFile(levelDir, row, col, context.getFormat());
 					if (imageFile.exists())
 					{
 						continue;
@@ -278,84 +331,81 @@ public class RibbonTiler
 					int c2 = colMultiplier * (firstCol + colDelta);
 					int c3 = colMultiplier * (firstCol + colDelta + 1);
 
-					File src0 = tileFile(lastLevelDir, r0, c0, context.getFormat());
-					File src1 = tileFile(lastLevelDir, r1, c1, context.getFormat());
-					File src2 = tileFile(lastLevelDir, r2, c2, context.getFormat());
-					File src3 = tileFile(lastLevelDir, r3, c3, context.getFormat());
-
-					BufferedImage img0 = src0.exists() ? ImageIO.read(src0) : null;
-					BufferedImage img1 = src1.exists() ? ImageIO.read(src1) : null;
-					BufferedImage img2 = src2.exists() ? ImageIO.read(src2) : null;
-					BufferedImage img3 = src3.exists() ? ImageIO.read(src3) : null;
-
-					int w0 = img0 == null ? 0 : (img0.getWidth() + 1) / 2;
-					int w1 = img1 == null ? 0 : (img1.getWidth() + 1) / 2;
-					int w2 = img2 == null ? 0 : (img2.getWidth() + 1) / 2;
-					int w3 = img3 == null ? 0 : (img3.getWidth() + 1) / 2;
-					int h0 = img0 == null ? 0 : (img0.getHeight() + 1) / 2;
-					int h1 = img1 == null ? 0 : (img1.getHeight() + 1) / 2;
-					int h2 = img2 == null ? 0 : (img2.getHeight() + 1) / 2;
-					int h3 = img3 == null ? 0 : (img3.getHeight() + 1) / 2;
-
-					int w = w0 + (lastCols == 1 ? 0 : w1) + (lastRows == 1 ? w2 + w3 : 0);
-					int h = h0 + (lastRows == 1 ? 0 : h2) + (lastCols == 1 ? h1 + h3 : 0);
-
-					int type = context.isMask() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
-					BufferedImage image = new BufferedImage(w, h, type);
-					Graphics2D g = image.createGraphics();
-					g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-
-					int x = 0;
-					int y = 0;
-					if (img0 != null)
-					{
-						g.drawImage(img0, x, y, w0, h0, null);
-					}
-					x += lastCols == 1 ? 0 : w0;
-					y += lastCols == 1 ? h0 : 0;
-					if (img1 != null)
-					{
-						g.drawImage(img1, x, y, w1, h1, null);
-					}
-					x += lastCols == 1 ? 0 : lastRows == 1 ? w1 : -w0;
-					y += lastCols == 1 ? h1 : lastRows == 1 ? 0 : h0;
-					if (img2 != null)
-					{
-						g.drawImage(img2, x, y, w2, h2, null);
-					}
-					x += lastCols == 1 ? 0 : w2;
-					y += lastCols == 1 ? h2 : 0;
-					if (img3 != null)
-					{
-						g.drawImage(img3, x, y, w3, h3, null);
-					}
+					final File src0 = tileFile(lastLevelDir, r0, c0, context.getFormat());
+					final File src1 = tileFile(lastLevelDir, r1, c1, context.getFormat());
+					final File src2 = tileFile(lastLevelDir, r2, c2, context.getFormat());
+					final File src3 = tileFile(lastLevelDir, r3, c3, context.getFormat());
+					final int finalLastRows = lastRows;
+					final int finalLastCols = lastCols;
 
-					g.dispose();
-					ImageIO.write(image, context.getFormat(), imageFile);
+					tasks.submit(new Callable<Object>()
+					{
+						@Override
+						public Object call() throws IOException
+						{
+							createOverviewTile(src0, src1, src2, src3, imageFile, finalLastRows, finalLastCols,
+									context.isMask(), context.getFormat());
+							return null;
+						}
+					});
 				}
 			}
+			tasks.await();
 		}
+	}
 
-		if (context.isCopySource())
+	private static void createOverviewTile(File src0, File src1, File src2, File src3, File imageFile, int lastRows,
+			int lastCols, boolean mask, String format) throws IOException
+	{
+		BufferedImage img0 = src0.exists() ? ImageIO.read(src0) : null;
+		BufferedImage img1 = src1.exists() ? ImageIO.read(src1) : null;
+		BufferedImage img2 = src2.exists() ? ImageIO.read(src2) : null;
+		BufferedImage img3 = src3.exists() ? ImageIO.read(src3) : null;
+
+		int w0 = img0 == null ? 0 : (img0.getWidth() + 1) / 2;
+		int w1 = img1 == null ? 0 : (img1.getWidth() + 1) / 2;
+		int w2 = img2 == null ? 0 : (img2.getWidth() + 1) / 2;
+		int w3 = img3 == null ? 0 : (img3.getWidth() + 1) / 2;
+		int h0 = img0 == null ? 0 : (img0.getHeight() + 1) / 2;
+		int h1 = img1 == null ? 0 : (img1.getHeight() + 1) / 2;
+		int h2 = img2 == null ? 0 : (img2.getHeight() + 1) / 2;
+		int h3 = img3 == null ? 0 : (img3.getHeight() + 1) / 2;
+
+		int w = w0 + (lastCols == 1 ? 0 : w1) + (lastRows == 1 ? w2 + w3 : 0);
+		int h = h0 + (lastRows == 1 ? 0 : h2) + (lastCols == 1 ? h1 + h3 : 0);
+
+		int type = mask ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+		BufferedImage image = new BufferedImage(w, h, type);
+		Graphics2D g = image.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+
+		int x = 0;
+		int y = 0;
+		if (img0 != null)
 		{
-			try
-			{
-				Util.copyFileToDirectory(context.getSourceFile(), context.getTilesetRoot(), true);
-			}
-			catch (Exception e)
-			{
-				e.printStackTrace();
-			}
+			g.drawImage(img0, x, y, w0, h0, null);
 		}
-
-		if (!context.isSuppressLayerDefinition())
+		x += lastCols == 1 ? 0 : w0;
+		y += lastCols == 1 ? h0 : 0;
+		if (img1 != null)
 		{
-			LayerDefinitionCreator creator = new LayerDefinitionCreator();
-			creator.createDefinition(context);
-			log(context, "", true);
-			log(context, "Layer definition file generated at " + context.getLayerDefinitionFile().getAbsolutePath(),
-					true);
+			g.drawImage(img1, x, y, w1, h1, null);
+		}
+		x += lastCols == 1 ? 0 : lastRows == 1 ? w1 : -w0;
+		y += lastCols == 1 ? h1 : lastRows == 1 ? 0 : h0;
+		if (img2 != null)
+		{
+			g.drawImage(img2, x, y, w2, h2, null);
 		}
+		x += lastCols == 1 ? 0 : w2;
+		y += lastCols == 1 ? h2 : 0;
+		if (img3 != null)
+		{
+			g.drawImage(img3, x, y, w3, h3, null);
+		}
+
+		g.dispose();
+		ImageIO.write(image, format, imageFile);
 	}
 
 	private void printLevelsSummary(RibbonTilingContext context, int width, int height, int levels)
@@ -398,29 +448,44 @@ public class RibbonTiler
 		int width = image.getWidth();
 		int height = image.getHeight();
 		int type = mask ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
-		BufferedImage newImage = new BufferedImage(width, height, type);
+		int[] argb = RibbonTilerUtils.getARGB(image);
 
 		for (int x = 0; x < width; x++)
 		{
 			int fromTop = constantPixelsFromTop[startX + x];
 			int fromBottom = constantPixelsFromBottom[startX + x];
 
-			for (int y = 0; y < height; y++)
+			for (int y = 0, i = x; y < height; y++, i += width)
 			{
 				boolean withinTop = y + startY < fromTop;
 				boolean withinBottom = y + startY > totalHeight - 1 - fromBottom;
 				if (withinTop || withinBottom)
 				{
-					newImage.setRGB(x, y, mask ? 0 : 0xffffffff);
+					argb[i] = mask ? 0 : 0xffffffff;
 				}
-				else
+				else if (mask)
 				{
-					newImage.setRGB(x, y, mask ? 0xffffffff : image.getRGB(x, y));
+					argb[i] = 0xffffffff;
 				}
 			}
 		}
 
-		return newImage;
+		return RibbonTilerUtils.createImage(argb, width, height, type);
+	}
+
+	/**
+	 * Log the percentage complete, if it has changed since it was last logged.
+	 * 
+	 * @return The percentage complete
+	 */
+	private static int logProgress(RibbonTilingContext context, int done, int total, int lastPercent)
+	{
+		int percent = (int) (100L * done / total);
+		if (percent != lastPercent)
+		{
+			log(context, percent + "% done", false);
+		}
+		return percent;
 	}
 
 	private static void log(RibbonTilingContext context, String msg, boolean addToTilingLog)
@@ -440,4 +505,110 @@ public class RibbonTiler
 			e.printStackTrace();
 		}
 	}
+
+	/**
+	 * Runs tasks on a fixed pool of threads. The number of tasks that are
+	 * queued or running is limited, which bounds the number of images held in
+	 * memory while tiling.
+	 */
+	private static class TaskQueue
+	{
+		private final ExecutorService executor;
+		private final Semaphore permits;
+		private final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+		public TaskQueue(int threads)
+		{
+			threads = Math.max(1, threads);
+			executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "Ribbon tiler");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			permits = new Semaphore(threads * 2);
+		}
+
+		/**
+		 * Submit a task, blocking until there is space in the queue.
+		 * 
+		 * @throws Exception
+		 *             If a previously submitted task has failed
+		 */
+		public void submit(final Callable<?> task) throws Exception
+		{
+			permits.acquire();
+			futures.add(executor.submit(new Callable<Object>()
+			{
+				@Override
+				public Object call() throws Exception
+				{
+					try
+					{
+						return task.call();
+					}
+					finally
+					{
+						permits.release();
+					}
+				}
+			}));
+
+			//rethrow the failures of completed tasks, and forget them
+			for (Iterator<Future<?>> iterator = futures.iterator(); iterator.hasNext();)
+			{
+				Future<?> future = iterator.next();
+				if (future.isDone())
+				{
+					get(future);
+					iterator.remove();
+				}
+			}
+		}
+
+		/**
+		 * Wait for all submitted tasks to complete.
+		 * 
+		 * @throws Exception
+		 *             If a submitted task failed
+		 */
+		public void await() throws Exception
+		{
+			for (Future<?> future : futures)
+			{
+				get(future);
+			}
+			futures.clear();
+		}
+
+		public void shutdown()
+		{
+			executor.shutdownNow();
+		}
+
+		private static void get(Future<?> future) throws Exception
+		{
+			try
+			{
+				future.get();
+			}
+			catch (ExecutionException e)
+			{
+				Throwable cause = e.getCause();
+				if (cause instanceof Exception)
+				{
+					throw (Exception) cause;
+				}
+				if (cause instanceof Error)
+				{
+					throw (Error) cause;
+				}
+				throw e;
+			}
+		}
+	}
 }
@@ -15,6 +15,9 @@
  ******************************************************************************/
 package au.gov.ga.worldwind.tiler.ribbon;
 
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
@@ -73,4 +76,51 @@ public class RibbonTilerUtils
 		}
 		return null;
 	}
+
+	/**
+	 * Get the ARGB colors of all the pixels in an image, ordered in the
+	 * x-axis, then the y-axis. Equivalent to
+	 * {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}, but
+	 * images with packed int pixels are read directly from their data buffer.
+	 */
+	public static int[] getARGB(BufferedImage image)
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int type = image.getType();
+		DataBuffer buffer = image.getRaster().getDataBuffer();
+		if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+				&& buffer instanceof DataBufferInt && buffer.getOffset() == 0 && buffer.getSize() == width * height
+				&& image.getRaster().getParent() == null)
+		{
+			int[] data = ((DataBufferInt) buffer).getData();
+			int[] argb = new int[data.length];
+			int alpha = type == BufferedImage.TYPE_INT_RGB ? 0xff000000 : 0;
+			for (int i = 0; i < data.length; i++)
+			{
+				argb[i] = data[i] | alpha;
+			}
+			return argb;
+		}
+		return image.getRGB(0, 0, width, height, null, 0, width);
+	}
+
+	/**
+	 * Create an image of the given type from an array of ARGB colors (ordered
+	 * in the x-axis, then the y-axis). Equivalent to calling
+	 * {@link BufferedImage#setRGB(int, int, int)} for each pixel of a new
+	 * image of type {@link BufferedImage#TYPE_INT_RGB} or
+	 * {@link BufferedImage#TYPE_INT_ARGB}.
+	 */
+	public static BufferedImage createImage(int[] argb, int width, int height, int type)
+	{
+		BufferedImage image = new BufferedImage(width, height, type);
+		int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		int mask = type == BufferedImage.TYPE_INT_RGB ? 0x00ffffff : 0xffffffff;
+		for (int i = 0; i < data.length; i++)
+		{
+			data[i] = argb[i] & mask;
+		}
+		return image;
+	}
 }
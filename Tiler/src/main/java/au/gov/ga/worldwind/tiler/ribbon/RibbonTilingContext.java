@@ -55,6 +55,8 @@ public class RibbonTilingContext {
 	@Parameter(names="-format", description="Override the output format")
 	private String format = null;
 	private int numLevels;
+	@Parameter(names="-threads", description="The number of threads used to process and write tiles")
+	private int threads = Runtime.getRuntime().availableProcessors();
 	
 	// Flags
 	@Parameter(names="-removeConstantColumns", description="Remove constant colour from the top and bottom of the image")
@@ -475,4 +477,14 @@ public class RibbonTilingContext {
 	{
 		this.removeConstantColumns = removeConstantColumns;
 	}
+
+	public int getThreads()
+	{
+		return threads;
+	}
+
+	public void setThreads(int threads)
+	{
+		this.threads = threads;
+	}
 }
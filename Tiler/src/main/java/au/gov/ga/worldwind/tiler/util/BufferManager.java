@@ -16,53 +16,126 @@
 package au.gov.ga.worldwind.tiler.util;
 
 import java.nio.ByteBuffer;
-import java.util.Map.Entry;
-import java.util.NavigableMap;
-import java.util.TreeMap;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * A simple (and fairly naive) buffer manager that endeavours to re-use buffer objects
- * where possible in an attempt to avoid OOM errors. 
+ * A pool of direct buffers, which are re-used where possible in an attempt to
+ * avoid OOM errors (direct memory is only freed when the buffer is garbage
+ * collected).
+ * <p/>
+ * Buffers are pooled in size classes (four classes per power of two), each
+ * class being a lock-free queue, so that concurrent readers don't contend on a
+ * single lock. A request is satisfied by a free buffer from its own class, or
+ * from one of the next few larger classes. Each thread also keeps a small
+ * cache of recently returned buffers (at most {@link #THREAD_CACHE_BYTES}),
+ * which are re-used by that thread without touching the shared queues.
+ * <p/>
+ * The total direct memory held by the pool (buffers taken plus free buffers in
+ * the shared queues and the thread caches) is limited to
+ * {@link #getMaxDirectMemory()}. When a new buffer would exceed the limit,
+ * free buffers are evicted from the queues and from every thread's cache; if
+ * that is not enough, the caller blocks until other buffers are returned.
  * 
  * @author Michael de Hoog (michael.dehoog@ga.gov.au)
  */
 public class BufferManager
 {
-	/** The map of available buffers. Capacity->Buffer */
-	private static NavigableMap<Integer, ByteBuffer> availableBuffers = new TreeMap<Integer, ByteBuffer>();
-	
+	/** Capacity of the smallest size class */
+	public static final int MIN_CLASS_SIZE = 16;
+	/** Buffers larger than this are allocated to size, and not pooled */
+	public static final int MAX_POOLED_SIZE = 1 << 28;
+	/** Maximum bytes of buffers cached by each thread */
+	public static final int THREAD_CACHE_BYTES = 1 << 24;
+	/** Maximum time to wait for buffers to be returned when the memory limit is reached */
+	public static final long MAX_WAIT_MILLIS = 60000;
+
+	/** How many classes larger than the requested class to search for a free buffer */
+	private static final int MAX_CLASS_STEP = 4;
+	private static final int CLASS_COUNT = classIndex(MAX_POOLED_SIZE) + 1;
+	private static final byte[] ZEROS = new byte[8192];
+
+	/** Free buffers for each size class */
+	private static final Queue<ByteBuffer>[] pool = createPool();
+	private static final AtomicLong pooledBytes = new AtomicLong();
+	private static final AtomicLong outstandingBytes = new AtomicLong();
+	private static volatile long maxDirectMemory = Runtime.getRuntime().maxMemory();
+
+	/**
+	 * Every thread's cache, so that they can be evicted by other threads. The
+	 * caches of finished threads are not removed, but their buffers are still
+	 * counted as pooled, and are evicted like any other free buffer.
+	 */
+	private static final Queue<ThreadCache> threadCaches = new ConcurrentLinkedQueue<ThreadCache>();
+	private static final ThreadLocal<ThreadCache> threadCache = new ThreadLocal<ThreadCache>()
+	{
+		@Override
+		protected ThreadCache initialValue()
+		{
+			ThreadCache cache = new ThreadCache();
+			threadCaches.add(cache);
+			return cache;
+		}
+	};
+
+	private static final Object releaseLock = new Object();
+	private static final AtomicInteger waiting = new AtomicInteger();
+
 	/** Clears the buffer pool */
-	public synchronized static void reset()
+	public static void reset()
 	{
-		availableBuffers.clear();
+		evict(Long.MAX_VALUE);
+		outstandingBytes.set(0);
 	}
-	
+
 	/**
 	 * Get a buffer of the given size, re-using an existing buffer if possible.
+	 * The buffer's limit is set to the requested size (its capacity may be
+	 * larger), its position is 0, and its contents are zeroed.
 	 * <p/>
 	 * When finished with the buffer it should be returned to the pool using {@link #returnByteBuffer(ByteBuffer)}.
+	 * 
+	 * @throws OutOfMemoryError
+	 *             If the buffer would exceed the direct memory limit, and not
+	 *             enough buffers were returned within {@link #MAX_WAIT_MILLIS}
 	 */
-	public synchronized static ByteBuffer takeByteBuffer(int size)
-	{
-		Entry<Integer, ByteBuffer> entry = availableBuffers.ceilingEntry(size);
-		if (entry != null)
-		{
-			ByteBuffer buffer = entry.getValue();
-			availableBuffers.remove(entry.getKey());
-			
-			buffer.rewind();
-			buffer.limit(size);
-			
-			// Clear the buffer incase there's something in there...
-			for (int i = 0; i < size; i++)
+	public static ByteBuffer takeByteBuffer(int size)
+	{
+		if (size > MAX_POOLED_SIZE)
+		{
+			reserve(size);
+			return ByteBuffer.allocateDirect(size);
+		}
+
+		int index = classIndex(size);
+		int last = Math.min(index + MAX_CLASS_STEP, CLASS_COUNT - 1);
+		ThreadCache cache = threadCache.get();
+		for (int i = index; i <= last; i++)
+		{
+			ByteBuffer buffer = cache.take(i);
+			if (buffer == null)
 			{
-				buffer.put((byte)0);
+				buffer = pool[i].poll();
+			}
+			if (buffer != null)
+			{
+				pooledBytes.addAndGet(-buffer.capacity());
+				outstandingBytes.addAndGet(buffer.capacity());
+				return prepare(buffer, size);
 			}
-			
-			buffer.rewind();
-			return buffer;
 		}
-		return ByteBuffer.allocateDirect(size);
+
+		int capacity = classSize(index);
+		reserve(capacity);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(capacity);
+		buffer.limit(size);
+		return buffer;
 	}
 
 	/**
@@ -72,22 +145,300 @@ public class BufferManager
 	 * allocated to another object for another use. If another
 	 * buffer is required it should be obtained from {@link #takeByteBuffer(int)}.
 	 */
-	public synchronized static void returnByteBuffer(ByteBuffer buffer)
+	public static void returnByteBuffer(ByteBuffer buffer)
 	{
-		if (buffer != null)
+		if (buffer == null || !buffer.isDirect())
+		{
+			return;
+		}
+
+		int capacity = buffer.capacity();
+		release(capacity);
+
+		if (capacity > MAX_POOLED_SIZE || capacity < MIN_CLASS_SIZE)
+		{
+			return;
+		}
+
+		//pool in the largest class that the buffer can satisfy
+		int index = classIndex(capacity);
+		if (classSize(index) > capacity)
+		{
+			index--;
+		}
+
+		//count the buffer as pooled before publishing it, so that the bytes
+		//are never subtracted (by a take or evict) before they are added
+		pooledBytes.addAndGet(capacity);
+		if (!threadCache.get().put(index, buffer))
 		{
-			availableBuffers.put(buffer.capacity(), buffer);
+			pool[index].offer(buffer);
 		}
 	}
-	
+
 	/**
-	 * @return The buffer pool. For testing purposes only.
+	 * @return Bytes of direct buffers that have been taken and not yet returned
 	 */
-	static NavigableMap<Integer, ByteBuffer> getBuffers()
+	public static long getOutstandingBytes()
 	{
-		return availableBuffers;
+		return outstandingBytes.get();
 	}
-	
+
+	/**
+	 * @return Bytes of free direct buffers in the pool (including the
+	 *         per-thread caches)
+	 */
+	public static long getPooledBytes()
+	{
+		return pooledBytes.get();
+	}
+
+	/**
+	 * @return Limit on the direct memory held by the pool (defaults to the
+	 *         JVM's maximum heap size, which is also the JVM's default
+	 *         direct memory limit)
+	 */
+	public static long getMaxDirectMemory()
+	{
+		return maxDirectMemory;
+	}
+
+	public static void setMaxDirectMemory(long maxDirectMemory)
+	{
+		BufferManager.maxDirectMemory = maxDirectMemory;
+	}
+
+	/**
+	 * @return The free buffers in the pool and the thread caches. For testing
+	 *         purposes only.
+	 */
+	static List<ByteBuffer> getBuffers()
+	{
+		List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+		for (Queue<ByteBuffer> queue : pool)
+		{
+			buffers.addAll(queue);
+		}
+		for (ThreadCache cache : threadCaches)
+		{
+			cache.addTo(buffers);
+		}
+		return buffers;
+	}
+
+	private static ByteBuffer prepare(ByteBuffer buffer, int size)
+	{
+		buffer.clear();
+		buffer.limit(size);
+		buffer.order(ByteOrder.BIG_ENDIAN);
+
+		// Clear the buffer incase there's something in there...
+		while (buffer.hasRemaining())
+		{
+			buffer.put(ZEROS, 0, Math.min(ZEROS.length, buffer.remaining()));
+		}
+
+		buffer.rewind();
+		return buffer;
+	}
+
+	/**
+	 * Account for a new buffer of the given capacity, evicting free buffers or
+	 * waiting for buffers to be returned if the memory limit would be
+	 * exceeded.
+	 */
+	private static void reserve(long bytes)
+	{
+		long deadline = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+		while (true)
+		{
+			long outstanding = outstandingBytes.get();
+			long excess = outstanding + pooledBytes.get() + bytes - maxDirectMemory;
+			if (excess > 0 && evict(excess))
+			{
+				continue;
+			}
+			//always allow a single buffer, even if it is larger than the limit
+			if (excess <= 0 || outstanding == 0)
+			{
+				if (outstandingBytes.compareAndSet(outstanding, outstanding + bytes))
+				{
+					return;
+				}
+				continue;
+			}
+
+			//nothing left to evict, so wait for other threads to return buffers
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0)
+			{
+				throw new OutOfMemoryError("Direct buffer memory limit of " + maxDirectMemory
+						+ " bytes reached (" + outstanding + " bytes outstanding)");
+			}
+			synchronized (releaseLock)
+			{
+				waiting.incrementAndGet();
+				try
+				{
+					if (outstandingBytes.get() >= outstanding)
+					{
+						releaseLock.wait(remaining);
+					}
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new OutOfMemoryError("Interrupted waiting for direct buffer memory");
+				}
+				finally
+				{
+					waiting.decrementAndGet();
+				}
+			}
+		}
+	}
+
+	private static void release(long bytes)
+	{
+		long outstanding;
+		do
+		{
+			outstanding = outstandingBytes.get();
+		}
+		while (!outstandingBytes.compareAndSet(outstanding, Math.max(0, outstanding - bytes)));
+
+		if (waiting.get() > 0)
+		{
+			synchronized (releaseLock)
+			{
+				releaseLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Drop free buffers from the pool and the thread caches, largest first,
+	 * until at least the given number of bytes have been dropped or the pool
+	 * is empty.
+	 * 
+	 * @return True if any buffers were dropped
+	 */
+	private static boolean evict(long bytes)
+	{
+		boolean evicted = false;
+		for (int i = CLASS_COUNT - 1; i >= 0 && bytes > 0; i--)
+		{
+			ByteBuffer buffer;
+			while (bytes > 0 && (buffer = pool[i].poll()) != null)
+			{
+				pooledBytes.addAndGet(-buffer.capacity());
+				bytes -= buffer.capacity();
+				evicted = true;
+			}
+			for (ThreadCache cache : threadCaches)
+			{
+				if (bytes <= 0)
+				{
+					break;
+				}
+				buffer = cache.take(i);
+				if (buffer != null)
+				{
+					pooledBytes.addAndGet(-buffer.capacity());
+					bytes -= buffer.capacity();
+					evicted = true;
+				}
+			}
+		}
+		return evicted;
+	}
+
+	/**
+	 * @return The index of the smallest size class that can hold the given
+	 *         number of bytes
+	 */
+	static int classIndex(int size)
+	{
+		if (size <= MIN_CLASS_SIZE)
+		{
+			return 0;
+		}
+		//each power of two is divided into four classes
+		int octave = 31 - Integer.numberOfLeadingZeros(size - 1);
+		int quarter = ((size - 1) >>> (octave - 2)) & 3;
+		return 1 + (octave - 4) * 4 + quarter;
+	}
+
+	/**
+	 * @return The capacity of buffers in the given size class
+	 */
+	static int classSize(int index)
+	{
+		if (index == 0)
+		{
+			return MIN_CLASS_SIZE;
+		}
+		int octave = 4 + (index - 1) / 4;
+		int quarter = (index - 1) % 4;
+		return (1 << octave) + ((quarter + 1) << (octave - 2));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Queue<ByteBuffer>[] createPool()
+	{
+		Queue<ByteBuffer>[] pool = new Queue[CLASS_COUNT];
+		for (int i = 0; i < CLASS_COUNT; i++)
+		{
+			pool[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+		}
+		return pool;
+	}
+
+	/**
+	 * Per-thread cache of free buffers, holding at most one buffer per size
+	 * class. Buffers are put by the owning thread only, but can be taken by
+	 * any thread (when evicting), so the slots are atomic.
+	 */
+	private static class ThreadCache
+	{
+		private final AtomicReferenceArray<ByteBuffer> buffers = new AtomicReferenceArray<ByteBuffer>(CLASS_COUNT);
+		private final AtomicLong bytes = new AtomicLong();
+
+		public ByteBuffer take(int index)
+		{
+			ByteBuffer buffer = buffers.getAndSet(index, null);
+			if (buffer != null)
+			{
+				bytes.addAndGet(-buffer.capacity());
+			}
+			return buffer;
+		}
+
+		public boolean put(int index, ByteBuffer buffer)
+		{
+			//count the bytes first, so a concurrent take never makes them negative
+			long capacity = buffer.capacity();
+			if (bytes.addAndGet(capacity) > THREAD_CACHE_BYTES || !buffers.compareAndSet(index, null, buffer))
+			{
+				bytes.addAndGet(-capacity);
+				return false;
+			}
+			return true;
+		}
+
+		public void addTo(List<ByteBuffer> list)
+		{
+			for (int i = 0; i < buffers.length(); i++)
+			{
+				ByteBuffer buffer = buffers.get(i);
+				if (buffer != null)
+				{
+					list.add(buffer);
+				}
+			}
+		}
+	}
+
 	private BufferManager(){};
 	
 }
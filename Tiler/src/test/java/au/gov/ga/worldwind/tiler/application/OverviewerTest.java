@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.tiler.application;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+import au.gov.ga.worldwind.tiler.application.Overviewer.ElevationMixer;
+import au.gov.ga.worldwind.tiler.util.NullableNumberArray;
+
+/**
+ * Unit tests for the elevation mixing in the {@link Overviewer} class
+ */
+public class OverviewerTest
+{
+	@Test
+	public void testShortBilinearAveragesAndTruncates()
+	{
+		// 2x2 children; each child is downsampled into a single parent pixel
+		ByteBuffer[] sources = new ByteBuffer[4];
+		sources[0] = shorts(1, 2, 3, 4); // bottom-left: 10/4 = 2
+		sources[1] = shorts(-1, -2, -3, -5); // top-left: -11/4 = -2
+		sources[2] = shorts(100, 100, 100, 101); // bottom-right: 401/4 = 100
+		sources[3] = shorts(0, 0, 0, 3); // top-right: 3/4 = 0
+
+		ByteBuffer dst = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		ElevationMixer.create(2, false).mix(sources, dst, 2, 2, 1, null, true);
+
+		// +--+--+
+		// |i1|i3|
+		// +--+--+
+		// |i0|i2|
+		// +--+--+
+		assertEquals(-2, dst.getShort(0));
+		assertEquals(0, dst.getShort(2));
+		assertEquals(2, dst.getShort(4));
+		assertEquals(100, dst.getShort(6));
+	}
+
+	@Test
+	public void testShortOutsideValues()
+	{
+		NullableNumberArray outside = new NullableNumberArray(1);
+		outside.setShort(0, (short) -9999);
+
+		ByteBuffer[] sources = new ByteBuffer[4];
+		sources[0] = shorts(1, 2, 3, -9999); // contains outside value
+		sources[2] = shorts(4, 4, 4, 4);
+		// top children are missing
+
+		ByteBuffer dst = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		ElevationMixer.create(2, false).mix(sources, dst, 2, 2, 1, outside, true);
+
+		assertEquals(-9999, dst.getShort(0));
+		assertEquals(-9999, dst.getShort(2));
+		assertEquals(-9999, dst.getShort(4));
+		assertEquals(4, dst.getShort(6));
+	}
+
+	@Test
+	public void testFloatNaNOutsideValue()
+	{
+		NullableNumberArray outside = new NullableNumberArray(1);
+		outside.setFloat(0, Float.NaN);
+
+		ByteBuffer[] sources = new ByteBuffer[4];
+		sources[0] = floats(1, 2, 3, Float.NaN);
+		sources[1] = floats(1, 2, 3, 4);
+		sources[2] = floats(0.5f, 0.5f, 0.5f, 0.5f);
+		sources[3] = floats(-1, -1, -1, -1);
+
+		ByteBuffer dst = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+		ElevationMixer.create(4, true).mix(sources, dst, 2, 2, 1, outside, true);
+
+		assertEquals(2.5f, dst.getFloat(0), 0);
+		assertEquals(-1f, dst.getFloat(4), 0);
+		assertEquals(Float.NaN, dst.getFloat(8), 0);
+		assertEquals(0.5f, dst.getFloat(12), 0);
+	}
+
+	@Test
+	public void testNearestNeighbourMissingChildWithoutOutsideValue()
+	{
+		ByteBuffer[] sources = new ByteBuffer[4];
+		sources[1] = bytes(4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19);
+
+		ByteBuffer dst = ByteBuffer.allocate(16);
+		ElevationMixer.create(1, false).mix(sources, dst, 4, 4, 1, null, false);
+
+		// top-left quadrant takes every second sample of the top-left child, the rest are left zero
+		byte[] expected = new byte[] { 4, 6, 0, 0, 12, 14, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 };
+		for (int i = 0; i < expected.length; i++)
+		{
+			assertEquals(expected[i], dst.get(i));
+		}
+	}
+
+	private static ByteBuffer shorts(int... values)
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(values.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+		for (int value : values)
+		{
+			buffer.putShort((short) value);
+		}
+		buffer.rewind();
+		return buffer;
+	}
+
+	private static ByteBuffer floats(float... values)
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(values.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+		for (float value : values)
+		{
+			buffer.putFloat(value);
+		}
+		buffer.rewind();
+		return buffer;
+	}
+
+	private static ByteBuffer bytes(int... values)
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(values.length);
+		for (int value : values)
+		{
+			buffer.put((byte) value);
+		}
+		buffer.rewind();
+		return buffer;
+	}
+}
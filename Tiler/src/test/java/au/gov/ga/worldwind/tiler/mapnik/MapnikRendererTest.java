@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.tiler.mapnik;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Test;
+
+import au.gov.ga.worldwind.tiler.util.Sector;
+import au.gov.ga.worldwind.tiler.util.TilerException;
+
+/**
+ * Unit tests for the {@link MapnikRenderer} class, using an in-process
+ * {@link TestPatternWorker}
+ */
+public class MapnikRendererTest
+{
+	private static final Logger logger = Logger.getLogger(MapnikRendererTest.class.getName());
+
+	private MapnikRenderer renderer;
+	private Thread workerThread;
+
+	@After
+	public void tearDown() throws InterruptedException
+	{
+		if (renderer != null)
+		{
+			renderer.close();
+		}
+		if (workerThread != null)
+		{
+			workerThread.join(10000);
+			assertEquals(false, workerThread.isAlive());
+		}
+	}
+
+	@Test
+	public void testRenderSingleTile() throws Exception
+	{
+		renderer = startWorker(new TestPatternWorker(), null);
+
+		List<Sector> sectors = new ArrayList<Sector>();
+		sectors.add(new Sector(-10, 110, 0, 120));
+		byte[][] images = renderer.render(sectors, 64, 32, "png");
+
+		assertEquals(1, images.length);
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(images[0]));
+		assertEquals(64, image.getWidth());
+		assertEquals(32, image.getHeight());
+	}
+
+	@Test
+	public void testRenderMultipleBatches() throws Exception
+	{
+		renderer = startWorker(new TestPatternWorker(), null);
+
+		//more than a single batch; check each tile matches its request
+		List<Sector> sectors = new ArrayList<Sector>();
+		for (int i = 0; i < MapnikRenderer.MAX_BATCH_SIZE * 2 + 5; i++)
+		{
+			sectors.add(new Sector(0, i, 1, i + 1));
+		}
+		byte[][] images = renderer.render(sectors, 16, 16, "png");
+
+		assertEquals(sectors.size(), images.length);
+		for (int i = 0; i < images.length; i++)
+		{
+			BufferedImage image = ImageIO.read(new ByteArrayInputStream(images[i]));
+			assertEquals(16, image.getWidth());
+			//checkerboard: even squares are white, odd squares are grey
+			int expected = i % 2 == 0 ? 0xff : 0x80;
+			assertEquals(expected, image.getRGB(2, 2) & 0xff);
+		}
+
+		//renderer should still be usable after a multi-batch render
+		sectors.subList(1, sectors.size()).clear();
+		assertEquals(1, renderer.render(sectors, 16, 16, "png").length);
+	}
+
+	@Test
+	public void testRenderErrorIsReturnedPerTile() throws Exception
+	{
+		renderer = startWorker(new TestPatternWorker()
+		{
+			@Override
+			protected byte[] render(Sector sector, int width, int height, String format) throws Exception
+			{
+				if (sector.getMinLongitude() == 1)
+				{
+					throw new Exception("Failed");
+				}
+				return super.render(sector, width, height, format);
+			}
+		}, null);
+
+		List<Sector> sectors = new ArrayList<Sector>();
+		for (int i = 0; i < 3; i++)
+		{
+			sectors.add(new Sector(0, i, 1, i + 1));
+		}
+		byte[][] images = renderer.render(sectors, 8, 8, "png");
+
+		assertNotNull(images[0]);
+		assertNull(images[1]);
+		assertNotNull(images[2]);
+	}
+
+	@Test
+	public void testLoadError() throws Exception
+	{
+		try
+		{
+			renderer = startWorker(new TestPatternWorker(), "Could not load map");
+			fail("Expected a TilerException");
+		}
+		catch (TilerException e)
+		{
+			assertEquals(true, e.getMessage().contains("Could not load map"));
+		}
+	}
+
+	private MapnikRenderer startWorker(final MapnikWorker worker, final String loadError) throws IOException,
+			TilerException
+	{
+		//use a small request pipe, like an OS pipe, to check that batches don't deadlock
+		final PipedInputStream requests = new PipedInputStream(4096);
+		PipedOutputStream requestsOut = new PipedOutputStream(requests);
+		PipedInputStream responses = new PipedInputStream(4096);
+		final PipedOutputStream responsesOut = new PipedOutputStream(responses);
+
+		workerThread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					worker.serve(requests, responsesOut, loadError);
+					responsesOut.close();
+				}
+				catch (IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		});
+		workerThread.setDaemon(true);
+		workerThread.start();
+
+		return new MapnikRenderer(responses, requestsOut, null, logger);
+	}
+}
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.tiler.ribbon;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link ConstantColumnDetector} class
+ */
+public class ConstantColumnDetectorTest
+{
+	@Test
+	public void testColumns()
+	{
+		// column 0: 2 constant at top, 3 constant at bottom
+		// column 1: all constant
+		// column 2: no constant pixels apart from the ends
+		int[] argb = new int[] {
+				1, 5, 1,
+				1, 5, 2,
+				2, 5, 3,
+				3, 5, 4,
+				3, 5, 5,
+				3, 5, 6 };
+		ConstantColumnDetector detector = new ConstantColumnDetector(3, 6);
+		detector.addRows(argb, 6, 0, 3);
+		detector.nextBlock(6);
+
+		assertArrayEquals(new int[] { 2, 6, 1 }, detector.getConstantPixelsFromTop());
+		assertArrayEquals(new int[] { 3, 0, 1 }, detector.getConstantPixelsFromBottom());
+	}
+
+	@Test
+	public void testBlocksAndColumnRangesMatchPixelScan()
+	{
+		Random random = new Random(42);
+		for (int test = 0; test < 50; test++)
+		{
+			int width = 1 + random.nextInt(20);
+			int height = 1 + random.nextInt(40);
+			int[] argb = randomColumns(random, width, height);
+
+			//add the image in random sized blocks and column ranges
+			ConstantColumnDetector detector = new ConstantColumnDetector(width, height);
+			for (int startY = 0; startY < height;)
+			{
+				int rows = Math.min(height - startY, 1 + random.nextInt(8));
+				int[] block = new int[rows * width];
+				System.arraycopy(argb, startY * width, block, 0, block.length);
+				for (int startX = 0; startX < width;)
+				{
+					int toX = Math.min(width, startX + 1 + random.nextInt(5));
+					detector.addRows(block, rows, startX, toX);
+					startX = toX;
+				}
+				detector.nextBlock(rows);
+				startY += rows;
+			}
+
+			int[][] expected = scanColumns(argb, width, height);
+			assertArrayEquals(expected[0], detector.getConstantPixelsFromTop());
+			assertArrayEquals(expected[1], detector.getConstantPixelsFromBottom());
+		}
+	}
+
+	/**
+	 * Columns with runs of constant color at the top and bottom
+	 */
+	private static int[] randomColumns(Random random, int width, int height)
+	{
+		int[] argb = new int[width * height];
+		for (int x = 0; x < width; x++)
+		{
+			int top = random.nextInt(height + 1);
+			int bottom = random.nextInt(height + 1);
+			for (int y = 0; y < height; y++)
+			{
+				int color = y < top ? 0xffffffff : y >= height - bottom ? 0xff000000 : random.nextInt(3);
+				argb[y * width + x] = color;
+			}
+		}
+		return argb;
+	}
+
+	/**
+	 * Pixel by pixel scan of each column, as performed by the ribbon tiler
+	 * before the {@link ConstantColumnDetector} was introduced
+	 */
+	private static int[][] scanColumns(int[] argb, int width, int height)
+	{
+		int[] fromTops = new int[width];
+		int[] fromBottoms = new int[width];
+		for (int x = 0; x < width; x++)
+		{
+			int fromTop = 0;
+			int fromBottom = 0;
+			int lastColor = 0;
+			for (int y = 0; y < height; y++)
+			{
+				int thisColor = argb[y * width + x];
+				if (y > 0 && lastColor != thisColor)
+				{
+					break;
+				}
+				lastColor = thisColor;
+				fromTop++;
+			}
+
+			if (fromTop < height)
+			{
+				for (int y = height - 1; y >= 0; y--)
+				{
+					int thisColor = argb[y * width + x];
+					if (y < height - 1 && lastColor != thisColor)
+					{
+						break;
+					}
+					lastColor = thisColor;
+					fromBottom++;
+				}
+			}
+
+			fromTops[x] = fromTop;
+			fromBottoms[x] = fromBottom;
+		}
+		return new int[][] { fromTops, fromBottoms };
+	}
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.tiler.util;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Headless harness measuring the throughput of the {@link BufferManager} when
+ * many threads take and return buffers concurrently, as the ribbon and GDAL
+ * tilers do. Not run as part of the unit tests.
+ * <p/>
+ * Usage: <code>BufferManagerBenchmark [maxThreads] [operationsPerThread]</code>
+ * 
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class BufferManagerBenchmark
+{
+	/** Typical tile buffer sizes (256x256 and 512x512 tiles of 1 to 4 bytes per pixel) */
+	private static final int[] SIZES = { 65536, 131072, 262144, 524288, 1048576 };
+
+	public static void main(String[] args) throws Exception
+	{
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		final int operations = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+		for (int threads = 1; threads <= maxThreads; threads *= 2)
+		{
+			long best = Long.MAX_VALUE;
+			for (int iteration = 0; iteration < 5; iteration++)
+			{
+				BufferManager.reset();
+				best = Math.min(best, run(threads, operations));
+			}
+			double perSecond = threads * (double) operations / (best / 1e9);
+			System.out.println(threads + " threads: " + Math.round(perSecond) + " take/return pairs per second");
+		}
+	}
+
+	private static long run(int threadCount, final int operations) throws InterruptedException
+	{
+		Thread[] threads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; i++)
+		{
+			final long seed = i;
+			threads[i] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					Random random = new Random(seed);
+					for (int j = 0; j < operations; j++)
+					{
+						ByteBuffer buffer = BufferManager.takeByteBuffer(SIZES[random.nextInt(SIZES.length)]);
+						BufferManager.returnByteBuffer(buffer);
+					}
+				}
+			};
+		}
+
+		long start = System.nanoTime();
+		for (Thread thread : threads)
+		{
+			thread.start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		return System.nanoTime() - start;
+	}
+}
@@ -16,10 +16,16 @@
 package au.gov.ga.worldwind.tiler.util;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.gdal.gdalconst.gdalconstConstants;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -37,6 +43,13 @@ public class BufferManagerTest
 		BufferManager.reset();
 	}
 	
+	@After
+	public void tearDown()
+	{
+		BufferManager.setMaxDirectMemory(Runtime.getRuntime().maxMemory());
+		BufferManager.reset();
+	}
+	
 	@Test
 	public void testTakeBufferOnce()
 	{
@@ -121,6 +134,147 @@ public class BufferManagerTest
 		assertEquals(1, BufferManager.getBuffers().size());
 	}
 	
+	@Test
+	public void testBufferIsClearedWhenReusedFromPool()
+	{
+		ByteBuffer buffer1 = BufferManager.takeByteBuffer(20000);
+		while (buffer1.hasRemaining())
+		{
+			buffer1.put((byte) 7);
+		}
+		BufferManager.returnByteBuffer(buffer1);
+		
+		ByteBuffer buffer2 = BufferManager.takeByteBuffer(19000);
+		assertSame(buffer1, buffer2);
+		assertEquals(19000, buffer2.limit());
+		assertBufferIsCleared(buffer2);
+	}
+	
+	@Test
+	public void testSizeClasses()
+	{
+		for (int size = 1; size < 100000; size++)
+		{
+			int index = BufferManager.classIndex(size);
+			assertTrue(BufferManager.classSize(index) >= size);
+			if (index > 0)
+			{
+				assertTrue(BufferManager.classSize(index - 1) < size);
+			}
+		}
+	}
+	
+	@Test
+	public void testMuchLargerBufferIsNotReused()
+	{
+		ByteBuffer buffer1 = BufferManager.takeByteBuffer(1 << 20);
+		BufferManager.returnByteBuffer(buffer1);
+		
+		ByteBuffer buffer2 = BufferManager.takeByteBuffer(1024);
+		assertNotSame(buffer1, buffer2);
+	}
+	
+	@Test
+	public void testMemoryAccounting()
+	{
+		ByteBuffer buffer = BufferManager.takeByteBuffer(1000);
+		assertEquals(buffer.capacity(), BufferManager.getOutstandingBytes());
+		BufferManager.returnByteBuffer(buffer);
+		assertEquals(0, BufferManager.getOutstandingBytes());
+	}
+	
+	@Test
+	public void testPooledBuffersAreEvictedAtLimit()
+	{
+		BufferManager.setMaxDirectMemory(200000);
+		
+		//fill the pool with returned buffers
+		List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+		long capacity = 0;
+		for (int i = 0; i < 5; i++)
+		{
+			buffers.add(BufferManager.takeByteBuffer(30000));
+			capacity += buffers.get(i).capacity();
+		}
+		for (ByteBuffer buffer : buffers)
+		{
+			BufferManager.returnByteBuffer(buffer);
+		}
+		assertEquals(capacity, BufferManager.getPooledBytes());
+		assertEquals(5, BufferManager.getBuffers().size());
+		
+		ByteBuffer large = BufferManager.takeByteBuffer(180000);
+		assertTrue(BufferManager.getOutstandingBytes() + BufferManager.getPooledBytes() <= 200000);
+		long free = 0;
+		for (ByteBuffer buffer : BufferManager.getBuffers())
+		{
+			free += buffer.capacity();
+		}
+		assertEquals(BufferManager.getPooledBytes(), free);
+		BufferManager.returnByteBuffer(large);
+	}
+	
+	@Test
+	public void testThreadCachedBuffersAreCountedAndEvicted() throws Exception
+	{
+		BufferManager.setMaxDirectMemory(100000);
+		
+		//return a buffer on another thread, so that it is held in that thread's cache
+		final ByteBuffer[] returned = new ByteBuffer[1];
+		Thread returner = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				returned[0] = BufferManager.takeByteBuffer(60000);
+				BufferManager.returnByteBuffer(returned[0]);
+			}
+		};
+		returner.start();
+		returner.join();
+		
+		assertEquals(returned[0].capacity(), BufferManager.getPooledBytes());
+		assertTrue(BufferManager.getBuffers().contains(returned[0]));
+		
+		//a buffer of a different class can only be allocated by evicting the cached buffer
+		ByteBuffer buffer = BufferManager.takeByteBuffer(90000);
+		assertNotSame(returned[0], buffer);
+		assertEquals(0, BufferManager.getPooledBytes());
+		assertEquals(0, BufferManager.getBuffers().size());
+		assertTrue(BufferManager.getOutstandingBytes() <= 100000);
+		BufferManager.returnByteBuffer(buffer);
+	}
+	
+	@Test
+	public void testTakeWaitsForReturnAtLimit() throws Exception
+	{
+		BufferManager.setMaxDirectMemory(100000);
+		final ByteBuffer held = BufferManager.takeByteBuffer(80000);
+		
+		Thread returner = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					Thread.sleep(100);
+				}
+				catch (InterruptedException e)
+				{
+				}
+				BufferManager.returnByteBuffer(held);
+			}
+		};
+		returner.start();
+		
+		long start = System.currentTimeMillis();
+		ByteBuffer buffer = BufferManager.takeByteBuffer(80000);
+		assertTrue(System.currentTimeMillis() - start >= 50);
+		assertEquals(80000, buffer.limit());
+		returner.join();
+	}
+	
 	private void assertBufferIsCleared(ByteBuffer buffer)
 	{
 		buffer.rewind();
@@ -121,6 +121,7 @@ import au.gov.ga.worldwind.viewer.panels.layers.SectionListCompoundElevationMode
 import au.gov.ga.worldwind.viewer.panels.layers.SectionListLayerList;
 import au.gov.ga.worldwind.viewer.panels.other.GoToCoordinatePanel;
 import au.gov.ga.worldwind.viewer.retrieve.PolylineLayerRetrievalListener;
+import au.gov.ga.worldwind.viewer.retrieve.RetrievalStatisticsStatusBar;
 import au.gov.ga.worldwind.viewer.settings.Settings;
 import au.gov.ga.worldwind.viewer.settings.SettingsDialog;
 import au.gov.ga.worldwind.viewer.stereo.StereoSceneController;
@@ -548,7 +549,10 @@ public class Application
 
 		if (theme.hasStatusBar())
 		{
-			statusBar = new DownloaderStatusBar();
+			if (rs instanceof ExtendedRetrievalService)
+				statusBar = new RetrievalStatisticsStatusBar((ExtendedRetrievalService) rs);
+			else
+				statusBar = new DownloaderStatusBar();
 			panel.add(statusBar, BorderLayout.PAGE_END);
 			statusBar.setEventSource(wwd);
 			statusBar.setBorder(BorderFactory.createLoweredBevelBorder());
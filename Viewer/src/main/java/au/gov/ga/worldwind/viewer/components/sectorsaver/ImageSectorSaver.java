@@ -16,11 +16,6 @@
 package au.gov.ga.worldwind.viewer.components.sectorsaver;
 
 import gov.nasa.worldwind.WorldWindow;
-import gov.nasa.worldwind.avlist.AVKey;
-import gov.nasa.worldwind.avlist.AVList;
-import gov.nasa.worldwind.avlist.AVListImpl;
-import gov.nasa.worldwind.data.BufferedImageRaster;
-import gov.nasa.worldwind.formats.tiff.GeotiffWriter;
 import gov.nasa.worldwind.geom.LatLon;
 import gov.nasa.worldwind.geom.Sector;
 import gov.nasa.worldwind.layers.Layer;
@@ -39,12 +34,13 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
@@ -55,6 +51,7 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JProgressBar;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.filechooser.FileFilter;
@@ -64,7 +61,7 @@ import au.gov.ga.worldwind.common.util.Util;
 
 /**
  * Dialog used to save a sector of the currently displayed imagery layers to a
- * GeoTIFF.
+ * GeoTIFF. The saving itself is performed by a {@link SectorImageExporter}.
  * 
  * @author Michael de Hoog (michael.dehoog@ga.gov.au)
  */
@@ -467,12 +464,12 @@ public class ImageSectorSaver
 	private void saveSector(final Frame frame, final WorldWindow wwd)
 	{
 		//create a local copy of the list of layers, so that it doesn't change
-		final List<Layer> layers = new ArrayList<Layer>();
+		final List<TiledImageLayer> layers = new ArrayList<TiledImageLayer>();
 		for (Layer layer : wwd.getModel().getLayers())
 		{
 			if (layer.isEnabled() && layer instanceof TiledImageLayer)
 			{
-				layers.add(layer);
+				layers.add((TiledImageLayer) layer);
 			}
 		}
 
@@ -490,7 +487,7 @@ public class ImageSectorSaver
 		c.weightx = 1;
 		panel.add(label, c);
 
-		final JProgressBar progressBar = new JProgressBar(JProgressBar.HORIZONTAL, 0, layers.size());
+		final JProgressBar progressBar = new JProgressBar(JProgressBar.HORIZONTAL, 0, 1);
 		dialog.add(progressBar, BorderLayout.CENTER);
 
 		dialog.pack();
@@ -542,59 +539,46 @@ public class ImageSectorSaver
 		thread.start();
 	}
 
-	private void saveSector(Frame frame, List<Layer> layers, Sector sector, Dimension size, File output, JLabel label,
-			JProgressBar progressBar) throws Exception
+	private void saveSector(final Frame frame, List<TiledImageLayer> layers, Sector sector, Dimension size,
+			File output, final JLabel label, final JProgressBar progressBar) throws Exception
 	{
 		try
 		{
-			double texelSize = Math.abs(sector.getDeltaLonRadians()) / size.width;
+			SectorImageExporter exporter = new SectorImageExporter(layers, sector, size);
+			progressBar.setMaximum(exporter.getBlockCount());
+			label.setText("Saving image");
 
-			BufferedImage image = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_RGB);
-
-			for (Layer l : layers)
+			final Set<TiledImageLayer> failed = new HashSet<TiledImageLayer>();
+			exporter.export(output, new SectorImageExporter.ExportListener()
 			{
-				label.setText("Saving layer: " + l.getName());
-
-				if (l.isEnabled() && l instanceof TiledImageLayer)
+				@Override
+				public void progress(final int completed, final int total)
 				{
-					TiledImageLayer layer = (TiledImageLayer) l;
-					int level = layer.computeLevelForResolution(sector, texelSize);
-
-					String mimeType = layer.getDefaultImageFormat();
-					if (layer.isImageFormatAvailable("image/png"))
-					{
-						mimeType = "image/png";
-					}
-					else if (layer.isImageFormatAvailable("image/jpg"))
+					SwingUtilities.invokeLater(new Runnable()
 					{
-						mimeType = "image/jpg";
-					}
+						@Override
+						public void run()
+						{
+							progressBar.setValue(completed);
+						}
+					});
+				}
 
-					try
-					{
-						image =
-								layer.composeImageForSector(sector, size.width, size.height, 1d, level, mimeType, true,
-										image, 30000);
-					}
-					catch (Exception e)
+				@Override
+				public void layerFailed(TiledImageLayer layer, Exception e)
+				{
+					//only warn once per layer, not for every block
+					synchronized (failed)
 					{
-						JOptionPane.showMessageDialog(frame, "Error composing image for layer " + layer.getName()
-								+ ":\n\n" + e.getMessage(), "Warning", JOptionPane.WARNING_MESSAGE);
+						if (!failed.add(layer))
+						{
+							return;
+						}
 					}
+					JOptionPane.showMessageDialog(frame, "Error composing image for layer " + layer.getName()
+							+ ":\n\n" + e.getMessage(), "Warning", JOptionPane.WARNING_MESSAGE);
 				}
-
-				progressBar.setValue(progressBar.getValue() + 1);
-			}
-
-			AVList params = new AVListImpl();
-
-			params.setValue(AVKey.SECTOR, sector);
-			params.setValue(AVKey.COORDINATE_SYSTEM, AVKey.COORDINATE_SYSTEM_GEOGRAPHIC);
-			params.setValue(AVKey.PIXEL_FORMAT, AVKey.IMAGE);
-			params.setValue(AVKey.BYTE_ORDER, AVKey.BIG_ENDIAN);
-
-			GeotiffWriter writer = new GeotiffWriter(output);
-			writer.write(BufferedImageRaster.wrapAsGeoreferencedRaster(image, params));
+			});
 		}
 		catch (OutOfMemoryError e)
 		{
@@ -0,0 +1,292 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.viewer.components.sectorsaver;
+
+import gov.nasa.worldwind.geom.Angle;
+import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.layers.TiledImageLayer;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import au.gov.ga.worldwind.common.util.DaemonThreadFactory;
+
+/**
+ * Composes a sector of a list of {@link TiledImageLayer}s into a tiled
+ * GeoTIFF, without any user interface.
+ * <p/>
+ * The output is split into blocks, each a single tile row high and a number of
+ * tiles wide. Each block's image is composed from all the layers (in order)
+ * and then written to the file as tiles using a {@link TiledGeoTiffWriter}.
+ * Blocks are composed concurrently on a fixed number of threads, so the memory
+ * used is proportional to the thread count and block size, not the output
+ * size.
+ *
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class SectorImageExporter
+{
+	public final static int DEFAULT_BLOCK_WIDTH = 16;
+	public final static int DEFAULT_TIMEOUT = 30000;
+
+	private final List<TiledImageLayer> layers;
+	private final Sector sector;
+	private final Dimension size;
+
+	private int tileSize = TiledGeoTiffWriter.DEFAULT_TILE_SIZE;
+	private int blockWidth = DEFAULT_BLOCK_WIDTH;
+	private int threadCount = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+	private int timeout = DEFAULT_TIMEOUT;
+
+	public SectorImageExporter(List<TiledImageLayer> layers, Sector sector, Dimension size)
+	{
+		this.layers = new ArrayList<TiledImageLayer>(layers);
+		this.sector = sector;
+		this.size = new Dimension(size);
+	}
+
+	/**
+	 * @return Width and height of the tiles in the output GeoTIFF
+	 */
+	public int getTileSize()
+	{
+		return tileSize;
+	}
+
+	public void setTileSize(int tileSize)
+	{
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * @return Number of tiles composed together (across) in each block
+	 */
+	public int getBlockWidth()
+	{
+		return blockWidth;
+	}
+
+	public void setBlockWidth(int blockWidth)
+	{
+		this.blockWidth = Math.max(1, blockWidth);
+	}
+
+	/**
+	 * @return Number of blocks composed concurrently
+	 */
+	public int getThreadCount()
+	{
+		return threadCount;
+	}
+
+	public void setThreadCount(int threadCount)
+	{
+		this.threadCount = Math.max(1, threadCount);
+	}
+
+	/**
+	 * @return Timeout passed to
+	 *         {@link TiledImageLayer#composeImageForSector(Sector, int, int, double, int, String, boolean, BufferedImage, int)}
+	 */
+	public int getTimeout()
+	{
+		return timeout;
+	}
+
+	public void setTimeout(int timeout)
+	{
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @return Number of blocks that will be composed by {@link #export}
+	 */
+	public int getBlockCount()
+	{
+		int tilesAcross = (size.width - 1) / tileSize + 1;
+		int tilesDown = (size.height - 1) / tileSize + 1;
+		return ((tilesAcross - 1) / blockWidth + 1) * tilesDown;
+	}
+
+	/**
+	 * Compose the layers and write them to the output file. Blocks the calling
+	 * thread until the export is complete.
+	 *
+	 * @param output
+	 *            GeoTIFF file to write
+	 * @param listener
+	 *            Listener to notify of progress and layer failures (can be
+	 *            null)
+	 * @throws IOException
+	 *             If writing the output file fails
+	 * @throws InterruptedException
+	 *             If the calling thread is interrupted while waiting for the
+	 *             export to complete
+	 */
+	public void export(File output, final ExportListener listener) throws IOException, InterruptedException
+	{
+		final double pixelWidth = sector.getDeltaLonDegrees() / size.width;
+		final double pixelHeight = sector.getDeltaLatDegrees() / size.height;
+		final TiledGeoTiffWriter writer =
+				new TiledGeoTiffWriter(output, size.width, size.height, tileSize, sector.getMinLongitude().degrees,
+						sector.getMaxLatitude().degrees, pixelWidth, pixelHeight);
+
+		//the level and format for each layer is the same for every block
+		double texelSize = Math.abs(sector.getDeltaLonRadians()) / size.width;
+		final int[] levels = new int[layers.size()];
+		final String[] mimeTypes = new String[layers.size()];
+		for (int i = 0; i < layers.size(); i++)
+		{
+			levels[i] = layers.get(i).computeLevelForResolution(sector, texelSize);
+			mimeTypes[i] = getMimeType(layers.get(i));
+		}
+
+		final int blocksAcross = (writer.getTilesAcross() - 1) / blockWidth + 1;
+		final int blockCount = blocksAcross * writer.getTilesDown();
+
+		ExecutorService executor =
+				Executors.newFixedThreadPool(threadCount, new DaemonThreadFactory("Sector image exporter"));
+		try
+		{
+			List<Future<?>> futures = new ArrayList<Future<?>>(blockCount);
+			for (int i = 0; i < blockCount; i++)
+			{
+				final int tileX = (i % blocksAcross) * blockWidth;
+				final int tileY = i / blocksAcross;
+				futures.add(executor.submit(new Callable<Object>()
+				{
+					@Override
+					public Object call() throws Exception
+					{
+						exportBlock(writer, tileX, tileY, levels, mimeTypes, pixelWidth, pixelHeight, listener);
+						return null;
+					}
+				}));
+			}
+
+			for (int i = 0; i < blockCount; i++)
+			{
+				try
+				{
+					futures.get(i).get();
+				}
+				catch (ExecutionException e)
+				{
+					Throwable cause = e.getCause();
+					if (cause instanceof IOException)
+					{
+						throw (IOException) cause;
+					}
+					if (cause instanceof Error)
+					{
+						throw (Error) cause;
+					}
+					throw new IOException("Error exporting sector image", cause);
+				}
+				if (listener != null)
+				{
+					listener.progress(i + 1, blockCount);
+				}
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+			writer.close();
+		}
+	}
+
+	protected void exportBlock(TiledGeoTiffWriter writer, int tileX, int tileY, int[] levels, String[] mimeTypes,
+			double pixelWidth, double pixelHeight, ExportListener listener) throws IOException
+	{
+		int tiles = Math.min(blockWidth, writer.getTilesAcross() - tileX);
+		int x0 = tileX * tileSize;
+		int y0 = tileY * tileSize;
+		int x1 = Math.min(size.width, x0 + tiles * tileSize);
+		int y1 = Math.min(size.height, y0 + tileSize);
+
+		//calculate the sector from the pixel edges, so that neighbouring blocks share the same edges
+		Sector blockSector =
+				new Sector(Angle.fromDegrees(sector.getMaxLatitude().degrees - y1 * pixelHeight),
+						Angle.fromDegrees(sector.getMaxLatitude().degrees - y0 * pixelHeight),
+						Angle.fromDegrees(sector.getMinLongitude().degrees + x0 * pixelWidth),
+						Angle.fromDegrees(sector.getMinLongitude().degrees + x1 * pixelWidth));
+
+		BufferedImage image = new BufferedImage(x1 - x0, y1 - y0, BufferedImage.TYPE_INT_RGB);
+		for (int i = 0; i < layers.size(); i++)
+		{
+			TiledImageLayer layer = layers.get(i);
+			try
+			{
+				image =
+						layer.composeImageForSector(blockSector, image.getWidth(), image.getHeight(), 1d, levels[i],
+								mimeTypes[i], true, image, timeout);
+			}
+			catch (Exception e)
+			{
+				if (listener != null)
+				{
+					listener.layerFailed(layer, e);
+				}
+			}
+		}
+
+		for (int i = 0; i < tiles; i++)
+		{
+			writer.writeTile(tileX + i, tileY, image, i * tileSize, 0);
+		}
+	}
+
+	protected static String getMimeType(TiledImageLayer layer)
+	{
+		if (layer.isImageFormatAvailable("image/png"))
+		{
+			return "image/png";
+		}
+		else if (layer.isImageFormatAvailable("image/jpg"))
+		{
+			return "image/jpg";
+		}
+		return layer.getDefaultImageFormat();
+	}
+
+	/**
+	 * Listener notified by the {@link SectorImageExporter} during an export.
+	 * Methods may be called from any thread.
+	 */
+	public static interface ExportListener
+	{
+		/**
+		 * Called after each block has been written.
+		 */
+		void progress(int completed, int total);
+
+		/**
+		 * Called when composing a block fails for a layer. The layer is
+		 * skipped for that block, and the export continues.
+		 */
+		void layerFailed(TiledImageLayer layer, Exception e);
+	}
+}
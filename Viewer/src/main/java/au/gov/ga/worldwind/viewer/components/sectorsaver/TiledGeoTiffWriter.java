@@ -0,0 +1,464 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.viewer.components.sectorsaver;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes an uncompressed, tiled, 8-bit RGB GeoTIFF in the geographic
+ * (EPSG:4326) coordinate system, one tile at a time.
+ * <p/>
+ * The TIFF header and image file directory are written when the writer is
+ * created. As the tiles are uncompressed, the offset of every tile in the file
+ * is known up front, so tiles can be written in any order, and from multiple
+ * threads concurrently. Only a single tile's pixels are held in memory at a
+ * time by each writing thread.
+ * <p/>
+ * Images that would be larger than the 4 GB limit of a classic TIFF file are
+ * written as a BigTIFF, which uses 64-bit offsets.
+ *
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class TiledGeoTiffWriter implements Closeable
+{
+	public final static int DEFAULT_TILE_SIZE = 256;
+
+	private final static int SAMPLES_PER_PIXEL = 3;
+	private final static long MAX_CLASSIC_FILE_SIZE = 0xFFFFFFFFL;
+	//the tile offsets and byte counts are built in memory, so limit their size
+	private final static int MAX_TILE_COUNT = Integer.MAX_VALUE / 16;
+
+	//TIFF field types
+	private final static short SHORT = 3;
+	private final static short LONG = 4;
+	private final static short DOUBLE = 12;
+	private final static short LONG8 = 16;
+
+	private final int width;
+	private final int height;
+	private final int tileSize;
+	private final int tilesAcross;
+	private final int tilesDown;
+	private final long tileBytes;
+	private final long dataOffset;
+	private final boolean bigTiff;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+
+	/**
+	 * Create a new writer, and write the TIFF header to the given file.
+	 *
+	 * @param output
+	 *            File to write to (overwritten if it exists)
+	 * @param width
+	 *            Width of the image in pixels
+	 * @param height
+	 *            Height of the image in pixels
+	 * @param tileSize
+	 *            Width and height of the tiles (must be a multiple of 16)
+	 * @param minLongitude
+	 *            Longitude of the left edge of the image, in degrees
+	 * @param maxLatitude
+	 *            Latitude of the top edge of the image, in degrees
+	 * @param pixelWidth
+	 *            Width of a pixel, in degrees of longitude
+	 * @param pixelHeight
+	 *            Height of a pixel, in degrees of latitude
+	 * @throws IOException
+	 *             If the image has too many tiles, or the header could not be
+	 *             written
+	 */
+	public TiledGeoTiffWriter(File output, int width, int height, int tileSize, double minLongitude,
+			double maxLatitude, double pixelWidth, double pixelHeight) throws IOException
+	{
+		if (width <= 0 || height <= 0)
+		{
+			throw new IllegalArgumentException("Invalid image size: " + width + "x" + height);
+		}
+		if (tileSize <= 0 || tileSize % 16 != 0)
+		{
+			throw new IllegalArgumentException("Tile size must be a positive multiple of 16");
+		}
+
+		this.width = width;
+		this.height = height;
+		this.tileSize = tileSize;
+		this.tilesAcross = (width - 1) / tileSize + 1;
+		this.tilesDown = (height - 1) / tileSize + 1;
+		this.tileBytes = (long) tileSize * tileSize * SAMPLES_PER_PIXEL;
+
+		long tileCount = (long) tilesAcross * tilesDown;
+		if (tileCount > MAX_TILE_COUNT)
+		{
+			throw new IOException("Image has too many tiles for a TIFF file (" + tileCount + " tiles)");
+		}
+
+		byte[] header = createHeader(minLongitude, maxLatitude, pixelWidth, pixelHeight, false);
+		boolean bigTiff = header.length + tileBytes * tileCount > MAX_CLASSIC_FILE_SIZE;
+		if (bigTiff)
+		{
+			header = createHeader(minLongitude, maxLatitude, pixelWidth, pixelHeight, true);
+		}
+		this.bigTiff = bigTiff;
+		this.dataOffset = header.length;
+
+		file = new RandomAccessFile(output, "rw");
+		file.setLength(0);
+		channel = file.getChannel();
+		write(ByteBuffer.wrap(header), 0);
+	}
+
+	public int getTileSize()
+	{
+		return tileSize;
+	}
+
+	public int getTilesAcross()
+	{
+		return tilesAcross;
+	}
+
+	public int getTilesDown()
+	{
+		return tilesDown;
+	}
+
+	/**
+	 * @return Is the image being written as a BigTIFF, because it is too large
+	 *         for a classic TIFF file?
+	 */
+	public boolean isBigTiff()
+	{
+		return bigTiff;
+	}
+
+	/**
+	 * Write a tile, reading its pixels from the given image. Parts of the tile
+	 * outside the bounds of the image (or outside the bounds of the TIFF's
+	 * image, for tiles on the right and bottom edges) are written as black.
+	 * <p/>
+	 * This method can be called concurrently from multiple threads.
+	 *
+	 * @param tileX
+	 *            Column of the tile
+	 * @param tileY
+	 *            Row of the tile
+	 * @param image
+	 *            Image containing the tile's pixels
+	 * @param x
+	 *            Pixel x coordinate in the image of the tile's left edge
+	 * @param y
+	 *            Pixel y coordinate in the image of the tile's top edge
+	 */
+	public void writeTile(int tileX, int tileY, BufferedImage image, int x, int y) throws IOException
+	{
+		if (tileX < 0 || tileX >= tilesAcross || tileY < 0 || tileY >= tilesDown)
+		{
+			throw new IllegalArgumentException("Tile " + tileX + "," + tileY + " is outside the image");
+		}
+
+		int w = Math.min(Math.min(tileSize, width - tileX * tileSize), image.getWidth() - x);
+		int h = Math.min(Math.min(tileSize, height - tileY * tileSize), image.getHeight() - y);
+
+		byte[] data = new byte[(int) tileBytes];
+		if (w > 0 && h > 0)
+		{
+			int[] row = new int[w];
+			for (int j = 0; j < h; j++)
+			{
+				image.getRGB(x, y + j, w, 1, row, 0, w);
+				int index = j * tileSize * SAMPLES_PER_PIXEL;
+				for (int i = 0; i < w; i++)
+				{
+					int rgb = row[i];
+					data[index++] = (byte) (rgb >> 16);
+					data[index++] = (byte) (rgb >> 8);
+					data[index++] = (byte) rgb;
+				}
+			}
+		}
+
+		long position = dataOffset + (tileY * (long) tilesAcross + tileX) * tileBytes;
+		write(ByteBuffer.wrap(data), position);
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		file.close();
+	}
+
+	private void write(ByteBuffer buffer, long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/**
+	 * Create the TIFF header, image file directory, and the directory's
+	 * out-of-line values. Everything is big-endian.
+	 */
+	private byte[] createHeader(double minLongitude, double maxLatitude, double pixelWidth, double pixelHeight,
+			boolean bigTiff) throws IOException
+	{
+		int tileCount = tilesAcross * tilesDown;
+		short[] geoKeys = new short[] {
+				1, 1, 0, 3, //directory version, key revision, minor revision, key count
+				1024, 0, 1, 2, //GTModelTypeGeoKey = ModelTypeGeographic
+				1025, 0, 1, 1, //GTRasterTypeGeoKey = RasterPixelIsArea
+				2048, 0, 1, 4326 //GeographicTypeGeoKey = GCS_WGS_84
+		};
+
+		Ifd ifd = new Ifd(bigTiff);
+		ifd.addLong(256, width); //ImageWidth
+		ifd.addLong(257, height); //ImageLength
+		ifd.addShorts(258, new short[] { 8, 8, 8 }); //BitsPerSample
+		ifd.addShorts(259, new short[] { 1 }); //Compression = none
+		ifd.addShorts(262, new short[] { 2 }); //PhotometricInterpretation = RGB
+		ifd.addShorts(277, new short[] { SAMPLES_PER_PIXEL }); //SamplesPerPixel
+		ifd.addShorts(284, new short[] { 1 }); //PlanarConfiguration = chunky
+		ifd.addLong(322, tileSize); //TileWidth
+		ifd.addLong(323, tileSize); //TileLength
+		int tileOffsetsEntry = ifd.addLongs(324, bigTiff ? LONG8 : LONG, new long[tileCount]); //TileOffsets, filled below
+		long[] byteCounts = new long[tileCount];
+		for (int i = 0; i < tileCount; i++)
+		{
+			byteCounts[i] = tileBytes;
+		}
+		ifd.addLongs(325, LONG, byteCounts); //TileByteCounts
+		ifd.addDoubles(33550, new double[] { pixelWidth, pixelHeight, 0 }); //ModelPixelScaleTag
+		ifd.addDoubles(33922, new double[] { 0, 0, 0, minLongitude, maxLatitude, 0 }); //ModelTiepointTag
+		ifd.addShorts(34735, geoKeys); //GeoKeyDirectoryTag
+
+		//tile data follows the header, so the offsets are known once the header size is known
+		long ifdOffset = bigTiff ? 16 : 8;
+		long headerSize = ifd.getSize(ifdOffset);
+		long[] offsets = new long[tileCount];
+		for (int i = 0; i < tileCount; i++)
+		{
+			offsets[i] = headerSize + i * tileBytes;
+		}
+		ifd.setLongs(tileOffsetsEntry, offsets);
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(baos);
+		out.writeByte('M');
+		out.writeByte('M');
+		if (bigTiff)
+		{
+			out.writeShort(43);
+			out.writeShort(8); //bytesize of offsets
+			out.writeShort(0);
+			out.writeLong(ifdOffset); //offset of the first IFD
+		}
+		else
+		{
+			out.writeShort(42);
+			out.writeInt((int) ifdOffset); //offset of the first IFD
+		}
+		ifd.write(out, ifdOffset);
+		out.flush();
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Helper for building a single TIFF (or BigTIFF) image file directory.
+	 * Entries must be added in ascending tag order.
+	 */
+	private static class Ifd
+	{
+		private final boolean bigTiff;
+		private final ByteArrayOutputStream[] values = new ByteArrayOutputStream[16];
+		private final int[] tags = new int[16];
+		private final short[] types = new short[16];
+		private final int[] counts = new int[16];
+		private int entries = 0;
+
+		public Ifd(boolean bigTiff)
+		{
+			this.bigTiff = bigTiff;
+		}
+
+		public void addLong(int tag, long value) throws IOException
+		{
+			addLongs(tag, LONG, new long[] { value });
+		}
+
+		public int addLongs(int tag, short type, long[] values) throws IOException
+		{
+			int entry = add(tag, type, values.length);
+			setLongs(entry, values);
+			return entry;
+		}
+
+		public void setLongs(int entry, long[] longs) throws IOException
+		{
+			values[entry].reset();
+			DataOutputStream out = new DataOutputStream(values[entry]);
+			for (long l : longs)
+			{
+				if (types[entry] == LONG8)
+				{
+					out.writeLong(l);
+				}
+				else
+				{
+					out.writeInt((int) l);
+				}
+			}
+			out.flush();
+		}
+
+		public void addShorts(int tag, short[] shorts) throws IOException
+		{
+			DataOutputStream out = new DataOutputStream(values[add(tag, SHORT, shorts.length)]);
+			for (short s : shorts)
+			{
+				out.writeShort(s);
+			}
+			out.flush();
+		}
+
+		public void addDoubles(int tag, double[] doubles) throws IOException
+		{
+			DataOutputStream out = new DataOutputStream(values[add(tag, DOUBLE, doubles.length)]);
+			for (double d : doubles)
+			{
+				out.writeDouble(d);
+			}
+			out.flush();
+		}
+
+		private int add(int tag, short type, int count)
+		{
+			tags[entries] = tag;
+			types[entries] = type;
+			counts[entries] = count;
+			values[entries] = new ByteArrayOutputStream();
+			return entries++;
+		}
+
+		/**
+		 * @return Offset of the end of this IFD and its values, if written at
+		 *         the given offset
+		 */
+		public long getSize(long offset)
+		{
+			long size = offset + getDirectorySize();
+			for (int i = 0; i < entries; i++)
+			{
+				if (values[i].size() > getInlineSize())
+				{
+					size += align(values[i].size());
+				}
+			}
+			return size;
+		}
+
+		public void write(DataOutputStream out, long offset) throws IOException
+		{
+			long valueOffset = offset + getDirectorySize();
+			int inlineSize = getInlineSize();
+
+			if (bigTiff)
+			{
+				out.writeLong(entries);
+			}
+			else
+			{
+				out.writeShort(entries);
+			}
+			for (int i = 0; i < entries; i++)
+			{
+				out.writeShort(tags[i]);
+				out.writeShort(types[i]);
+				writeOffset(out, counts[i]);
+				byte[] bytes = values[i].toByteArray();
+				if (bytes.length <= inlineSize)
+				{
+					//values that fit are stored left-justified in the entry itself
+					out.write(bytes);
+					out.write(new byte[inlineSize - bytes.length]);
+				}
+				else
+				{
+					writeOffset(out, valueOffset);
+					valueOffset += align(bytes.length);
+				}
+			}
+			writeOffset(out, 0); //no more IFDs
+
+			for (int i = 0; i < entries; i++)
+			{
+				byte[] bytes = values[i].toByteArray();
+				if (bytes.length > inlineSize)
+				{
+					out.write(bytes);
+					out.write(new byte[align(bytes.length) - bytes.length]);
+				}
+			}
+		}
+
+		/**
+		 * @return Size of the directory's entry count, entries and next IFD
+		 *         offset, not including out-of-line values
+		 */
+		private long getDirectorySize()
+		{
+			return bigTiff ? 8 + entries * 20 + 8 : 2 + entries * 12 + 4;
+		}
+
+		/**
+		 * @return Maximum size of a value that is stored in the entry itself
+		 */
+		private int getInlineSize()
+		{
+			return bigTiff ? 8 : 4;
+		}
+
+		/**
+		 * Write a value count or offset, which are 32-bit in a classic TIFF,
+		 * and 64-bit in a BigTIFF.
+		 */
+		private void writeOffset(DataOutputStream out, long offset) throws IOException
+		{
+			if (bigTiff)
+			{
+				out.writeLong(offset);
+			}
+			else
+			{
+				out.writeInt((int) offset);
+			}
+		}
+
+		private static int align(int size)
+		{
+			return (size + 1) & ~1;
+		}
+	}
+}
@@ -40,6 +40,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import au.gov.ga.worldwind.common.downloader.Downloader;
@@ -86,8 +87,20 @@ public class LayerEnabler implements HierarchicalListener
 	private final Set<Hierarchical> hierarchicalListenees = new HashSet<Hierarchical>();
 	private final Set<ILayerNode> connectedHierarchicalLayerNodes = new HashSet<ILayerNode>();
 
-	private static ExecutorService loaderService = Executors.newSingleThreadExecutor(new DaemonThreadFactory(
-			"WMS layer loader"));
+	private final static int LOADER_THREAD_COUNT = Math.max(2, Math.min(8, Runtime.getRuntime()
+			.availableProcessors()));
+	private final static long REFRESH_INTERVAL = 250;
+
+	private static ExecutorService loaderService = Executors.newFixedThreadPool(LOADER_THREAD_COUNT,
+			new DaemonThreadFactory("Layer loader"));
+
+	//layer definition URLs currently being downloaded, and the nodes waiting for them
+	private final Map<URL, List<ILayerNode>> pendingDownloads = new HashMap<URL, List<ILayerNode>>();
+	private final AtomicInteger pendingLoads = new AtomicInteger();
+	private final AtomicInteger downloadCount = new AtomicInteger();
+	//written by the thread submitting loads and by the loader threads
+	private volatile long loadStartTime;
+	private volatile long lastRefreshTime;
 
 	public LayerEnabler(WorldWindow wwd)
 	{
@@ -233,17 +246,17 @@ public class LayerEnabler implements HierarchicalListener
 
 	private void loadWmsLayer(final WmsLayerNode node)
 	{
-		final int index = nodes.indexOf(node);
-		if (index < 0) //layer must have been removed during loading
+		if (!nodes.contains(node)) //layer must have been removed during loading
 		{
 			return;
 		}
 
-		loaderService.submit(new Runnable()
+		submitLoad(new Runnable()
 		{
 			@Override
 			public void run()
 			{
+				long startTime = System.currentTimeMillis();
 				LoadedLayer loadedLayer;
 				if (!node.isLayerInfoLoaded())
 				{
@@ -270,13 +283,12 @@ public class LayerEnabler implements HierarchicalListener
 						new LoadedLayer(new WMSTiledImageLayer(node.getWmsCapabilities(), node.getWmsParams()), node
 								.getWmsParams());
 				loadedLayer.setLegendURL(node.getLegendURL());
-
-				Wrapper wrapper = wrappers.get(index);
-				wrapper.setLoaded(loadedLayer);
+				logLoadTime(node, startTime);
 
 				setLayerLoading(node, false, true);
 
-				refreshLists();
+				//the lists are refreshed when this load (or the batch it is part of) completes
+				setLoaded(node, loadedLayer);
 			}
 		});
 	}
@@ -317,35 +329,182 @@ public class LayerEnabler implements HierarchicalListener
 	{
 		setLayerLoading(node, false, true);
 
+		if (setLoaded(node, loaded))
+		{
+			refreshLists();
+		}
+	}
+
+	/**
+	 * Set the loaded layer for the given node's wrapper, without refreshing the
+	 * layer lists.
+	 * 
+	 * @return False if the node has been removed since loading began
+	 */
+	private synchronized boolean setLoaded(ILayerNode node, LoadedLayer loaded)
+	{
 		int index = nodes.indexOf(node);
 		if (index < 0) //layer must have been removed during loading
 		{
-			return;
+			return false;
 		}
 
 		Wrapper wrapper = wrappers.get(index);
 		wrapper.setLoaded(loaded);
+		return true;
+	}
 
-		refreshLists();
+	/**
+	 * Run a layer load on the loader pool. When the last of a batch of loads
+	 * completes, the layer lists are refreshed once for the whole batch (and
+	 * also periodically while a large batch is loading), rather than once per
+	 * layer.
+	 */
+	private void submitLoad(final Runnable runnable)
+	{
+		if (pendingLoads.getAndIncrement() == 0)
+		{
+			loadStartTime = System.currentTimeMillis();
+		}
+
+		loaderService.submit(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					runnable.run();
+				}
+				catch (Exception e)
+				{
+					Logging.logger().log(Level.SEVERE, "Error loading layer", e);
+				}
+				finally
+				{
+					loadFinished();
+				}
+			}
+		});
 	}
 
-	private void downloadLayer(final ILayerNode node, URL url, boolean onlyIfModified)
+	private synchronized void loadFinished()
 	{
-		RetrievalHandler handler = new RetrievalHandler()
+		long time = System.currentTimeMillis();
+		if (pendingLoads.decrementAndGet() == 0)
+		{
+			Logging.logger().fine("Finished loading layers in " + (time - loadStartTime) + "ms");
+			refreshLists();
+			lastRefreshTime = time;
+		}
+		else if (time - lastRefreshTime >= REFRESH_INTERVAL)
+		{
+			refreshLists();
+			lastRefreshTime = time;
+		}
+	}
+
+	/**
+	 * @return True if there are layers currently being loaded by this enabler
+	 *         (not including downloads of layers not in the cache)
+	 */
+	public boolean isLoading()
+	{
+		return pendingLoads.get() > 0;
+	}
+
+	private void logLoadTime(ILayerNode node, long startTime)
+	{
+		Logging.logger().fine(
+				"Loaded layer '" + node.getName() + "' from " + node.getLayerURL() + " in "
+						+ (System.currentTimeMillis() - startTime) + "ms");
+	}
+
+	private void downloadLayer(final ILayerNode node, final URL url, final boolean onlyIfModified)
+	{
+		//nodes that share a layer definition URL share a single download; if a
+		//download of the URL is already pending, just add this node to it
+		final List<ILayerNode> sharing;
+		synchronized (pendingDownloads)
+		{
+			List<ILayerNode> pending = onlyIfModified ? pendingDownloads.get(url) : null;
+			if (pending != null)
+			{
+				pending.add(node);
+				return;
+			}
+			sharing = new ArrayList<ILayerNode>();
+			sharing.add(node);
+			if (onlyIfModified)
+			{
+				pendingDownloads.put(url, sharing);
+			}
+		}
+		downloadCount.incrementAndGet();
+
+		final RetrievalHandler handler = new RetrievalHandler()
 		{
 			@Override
 			public void handle(RetrievalResult result)
 			{
-				handleResult(node, result);
+				List<ILayerNode> targets;
+				synchronized (pendingDownloads)
+				{
+					//nodes added after the first result is handled will start their own download
+					removePendingDownload(url, sharing);
+					targets = new ArrayList<ILayerNode>(sharing);
+				}
+				for (ILayerNode target : targets)
+				{
+					handleResult(target, result);
+				}
 			}
 		};
-		if (onlyIfModified)
+
+		//the handler is called synchronously for cached layers, so download on the loader
+		//pool to load (parse and construct) multiple cached layers in parallel
+		submitLoad(new Runnable()
 		{
-			Downloader.downloadIfModified(url, handler, handler, true);
-		}
-		else
+			@Override
+			public void run()
+			{
+				try
+				{
+					if (onlyIfModified)
+					{
+						Downloader.downloadIfModified(url, handler, handler, true);
+					}
+					else
+					{
+						Downloader.downloadIgnoreCache(url, handler, true);
+					}
+				}
+				finally
+				{
+					synchronized (pendingDownloads)
+					{
+						removePendingDownload(url, sharing);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return Number of layer definition downloads started by this enabler
+	 *         (nodes sharing a pending download are not counted). For testing
+	 *         purposes only.
+	 */
+	int getDownloadCount()
+	{
+		return downloadCount.get();
+	}
+
+	private void removePendingDownload(URL url, List<ILayerNode> sharing)
+	{
+		if (pendingDownloads.get(url) == sharing)
 		{
-			Downloader.downloadIgnoreCache(url, handler, true);
+			pendingDownloads.remove(url);
 		}
 	}
 
@@ -367,7 +526,7 @@ public class LayerEnabler implements HierarchicalListener
 		}
 	}
 
-	private synchronized void handleResult(ILayerNode node, RetrievalResult result)
+	private void handleResult(ILayerNode node, RetrievalResult result)
 	{
 		if (result.getError() != null)
 		{
@@ -394,15 +553,13 @@ public class LayerEnabler implements HierarchicalListener
 			return;
 		}
 
-		//create a layer or elevation model from the downloaded result
+		//create a layer or elevation model from the downloaded result (outside
+		//of the lock, so that multiple layers can be created concurrently)
+		long startTime = System.currentTimeMillis();
 		LoadedLayer loaded;
 		try
 		{
 			loaded = LayerLoader.load(result.getSourceURL(), result.getAsInputStream());
-			if (loaded != null && layersSetup)
-			{
-				loaded.setup(wwd);
-			}
 		}
 		catch (Exception e)
 		{
@@ -414,23 +571,28 @@ public class LayerEnabler implements HierarchicalListener
 		{
 			return;
 		}
+		logLoadTime(node, startTime);
 
-		int index = nodes.indexOf(node);
-		if (index < 0) //layer must have been removed during loading
+		synchronized (this)
 		{
-			return;
-		}
+			if (layersSetup)
+			{
+				loaded.setup(wwd);
+			}
 
-		Wrapper wrapper = wrappers.get(index);
-		wrapper.setLoaded(loaded);
+			if (!setLoaded(node, loaded))
+			{
+				return;
+			}
 
-		//must've been a download, so have to refresh the layer list
-		if (!result.isFromCache())
-		{
-			refreshLists();
-			if (node.hasError())
+			//must've been a download, so have to refresh the layer list
+			if (!result.isFromCache())
 			{
-				setError(node, null);
+				refreshLists();
+				if (node.hasError())
+				{
+					setError(node, null);
+				}
 			}
 		}
 	}
@@ -515,7 +677,10 @@ public class LayerEnabler implements HierarchicalListener
 		}
 
 		//relayout and repaint the tree, as the labels may have changed (maybe legend button added)
-		tree.relayoutOnEDT();
+		if (tree != null)
+		{
+			tree.relayoutOnEDT();
+		}
 	}
 
 	private void mapChildElevationModelsToNode(ElevationModel elevationModel, ILayerNode node)
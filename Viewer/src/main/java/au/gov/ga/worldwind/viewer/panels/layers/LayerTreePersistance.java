@@ -16,6 +16,7 @@
 package au.gov.ga.worldwind.viewer.panels.layers;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 
@@ -29,9 +30,12 @@ import org.w3c.dom.Node;
 import au.gov.ga.worldwind.common.util.URLUtil;
 import au.gov.ga.worldwind.common.util.Validate;
 import au.gov.ga.worldwind.common.util.XMLUtil;
+import au.gov.ga.worldwind.viewer.util.SessionInputStream;
+import au.gov.ga.worldwind.viewer.util.SessionOutputStream;
 
 /**
- * Allows the application layer tree to be persisted to-and-from an XML file.
+ * Allows the application layer tree to be persisted to-and-from an XML file,
+ * or a binary session file.
  * <p/>
  * This is used primarily to persist the user's layer tree between invocations
  * of the application.
@@ -49,6 +53,16 @@ public class LayerTreePersistance
 
 	private static final String CHILD_NODE_SELECTOR_XPATH = FOLDER_ELEMENT_NAME + "|" + LAYER_ELEMENT_NAME;
 
+	private static final int SESSION_MAGIC = 0x4741574C; //'GAWL'
+	private static final int SESSION_VERSION = 1;
+
+	//node types in the binary session format
+	private static final byte FOLDER_NODE = 0;
+	private static final byte WMS_SERVER_NODE = 1;
+	private static final byte WMS_ROOT_NODE = 2;
+	private static final byte LAYER_NODE = 3;
+	private static final byte WMS_LAYER_NODE = 4;
+
 	/**
 	 * Read a layer tree structure from the provided source.
 	 * <p/>
@@ -356,4 +370,193 @@ public class LayerTreePersistance
 			XMLUtil.setBooleanAttribute(current, "expanded", node.isExpanded());
 		}
 	}
+
+	/**
+	 * Read a layer tree from the session file that replaces the given XML
+	 * file. If the session file doesn't exist, or is older than the XML file,
+	 * the tree is read from the XML file instead (which is how existing XML
+	 * files are migrated to the binary format).
+	 * 
+	 * @return The root node of the layer tree, or null if neither file exists
+	 */
+	public static INode readFromSession(File xmlFile) throws IOException
+	{
+		if (SessionInputStream.isBinaryFileCurrent(xmlFile))
+		{
+			File file = SessionInputStream.getBinaryFile(xmlFile);
+			SessionInputStream sis = SessionInputStream.open(file, SESSION_MAGIC, SESSION_VERSION);
+			try
+			{
+				return readTree(sis);
+			}
+			finally
+			{
+				sis.close();
+			}
+		}
+		return xmlFile.exists() ? readFromXML(xmlFile) : null;
+	}
+
+	/**
+	 * Save the provided layer tree to the session file that replaces the given
+	 * XML file. The session file is only written if the tree has changed since
+	 * the file was last read or written.
+	 * 
+	 * @return True if the session file was written
+	 */
+	public static boolean saveToSession(INode root, File xmlFile) throws IOException
+	{
+		if (root == null)
+		{
+			return false;
+		}
+		Validate.notNull(xmlFile, "An output file is required");
+
+		SessionOutputStream sos = new SessionOutputStream(SESSION_MAGIC, SESSION_VERSION);
+		writeTree(sos, root);
+		return sos.saveIfChanged(SessionInputStream.getBinaryFile(xmlFile));
+	}
+
+	/**
+	 * Write the children of the provided root node (and their sub-trees) to a
+	 * session stream. Transient nodes are not written.
+	 */
+	public static void writeTree(SessionOutputStream out, INode root) throws IOException
+	{
+		writeChildren(out, root);
+	}
+
+	/**
+	 * Read a layer tree written by {@link #writeTree(SessionOutputStream, INode)}.
+	 * 
+	 * @return A new root node containing the tree
+	 */
+	public static INode readTree(SessionInputStream in) throws IOException
+	{
+		INode root = new FolderNode(null, null, null, true);
+		readChildren(in, root);
+		return root;
+	}
+
+	private static void writeChildren(SessionOutputStream out, INode node) throws IOException
+	{
+		int count = 0;
+		for (int i = 0; i < node.getChildCount(); i++)
+		{
+			if (isPersistable(node.getChild(i)))
+			{
+				count++;
+			}
+		}
+
+		out.writeInt(count);
+		for (int i = 0; i < node.getChildCount(); i++)
+		{
+			INode child = node.getChild(i);
+			if (isPersistable(child))
+			{
+				writeNode(out, child);
+			}
+		}
+	}
+
+	private static boolean isPersistable(INode node)
+	{
+		return (node instanceof FolderNode || node instanceof LayerNode) && !node.isTransient();
+	}
+
+	private static void writeNode(SessionOutputStream out, INode node) throws IOException
+	{
+		if (node instanceof WmsServerNode)
+		{
+			out.writeByte(WMS_SERVER_NODE);
+		}
+		else if (node instanceof WmsRootNode)
+		{
+			out.writeByte(WMS_ROOT_NODE);
+		}
+		else if (node instanceof FolderNode)
+		{
+			out.writeByte(FOLDER_NODE);
+		}
+		else if (node instanceof WmsLayerNode)
+		{
+			out.writeByte(WMS_LAYER_NODE);
+		}
+		else
+		{
+			out.writeByte(LAYER_NODE);
+		}
+
+		out.writeNullableString(node.getName());
+		out.writeURL(node.getInfoURL());
+		out.writeURL(node.getIconURL());
+		out.writeBoolean(node.isExpanded());
+
+		if (node instanceof WmsServerNode)
+		{
+			out.writeNullableString(((WmsServerNode) node).getServerCapabilitiesUrl());
+		}
+		else if (node instanceof LayerNode)
+		{
+			LayerNode layer = (LayerNode) node;
+			out.writeURL(layer.getLayerURL());
+			out.writeBoolean(layer.isEnabled());
+			out.writeDouble(layer.getOpacity());
+			out.writeNullableLong(layer.getExpiryTime());
+			if (layer instanceof WmsLayerNode)
+			{
+				out.writeURL(((WmsLayerNode) layer).getLegendURL());
+				out.writeNullableString(((WmsLayerNode) layer).getLayerId());
+			}
+		}
+
+		writeChildren(out, node);
+	}
+
+	private static void readChildren(SessionInputStream in, INode parent) throws IOException
+	{
+		int count = in.readInt();
+		for (int i = 0; i < count; i++)
+		{
+			INode node = readNode(in);
+			parent.addChild(node);
+			readChildren(in, node);
+		}
+	}
+
+	private static INode readNode(SessionInputStream in) throws IOException
+	{
+		byte type = in.readByte();
+		String name = in.readNullableString();
+		URL info = in.readURL();
+		URL icon = in.readURL();
+		boolean expanded = in.readBoolean();
+
+		switch (type)
+		{
+		case FOLDER_NODE:
+			return new FolderNode(name, info, icon, expanded);
+		case WMS_SERVER_NODE:
+			URL capabilities = in.readURL();
+			return new WmsServerNode(name, icon, expanded, capabilities);
+		case WMS_ROOT_NODE:
+			return new WmsRootNode(name, icon, expanded);
+		case LAYER_NODE:
+		case WMS_LAYER_NODE:
+			URL layer = in.readURL();
+			boolean enabled = in.readBoolean();
+			double opacity = in.readDouble();
+			Long expiryTime = in.readNullableLong();
+			if (type == WMS_LAYER_NODE)
+			{
+				URL legend = in.readURL();
+				String id = in.readNullableString();
+				return new WmsLayerNode(name, info, icon, expanded, layer, enabled, opacity, expiryTime, legend, id);
+			}
+			return new LayerNode(name, info, icon, expanded, layer, enabled, opacity, expiryTime);
+		default:
+			throw new IOException("Unknown layer tree node type: " + type);
+		}
+	}
 }
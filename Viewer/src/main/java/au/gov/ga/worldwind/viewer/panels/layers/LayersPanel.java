@@ -19,6 +19,7 @@ import static au.gov.ga.worldwind.common.util.Util.isBlank;
 import static au.gov.ga.worldwind.common.util.Util.isEmpty;
 import static au.gov.ga.worldwind.common.util.message.MessageSourceAccessor.getMessage;
 import static au.gov.ga.worldwind.viewer.util.message.ViewerMessageConstants.*;
+import gov.nasa.worldwind.util.Logging;
 import gov.nasa.worldwindx.applications.worldwindow.core.WMSLayerInfo;
 
 import java.awt.Window;
@@ -27,10 +28,12 @@ import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.logging.Level;
 
 import javax.swing.DropMode;
 import javax.swing.ImageIcon;
@@ -165,7 +168,7 @@ public class LayersPanel extends AbstractLayersPanel
 		{
 			try
 			{
-				root = LayerTreePersistance.readFromXML(getLayersFile());
+				root = LayerTreePersistance.readFromSession(getLayersFile());
 				layersFileExisted = true;
 			}
 			catch (Exception e)
@@ -574,7 +577,14 @@ public class LayersPanel extends AbstractLayersPanel
 	{
 		if (persistLayers)
 		{
-			LayerTreePersistance.saveToXML(root, getLayersFile());
+			try
+			{
+				LayerTreePersistance.saveToSession(root, getLayersFile());
+			}
+			catch (IOException e)
+			{
+				Logging.logger().log(Level.SEVERE, "Error saving layers", e);
+			}
 		}
 	}
 
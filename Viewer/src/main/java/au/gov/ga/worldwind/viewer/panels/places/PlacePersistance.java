@@ -18,6 +18,7 @@ package au.gov.ga.worldwind.viewer.panels.places;
 import gov.nasa.worldwind.util.Logging;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -33,16 +34,23 @@ import org.w3c.dom.Node;
 
 import au.gov.ga.worldwind.common.util.XMLUtil;
 import au.gov.ga.worldwind.viewer.panels.layers.LayerTreePersistance;
+import au.gov.ga.worldwind.viewer.util.SessionInputStream;
+import au.gov.ga.worldwind.viewer.util.SessionOutputStream;
 
 /**
  * A utility class responsible for persistence of places files.
  * <p/>
- * Supports loading and saving of places to and from XML configuration files.
+ * Supports loading and saving of places to and from XML configuration files,
+ * and binary session files (used to persist the user's places between
+ * invocations of the application).
  * 
  * @author Michael de Hoog (michael.dehoog@ga.gov.au)
  */
 public class PlacePersistance
 {
+	private static final int SESSION_MAGIC = 0x47415750; //'GAWP'
+	private static final int SESSION_VERSION = 1;
+
 	/**
 	 * Read the places list from the provided XML source.
 	 * <p/>
@@ -169,4 +177,93 @@ public class PlacePersistance
 			XMLUtil.appendDouble(current, "VerticalExaggeration", place.getVerticalExaggeration());
 		}
 	}
+
+	/**
+	 * Read the places list from the session file that replaces the given XML
+	 * file. If the session file doesn't exist, or is older than the XML file,
+	 * the places are read from the XML file instead.
+	 * 
+	 * @return The places, or null if neither file exists
+	 */
+	public static List<Place> readFromSession(File xmlFile, URL context) throws IOException
+	{
+		if (!SessionInputStream.isBinaryFileCurrent(xmlFile))
+		{
+			return xmlFile.exists() ? readFromXML(xmlFile, context) : null;
+		}
+
+		File file = SessionInputStream.getBinaryFile(xmlFile);
+		SessionInputStream sis = SessionInputStream.open(file, SESSION_MAGIC, SESSION_VERSION);
+		try
+		{
+			int count = sis.readInt();
+			List<Place> places = new ArrayList<Place>(count);
+			for (int i = 0; i < count; i++)
+			{
+				places.add(readPlace(sis));
+			}
+			return places;
+		}
+		finally
+		{
+			sis.close();
+		}
+	}
+
+	/**
+	 * Save the places list to the session file that replaces the given XML
+	 * file. The session file is only written if the places have changed since
+	 * the file was last read or written.
+	 * 
+	 * @return True if the session file was written
+	 */
+	public static boolean saveToSession(List<Place> places, File xmlFile) throws IOException
+	{
+		SessionOutputStream sos = new SessionOutputStream(SESSION_MAGIC, SESSION_VERSION);
+		sos.writeInt(places.size());
+		for (Place place : places)
+		{
+			writePlace(place, sos);
+		}
+		return sos.saveIfChanged(SessionInputStream.getBinaryFile(xmlFile));
+	}
+
+	protected static void writePlace(Place place, SessionOutputStream out) throws IOException
+	{
+		out.writeLatLon(place.getLatLon());
+		out.writeNullableString(place.getLabel());
+		out.writeBoolean(place.isVisible());
+		out.writeDouble(place.getMinZoom());
+		out.writeDouble(place.getMaxZoom());
+		out.writeBoolean(place.isSaveCamera());
+		out.writePosition(place.getEyePosition());
+		out.writeVec4(place.getUpVector());
+		out.writeBoolean(place.isExcludeFromPlaylist());
+		out.writeNullableDouble(place.getVerticalExaggeration());
+		out.writeBoolean(place.getLayers() != null);
+		if (place.getLayers() != null)
+		{
+			LayerTreePersistance.writeTree(out, place.getLayers());
+		}
+	}
+
+	protected static Place readPlace(SessionInputStream in) throws IOException
+	{
+		Place place = new Place();
+		place.setLatLon(in.readLatLon());
+		place.setLabel(in.readNullableString());
+		place.setVisible(in.readBoolean());
+		place.setMinZoom(in.readDouble());
+		place.setMaxZoom(in.readDouble());
+		place.setSaveCamera(in.readBoolean());
+		place.setEyePosition(in.readPosition());
+		place.setUpVector(in.readVec4());
+		place.setExcludeFromPlaylist(in.readBoolean());
+		place.setVerticalExaggeration(in.readNullableDouble());
+		if (in.readBoolean())
+		{
+			place.setLayers(LayerTreePersistance.readTree(in));
+		}
+		return place;
+	}
 }
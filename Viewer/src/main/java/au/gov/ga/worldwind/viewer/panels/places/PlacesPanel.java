@@ -39,6 +39,7 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -46,6 +47,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.logging.Level;
 
 import javax.swing.BorderFactory;
 import javax.swing.DefaultListModel;
@@ -85,6 +87,7 @@ import au.gov.ga.worldwind.viewer.settings.Settings;
 import au.gov.ga.worldwind.viewer.theme.AbstractThemePanel;
 import au.gov.ga.worldwind.viewer.theme.Theme;
 import au.gov.ga.worldwind.viewer.theme.ThemePanel;
+import au.gov.ga.worldwind.viewer.util.SessionInputStream;
 import au.gov.ga.worldwind.viewer.util.SettingsUtil;
 
 /**
@@ -163,10 +166,25 @@ public class PlacesPanel extends AbstractThemePanel
 	}
 
 	protected void loadPlaces(File file, boolean append)
+	{
+		loadPlaces(file, append, false);
+	}
+
+	/**
+	 * Load places from the given file.
+	 * 
+	 * @param session
+	 *            If true, load from the binary session file that replaces the
+	 *            given XML file, if it exists (see
+	 *            {@link PlacePersistance#readFromSession(File, java.net.URL)})
+	 */
+	protected void loadPlaces(File file, boolean append, boolean session)
 	{
 		try
 		{
-			List<Place> places = PlacePersistance.readFromXML(file, URLUtil.fromObject(file.getParentFile()));
+			List<Place> places =
+					session ? PlacePersistance.readFromSession(file, URLUtil.fromObject(file.getParentFile()))
+							: PlacePersistance.readFromXML(file, URLUtil.fromObject(file.getParentFile()));
 
 			//if the read failed, attempt to read from the old format
 			if (places == null && wwd != null)
@@ -1294,9 +1312,13 @@ public class PlacesPanel extends AbstractThemePanel
 		if (!Util.isBlank(theme.getPlacesPersistanceFilename()))
 		{
 			placesPersistanceFilename = theme.getPlacesPersistanceFilename();
-			loadPlaces(getPlacesFile(), false);
+			loadPlaces(getPlacesFile(), false, true);
+		}
+		//import places stored in the settings by old versions, until the settings are saved in a session file
+		if (Settings.getSettingsFile().exists() && !SessionInputStream.isBinaryFileCurrent(Settings.getSettingsFile()))
+		{
+			loadPlaces(Settings.getSettingsFile(), true);
 		}
-		loadPlaces(Settings.getSettingsFile(), true);
 
 		persistPlaces = theme.isPersistPlaces();
 
@@ -1319,7 +1341,14 @@ public class PlacesPanel extends AbstractThemePanel
 	{
 		if (persistPlaces)
 		{
-			savePlaces(getPlacesFile());
+			try
+			{
+				PlacePersistance.saveToSession(places, getPlacesFile());
+			}
+			catch (IOException e)
+			{
+				Logging.logger().log(Level.SEVERE, "Error saving places", e);
+			}
 		}
 	}
 
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.viewer.retrieve;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.TreeMap;
+
+import au.gov.ga.worldwind.common.util.Validate;
+
+/**
+ * Limits the number of concurrent requests to each host, adapting the limit
+ * to the latency and errors observed for that host.
+ * <p/>
+ * The limit for each host is adjusted using additive-increase,
+ * multiplicative-decrease: every fast successful request increases the limit
+ * by <code>1/limit</code> (so roughly by 1 for each full round of requests),
+ * a request slower than the target latency decreases it by 10%, and a failed
+ * request halves it. The limit is always kept between the minimum and maximum
+ * limits.
+ * 
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class HostConcurrencyLimiter
+{
+	private static final double SLOW_DECREASE = 0.9;
+	private static final double ERROR_DECREASE = 0.5;
+
+	private final Map<String, HostState> hosts = new TreeMap<String, HostState>();
+	private final int initialLimit;
+	private final int minLimit;
+	private volatile int maxLimit;
+	private final long targetLatency;
+
+	/**
+	 * @param initialLimit
+	 *            Concurrent request limit for a host that hasn't been seen yet
+	 * @param minLimit
+	 *            Minimum concurrent request limit for a host
+	 * @param maxLimit
+	 *            Maximum concurrent request limit for a host
+	 * @param targetLatency
+	 *            Requests that take longer than this (in milliseconds) reduce
+	 *            the limit for their host
+	 */
+	public HostConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long targetLatency)
+	{
+		Validate.isTrue(minLimit > 0, "Minimum limit must be greater than 0");
+		Validate.isTrue(maxLimit >= minLimit, "Maximum limit must not be less than the minimum limit");
+		Validate.isTrue(targetLatency > 0, "Target latency must be greater than 0");
+		this.initialLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.targetLatency = targetLatency;
+	}
+
+	/**
+	 * Reserve a request slot for the given host, if the host is below its
+	 * limit. Each successful call must be followed by a call to
+	 * {@link #release(String, long, boolean)}.
+	 * 
+	 * @return True if the slot was reserved
+	 */
+	public synchronized boolean tryAcquire(String host)
+	{
+		HostState state = getState(host);
+		if (state.active >= state.getPermits())
+			return false;
+
+		state.active++;
+		return true;
+	}
+
+	/**
+	 * Release a request slot reserved by {@link #tryAcquire(String)}, and
+	 * update the host's limit using the result of the request.
+	 * 
+	 * @param latency
+	 *            Time the request took (in milliseconds)
+	 * @param success
+	 *            Was the request successful? Timeouts, connection failures and
+	 *            server errors should be reported as failures.
+	 */
+	public synchronized void release(String host, long latency, boolean success)
+	{
+		HostState state = getState(host);
+		state.active = Math.max(0, state.active - 1);
+
+		if (!success)
+			state.limit *= ERROR_DECREASE;
+		else if (latency > targetLatency)
+			state.limit *= SLOW_DECREASE;
+		else if (state.active + 1 >= state.getPermits())
+			state.limit += 1d / state.limit; //only grow if the current limit is actually being used
+		state.limit = Math.max(minLimit, Math.min(maxLimit, state.limit));
+	}
+
+	/**
+	 * Release a request slot reserved by {@link #tryAcquire(String)} without
+	 * changing the host's limit (eg if the request was cancelled before it
+	 * started).
+	 */
+	public synchronized void cancel(String host)
+	{
+		HostState state = getState(host);
+		state.active = Math.max(0, state.active - 1);
+	}
+
+	/**
+	 * @return The current number of concurrent requests allowed to the given
+	 *         host
+	 */
+	public synchronized int getLimit(String host)
+	{
+		return getState(host).getPermits();
+	}
+
+	/**
+	 * @return The number of slots currently reserved for the given host
+	 */
+	public synchronized int getActive(String host)
+	{
+		HostState state = hosts.get(host);
+		return state == null ? 0 : state.active;
+	}
+
+	/**
+	 * @return A copy of the current limit for each host that has been seen,
+	 *         sorted by host
+	 */
+	public synchronized Map<String, Integer> getLimits()
+	{
+		Map<String, Integer> limits = new TreeMap<String, Integer>();
+		for (Map.Entry<String, HostState> entry : hosts.entrySet())
+		{
+			limits.put(entry.getKey(), entry.getValue().getPermits());
+		}
+		return limits;
+	}
+
+	public int getMaxLimit()
+	{
+		return maxLimit;
+	}
+
+	/**
+	 * Change the maximum limit for each host. Existing host limits above the
+	 * new maximum are reduced.
+	 */
+	public synchronized void setMaxLimit(int maxLimit)
+	{
+		Validate.isTrue(maxLimit >= minLimit, "Maximum limit must not be less than the minimum limit");
+		this.maxLimit = maxLimit;
+		for (HostState state : hosts.values())
+		{
+			state.limit = Math.min(maxLimit, state.limit);
+		}
+	}
+
+	/**
+	 * Calculate the host key used to limit requests to the given url. Requests
+	 * to the same host on different ports are limited separately.
+	 * 
+	 * @return Host key for the url, or the empty string if the url is null or
+	 *         has no host (eg local files)
+	 */
+	public static String getHostKey(URL url)
+	{
+		if (url == null || url.getHost() == null || url.getHost().length() == 0)
+			return "";
+		int port = url.getPort() >= 0 ? url.getPort() : url.getDefaultPort();
+		return url.getHost().toLowerCase() + (port >= 0 ? ":" + port : "");
+	}
+
+	private HostState getState(String host)
+	{
+		HostState state = hosts.get(host);
+		if (state == null)
+		{
+			state = new HostState(initialLimit);
+			hosts.put(host, state);
+		}
+		return state;
+	}
+
+	private static class HostState
+	{
+		public double limit;
+		public int active = 0;
+
+		public HostState(double limit)
+		{
+			this.limit = limit;
+		}
+
+		public int getPermits()
+		{
+			return (int) limit;
+		}
+	}
+}
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.viewer.retrieve;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live counters for a retrieval service: the number of queued and active
+ * requests, the number of completed, failed and dropped requests, the
+ * transfer rate, and the latency percentiles of recent requests.
+ * <p/>
+ * The transfer rate is calculated over a sliding window of
+ * {@link #RATE_WINDOW} seconds, and the latency percentiles over the last
+ * {@link #LATENCY_SAMPLES} completed requests.
+ * 
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class RetrievalStatistics
+{
+	public static final int RATE_WINDOW = 5; //seconds
+	public static final int LATENCY_SAMPLES = 256;
+
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+
+	//per second byte counts, indexed by second % RATE_WINDOW
+	private final long[] rateBuckets = new long[RATE_WINDOW];
+	private final long[] rateBucketSeconds = new long[RATE_WINDOW];
+
+	//ring buffer of the latest request latencies
+	private final long[] latencies = new long[LATENCY_SAMPLES];
+	private int latencyCount = 0;
+	private int latencyNext = 0;
+
+	public void queued()
+	{
+		queued.incrementAndGet();
+	}
+
+	public void dequeued()
+	{
+		queued.decrementAndGet();
+	}
+
+	public void started()
+	{
+		active.incrementAndGet();
+	}
+
+	/**
+	 * Record a dropped request (one that was evicted from, or never added to,
+	 * the queue).
+	 */
+	public void dropped()
+	{
+		dropped.incrementAndGet();
+	}
+
+	/**
+	 * Record an active request that was cancelled before it completed.
+	 */
+	public void cancelled()
+	{
+		active.decrementAndGet();
+	}
+
+	public void finished(long latency, long bytes, boolean success)
+	{
+		finished(latency, bytes, success, System.currentTimeMillis());
+	}
+
+	/**
+	 * Record the completion of an active request.
+	 * 
+	 * @param latency
+	 *            Time the request took (in milliseconds)
+	 * @param bytes
+	 *            Number of bytes read
+	 * @param success
+	 *            Was the request successful?
+	 * @param time
+	 *            Time the request finished (in milliseconds)
+	 */
+	public void finished(long latency, long bytes, boolean success, long time)
+	{
+		active.decrementAndGet();
+		(success ? completed : failed).incrementAndGet();
+		addBytes(bytes, time);
+
+		synchronized (latencies)
+		{
+			latencies[latencyNext] = latency;
+			latencyNext = (latencyNext + 1) % latencies.length;
+			latencyCount = Math.min(latencyCount + 1, latencies.length);
+		}
+	}
+
+	protected void addBytes(long count, long time)
+	{
+		if (count <= 0)
+			return;
+
+		bytes.addAndGet(count);
+		long second = time / 1000;
+		int bucket = (int) (second % RATE_WINDOW);
+		synchronized (rateBuckets)
+		{
+			if (rateBucketSeconds[bucket] != second)
+			{
+				rateBucketSeconds[bucket] = second;
+				rateBuckets[bucket] = 0;
+			}
+			rateBuckets[bucket] += count;
+		}
+	}
+
+	public int getQueued()
+	{
+		return Math.max(0, queued.get());
+	}
+
+	public int getActive()
+	{
+		return Math.max(0, active.get());
+	}
+
+	public long getCompleted()
+	{
+		return completed.get();
+	}
+
+	public long getFailed()
+	{
+		return failed.get();
+	}
+
+	public long getDropped()
+	{
+		return dropped.get();
+	}
+
+	public long getBytes()
+	{
+		return bytes.get();
+	}
+
+	public double getBytesPerSecond()
+	{
+		return getBytesPerSecond(System.currentTimeMillis());
+	}
+
+	/**
+	 * @return Average transfer rate over the {@link #RATE_WINDOW} seconds
+	 *         before the given time (in milliseconds)
+	 */
+	public double getBytesPerSecond(long time)
+	{
+		long second = time / 1000;
+		long total = 0;
+		synchronized (rateBuckets)
+		{
+			for (int i = 0; i < RATE_WINDOW; i++)
+			{
+				if (second - rateBucketSeconds[i] < RATE_WINDOW && rateBucketSeconds[i] <= second)
+					total += rateBuckets[i];
+			}
+		}
+		return total / (double) RATE_WINDOW;
+	}
+
+	/**
+	 * @param percentile
+	 *            Percentile to calculate (0 to 100)
+	 * @return Latency (in milliseconds) at the given percentile of the recent
+	 *         requests, or 0 if no requests have finished
+	 */
+	public long getLatencyPercentile(double percentile)
+	{
+		long[] sorted;
+		synchronized (latencies)
+		{
+			sorted = Arrays.copyOf(latencies, latencyCount);
+		}
+		if (sorted.length == 0)
+			return 0;
+
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100d * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	public long getP95Latency()
+	{
+		return getLatencyPercentile(95);
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("queued %d, active %d, completed %d, failed %d, dropped %d, %.1f kB/s, p95 %d ms",
+				getQueued(), getActive(), getCompleted(), getFailed(), getDropped(), getBytesPerSecond() / 1024d,
+				getP95Latency());
+	}
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.viewer.retrieve;
+
+import static au.gov.ga.worldwind.common.util.message.MessageSourceAccessor.getMessage;
+import static au.gov.ga.worldwind.viewer.util.message.ViewerMessageConstants.getRetrievalStatisticsHostKey;
+import static au.gov.ga.worldwind.viewer.util.message.ViewerMessageConstants.getRetrievalStatisticsLabelKey;
+import static au.gov.ga.worldwind.viewer.util.message.ViewerMessageConstants.getRetrievalStatisticsTooltipKey;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Map;
+
+import javax.swing.JLabel;
+import javax.swing.SwingConstants;
+import javax.swing.Timer;
+
+import nasa.worldwind.retrieve.ExtendedRetrievalService;
+import au.gov.ga.worldwind.common.downloader.DownloaderStatusBar;
+
+/**
+ * {@link DownloaderStatusBar} subclass that also displays the live
+ * {@link RetrievalStatistics} of an {@link ExtendedRetrievalService}. The
+ * label's tooltip shows the totals and the current concurrent request limit
+ * for each host.
+ * 
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class RetrievalStatisticsStatusBar extends DownloaderStatusBar
+{
+	private static final int UPDATE_INTERVAL = 1000; //milliseconds
+
+	private final ExtendedRetrievalService retrievalService;
+	private final JLabel statisticsDisplay = new JLabel("");
+
+	public RetrievalStatisticsStatusBar(ExtendedRetrievalService retrievalService)
+	{
+		this.retrievalService = retrievalService;
+
+		statisticsDisplay.setHorizontalAlignment(SwingConstants.CENTER);
+		add(statisticsDisplay);
+
+		Timer timer = new Timer(UPDATE_INTERVAL, new ActionListener()
+		{
+			@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				updateStatistics();
+			}
+		});
+		timer.start();
+	}
+
+	protected void updateStatistics()
+	{
+		RetrievalStatistics statistics = retrievalService.getStatistics();
+		statisticsDisplay.setText(getMessage(getRetrievalStatisticsLabelKey(), statistics.getQueued(),
+				statistics.getActive(), Math.round(statistics.getBytesPerSecond() / 1024d),
+				statistics.getP95Latency()));
+
+		StringBuilder hosts = new StringBuilder();
+		for (Map.Entry<String, Integer> entry : retrievalService.getHostLimits().entrySet())
+		{
+			if (entry.getKey().length() > 0)
+			{
+				hosts.append(getMessage(getRetrievalStatisticsHostKey(), entry.getKey(), entry.getValue()));
+			}
+		}
+		statisticsDisplay.setToolTipText(getMessage(getRetrievalStatisticsTooltipKey(), statistics.getCompleted(),
+				statistics.getFailed(), statistics.getDropped(), hosts.toString()));
+	}
+}
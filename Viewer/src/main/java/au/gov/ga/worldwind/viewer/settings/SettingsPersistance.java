@@ -15,37 +15,106 @@
  ******************************************************************************/
 package au.gov.ga.worldwind.viewer.settings;
 
+import gov.nasa.worldwind.util.Logging;
+
+import java.awt.Rectangle;
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
 import java.beans.XMLDecoder;
 import java.beans.XMLEncoder;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import au.gov.ga.worldwind.viewer.util.SessionInputStream;
+import au.gov.ga.worldwind.viewer.util.SessionOutputStream;
 
 /**
- * Used to save/restore a Settings object to/from an XML file. Currently uses
- * the {@link XMLEncoder} and {@link XMLDecoder} to serialize the object to XML.
+ * Used to save/restore a Settings object to/from a file.
+ * <p/>
+ * Settings are saved to a binary session file (see
+ * {@link SessionOutputStream}), which sits alongside the XML settings file.
+ * The settings object is written as a set of named bean properties, each value
+ * tagged with its type, so that properties that are added, removed, or change
+ * type between versions are skipped rather than failing the whole load.
+ * <p/>
+ * Settings saved by previous versions in XML format (using the
+ * {@link XMLEncoder}) are read with the {@link XMLDecoder} if there is no
+ * current binary file.
  * 
  * @author Michael de Hoog (michael.dehoog@ga.gov.au)
  */
 public class SettingsPersistance
 {
-	//TODO don't use XMLEncoder, but rather write a custom XML file
+	private static final int SESSION_MAGIC = 0x47415753; //'GAWS'
+	private static final int SESSION_VERSION = 1;
 
-	public static Settings load(Object source)
+	//value types
+	private static final byte NULL = 0;
+	private static final byte BOOLEAN = 1;
+	private static final byte INTEGER = 2;
+	private static final byte LONG = 3;
+	private static final byte FLOAT = 4;
+	private static final byte DOUBLE = 5;
+	private static final byte STRING = 6;
+	private static final byte ENUM = 7;
+	private static final byte RECTANGLE = 8;
+	private static final byte LIST = 9;
+	private static final byte BEAN = 10;
+
+	private static final Map<Class<?>, Class<?>> PRIMITIVE_WRAPPERS = new HashMap<Class<?>, Class<?>>();
+	static
 	{
-		/*Settings settings = new Settings();
+		PRIMITIVE_WRAPPERS.put(boolean.class, Boolean.class);
+		PRIMITIVE_WRAPPERS.put(int.class, Integer.class);
+		PRIMITIVE_WRAPPERS.put(long.class, Long.class);
+		PRIMITIVE_WRAPPERS.put(float.class, Float.class);
+		PRIMITIVE_WRAPPERS.put(double.class, Double.class);
+	}
 
-		Element element = XMLUtil.getElementFromSource(source);
-		if (element != null)
+	public static Settings load(Object source)
+	{
+		File file = (File) source;
+		if (SessionInputStream.isBinaryFileCurrent(file))
 		{
+			try
+			{
+				return loadFromSession(SessionInputStream.getBinaryFile(file));
+			}
+			catch (Exception e)
+			{
+				Logging.logger().log(Level.WARNING, "Error loading settings from session file", e);
+			}
 		}
-		
-		return settings;*/
-
+		return loadFromXML(file);
+	}
 
+	protected static Settings loadFromSession(File file) throws IOException
+	{
+		SessionInputStream sis = SessionInputStream.open(file, SESSION_MAGIC, SESSION_VERSION);
+		try
+		{
+			Settings settings = new Settings();
+			readProperties(sis, settings);
+			return settings;
+		}
+		finally
+		{
+			sis.close();
+		}
+	}
 
+	protected static Settings loadFromXML(File file)
+	{
 		Settings settings = null;
-		File file = (File) source;
 		if (file.exists())
 		{
 			XMLDecoder xmldec = null;
@@ -68,23 +137,254 @@ public class SettingsPersistance
 		return settings;
 	}
 
+	/**
+	 * Save the settings to the session file that replaces the given XML file.
+	 * The session file is only written if the settings have changed since the
+	 * file was last read or written.
+	 * <p/>
+	 * The XML file (from a previous version) is left in place, so that it can
+	 * still be used by a previous version. Once written, the session file is
+	 * read back; if that fails, it is removed, so that the settings continue
+	 * to be loaded from the XML file.
+	 */
 	public static void save(Settings settings, File file)
 	{
-		XMLEncoder xmlenc = null;
+		File binaryFile = SessionInputStream.getBinaryFile(file);
 		try
 		{
-			FileOutputStream fos = new FileOutputStream(file);
-			xmlenc = new XMLEncoder(fos);
-			xmlenc.writeObject(settings);
+			SessionOutputStream sos = new SessionOutputStream(SESSION_MAGIC, SESSION_VERSION);
+			writeProperties(sos, settings);
+			if (sos.saveIfChanged(binaryFile))
+			{
+				loadFromSession(binaryFile);
+			}
 		}
 		catch (Exception e)
 		{
-			e.printStackTrace();
+			Logging.logger().log(Level.WARNING, "Error saving settings to session file", e);
+			binaryFile.delete();
 		}
-		finally
+	}
+
+	protected static void writeProperties(SessionOutputStream out, Object bean) throws IOException
+	{
+		List<PropertyDescriptor> properties = new ArrayList<PropertyDescriptor>();
+		for (PropertyDescriptor property : getProperties(bean.getClass()))
+		{
+			if (property.getReadMethod() != null && property.getWriteMethod() != null)
+			{
+				properties.add(property);
+			}
+		}
+
+		out.writeInt(properties.size());
+		for (PropertyDescriptor property : properties)
+		{
+			Object value;
+			try
+			{
+				value = property.getReadMethod().invoke(bean);
+			}
+			catch (Exception e)
+			{
+				throw new IOException("Error reading property " + property.getName(), e);
+			}
+			out.writeUTF(property.getName());
+			writeValue(out, value);
+		}
+	}
+
+	protected static void readProperties(SessionInputStream in, Object bean) throws IOException
+	{
+		Map<String, Method> setters = new HashMap<String, Method>();
+		for (PropertyDescriptor property : getProperties(bean.getClass()))
+		{
+			if (property.getWriteMethod() != null)
+			{
+				setters.put(property.getName(), property.getWriteMethod());
+			}
+		}
+
+		int count = in.readInt();
+		for (int i = 0; i < count; i++)
+		{
+			String name = in.readUTF();
+			Object value = readValue(in);
+
+			//skip properties that no longer exist, or whose type has changed
+			Method setter = setters.get(name);
+			if (setter == null)
+			{
+				continue;
+			}
+			Class<?> type = setter.getParameterTypes()[0];
+			if (value == null ? type.isPrimitive() : !wrap(type).isInstance(value))
+			{
+				continue;
+			}
+			try
+			{
+				setter.invoke(bean, value);
+			}
+			catch (Exception e)
+			{
+				Logging.logger().log(Level.WARNING, "Error setting property " + name, e);
+			}
+		}
+	}
+
+	protected static void writeValue(SessionOutputStream out, Object value) throws IOException
+	{
+		if (value == null)
+		{
+			out.writeByte(NULL);
+		}
+		else if (value instanceof Boolean)
+		{
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		}
+		else if (value instanceof Integer)
+		{
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) value);
+		}
+		else if (value instanceof Long)
+		{
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		}
+		else if (value instanceof Float)
+		{
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) value);
+		}
+		else if (value instanceof Double)
+		{
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		}
+		else if (value instanceof String)
+		{
+			out.writeByte(STRING);
+			out.writeUTF((String) value);
+		}
+		else if (value instanceof Enum<?>)
+		{
+			out.writeByte(ENUM);
+			out.writeUTF(((Enum<?>) value).getDeclaringClass().getName());
+			out.writeUTF(((Enum<?>) value).name());
+		}
+		else if (value instanceof Rectangle)
+		{
+			Rectangle r = (Rectangle) value;
+			out.writeByte(RECTANGLE);
+			out.writeInt(r.x);
+			out.writeInt(r.y);
+			out.writeInt(r.width);
+			out.writeInt(r.height);
+		}
+		else if (value instanceof List<?>)
+		{
+			List<?> list = (List<?>) value;
+			out.writeByte(LIST);
+			out.writeInt(list.size());
+			for (Object o : list)
+			{
+				writeValue(out, o);
+			}
+		}
+		else
+		{
+			out.writeByte(BEAN);
+			out.writeUTF(value.getClass().getName());
+			writeProperties(out, value);
+		}
+	}
+
+	protected static Object readValue(SessionInputStream in) throws IOException
+	{
+		byte type = in.readByte();
+		switch (type)
 		{
-			if (xmlenc != null)
-				xmlenc.close();
+		case NULL:
+			return null;
+		case BOOLEAN:
+			return in.readBoolean();
+		case INTEGER:
+			return in.readInt();
+		case LONG:
+			return in.readLong();
+		case FLOAT:
+			return in.readFloat();
+		case DOUBLE:
+			return in.readDouble();
+		case STRING:
+			return in.readUTF();
+		case ENUM:
+			return readEnum(in.readUTF(), in.readUTF());
+		case RECTANGLE:
+			return new Rectangle(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+		case LIST:
+			int size = in.readInt();
+			List<Object> list = new ArrayList<Object>(size);
+			for (int i = 0; i < size; i++)
+			{
+				Object o = readValue(in);
+				if (o != null)
+				{
+					list.add(o);
+				}
+			}
+			return list;
+		case BEAN:
+			String className = in.readUTF();
+			Object bean = null;
+			try
+			{
+				bean = Class.forName(className).newInstance();
+			}
+			catch (Exception e)
+			{
+				//class no longer exists; read the properties anyway to skip them
+				bean = new Object();
+			}
+			readProperties(in, bean);
+			return bean.getClass() == Object.class ? null : bean;
+		default:
+			throw new IOException("Unknown settings value type: " + type);
 		}
 	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object readEnum(String className, String name)
+	{
+		try
+		{
+			return Enum.valueOf((Class<? extends Enum>) Class.forName(className), name);
+		}
+		catch (Exception e)
+		{
+			return null;
+		}
+	}
+
+	private static PropertyDescriptor[] getProperties(Class<?> c) throws IOException
+	{
+		try
+		{
+			BeanInfo info = Introspector.getBeanInfo(c, Object.class);
+			return info.getPropertyDescriptors();
+		}
+		catch (IntrospectionException e)
+		{
+			throw new IOException("Error inspecting " + c.getName(), e);
+		}
+	}
+
+	private static Class<?> wrap(Class<?> type)
+	{
+		Class<?> wrapper = PRIMITIVE_WRAPPERS.get(type);
+		return wrapper != null ? wrapper : type;
+	}
 }
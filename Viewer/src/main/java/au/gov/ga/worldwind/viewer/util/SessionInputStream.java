@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.viewer.util;
+
+import gov.nasa.worldwind.geom.LatLon;
+import gov.nasa.worldwind.geom.Position;
+import gov.nasa.worldwind.geom.Vec4;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+import au.gov.ga.worldwind.common.util.transform.URLTransformer;
+
+/**
+ * {@link DataInputStream} used to read the Viewer's binary session files,
+ * written by the {@link SessionOutputStream}.
+ * <p/>
+ * Binary session files sit alongside the XML files they replace (eg
+ * <code>layers.dat</code> alongside <code>layers.xml</code>). The XML files
+ * are still read if there is no binary file, or if the XML file has been
+ * modified more recently than the binary file, which allows existing XML files
+ * to be migrated (and continue to be edited by hand).
+ * 
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class SessionInputStream extends DataInputStream
+{
+	private final int version;
+
+	private SessionInputStream(InputStream is, int version)
+	{
+		super(is);
+		this.version = version;
+	}
+
+	/**
+	 * Open a binary session file for reading, and read and check its header.
+	 * 
+	 * @param file
+	 *            File to read
+	 * @param magic
+	 *            Magic number that identifies the store
+	 * @param maxVersion
+	 *            The latest format version supported by the caller
+	 * @return Stream positioned after the file header
+	 * @throws IOException
+	 *             If the file cannot be read, or is not a supported session
+	 *             file
+	 */
+	public static SessionInputStream open(File file, int magic, int maxVersion) throws IOException
+	{
+		byte[] data = new byte[(int) file.length()];
+		DataInputStream dis = new DataInputStream(new FileInputStream(file));
+		try
+		{
+			dis.readFully(data);
+		}
+		finally
+		{
+			dis.close();
+		}
+
+		DataInputStream header = new DataInputStream(new ByteArrayInputStream(data, 0, Math.min(data.length, 6)));
+		if (data.length < 6 || header.readInt() != magic)
+		{
+			throw new IOException("Not a session file: " + file);
+		}
+		int version = header.readUnsignedShort();
+		if (version < 1 || version > maxVersion)
+		{
+			throw new IOException("Unsupported session file version " + version + ": " + file);
+		}
+
+		SessionOutputStream.setChecksum(file, SessionOutputStream.checksum(data));
+		return new SessionInputStream(new ByteArrayInputStream(data, 6, data.length - 6), version);
+	}
+
+	/**
+	 * @return The binary session file that replaces the given XML file
+	 */
+	public static File getBinaryFile(File xmlFile)
+	{
+		String name = xmlFile.getName();
+		int dot = name.lastIndexOf('.');
+		name = (dot > 0 ? name.substring(0, dot) : name) + ".dat";
+		return new File(xmlFile.getParentFile(), name);
+	}
+
+	/**
+	 * @return True if the binary session file for the given XML file exists,
+	 *         and is at least as recent as the XML file
+	 */
+	public static boolean isBinaryFileCurrent(File xmlFile)
+	{
+		File binaryFile = getBinaryFile(xmlFile);
+		return binaryFile.isFile() && (!xmlFile.exists() || binaryFile.lastModified() >= xmlFile.lastModified());
+	}
+
+	/**
+	 * @return The format version of the file being read
+	 */
+	public int getVersion()
+	{
+		return version;
+	}
+
+	public String readNullableString() throws IOException
+	{
+		return readBoolean() ? readUTF() : null;
+	}
+
+	public URL readURL() throws IOException
+	{
+		String s = readNullableString();
+		return s == null ? null : URLTransformer.transform(new URL(s));
+	}
+
+	public Double readNullableDouble() throws IOException
+	{
+		return readBoolean() ? readDouble() : null;
+	}
+
+	public Long readNullableLong() throws IOException
+	{
+		return readBoolean() ? readLong() : null;
+	}
+
+	public LatLon readLatLon() throws IOException
+	{
+		return readBoolean() ? LatLon.fromDegrees(readDouble(), readDouble()) : null;
+	}
+
+	public Position readPosition() throws IOException
+	{
+		return readBoolean() ? Position.fromDegrees(readDouble(), readDouble(), readDouble()) : null;
+	}
+
+	public Vec4 readVec4() throws IOException
+	{
+		return readBoolean() ? new Vec4(readDouble(), readDouble(), readDouble(), readDouble()) : null;
+	}
+}
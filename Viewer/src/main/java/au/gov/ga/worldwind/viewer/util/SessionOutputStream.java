@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright 2012 Geoscience Australia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package au.gov.ga.worldwind.viewer.util;
+
+import gov.nasa.worldwind.geom.LatLon;
+import gov.nasa.worldwind.geom.Position;
+import gov.nasa.worldwind.geom.Vec4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * {@link DataOutputStream} used to write the Viewer's binary session files
+ * (settings, places and layer trees).
+ * <p/>
+ * Each session file starts with a magic number identifying the store, followed
+ * by a format version. Data is written to memory, and then saved to the file
+ * with {@link #saveIfChanged(File)}, which only writes the file if its
+ * content has changed since it was last loaded or saved. This means that
+ * stores that haven't been modified during a session aren't rewritten on
+ * exit.
+ * 
+ * @author Michael de Hoog (michael.dehoog@ga.gov.au)
+ */
+public class SessionOutputStream extends DataOutputStream
+{
+	//checksums of the session files' content, as last read or written
+	private final static Map<File, Long> checksums = new HashMap<File, Long>();
+
+	public SessionOutputStream(int magic, int version) throws IOException
+	{
+		super(new ByteArrayOutputStream());
+		writeInt(magic);
+		writeShort(version);
+	}
+
+	public void writeNullableString(String s) throws IOException
+	{
+		writeBoolean(s != null);
+		if (s != null)
+		{
+			writeUTF(s);
+		}
+	}
+
+	public void writeURL(URL url) throws IOException
+	{
+		writeNullableString(url == null ? null : url.toExternalForm());
+	}
+
+	public void writeNullableDouble(Double d) throws IOException
+	{
+		writeBoolean(d != null);
+		if (d != null)
+		{
+			writeDouble(d);
+		}
+	}
+
+	public void writeNullableLong(Long l) throws IOException
+	{
+		writeBoolean(l != null);
+		if (l != null)
+		{
+			writeLong(l);
+		}
+	}
+
+	public void writeLatLon(LatLon latlon) throws IOException
+	{
+		writeBoolean(latlon != null);
+		if (latlon != null)
+		{
+			writeDouble(latlon.getLatitude().degrees);
+			writeDouble(latlon.getLongitude().degrees);
+		}
+	}
+
+	public void writePosition(Position position) throws IOException
+	{
+		writeLatLon(position);
+		if (position != null)
+		{
+			writeDouble(position.getElevation());
+		}
+	}
+
+	public void writeVec4(Vec4 vec4) throws IOException
+	{
+		writeBoolean(vec4 != null);
+		if (vec4 != null)
+		{
+			writeDouble(vec4.x);
+			writeDouble(vec4.y);
+			writeDouble(vec4.z);
+			writeDouble(vec4.w);
+		}
+	}
+
+	/**
+	 * Save the data written to this stream to the given file, unless the file
+	 * already contains the same data (as last read or written by this
+	 * session). The file is written to a temporary file first, which is then
+	 * renamed over the file when complete, so that an interrupted save doesn't
+	 * corrupt or remove the existing file.
+	 * 
+	 * @return True if the file was written
+	 */
+	public boolean saveIfChanged(File file) throws IOException
+	{
+		flush();
+		ByteArrayOutputStream baos = (ByteArrayOutputStream) out;
+		long checksum = checksum(baos.toByteArray());
+
+		synchronized (checksums)
+		{
+			Long previous = checksums.get(file.getAbsoluteFile());
+			if (previous != null && previous == checksum && file.exists())
+			{
+				return false;
+			}
+		}
+
+		File temp = new File(file.getAbsolutePath() + ".tmp");
+		try
+		{
+			OutputStream os = new FileOutputStream(temp);
+			try
+			{
+				baos.writeTo(os);
+			}
+			finally
+			{
+				os.close();
+			}
+			replace(temp, file);
+		}
+		catch (IOException e)
+		{
+			temp.delete();
+			throw e;
+		}
+
+		setChecksum(file, checksum);
+		return true;
+	}
+
+	/**
+	 * Rename the source file over the target file. On platforms where a
+	 * rename can't replace an existing file (eg Windows), the target is first
+	 * moved aside, and is restored if the source can't be renamed.
+	 */
+	protected static void replace(File source, File target) throws IOException
+	{
+		if (source.renameTo(target))
+		{
+			return;
+		}
+
+		File old = new File(target.getAbsolutePath() + ".old");
+		old.delete();
+		if (target.exists() && !target.renameTo(old))
+		{
+			throw new IOException("Could not move " + target + " aside");
+		}
+		if (!source.renameTo(target))
+		{
+			old.renameTo(target);
+			throw new IOException("Could not rename " + source + " to " + target);
+		}
+		old.delete();
+	}
+
+	static void setChecksum(File file, long checksum)
+	{
+		synchronized (checksums)
+		{
+			checksums.put(file.getAbsoluteFile(), checksum);
+		}
+	}
+
+	static long checksum(byte[] data)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		return crc.getValue();
+	}
+}
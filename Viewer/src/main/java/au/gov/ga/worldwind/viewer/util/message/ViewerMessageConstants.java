@@ -142,6 +142,11 @@ public class ViewerMessageConstants extends CommonMessageConstants
 	public static String getPlacesPreviousLabelKey() { return "viewer.action.places.previous.label";}
 	public static String getPlacesPreviousTooltipKey() { return "viewer.action.places.previous.tooltip";}
 	
+	// Status bar
+	public static String getRetrievalStatisticsLabelKey() { return "viewer.statusbar.retrieval.label"; }
+	public static String getRetrievalStatisticsTooltipKey() { return "viewer.statusbar.retrieval.tooltip"; }
+	public static String getRetrievalStatisticsHostKey() { return "viewer.statusbar.retrieval.host"; }
+	
 	// Terms
 	public static String getTermImageKey() { return "viewer.term.image"; }
 	public static String getTermLayerKey() { return "viewer.term.layer"; }
@@ -9,24 +9,46 @@ package nasa.worldwind.retrieve;
 import gov.nasa.worldwind.Configuration;
 import gov.nasa.worldwind.WWObjectImpl;
 import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.retrieve.HTTPRetriever;
 import gov.nasa.worldwind.retrieve.RetrievalFuture;
 import gov.nasa.worldwind.retrieve.RetrievalService;
 import gov.nasa.worldwind.retrieve.Retriever;
+import gov.nasa.worldwind.retrieve.URLRetriever;
 import gov.nasa.worldwind.util.Logging;
 
+import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.FutureTask;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
+import au.gov.ga.worldwind.viewer.retrieve.HostConcurrencyLimiter;
+import au.gov.ga.worldwind.viewer.retrieve.RetrievalStatistics;
+
 /**
  * Performs threaded retrieval of data.
+ * <p/>
+ * Modified from the original BasicRetrievalService:
+ * <ul>
+ * <li>Requests are held in a bounded priority queue. When the queue is full, the lowest priority request (either the
+ * new one or a queued one) is dropped, instead of silently discarding whatever arrives last.</li>
+ * <li>The number of concurrent requests to each host adapts to the latency and errors observed for that host (see
+ * {@link HostConcurrencyLimiter}); the pool size is the limit across all hosts.</li>
+ * <li>Live counters are available from {@link #getStatistics()}, and are logged periodically.</li>
+ * <li>{@link RetrievalListener}s are notified before and after each retrieval.</li>
+ * </ul>
  *
  * @author Tom Gaskins
  * @version $Id: BasicRetrievalService.java 11710 2009-06-17 22:48:37Z tgaskins $
@@ -39,6 +61,14 @@ public final class ExtendedRetrievalService extends WWObjectImpl
     private static final int DEFAULT_POOL_SIZE = 5;
     private static final long DEFAULT_STALE_REQUEST_LIMIT = 30000; // milliseconds
     private static final int DEFAULT_TIME_PRIORITY_GRANULARITY = 500; // milliseconds
+    private static final int DEFAULT_HOST_INITIAL_POOL_SIZE = 2;
+    private static final long DEFAULT_HOST_TARGET_LATENCY = 2000; // milliseconds
+    private static final long STATISTICS_LOG_INTERVAL = 30000; // milliseconds
+
+    public static final String HOST_INITIAL_POOL_SIZE =
+        "nasa.worldwind.retrieve.ExtendedRetrievalService.HostInitialPoolSize";
+    public static final String HOST_TARGET_LATENCY =
+        "nasa.worldwind.retrieve.ExtendedRetrievalService.HostTargetLatency";
 
     private static final String RUNNING_THREAD_NAME_PREFIX = Logging.getMessage(
         "BasicRetrievalService.RunningThreadNamePrefix");
@@ -47,7 +77,13 @@ public final class ExtendedRetrievalService extends WWObjectImpl
 
     private RetrievalExecutor executor; // thread pool for running retrievers
     private ConcurrentLinkedQueue<RetrievalTask> activeTasks; // tasks currently allocated a thread
+    private PriorityQueue<RetrievalTask> pendingTasks; // tasks waiting for a thread, guarded by this
     private int queueSize; // maximum queue size
+    private int poolSize; // maximum number of concurrent retrievals across all hosts
+    private int dispatchedCount; // tasks handed to the executor that haven't finished, guarded by this
+    private HostConcurrencyLimiter hostLimiter;
+    private final RetrievalStatistics statistics = new RetrievalStatistics();
+    private final AtomicLong lastStatisticsLog = new AtomicLong(System.currentTimeMillis());
 
     /**
      * Encapsulates a single threaded retrieval as a {@link java.util.concurrent.FutureTask}.
@@ -57,12 +93,14 @@ public final class ExtendedRetrievalService extends WWObjectImpl
     {
         private Retriever retriever;
         private double priority; // retrieval secondary priority (primary priority is submit time)
+        private String host; // key used to limit concurrent retrievals per host
 
         private RetrievalTask(Retriever retriever, double priority)
         {
             super(retriever);
             this.retriever = retriever;
             this.priority = priority;
+            this.host = getHost(retriever);
         }
 
         public double getPriority()
@@ -146,7 +184,9 @@ public final class ExtendedRetrievalService extends WWObjectImpl
 
         private RetrievalExecutor(int poolSize, int queueSize)
         {
-            super(poolSize, poolSize, THREAD_TIMEOUT, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(queueSize),
+            // Tasks are only handed to the executor when a thread and a host slot are available (see dispatch()),
+            // so this queue is never longer than the pool; prioritisation and eviction happen in pendingTasks.
+            super(poolSize, poolSize, THREAD_TIMEOUT, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
                 new ThreadFactory()
                 {
                     public Thread newThread(Runnable runnable)
@@ -157,19 +197,7 @@ public final class ExtendedRetrievalService extends WWObjectImpl
                         thread.setUncaughtExceptionHandler(ExtendedRetrievalService.this);
                         return thread;
                     }
-                }, new ThreadPoolExecutor.DiscardPolicy() // abandon task when queue is full
-            {
-                // This listener is invoked only when the executor queue is a bounded queue and runs out of room.
-                // If the queue is a java.util.concurrent.PriorityBlockingQueue, this listener is never invoked.
-                public void rejectedExecution(Runnable runnable, ThreadPoolExecutor threadPoolExecutor)
-                {
-                    // Interposes logging for rejected execution
-                    Logging.logger().finer(Logging.getMessage("BasicRetrievalService.ResourceRejected",
-                        ((RetrievalTask) runnable).getRetriever().getName()));
-
-                    super.rejectedExecution(runnable, threadPoolExecutor);
-                }
-            });
+                });
 
             this.staleRequestLimit = Configuration.getLongValue(AVKey.RETRIEVAL_QUEUE_STALE_REQUEST_LIMIT,
                 DEFAULT_STALE_REQUEST_LIMIT);
@@ -255,6 +283,7 @@ public final class ExtendedRetrievalService extends WWObjectImpl
             ExtendedRetrievalService.this.activeTasks.remove(task);
             task.retriever.setEndTime(System.currentTimeMillis());
 
+            boolean success = throwable == null;
             try
             {
                 if (throwable != null)
@@ -268,6 +297,7 @@ public final class ExtendedRetrievalService extends WWObjectImpl
             }
             catch (java.util.concurrent.ExecutionException e)
             {
+                success = false;
                 String message = Logging.getMessage("BasicRetrievalService.ExecutionExceptionDuringRetrieval",
                     task.getRetriever().getName());
                 if (e.getCause() instanceof SocketTimeoutException)
@@ -292,20 +322,30 @@ public final class ExtendedRetrievalService extends WWObjectImpl
             finally
             {
                 Thread.currentThread().setName(IDLE_THREAD_NAME_PREFIX);
+                ExtendedRetrievalService.this.retrievalFinished(task, success);
             }
         }
     }
 
     public ExtendedRetrievalService()
     {
-        Integer poolSize = Configuration.getIntegerValue(AVKey.RETRIEVAL_POOL_SIZE, DEFAULT_POOL_SIZE);
+        this.poolSize = Configuration.getIntegerValue(AVKey.RETRIEVAL_POOL_SIZE, DEFAULT_POOL_SIZE);
         this.queueSize = Configuration.getIntegerValue(AVKey.RETRIEVAL_QUEUE_SIZE, DEFAULT_QUEUE_SIZE);
 
         // this.executor runs the retrievers, each in their own thread
-        this.executor = new RetrievalExecutor(poolSize, this.queueSize);
+        this.executor = new RetrievalExecutor(this.poolSize, this.queueSize);
 
         // this.activeTasks holds the list of currently executing tasks (*not* those pending on the queue)
         this.activeTasks = new ConcurrentLinkedQueue<RetrievalTask>();
+
+        // this.pendingTasks holds the tasks waiting for a thread or a host slot, highest priority first
+        this.pendingTasks = new PriorityQueue<RetrievalTask>(Math.max(1, this.queueSize));
+
+        // this.hostLimiter adapts the number of concurrent retrievals to each host
+        int hostInitialPoolSize = Configuration.getIntegerValue(HOST_INITIAL_POOL_SIZE,
+            DEFAULT_HOST_INITIAL_POOL_SIZE);
+        long hostTargetLatency = Configuration.getLongValue(HOST_TARGET_LATENCY, DEFAULT_HOST_TARGET_LATENCY);
+        this.hostLimiter = new HostConcurrencyLimiter(hostInitialPoolSize, 1, this.poolSize, hostTargetLatency);
     }
 
     public void shutdown(boolean immediately)
@@ -316,6 +356,16 @@ public final class ExtendedRetrievalService extends WWObjectImpl
             this.executor.shutdown();
 
         this.activeTasks.clear();
+
+        synchronized (this)
+        {
+            for (RetrievalTask task : this.pendingTasks)
+            {
+                task.cancel(false);
+                this.statistics.dequeued();
+            }
+            this.pendingTasks.clear();
+        }
     }
 
     /**
@@ -373,14 +423,205 @@ public final class ExtendedRetrievalService extends WWObjectImpl
         retriever.setSubmitTime(System.currentTimeMillis());
 
         // Do not queue duplicates.
-        if (this.activeTasks.contains(task) || this.executor.getQueue().contains(task))
+        if (this.activeTasks.contains(task) || this.pendingTasks.contains(task))
             return null;
 
-        this.executor.execute(task);
+        if (this.pendingTasks.size() >= this.queueSize)
+        {
+            this.removeCancelledTasks();
+        }
+        if (this.pendingTasks.size() >= this.queueSize)
+        {
+            // Queue is full; drop whichever of the new task and the lowest priority queued task should run last.
+            RetrievalTask lowest = this.getLowestPriorityTask();
+            if (lowest == null || task.compareTo(lowest) >= 0)
+            {
+                Logging.logger().finer(Logging.getMessage("BasicRetrievalService.ResourceRejected",
+                    retriever.getName()));
+                this.statistics.dropped();
+                return null;
+            }
+
+            Logging.logger().finer(Logging.getMessage("BasicRetrievalService.ResourceRejected",
+                lowest.getRetriever().getName()));
+            this.pendingTasks.remove(lowest);
+            lowest.cancel(false);
+            this.statistics.dequeued();
+            this.statistics.dropped();
+        }
+
+        this.pendingTasks.add(task);
+        this.statistics.queued();
+        this.dispatch();
 
         return task;
     }
 
+    /**
+     * Hands the highest priority pending tasks to the executor, while there are free threads. Tasks whose host has
+     * reached its concurrent retrieval limit are left on the queue.
+     */
+    private synchronized void dispatch()
+    {
+        if (this.executor.isShutdown())
+            return;
+
+        List<RetrievalTask> hostLimited = null;
+        while (this.dispatchedCount < this.poolSize && !this.pendingTasks.isEmpty())
+        {
+            RetrievalTask task = this.pendingTasks.poll();
+            if (task.isDone())
+            {
+                // Cancelled by the client while queued
+                this.statistics.dequeued();
+                continue;
+            }
+
+            if (!this.hostLimiter.tryAcquire(task.host))
+            {
+                if (hostLimited == null)
+                    hostLimited = new ArrayList<RetrievalTask>();
+                hostLimited.add(task);
+                continue;
+            }
+
+            this.statistics.dequeued();
+            this.statistics.started();
+            this.dispatchedCount++;
+            try
+            {
+                this.executor.execute(task);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // Executor has been shut down
+                this.dispatchedCount--;
+                this.hostLimiter.cancel(task.host);
+                this.statistics.cancelled();
+                task.cancel(false);
+                Logging.logger().finer(Logging.getMessage("BasicRetrievalService.ResourceRejected",
+                    task.getRetriever().getName()));
+            }
+        }
+
+        if (hostLimited != null)
+            this.pendingTasks.addAll(hostLimited);
+    }
+
+    private synchronized void removeCancelledTasks()
+    {
+        Iterator<RetrievalTask> iterator = this.pendingTasks.iterator();
+        while (iterator.hasNext())
+        {
+            if (iterator.next().isDone())
+            {
+                iterator.remove();
+                this.statistics.dequeued();
+            }
+        }
+    }
+
+    private synchronized RetrievalTask getLowestPriorityTask()
+    {
+        RetrievalTask lowest = null;
+        for (RetrievalTask task : this.pendingTasks)
+        {
+            if (lowest == null || task.compareTo(lowest) > 0)
+                lowest = task;
+        }
+        return lowest;
+    }
+
+    /**
+     * Called by the executor when a dispatched task has finished (or was cancelled). Releases the task's host slot,
+     * adapting the host's limit to the result, and dispatches the next pending tasks.
+     *
+     * @param task    the finished task
+     * @param success <code>false</code> if the retrieval threw an exception
+     */
+    private void retrievalFinished(RetrievalTask task, boolean success)
+    {
+        Retriever retriever = task.getRetriever();
+        if (task.isCancelled())
+        {
+            this.hostLimiter.cancel(task.host);
+            this.statistics.cancelled();
+        }
+        else
+        {
+            success = success && isSuccessful(retriever);
+            long latency = Math.max(0, retriever.getEndTime() - retriever.getBeginTime());
+            this.hostLimiter.release(task.host, latency, success);
+            this.statistics.finished(latency, Math.max(0, retriever.getContentLengthRead()), success,
+                retriever.getEndTime());
+        }
+
+        synchronized (this)
+        {
+            this.dispatchedCount--;
+            this.dispatch();
+        }
+
+        long now = System.currentTimeMillis();
+        long lastLog = this.lastStatisticsLog.get();
+        if (now - lastLog > STATISTICS_LOG_INTERVAL && this.lastStatisticsLog.compareAndSet(lastLog, now))
+        {
+            Logging.logger().fine("Retrieval statistics: " + this.statistics + ", host limits "
+                + this.hostLimiter.getLimits());
+        }
+    }
+
+    /**
+     * @param retriever the finished retriever
+     * @return <code>false</code> if the retriever failed in a way that suggests the host is overloaded or
+     *         unreachable (errors, timeouts, server errors, and too many requests responses)
+     */
+    private static boolean isSuccessful(Retriever retriever)
+    {
+        if (retriever instanceof HTTPRetriever)
+        {
+            int responseCode = ((HTTPRetriever) retriever).getResponseCode();
+            if (responseCode >= 500 || responseCode == 429)
+                return false;
+        }
+        return !Retriever.RETRIEVER_STATE_ERROR.equals(retriever.getState());
+    }
+
+    /**
+     * @param retriever the retriever
+     * @return the key used to limit concurrent retrievals to the retriever's host
+     */
+    private static String getHost(Retriever retriever)
+    {
+        if (retriever instanceof URLRetriever)
+            return HostConcurrencyLimiter.getHostKey(((URLRetriever) retriever).getUrl());
+
+        try
+        {
+            return HostConcurrencyLimiter.getHostKey(new URL(retriever.getName()));
+        }
+        catch (MalformedURLException e)
+        {
+            return "";
+        }
+    }
+
+    /**
+     * @return live counters of queued, active, dropped and completed retrievals, transfer rate and latency
+     */
+    public RetrievalStatistics getStatistics()
+    {
+        return this.statistics;
+    }
+
+    /**
+     * @return the current concurrent retrieval limit for each host that has been retrieved from
+     */
+    public Map<String, Integer> getHostLimits()
+    {
+        return this.hostLimiter.getLimits();
+    }
+
     /**
      * @param poolSize the number of threads in the thread pool
      * @throws IllegalArgumentException if <code>poolSize</code> is non-positive
@@ -394,13 +635,28 @@ public final class ExtendedRetrievalService extends WWObjectImpl
             throw new IllegalArgumentException(message);
         }
 
-        this.executor.setCorePoolSize(poolSize);
-        this.executor.setMaximumPoolSize(poolSize);
+        synchronized (this)
+        {
+            // Maximum must never be less than the core size, so change them in the right order.
+            if (poolSize > this.executor.getMaximumPoolSize())
+            {
+                this.executor.setMaximumPoolSize(poolSize);
+                this.executor.setCorePoolSize(poolSize);
+            }
+            else
+            {
+                this.executor.setCorePoolSize(poolSize);
+                this.executor.setMaximumPoolSize(poolSize);
+            }
+            this.poolSize = poolSize;
+            this.hostLimiter.setMaxLimit(poolSize);
+            this.dispatch();
+        }
     }
 
-    public int getRetrieverPoolSize()
+    public synchronized int getRetrieverPoolSize()
     {
-        return this.executor.getCorePoolSize();
+        return this.poolSize;
     }
 
     private boolean hasRetrievers()
@@ -420,16 +676,16 @@ public final class ExtendedRetrievalService extends WWObjectImpl
         return this.hasRetrievers();
     }
 
-    public boolean isAvailable()
+    public synchronized boolean isAvailable()
     {
-        return this.executor.getQueue().size() < this.queueSize;
+        return this.pendingTasks.size() < this.queueSize;
 //            && !WorldWind.getNetworkStatus().isNetworkUnavailable();
     }
 
-    public int getNumRetrieversPending()
+    public synchronized int getNumRetrieversPending()
     {
         // Could use same method to determine active tasks as hasRetrievers() above, but this method only advisory.
-        return this.activeTasks.size() + this.executor.getQueue().size();
+        return this.activeTasks.size() + this.pendingTasks.size();
     }
 
     /**
@@ -446,7 +702,10 @@ public final class ExtendedRetrievalService extends WWObjectImpl
             throw new IllegalArgumentException(msg);
         }
         RetrievalTask task = new RetrievalTask(retriever, 0d);
-        return (this.activeTasks.contains(task) || this.executor.getQueue().contains(task));
+        synchronized (this)
+        {
+            return (this.activeTasks.contains(task) || this.pendingTasks.contains(task));
+        }
     }
 
     public double getProgress()
@@ -477,11 +736,13 @@ public final class ExtendedRetrievalService extends WWObjectImpl
             }
         }
 
-        for (Runnable runnable : this.executor.getQueue())
+        List<RetrievalTask> pending;
+        synchronized (this)
+        {
+            pending = new ArrayList<RetrievalTask>(this.pendingTasks);
+        }
+        for (RetrievalTask task : pending)
         {
-            RetrievalTask task =
-                (RetrievalTask) runnable;
-
             Retriever retriever = task.getRetriever();
             try
             {
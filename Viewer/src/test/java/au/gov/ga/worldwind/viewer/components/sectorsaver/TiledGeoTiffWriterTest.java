@@ -0,0 +1,191 @@
+package au.gov.ga.worldwind.viewer.components.sectorsaver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link TiledGeoTiffWriter} class
+ */
+public class TiledGeoTiffWriterTest
+{
+	private File file;
+
+	@Before
+	public void setup() throws Exception
+	{
+		file = File.createTempFile("TiledGeoTiffWriterTest", ".tif");
+	}
+
+	@After
+	public void tearDown()
+	{
+		file.delete();
+	}
+
+	@Test
+	public void testTilesWrittenOutOfOrderAreReadBackAtTheirPositions() throws Exception
+	{
+		int width = 40, height = 20, tileSize = 16;
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				image.setRGB(x, y, (x << 16) | (y << 8) | (x + y));
+			}
+		}
+
+		TiledGeoTiffWriter writer = new TiledGeoTiffWriter(file, width, height, tileSize, 110, -10, 0.5, 0.25);
+		assertFalse(writer.isBigTiff());
+		assertEquals(3, writer.getTilesAcross());
+		assertEquals(2, writer.getTilesDown());
+		for (int tileY = writer.getTilesDown() - 1; tileY >= 0; tileY--)
+		{
+			for (int tileX = writer.getTilesAcross() - 1; tileX >= 0; tileX--)
+			{
+				writer.writeTile(tileX, tileY, image, tileX * tileSize, tileY * tileSize);
+			}
+		}
+		writer.close();
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			assertEquals(0x4D4D002A, raf.readInt());
+			Map<Integer, Long> tags = readTags(raf);
+			assertEquals(width, tags.get(256).longValue());
+			assertEquals(height, tags.get(257).longValue());
+			assertEquals(tileSize, tags.get(322).longValue());
+			assertEquals(tileSize, tags.get(323).longValue());
+
+			//TileOffsets is out-of-line, as there is more than one tile
+			raf.seek(tags.get(324));
+			long[] offsets = new long[6];
+			for (int i = 0; i < offsets.length; i++)
+			{
+				offsets[i] = raf.readInt() & 0xFFFFFFFFL;
+			}
+
+			for (int y = 0; y < 2 * tileSize; y++)
+			{
+				for (int x = 0; x < 3 * tileSize; x++)
+				{
+					int tile = (y / tileSize) * 3 + x / tileSize;
+					raf.seek(offsets[tile] + ((y % tileSize) * tileSize + x % tileSize) * 3);
+					int rgb = (raf.readUnsignedByte() << 16) | (raf.readUnsignedByte() << 8) | raf.readUnsignedByte();
+					int expected = x < width && y < height ? image.getRGB(x, y) & 0xFFFFFF : 0;
+					assertEquals("Pixel " + x + "," + y, expected, rgb);
+				}
+			}
+
+			raf.seek(tags.get(33922));
+			raf.skipBytes(24);
+			assertEquals(110, raf.readDouble(), 0);
+			assertEquals(-10, raf.readDouble(), 0);
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	@Test
+	public void testImagesLargerThan4GBAreWrittenAsBigTiff() throws Exception
+	{
+		//157x157 tiles of 256x256 RGB pixels is more than 4 GB; tiles not written are left sparse
+		int size = 40000, tileSize = 256;
+		BufferedImage image = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_RGB);
+		image.setRGB(0, 0, 0x123456);
+		image.setRGB(size % tileSize - 1, size % tileSize - 1, 0xABCDEF);
+
+		TiledGeoTiffWriter writer = new TiledGeoTiffWriter(file, size, size, tileSize, 110, -10, 0.5, 0.25);
+		assertTrue(writer.isBigTiff());
+		int last = writer.getTilesAcross() - 1;
+		writer.writeTile(last, last, image, 0, 0);
+		writer.close();
+		assertTrue(file.length() > 0xFFFFFFFFL);
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			assertEquals(0x4D4D002B, raf.readInt());
+			assertEquals(0x00080000, raf.readInt());
+			raf.seek(raf.readLong());
+			long entries = raf.readLong();
+			Map<Integer, Long> tags = new HashMap<Integer, Long>();
+			Map<Integer, Integer> types = new HashMap<Integer, Integer>();
+			for (int i = 0; i < entries; i++)
+			{
+				int tag = raf.readUnsignedShort();
+				types.put(tag, raf.readUnsignedShort());
+				raf.readLong(); //count
+				tags.put(tag, raf.readLong());
+			}
+			assertEquals((long) size << 32, tags.get(256).longValue());
+			assertEquals(16, types.get(324).intValue());
+
+			int tileCount = writer.getTilesAcross() * writer.getTilesDown();
+			raf.seek(tags.get(324) + (tileCount - 1) * 8L);
+			long lastOffset = raf.readLong();
+			assertTrue(lastOffset > 0xFFFFFFFFL);
+
+			raf.seek(lastOffset);
+			assertEquals(0x123456, (raf.readUnsignedByte() << 16) | (raf.readUnsignedByte() << 8)
+					| raf.readUnsignedByte());
+			raf.seek(lastOffset + ((size % tileSize - 1) * tileSize + size % tileSize - 1) * 3);
+			assertEquals(0xABCDEF, (raf.readUnsignedByte() << 16) | (raf.readUnsignedByte() << 8)
+					| raf.readUnsignedByte());
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidTileSize() throws Exception
+	{
+		new TiledGeoTiffWriter(file, 10, 10, 10, 0, 0, 1, 1);
+	}
+
+	/**
+	 * Read the first value (or the value offset, for out-of-line values) of
+	 * each tag in the first IFD.
+	 */
+	private static Map<Integer, Long> readTags(RandomAccessFile raf) throws Exception
+	{
+		Map<Integer, Long> tags = new HashMap<Integer, Long>();
+		raf.seek(raf.readInt());
+		int entries = raf.readUnsignedShort();
+		for (int i = 0; i < entries; i++)
+		{
+			int tag = raf.readUnsignedShort();
+			int type = raf.readUnsignedShort();
+			long count = raf.readInt();
+			int size = type == 3 ? 2 : type == 12 ? 8 : 4;
+			long value;
+			if (size * count > 4)
+			{
+				value = raf.readInt() & 0xFFFFFFFFL;
+			}
+			else
+			{
+				value = size == 2 ? raf.readUnsignedShort() : raf.readInt() & 0xFFFFFFFFL;
+				raf.skipBytes(4 - size);
+			}
+			tags.put(tag, value);
+		}
+		return tags;
+	}
+}
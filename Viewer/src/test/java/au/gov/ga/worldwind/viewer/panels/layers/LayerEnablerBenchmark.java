@@ -0,0 +1,115 @@
+package au.gov.ga.worldwind.viewer.panels.layers;
+
+import gov.nasa.worldwind.BasicModel;
+import gov.nasa.worldwind.WorldWindowImpl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.media.opengl.GLContext;
+
+/**
+ * Headless benchmark measuring how long the {@link LayerEnabler} takes to load
+ * a large layer tree from file-based layer definitions. Not a unit test; run
+ * it with the test classpath:
+ * 
+ * <pre>
+ * java au.gov.ga.worldwind.viewer.panels.layers.LayerEnablerBenchmark [layers] [iterations]
+ * </pre>
+ * 
+ * Defaults to 500 layers. Every fourth layer shares its definition file with
+ * the previous layer, to include shared downloads. Prints the time taken by
+ * each iteration until every layer is in the layer list.
+ */
+public class LayerEnablerBenchmark
+{
+	private static final long TIMEOUT = 120000; //milliseconds
+
+	public static void main(String[] args) throws Exception
+	{
+		int layerCount = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		File dir = File.createTempFile("layers", "");
+		dir.delete();
+		dir.mkdirs();
+		try
+		{
+			List<File> files = new ArrayList<File>();
+			for (int i = 0; i < layerCount; i++)
+			{
+				files.add(i % 4 == 3 ? files.get(i - 1) : writeLayerDefinition(dir, "layer" + i + ".xml"));
+			}
+
+			for (int i = 0; i < iterations; i++)
+			{
+				BasicModel model = new BasicModel();
+				model.setLayers(new SectionListLayerList());
+				model.getGlobe().setElevationModel(new SectionListCompoundElevationModel());
+				WorldWindowImpl worldWindow = new WorldWindowImpl()
+				{
+					@Override
+					public GLContext getContext()
+					{
+						return null;
+					}
+				};
+				worldWindow.setModel(model);
+				LayerEnabler enabler = new LayerEnabler(worldWindow);
+
+				List<ILayerNode> nodes = new ArrayList<ILayerNode>();
+				for (int j = 0; j < layerCount; j++)
+				{
+					nodes.add(new LayerNode("Layer " + j, null, null, false, files.get(j).toURI().toURL(), true, 1.0,
+							null));
+				}
+
+				long start = System.nanoTime();
+				enabler.enable(nodes);
+				long deadline = System.currentTimeMillis() + TIMEOUT;
+				while ((enabler.isLoading() || model.getLayers().size() < layerCount)
+						&& System.currentTimeMillis() < deadline)
+				{
+					Thread.sleep(1);
+				}
+				long time = System.nanoTime() - start;
+
+				System.out.println("Iteration " + (i + 1) + ": loaded " + model.getLayers().size() + "/" + layerCount
+						+ " layers in " + (time / 1000000) + "ms");
+			}
+		}
+		finally
+		{
+			File[] files = dir.listFiles();
+			if (files != null)
+			{
+				for (File file : files)
+				{
+					file.delete();
+				}
+			}
+			dir.delete();
+		}
+	}
+
+	private static File writeLayerDefinition(File dir, String filename) throws IOException
+	{
+		File file = new File(dir, filename);
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try
+		{
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			writer.write("<Layer className=\"gov.nasa.worldwind.layers.RenderableLayer\" />\n");
+		}
+		finally
+		{
+			writer.close();
+		}
+		return file;
+	}
+}
@@ -0,0 +1,158 @@
+package au.gov.ga.worldwind.viewer.panels.layers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import gov.nasa.worldwind.BasicModel;
+import gov.nasa.worldwind.WorldWindowImpl;
+import gov.nasa.worldwind.layers.Layer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.media.opengl.GLContext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link LayerEnabler} class, loading file-based layer
+ * definitions on the enabler's loader pool.
+ */
+public class LayerEnablerTest
+{
+	private static final long TIMEOUT = 30000; //milliseconds
+
+	private File dir;
+	private BasicModel model;
+	private LayerEnabler classUnderTest;
+
+	@Before
+	public void setup() throws IOException
+	{
+		dir = File.createTempFile("layers", "");
+		dir.delete();
+		dir.mkdirs();
+
+		model = new BasicModel();
+		model.setLayers(new SectionListLayerList());
+		model.getGlobe().setElevationModel(new SectionListCompoundElevationModel());
+
+		WorldWindowImpl worldWindow = new WorldWindowTestImpl();
+		worldWindow.setModel(model);
+
+		classUnderTest = new LayerEnabler(worldWindow);
+	}
+
+	@After
+	public void tearDown()
+	{
+		File[] files = dir.listFiles();
+		if (files != null)
+		{
+			for (File file : files)
+			{
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void testLayersAreInTreeOrder() throws Exception
+	{
+		//layers complete loading in any order on the loader pool, but must be
+		//added to the layer list in the order of the nodes
+		List<ILayerNode> nodes = new ArrayList<ILayerNode>();
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 32; i++)
+		{
+			String name = "Layer " + i;
+			nodes.add(createNode(name, writeLayerDefinition("layer" + i + ".xml")));
+			expected.add(name);
+		}
+
+		classUnderTest.enable(nodes);
+		waitForLayers(nodes.size());
+
+		List<String> actual = new ArrayList<String>();
+		for (Layer layer : model.getLayers())
+		{
+			actual.add(layer.getName());
+		}
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testNodesSharingUrlShareDownload() throws Exception
+	{
+		URL url = writeLayerDefinition("shared.xml");
+		ILayerNode node1 = createNode("Shared 1", url);
+		ILayerNode node2 = createNode("Shared 2", url);
+		List<ILayerNode> nodes = new ArrayList<ILayerNode>();
+		nodes.add(node1);
+		nodes.add(node2);
+
+		classUnderTest.enable(nodes);
+		waitForLayers(nodes.size());
+
+		assertEquals(1, classUnderTest.getDownloadCount());
+
+		//each node still gets its own layer
+		Layer layer1 = classUnderTest.getLayer(node1);
+		Layer layer2 = classUnderTest.getLayer(node2);
+		assertNotNull(layer1);
+		assertNotNull(layer2);
+		assertNotSame(layer1, layer2);
+		assertEquals("Shared 1", layer1.getName());
+		assertEquals("Shared 2", layer2.getName());
+	}
+
+	private URL writeLayerDefinition(String filename) throws IOException
+	{
+		File file = new File(dir, filename);
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try
+		{
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			writer.write("<Layer className=\"gov.nasa.worldwind.layers.RenderableLayer\" />\n");
+		}
+		finally
+		{
+			writer.close();
+		}
+		return file.toURI().toURL();
+	}
+
+	private static ILayerNode createNode(String name, URL url)
+	{
+		return new LayerNode(name, null, null, false, url, true, 1.0, null);
+	}
+
+	private void waitForLayers(int count) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while ((classUnderTest.isLoading() || model.getLayers().size() < count)
+				&& System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(10);
+		}
+		assertEquals(count, model.getLayers().size());
+	}
+
+	private static class WorldWindowTestImpl extends WorldWindowImpl
+	{
+		@Override
+		public GLContext getContext()
+		{
+			return null;
+		}
+	}
+}
@@ -1,9 +1,12 @@
 package au.gov.ga.worldwind.viewer.panels.layers;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 
 import org.junit.Test;
 import org.w3c.dom.Document;
@@ -54,6 +57,65 @@ public class LayerTreePersistenceTest
 		assertEquals(null, LayerTreePersistance.readFromXML(null));
 	}
 	
+	@Test
+	public void testSessionRoundTrip() throws Exception
+	{
+		File xmlFile = File.createTempFile("layers", ".xml");
+		xmlFile.delete();
+		File sessionFile = new File(xmlFile.getParentFile(), xmlFile.getName().replace(".xml", ".dat"));
+		try
+		{
+			INode root = createNodeTree();
+			INode transientNode = new FolderNode("transient", null, null, false);
+			transientNode.setTransient(true);
+			root.addChild(transientNode);
+
+			assertTrue(LayerTreePersistance.saveToSession(root, xmlFile));
+			assertTrue(sessionFile.exists());
+
+			INode result = LayerTreePersistance.readFromSession(xmlFile);
+			assertNodeTreesEqual(createNodeTree(), result);
+
+			//saving an unchanged tree shouldn't rewrite the file
+			assertFalse(LayerTreePersistance.saveToSession(result, xmlFile));
+		}
+		finally
+		{
+			sessionFile.delete();
+		}
+	}
+
+	@Test
+	public void testSessionMigratesFromXml() throws Exception
+	{
+		File xmlFile = File.createTempFile("layers", ".xml");
+		File sessionFile = new File(xmlFile.getParentFile(), xmlFile.getName().replace(".xml", ".dat"));
+		try
+		{
+			LayerTreePersistance.saveToXML(createNodeTree(), xmlFile);
+
+			INode result = LayerTreePersistance.readFromSession(xmlFile);
+			assertNodeTreesEqual(createNodeTree(), result);
+
+			LayerTreePersistance.saveToSession(result, xmlFile);
+			sessionFile.setLastModified(xmlFile.lastModified() + 1000);
+			assertNodeTreesEqual(createNodeTree(), LayerTreePersistance.readFromSession(xmlFile));
+		}
+		finally
+		{
+			xmlFile.delete();
+			sessionFile.delete();
+		}
+	}
+
+	@Test
+	public void testSessionWithNoFiles() throws Exception
+	{
+		File xmlFile = File.createTempFile("layers", ".xml");
+		xmlFile.delete();
+		assertNull(LayerTreePersistance.readFromSession(xmlFile));
+	}
+
 	private INode createNodeTree()
 	{
 		FolderNode root = new FolderNode(null, null, null, true);
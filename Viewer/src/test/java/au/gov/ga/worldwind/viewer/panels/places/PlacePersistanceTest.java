@@ -0,0 +1,148 @@
+package au.gov.ga.worldwind.viewer.panels.places;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import gov.nasa.worldwind.geom.LatLon;
+import gov.nasa.worldwind.geom.Position;
+import gov.nasa.worldwind.geom.Vec4;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import au.gov.ga.worldwind.common.util.URLUtil;
+import au.gov.ga.worldwind.viewer.panels.layers.FolderNode;
+import au.gov.ga.worldwind.viewer.panels.layers.LayerNode;
+import au.gov.ga.worldwind.viewer.util.SessionInputStream;
+
+/**
+ * Unit tests for the {@link PlacePersistance} class
+ */
+public class PlacePersistanceTest
+{
+	private File xmlFile;
+	private File sessionFile;
+
+	@Before
+	public void setup() throws Exception
+	{
+		xmlFile = File.createTempFile("places", ".xml");
+		xmlFile.delete();
+		sessionFile = SessionInputStream.getBinaryFile(xmlFile);
+	}
+
+	@After
+	public void tearDown()
+	{
+		xmlFile.delete();
+		sessionFile.delete();
+	}
+
+	@Test
+	public void testSessionRoundTrip() throws Exception
+	{
+		assertTrue(PlacePersistance.saveToSession(createPlaces(), xmlFile));
+		assertTrue(sessionFile.exists());
+		assertFalse(xmlFile.exists());
+
+		List<Place> result = PlacePersistance.readFromSession(xmlFile, null);
+		assertPlacesEqual(createPlaces(), result);
+
+		//saving unchanged places shouldn't rewrite the file
+		assertFalse(PlacePersistance.saveToSession(result, xmlFile));
+
+		result.get(0).setLabel("changed");
+		assertTrue(PlacePersistance.saveToSession(result, xmlFile));
+		assertEquals("changed", PlacePersistance.readFromSession(xmlFile, null).get(0).getLabel());
+	}
+
+	@Test
+	public void testSessionMigratesFromXml() throws Exception
+	{
+		PlacePersistance.saveToXML(createPlaces(), xmlFile);
+
+		List<Place> result = PlacePersistance.readFromSession(xmlFile, null);
+		assertPlacesEqual(createPlaces(), result);
+
+		assertTrue(PlacePersistance.saveToSession(result, xmlFile));
+		sessionFile.setLastModified(xmlFile.lastModified() + 1000);
+		assertTrue(SessionInputStream.isBinaryFileCurrent(xmlFile));
+		assertPlacesEqual(createPlaces(), PlacePersistance.readFromSession(xmlFile, null));
+
+		//a hand edited XML file is newer than the session file, so is read instead
+		List<Place> edited = createPlaces();
+		edited.remove(1);
+		PlacePersistance.saveToXML(edited, xmlFile);
+		xmlFile.setLastModified(sessionFile.lastModified() + 1000);
+		assertPlacesEqual(edited, PlacePersistance.readFromSession(xmlFile, null));
+	}
+
+	@Test
+	public void testSessionWithNoFiles() throws Exception
+	{
+		assertNull(PlacePersistance.readFromSession(xmlFile, null));
+	}
+
+	private List<Place> createPlaces()
+	{
+		List<Place> places = new ArrayList<Place>();
+
+		Place simple = new Place("simple", LatLon.fromDegrees(-35.3, 149.1), 1000);
+		places.add(simple);
+
+		Place camera = new Place("camera", LatLon.fromDegrees(10, -20));
+		camera.setVisible(false);
+		camera.setMaxZoom(5000);
+		camera.setSaveCamera(true);
+		camera.setEyePosition(Position.fromDegrees(9, -21, 20000));
+		camera.setUpVector(new Vec4(0, 1, 0, 1));
+		camera.setExcludeFromPlaylist(true);
+		camera.setVerticalExaggeration(2.5);
+		places.add(camera);
+
+		Place layers = new Place("layers", LatLon.fromDegrees(0, 0));
+		FolderNode root = new FolderNode(null, null, null, true);
+		root.addChild(new LayerNode("layer", null, null, true, URLUtil.fromString("file://layer/layer.xml"), true,
+				0.5, null));
+		layers.setLayers(root);
+		places.add(layers);
+
+		return places;
+	}
+
+	private void assertPlacesEqual(List<Place> expected, List<Place> result)
+	{
+		assertEquals(expected.size(), result.size());
+		for (int i = 0; i < expected.size(); i++)
+		{
+			Place e = expected.get(i);
+			Place r = result.get(i);
+			assertEquals(e.getLabel(), r.getLabel());
+			assertEquals(e.getLatLon(), r.getLatLon());
+			assertEquals(e.isVisible(), r.isVisible());
+			assertEquals(e.getMinZoom(), r.getMinZoom(), 0.0001);
+			assertEquals(e.getMaxZoom(), r.getMaxZoom(), 0.0001);
+			assertEquals(e.isSaveCamera(), r.isSaveCamera());
+			assertEquals(e.getEyePosition(), r.getEyePosition());
+			assertEquals(e.getUpVector(), r.getUpVector());
+			assertEquals(e.isExcludeFromPlaylist(), r.isExcludeFromPlaylist());
+			assertEquals(e.getVerticalExaggeration(), r.getVerticalExaggeration());
+			assertEquals(e.getLayers() == null, r.getLayers() == null);
+			if (e.getLayers() != null)
+			{
+				assertEquals(e.getLayers().getChildCount(), r.getLayers().getChildCount());
+				LayerNode el = (LayerNode) e.getLayers().getChild(0);
+				LayerNode rl = (LayerNode) r.getLayers().getChild(0);
+				assertEquals(el.getName(), rl.getName());
+				assertEquals(el.getLayerURL(), rl.getLayerURL());
+				assertEquals(el.getOpacity(), rl.getOpacity(), 0.0001);
+			}
+		}
+	}
+}
@@ -0,0 +1,242 @@
+package au.gov.ga.worldwind.viewer.retrieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit tests for the {@link HostConcurrencyLimiter} class, driven by requests
+ * to a local HTTP server with injected latency and errors.
+ */
+public class HostConcurrencyLimiterTest
+{
+	private static final int MAX_LIMIT = 8;
+	private static final long TARGET_LATENCY = 50;
+	private static final int RESPONSE_SIZE = 1000;
+
+	private HttpServer server;
+	private ExecutorService serverExecutor;
+	private ExecutorService clientExecutor;
+	private URL url;
+
+	private volatile long injectedLatency = 0;
+	private volatile int injectedResponseCode = 200;
+	private final AtomicInteger serverActive = new AtomicInteger();
+	private final AtomicInteger serverMaxActive = new AtomicInteger();
+
+	private HostConcurrencyLimiter limiter;
+	private RetrievalStatistics statistics;
+	private String host;
+
+	@BeforeClass
+	public static void setupClass()
+	{
+		//otherwise small responses are delayed ~40ms by Nagle's algorithm, hiding the injected latency
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	@Before
+	public void setup() throws IOException
+	{
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				int active = serverActive.incrementAndGet();
+				int max;
+				while ((max = serverMaxActive.get()) < active && !serverMaxActive.compareAndSet(max, active))
+				{
+				}
+				try
+				{
+					Thread.sleep(injectedLatency);
+				}
+				catch (InterruptedException e)
+				{
+				}
+				finally
+				{
+					serverActive.decrementAndGet();
+				}
+				exchange.sendResponseHeaders(injectedResponseCode, RESPONSE_SIZE);
+				OutputStream os = exchange.getResponseBody();
+				os.write(new byte[RESPONSE_SIZE]);
+				os.close();
+			}
+		});
+		serverExecutor = Executors.newCachedThreadPool();
+		server.setExecutor(serverExecutor);
+		server.start();
+
+		url = new URL("http://localhost:" + server.getAddress().getPort() + "/tile");
+		clientExecutor = Executors.newFixedThreadPool(2 * MAX_LIMIT);
+		limiter = new HostConcurrencyLimiter(2, 1, MAX_LIMIT, TARGET_LATENCY);
+		statistics = new RetrievalStatistics();
+		host = HostConcurrencyLimiter.getHostKey(url);
+	}
+
+	@After
+	public void tearDown()
+	{
+		clientExecutor.shutdownNow();
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
+	@Test
+	public void testHostKey() throws Exception
+	{
+		assertEquals("example.com:80", HostConcurrencyLimiter.getHostKey(new URL("http://Example.com/a")));
+		assertEquals("example.com:8080", HostConcurrencyLimiter.getHostKey(new URL("http://example.com:8080/a")));
+		assertEquals("", HostConcurrencyLimiter.getHostKey(new URL("file:/tmp/a")));
+		assertEquals("", HostConcurrencyLimiter.getHostKey(null));
+	}
+
+	@Test
+	public void testAcquireRespectsLimit()
+	{
+		assertEquals(2, limiter.getLimit(host));
+		assertTrue(limiter.tryAcquire(host));
+		assertTrue(limiter.tryAcquire(host));
+		assertFalse(limiter.tryAcquire(host));
+		assertTrue(limiter.tryAcquire("other:80"));
+
+		limiter.cancel(host);
+		assertEquals(1, limiter.getActive(host));
+		assertEquals(2, limiter.getLimit(host));
+		assertTrue(limiter.tryAcquire(host));
+	}
+
+	@Test
+	public void testLimitGrowsForFastHost() throws Exception
+	{
+		runRequests(200);
+
+		assertEquals(MAX_LIMIT, limiter.getLimit(host));
+		assertTrue(serverMaxActive.get() <= MAX_LIMIT);
+		assertTrue(serverMaxActive.get() > 2);
+		assertEquals(200, statistics.getCompleted());
+		assertEquals(200 * RESPONSE_SIZE, statistics.getBytes());
+		assertEquals(0, statistics.getActive());
+	}
+
+	@Test
+	public void testLimitShrinksForSlowHost() throws Exception
+	{
+		runRequests(200);
+		assertEquals(MAX_LIMIT, limiter.getLimit(host));
+
+		injectedLatency = 2 * TARGET_LATENCY;
+		runRequests(30);
+
+		assertTrue(limiter.getLimit(host) <= 2);
+		assertTrue(statistics.getP95Latency() >= injectedLatency);
+	}
+
+	@Test
+	public void testLimitHalvesOnErrors() throws Exception
+	{
+		runRequests(200);
+		assertEquals(MAX_LIMIT, limiter.getLimit(host));
+
+		injectedResponseCode = 503;
+		runRequests(8);
+
+		assertEquals(1, limiter.getLimit(host));
+		assertEquals(8, statistics.getFailed());
+
+		//recovers once the server is healthy again
+		injectedResponseCode = 200;
+		runRequests(100);
+		assertTrue(limiter.getLimit(host) > 2);
+	}
+
+	@Test
+	public void testMaxLimitCanBeReduced() throws Exception
+	{
+		runRequests(200);
+		assertEquals(MAX_LIMIT, limiter.getLimit(host));
+
+		limiter.setMaxLimit(3);
+		assertEquals(3, limiter.getLimit(host));
+
+		serverMaxActive.set(0);
+		runRequests(50);
+		assertEquals(3, limiter.getLimit(host));
+		assertTrue(serverMaxActive.get() <= 3);
+	}
+
+	/**
+	 * Make the given number of requests to the server, never exceeding the
+	 * limiter's limit, and wait for them all to complete.
+	 */
+	private void runRequests(int count) throws Exception
+	{
+		final CountDownLatch latch = new CountDownLatch(count);
+		for (int i = 0; i < count; i++)
+		{
+			while (!limiter.tryAcquire(host))
+			{
+				Thread.sleep(1);
+			}
+			statistics.started();
+			clientExecutor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					long start = System.currentTimeMillis();
+					boolean success = false;
+					long bytes = 0;
+					try
+					{
+						HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+						success = connection.getResponseCode() < 500;
+						InputStream is = success ? connection.getInputStream() : connection.getErrorStream();
+						while (is != null && is.read() >= 0)
+						{
+							bytes++;
+						}
+						if (is != null)
+							is.close();
+					}
+					catch (IOException e)
+					{
+						success = false;
+					}
+					finally
+					{
+						long latency = System.currentTimeMillis() - start;
+						limiter.release(host, latency, success);
+						statistics.finished(latency, success ? bytes : 0, success);
+						latch.countDown();
+					}
+				}
+			});
+		}
+		assertTrue(latch.await(30, TimeUnit.SECONDS));
+	}
+}
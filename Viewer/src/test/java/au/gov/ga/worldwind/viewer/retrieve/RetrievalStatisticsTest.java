@@ -0,0 +1,92 @@
+package au.gov.ga.worldwind.viewer.retrieve;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link RetrievalStatistics} class
+ */
+public class RetrievalStatisticsTest
+{
+	private static final double DELTA = 0.0001;
+
+	@Test
+	public void testQueuedAndActiveCounts()
+	{
+		RetrievalStatistics statistics = new RetrievalStatistics();
+		statistics.queued();
+		statistics.queued();
+		statistics.queued();
+		statistics.dequeued();
+		statistics.started();
+		statistics.started();
+		statistics.dropped();
+
+		assertEquals(2, statistics.getQueued());
+		assertEquals(2, statistics.getActive());
+		assertEquals(1, statistics.getDropped());
+
+		statistics.finished(10, 100, true, 1000);
+		statistics.cancelled();
+		assertEquals(0, statistics.getActive());
+		assertEquals(1, statistics.getCompleted());
+		assertEquals(0, statistics.getFailed());
+	}
+
+	@Test
+	public void testLatencyPercentiles()
+	{
+		RetrievalStatistics statistics = new RetrievalStatistics();
+		assertEquals(0, statistics.getP95Latency());
+
+		for (int i = 1; i <= 100; i++)
+		{
+			statistics.started();
+			statistics.finished(i, 0, true, 1000);
+		}
+		assertEquals(95, statistics.getP95Latency());
+		assertEquals(50, statistics.getLatencyPercentile(50));
+		assertEquals(100, statistics.getLatencyPercentile(100));
+		assertEquals(1, statistics.getLatencyPercentile(0));
+	}
+
+	@Test
+	public void testLatencyOnlyUsesRecentSamples()
+	{
+		RetrievalStatistics statistics = new RetrievalStatistics();
+		for (int i = 0; i < RetrievalStatistics.LATENCY_SAMPLES; i++)
+		{
+			statistics.started();
+			statistics.finished(10000, 0, true, 1000);
+		}
+		for (int i = 0; i < RetrievalStatistics.LATENCY_SAMPLES; i++)
+		{
+			statistics.started();
+			statistics.finished(20, 0, false, 1000);
+		}
+		assertEquals(20, statistics.getP95Latency());
+		assertEquals(RetrievalStatistics.LATENCY_SAMPLES, statistics.getFailed());
+	}
+
+	@Test
+	public void testBytesPerSecondUsesSlidingWindow()
+	{
+		RetrievalStatistics statistics = new RetrievalStatistics();
+		long start = 1000000;
+		for (int second = 0; second < RetrievalStatistics.RATE_WINDOW; second++)
+		{
+			statistics.started();
+			statistics.finished(1, 1000, true, start + second * 1000);
+		}
+		long end = start + (RetrievalStatistics.RATE_WINDOW - 1) * 1000;
+		assertEquals(1000, statistics.getBytesPerSecond(end), DELTA);
+
+		//the first second falls out of the window
+		assertEquals(800, statistics.getBytesPerSecond(end + 1000), DELTA);
+
+		//nothing in the window
+		assertEquals(0, statistics.getBytesPerSecond(end + RetrievalStatistics.RATE_WINDOW * 1000), DELTA);
+		assertEquals(RetrievalStatistics.RATE_WINDOW * 1000, statistics.getBytes());
+	}
+}
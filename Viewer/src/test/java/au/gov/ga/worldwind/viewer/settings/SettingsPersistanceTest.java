@@ -0,0 +1,154 @@
+package au.gov.ga.worldwind.viewer.settings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.beans.XMLEncoder;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import au.gov.ga.worldwind.common.util.Proxy.ProxyType;
+import au.gov.ga.worldwind.viewer.settings.Settings.ThemePanelProperties;
+import au.gov.ga.worldwind.viewer.util.SessionInputStream;
+
+/**
+ * Unit tests for the {@link SettingsPersistance} class
+ */
+public class SettingsPersistanceTest
+{
+	private File xmlFile;
+	private File sessionFile;
+
+	@Before
+	public void setup() throws Exception
+	{
+		xmlFile = File.createTempFile("settings", ".xml");
+		xmlFile.delete();
+		sessionFile = SessionInputStream.getBinaryFile(xmlFile);
+	}
+
+	@After
+	public void tearDown()
+	{
+		xmlFile.delete();
+		sessionFile.delete();
+	}
+
+	@Test
+	public void testSessionRoundTrip() throws Exception
+	{
+		SettingsPersistance.save(createSettings(), xmlFile);
+		assertTrue(sessionFile.exists());
+		assertFalse(xmlFile.exists());
+
+		assertSettingsEqual(createSettings(), SettingsPersistance.load(xmlFile));
+	}
+
+	@Test
+	public void testUnchangedSettingsAreNotRewritten() throws Exception
+	{
+		SettingsPersistance.save(createSettings(), xmlFile);
+		sessionFile.setLastModified(1000000);
+
+		SettingsPersistance.save(SettingsPersistance.load(xmlFile), xmlFile);
+		assertEquals(1000000, sessionFile.lastModified());
+	}
+
+	@Test
+	public void testSessionMigratesFromXml() throws Exception
+	{
+		Settings settings = createSettings();
+		XMLEncoder encoder = new XMLEncoder(new FileOutputStream(xmlFile));
+		encoder.writeObject(settings);
+		encoder.close();
+
+		Settings result = SettingsPersistance.load(xmlFile);
+		assertSettingsEqual(settings, result);
+
+		//the superseded XML file is left in place for previous versions
+		long xmlModified = xmlFile.lastModified();
+		sessionFile.delete();
+		SettingsPersistance.save(result, xmlFile);
+		assertTrue(sessionFile.exists());
+		assertTrue(SessionInputStream.isBinaryFileCurrent(xmlFile));
+		assertTrue(xmlFile.exists());
+		assertEquals(xmlModified, xmlFile.lastModified());
+		assertSettingsEqual(settings, SettingsPersistance.loadFromXML(xmlFile));
+
+		assertSettingsEqual(settings, SettingsPersistance.load(xmlFile));
+	}
+
+	@Test
+	public void testNewerXmlIsUsed() throws Exception
+	{
+		//a previous version saved the XML file after the session file was written
+		SettingsPersistance.save(createSettings(), xmlFile);
+		sessionFile.setLastModified(1000000);
+		Settings settings = createSettings();
+		settings.setDisplayId("downgraded");
+		XMLEncoder encoder = new XMLEncoder(new FileOutputStream(xmlFile));
+		encoder.writeObject(settings);
+		encoder.close();
+
+		assertFalse(SessionInputStream.isBinaryFileCurrent(xmlFile));
+		assertEquals("downgraded", SettingsPersistance.load(xmlFile).getDisplayId());
+	}
+
+	@Test
+	public void testLoadWithNoFiles() throws Exception
+	{
+		assertNull(SettingsPersistance.load(xmlFile));
+	}
+
+	private Settings createSettings()
+	{
+		Settings settings = new Settings();
+		settings.setVerticalExaggeration(3.0);
+		settings.setPlacesPause(2500);
+		settings.setDisplayId("display");
+		settings.setShowDownloads(false);
+		settings.setStereoMode(Settings.StereoMode.STEREO_BUFFER);
+		settings.getProxy().setHost("proxy.example.com");
+		settings.getProxy().setPort(8080);
+		settings.getProxy().setType(ProxyType.SOCKS);
+
+		List<ThemePanelProperties> panels = new ArrayList<ThemePanelProperties>();
+		ThemePanelProperties panel = new ThemePanelProperties();
+		panel.setClassName("panel");
+		panel.setEnabled(true);
+		panel.setExpanded(true);
+		panel.setWeight(0.25f);
+		panels.add(panel);
+		settings.setPanelProperties(panels);
+		return settings;
+	}
+
+	private void assertSettingsEqual(Settings expected, Settings result)
+	{
+		assertNotNull(result);
+		assertEquals(expected.getVerticalExaggeration(), result.getVerticalExaggeration(), 0.0001);
+		assertEquals(expected.getPlacesPause(), result.getPlacesPause());
+		assertEquals(expected.getDisplayId(), result.getDisplayId());
+		assertEquals(expected.isShowDownloads(), result.isShowDownloads());
+		assertEquals(expected.getStereoMode(), result.getStereoMode());
+		assertEquals(expected.getProxy().getHost(), result.getProxy().getHost());
+		assertEquals(expected.getProxy().getPort(), result.getProxy().getPort());
+		assertEquals(expected.getProxy().getType(), result.getProxy().getType());
+		assertEquals(expected.getPanelProperties().size(), result.getPanelProperties().size());
+		ThemePanelProperties e = expected.getPanelProperties().get(0);
+		ThemePanelProperties r = result.getPanelProperties().get(0);
+		assertEquals(e.getClassName(), r.getClassName());
+		assertEquals(e.isEnabled(), r.isEnabled());
+		assertEquals(e.isExpanded(), r.isExpanded());
+		assertEquals(e.getWeight(), r.getWeight(), 0.0001);
+	}
+}
@@ -0,0 +1,178 @@
+package au.gov.ga.worldwind.viewer.util;
+
+import gov.nasa.worldwind.geom.LatLon;
+import gov.nasa.worldwind.geom.Position;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import au.gov.ga.worldwind.common.util.URLUtil;
+import au.gov.ga.worldwind.viewer.panels.layers.FolderNode;
+import au.gov.ga.worldwind.viewer.panels.layers.INode;
+import au.gov.ga.worldwind.viewer.panels.layers.LayerNode;
+import au.gov.ga.worldwind.viewer.panels.layers.LayerTreePersistance;
+import au.gov.ga.worldwind.viewer.panels.places.Place;
+import au.gov.ga.worldwind.viewer.panels.places.PlacePersistance;
+
+/**
+ * Headless benchmark comparing the XML and binary session persistence of a
+ * large places list and layer tree. Not a unit test; run it with the test
+ * classpath:
+ * 
+ * <pre>
+ * java au.gov.ga.worldwind.viewer.util.SessionPersistenceBenchmark [places] [nodes] [iterations]
+ * </pre>
+ * 
+ * Defaults to 10000 places and a 2000 node layer tree. Prints the best time
+ * of each operation over the iterations.
+ */
+public class SessionPersistenceBenchmark
+{
+	public static void main(String[] args) throws Exception
+	{
+		int placeCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int nodeCount = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		List<Place> places = createPlaces(placeCount);
+		INode tree = createTree(nodeCount);
+
+		long[] best = new long[10];
+		for (int i = 0; i < best.length; i++)
+		{
+			best[i] = Long.MAX_VALUE;
+		}
+		long placesXmlSize = 0, placesSessionSize = 0, layersXmlSize = 0, layersSessionSize = 0;
+
+		for (int i = 0; i < iterations; i++)
+		{
+			File placesFile = createTempFile("places");
+			File layersFile = createTempFile("layers");
+			try
+			{
+				long start = System.nanoTime();
+				PlacePersistance.saveToXML(places, placesFile);
+				best[0] = Math.min(best[0], System.nanoTime() - start);
+
+				start = System.nanoTime();
+				PlacePersistance.readFromXML(placesFile, null);
+				best[1] = Math.min(best[1], System.nanoTime() - start);
+				placesXmlSize = placesFile.length();
+				placesFile.delete();
+
+				start = System.nanoTime();
+				PlacePersistance.saveToSession(places, placesFile);
+				best[2] = Math.min(best[2], System.nanoTime() - start);
+
+				start = System.nanoTime();
+				PlacePersistance.saveToSession(places, placesFile);
+				best[3] = Math.min(best[3], System.nanoTime() - start);
+
+				start = System.nanoTime();
+				PlacePersistance.readFromSession(placesFile, null);
+				best[4] = Math.min(best[4], System.nanoTime() - start);
+				placesSessionSize = SessionInputStream.getBinaryFile(placesFile).length();
+
+				start = System.nanoTime();
+				LayerTreePersistance.saveToXML(tree, layersFile);
+				best[5] = Math.min(best[5], System.nanoTime() - start);
+
+				start = System.nanoTime();
+				LayerTreePersistance.readFromXML(layersFile);
+				best[6] = Math.min(best[6], System.nanoTime() - start);
+				layersXmlSize = layersFile.length();
+				layersFile.delete();
+
+				start = System.nanoTime();
+				LayerTreePersistance.saveToSession(tree, layersFile);
+				best[7] = Math.min(best[7], System.nanoTime() - start);
+
+				start = System.nanoTime();
+				LayerTreePersistance.saveToSession(tree, layersFile);
+				best[8] = Math.min(best[8], System.nanoTime() - start);
+
+				start = System.nanoTime();
+				LayerTreePersistance.readFromSession(layersFile);
+				best[9] = Math.min(best[9], System.nanoTime() - start);
+				layersSessionSize = SessionInputStream.getBinaryFile(layersFile).length();
+			}
+			finally
+			{
+				delete(placesFile);
+				delete(layersFile);
+			}
+		}
+
+		System.out.println(placeCount + " places:");
+		print("XML save", best[0]);
+		print("XML load", best[1]);
+		print("session save", best[2]);
+		print("session save (unchanged)", best[3]);
+		print("session load", best[4]);
+		System.out.println("  size: XML " + placesXmlSize + " bytes, session " + placesSessionSize + " bytes");
+		System.out.println(nodeCount + " layer nodes:");
+		print("XML save", best[5]);
+		print("XML load", best[6]);
+		print("session save", best[7]);
+		print("session save (unchanged)", best[8]);
+		print("session load", best[9]);
+		System.out.println("  size: XML " + layersXmlSize + " bytes, session " + layersSessionSize + " bytes");
+	}
+
+	private static List<Place> createPlaces(int count)
+	{
+		List<Place> places = new ArrayList<Place>(count);
+		for (int i = 0; i < count; i++)
+		{
+			Place place = new Place("Place " + i, LatLon.fromDegrees(-45 + (i % 90), -180 + (i % 360)), 1000 + i);
+			if (i % 10 == 0)
+			{
+				place.setSaveCamera(true);
+				place.setEyePosition(Position.fromDegrees(-45 + (i % 90), -180 + (i % 360), 20000));
+				place.setLayers(createTree(10));
+			}
+			places.add(place);
+		}
+		return places;
+	}
+
+	private static INode createTree(int count)
+	{
+		FolderNode root = new FolderNode(null, null, null, true);
+		FolderNode folder = null;
+		for (int i = 0; i < count; i++)
+		{
+			if (i % 20 == 0)
+			{
+				folder = new FolderNode("Folder " + i, null, null, i % 40 == 0);
+				root.addChild(folder);
+			}
+			else
+			{
+				folder.addChild(new LayerNode("Layer " + i, null, null, false, URLUtil
+						.fromString("http://example.com/layers/" + i + "/layer.xml"), i % 3 == 0, 1, null));
+			}
+		}
+		return root;
+	}
+
+	private static File createTempFile(String prefix) throws IOException
+	{
+		File file = File.createTempFile(prefix, ".xml");
+		file.delete();
+		return file;
+	}
+
+	private static void delete(File xmlFile)
+	{
+		xmlFile.delete();
+		SessionInputStream.getBinaryFile(xmlFile).delete();
+	}
+
+	private static void print(String name, long nanos)
+	{
+		System.out.println(String.format("  %-26s %8.2f ms", name, nanos / 1e6));
+	}
+}